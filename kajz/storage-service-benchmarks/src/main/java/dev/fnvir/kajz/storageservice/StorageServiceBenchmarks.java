@@ -0,0 +1,23 @@
+package dev.fnvir.kajz.storageservice;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the GC profiler, so allocations per operation are
+ * reported next to the timings. Takes the usual JMH arguments, e.g. a regex of
+ * the benchmarks to run.
+ */
+public class StorageServiceBenchmarks {
+
+    public static void main(String[] args) throws Exception {
+        var options = new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+
+}
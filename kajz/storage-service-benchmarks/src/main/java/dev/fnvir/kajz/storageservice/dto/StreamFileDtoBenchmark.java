@@ -0,0 +1,49 @@
+package dev.fnvir.kajz.storageservice.dto;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.MediaType;
+
+/**
+ * Benchmarks of {@link StreamFileDto#getMediaType()}, run on every download:
+ * parsing the stored content type, or guessing it from the filename when it's
+ * {@code application/octet-stream}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StreamFileDtoBenchmark {
+
+    @Param({ "image/png", "application/octet-stream" })
+    public String contentType;
+
+    private StreamFileDto file;
+
+    @Setup
+    public void setUp() {
+        file = StreamFileDto.builder()
+                .filename("gig-thumbnail-0kx2s3y4z5a6b.pdf")
+                .contentType(contentType)
+                .build();
+    }
+
+    @Benchmark
+    public MediaType getMediaType() {
+        return file.getMediaType();
+    }
+
+}
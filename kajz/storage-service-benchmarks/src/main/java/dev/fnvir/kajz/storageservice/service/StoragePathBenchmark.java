@@ -0,0 +1,57 @@
+package dev.fnvir.kajz.storageservice.service;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import dev.fnvir.kajz.storageservice.enums.FileAccessLevel;
+
+/**
+ * Benchmarks of the filename and storage path generation of every initiated
+ * upload in {@link StorageService}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StoragePathBenchmark {
+
+    private UUID ownerId;
+    private String purpose;
+    private String filename;
+
+    @Setup
+    public void setUp() {
+        ownerId = UUID.randomUUID();
+        purpose = "Gig Thumbnail (cover) #1";
+        filename = StorageService.generateFilenameWithExt("My Holiday Photo.JPG", StorageService.normalizePurpose(purpose));
+    }
+
+    @Benchmark
+    public String normalizePurpose() {
+        return StorageService.normalizePurpose(purpose);
+    }
+
+    @Benchmark
+    public String generateFilenameWithExt() {
+        return StorageService.generateFilenameWithExt("My Holiday Photo.JPG", StorageService.normalizePurpose(purpose));
+    }
+
+    @Benchmark
+    public String generateStoragePath() {
+        return StorageService.generateStoragePath(filename, FileAccessLevel.PUBLIC, ownerId);
+    }
+
+}
@@ -0,0 +1,64 @@
+package dev.fnvir.kajz.storageservice.util;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.security.authentication.TestingAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+/**
+ * Benchmarks of the {@link SecurityContextUtils} checks run on every access
+ * to a non-public file. The user has a few roles, none of them the ones
+ * checked, so the role lookups scan all of them.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SecurityContextUtilsBenchmark {
+
+    private UUID userId;
+    private UUID otherUserId;
+
+    @Setup
+    public void setUp() {
+        userId = UUID.randomUUID();
+        otherUserId = UUID.randomUUID();
+        SecurityContextHolder.getContext().setAuthentication(new TestingAuthenticationToken(
+                userId.toString(), null, "ROLE_USER", "ROLE_SELLER", "ROLE_BUYER", "SCOPE_openid"));
+    }
+
+    @TearDown
+    public void tearDown() {
+        SecurityContextHolder.clearContext();
+    }
+
+    @Benchmark
+    public boolean hasAnyRole() {
+        return SecurityContextUtils.hasAnyRole("ADMIN", "SYSTEM");
+    }
+
+    @Benchmark
+    public boolean matchesUserId() {
+        return SecurityContextUtils.matchesUserIdOrHasAnyRole(userId, "ADMIN", "SYSTEM");
+    }
+
+    @Benchmark
+    public boolean matchesOtherUserId() {
+        return SecurityContextUtils.matchesUserIdOrHasAnyRole(otherUserId, "ADMIN", "SYSTEM");
+    }
+
+}
@@ -0,0 +1,74 @@
+package dev.fnvir.kajz.storageservice.util;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import dev.fnvir.kajz.storageservice.config.StorageProperties;
+
+/**
+ * Benchmarks of {@link StorageFileValidatorUtils#detectMediaType}, run on the
+ * head of every validated upload, against detecting the same head with Tika.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StorageFileValidatorUtilsBenchmark {
+
+    @Param({ "png", "jpeg", "webp", "pdf", "unknown" })
+    public String type;
+
+    private StorageFileValidatorUtils validator;
+    private String filename;
+    private byte[] header;
+
+    @Setup
+    public void setUp() {
+        validator = new StorageFileValidatorUtils(new StorageProperties());
+        validator.compileAllowedMimeTypes();
+        filename = "upload-0kx2s3y4z5a6b." + type;
+        header = switch (type) {
+            case "png" -> header(new byte[] {
+                    (byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n', 0, 0, 0, 13, 'I', 'H', 'D', 'R' });
+            case "jpeg" -> header(new byte[] {
+                    (byte) 0xFF, (byte) 0xD8, (byte) 0xFF, (byte) 0xE0, 0, 16, 'J', 'F', 'I', 'F', 0 });
+            case "webp" -> header("RIFF\u0000\u0010\u0000\u0000WEBPVP8 ".getBytes(StandardCharsets.ISO_8859_1));
+            case "pdf" -> header("%PDF-1.7\n%âãÏÓ\n1 0 obj\n".getBytes(StandardCharsets.ISO_8859_1));
+            default -> header(new byte[] { 0x13, 0x37, 0x42 });
+        };
+    }
+
+    /** The magic bytes padded to the size of a typical read-ahead. */
+    private static byte[] header(byte[] magic) {
+        byte[] header = Arrays.copyOf(magic, StorageFileValidatorUtils.TIKA_SNIFF_LENGTH);
+        Arrays.fill(header, magic.length, header.length, (byte) 0x5A);
+        return header;
+    }
+
+    @Benchmark
+    public String detectMediaType() {
+        return validator.detectMediaType(filename, new ByteArrayInputStream(header));
+    }
+
+    @Benchmark
+    public String detectWithTika() {
+        return StorageFileValidatorUtils.detectWithTika(filename, header);
+    }
+
+}
@@ -0,0 +1,48 @@
+package dev.fnvir.kajz.storageservice.util;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of {@link UuidEncodeUtils}, which encodes the owner folder of
+ * every storage path.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UuidEncodeUtilsBenchmark {
+
+    private UUID uuid;
+    private String encoded;
+
+    @Setup
+    public void setUp() {
+        uuid = UUID.fromString("3f2b8c1e-9a4d-4e7f-b6c5-0d1e2f3a4b5c");
+        encoded = UuidEncodeUtils.encodeCrockford(uuid);
+    }
+
+    @Benchmark
+    public String encodeCrockford() {
+        return UuidEncodeUtils.encodeCrockford(uuid);
+    }
+
+    @Benchmark
+    public UUID decodeCrockford() {
+        return UuidEncodeUtils.decodeCrockford(encoded);
+    }
+
+}
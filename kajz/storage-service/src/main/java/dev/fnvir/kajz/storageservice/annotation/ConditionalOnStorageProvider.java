@@ -0,0 +1,30 @@
+package dev.fnvir.kajz.storageservice.annotation;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+import org.springframework.context.annotation.Conditional;
+
+import dev.fnvir.kajz.storageservice.annotation.impl.OnStorageProviderCondition;
+import dev.fnvir.kajz.storageservice.enums.StorageProviderType;
+
+/**
+ * Only registers a storage provider if it's the primary provider
+ * ({@code storage.provider}) or one of the additional backends files are
+ * routed to ({@code storage.routing.providers}).
+ */
+@Documented
+@Conditional(OnStorageProviderCondition.class)
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface ConditionalOnStorageProvider {
+
+    /**
+     * The type of the storage provider.
+     */
+    StorageProviderType value();
+
+}
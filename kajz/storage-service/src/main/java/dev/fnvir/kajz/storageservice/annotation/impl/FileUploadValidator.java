@@ -4,7 +4,8 @@ import org.springframework.http.MediaTypeFactory;
 import org.springframework.stereotype.Component;
 
 import dev.fnvir.kajz.storageservice.annotation.ValidFileUpload;
-import dev.fnvir.kajz.storageservice.dto.req.InitiateUploadRequest;
+import dev.fnvir.kajz.storageservice.dto.req.FileUploadRequest;
+import dev.fnvir.kajz.storageservice.dto.req.InitiateMultipartUploadRequest;
 import dev.fnvir.kajz.storageservice.util.StorageFileValidatorUtils;
 import jakarta.validation.ConstraintValidator;
 import jakarta.validation.ConstraintValidatorContext;
@@ -12,12 +13,12 @@ import lombok.RequiredArgsConstructor;
 
 @Component
 @RequiredArgsConstructor
-public class FileUploadValidator implements ConstraintValidator<ValidFileUpload, InitiateUploadRequest> {
+public class FileUploadValidator implements ConstraintValidator<ValidFileUpload, FileUploadRequest> {
 
     private final StorageFileValidatorUtils fileValidator;
 
     @Override
-    public boolean isValid(InitiateUploadRequest value, ConstraintValidatorContext context) {
+    public boolean isValid(FileUploadRequest value, ConstraintValidatorContext context) {
         if (value == null) {
             return true;
         }
@@ -47,7 +48,8 @@ public class FileUploadValidator implements ConstraintValidator<ValidFileUpload,
         }
 
         // Validate file size
-        if (!fileValidator.isValidFileSize(value.fileSize())) {
+        boolean multipart = value instanceof InitiateMultipartUploadRequest;
+        if (value.fileSize() != null && !fileValidator.isValidFileSize(value.fileSize(), multipart)) {
             context.buildConstraintViolationWithTemplate(
                 "File size exceeds maximum allowed size"
             ).addPropertyNode("fileSize")
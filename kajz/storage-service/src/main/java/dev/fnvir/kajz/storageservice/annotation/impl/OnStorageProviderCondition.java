@@ -0,0 +1,35 @@
+package dev.fnvir.kajz.storageservice.annotation.impl;
+
+import java.util.Set;
+
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.context.annotation.Condition;
+import org.springframework.context.annotation.ConditionContext;
+import org.springframework.core.type.AnnotatedTypeMetadata;
+
+import dev.fnvir.kajz.storageservice.annotation.ConditionalOnStorageProvider;
+import dev.fnvir.kajz.storageservice.enums.StorageProviderType;
+
+/**
+ * Condition of {@link ConditionalOnStorageProvider}.
+ */
+public class OnStorageProviderCondition implements Condition {
+
+    @Override
+    public boolean matches(ConditionContext context, AnnotatedTypeMetadata metadata) {
+        var attributes = metadata.getAnnotationAttributes(ConditionalOnStorageProvider.class.getName());
+        if (attributes == null) {
+            return false;
+        }
+        var type = (StorageProviderType) attributes.get("value");
+        Binder binder = Binder.get(context.getEnvironment());
+        if (binder.bind("storage.provider", StorageProviderType.class).map(type::equals).orElse(false)) {
+            return true;
+        }
+        return binder.bind("storage.routing.providers", Bindable.setOf(StorageProviderType.class))
+                .orElse(Set.of())
+                .contains(type);
+    }
+
+}
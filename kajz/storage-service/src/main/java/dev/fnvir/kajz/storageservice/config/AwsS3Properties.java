@@ -38,5 +38,10 @@ public class AwsS3Properties {
      * Default is false.
      */
     private Boolean autoCreateBucket = false;
+    
+    /**
+     * Connection pool of the HTTP client used by the S3 clients.
+     */
+    private HttpClientPoolProperties http = new HttpClientPoolProperties();
 
 }
@@ -29,4 +29,9 @@ public class AzureBlobStorageProperties {
      */
     private Boolean autoCreateContainer = false;
     
+    /**
+     * Connection pool of the HTTP client used by the blob clients.
+     */
+    private HttpClientPoolProperties http = new HttpClientPoolProperties();
+    
 }
@@ -0,0 +1,51 @@
+package dev.fnvir.kajz.storageservice.config;
+
+import java.time.Duration;
+
+import lombok.Data;
+
+/**
+ * Properties for the connection pool of the HTTP client of a storage provider.
+ */
+@Data
+public class HttpClientPoolProperties {
+
+    /**
+     * Max number of open connections to the provider. Requests beyond it wait
+     * for a connection to be released.
+     */
+    private Integer maxConnections = 100;
+
+    /**
+     * Max number of requests waiting for a connection (async clients only).
+     */
+    private Integer maxPendingAcquires = 10_000;
+
+    /**
+     * How long a request waits for a connection before failing.
+     */
+    private Duration acquisitionTimeout = Duration.ofSeconds(10);
+
+    /**
+     * How long it may take to open a connection.
+     */
+    private Duration connectionTimeout = Duration.ofSeconds(5);
+
+    /**
+     * How long a connection may stay idle in the pool before it's closed.
+     */
+    private Duration maxIdleTime = Duration.ofSeconds(60);
+
+    /**
+     * Interval of the background eviction of idle connections (Azure only,
+     * the AWS SDK runs its own idle connection reaper).
+     */
+    private Duration idleEvictionInterval = Duration.ofSeconds(30);
+
+    /**
+     * Whether to enable TCP keep-alive on the connections.
+     * Default is true.
+     */
+    private Boolean tcpKeepAlive = true;
+
+}
@@ -0,0 +1,24 @@
+package dev.fnvir.kajz.storageservice.config;
+
+import org.apache.kafka.clients.admin.NewTopic;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnBooleanProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.kafka.config.TopicBuilder;
+
+@Configuration
+@ConditionalOnBooleanProperty("storage.upload-events.enabled")
+public class KafkaTopicConfig {
+    
+    /** Object created notifications of the storage providers, forwarded by a bridge. */
+    public static final String OBJECT_CREATED_TOPIC = "storage.object-created";
+    
+    @Bean
+    NewTopic objectCreatedTopic() {
+        return TopicBuilder
+                .name(OBJECT_CREATED_TOPIC)
+                .partitions(3)
+                .build();
+    }
+
+}
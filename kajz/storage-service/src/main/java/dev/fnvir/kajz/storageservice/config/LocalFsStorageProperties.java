@@ -0,0 +1,38 @@
+package dev.fnvir.kajz.storageservice.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import lombok.Data;
+
+/**
+ * Properties for the local filesystem storage provider.
+ */
+@Data
+@Component
+@ConfigurationProperties("storage.local-fs")
+public class LocalFsStorageProperties {
+    
+    /**
+     * The root directory under which all blobs are stored.
+     */
+    private String rootDir = "./data/files";
+    
+    /**
+     * The externally reachable base URL of this service, used to build the
+     * signed upload/download URLs (e.g. http://localhost:8083).
+     */
+    private String publicBaseUrl = "http://localhost:8083";
+    
+    /**
+     * The secret used to sign (HMAC-SHA256) upload and download URLs.
+     */
+    private String signingSecret;
+    
+    /**
+     * Whether to auto create the root directory if it doesn't exist.
+     * Default is true.
+     */
+    private Boolean autoCreateRootDir = true;
+
+}
@@ -38,7 +38,9 @@ public class SecurityConfig {
                     .permitAll()
                     .requestMatchers("/actuator/**", "/error")
                     .permitAll()
-                    .requestMatchers(HttpMethod.GET, "/storage/files/{fileId}")
+                    .requestMatchers(HttpMethod.GET, "/storage/files/{fileId}", "/storage/files/{fileId}/derivative")
+                    .permitAll()
+                    .requestMatchers("/storage/local-fs/objects") // secured by signed URLs
                     .permitAll()
                     .anyRequest()
                     .authenticated()
@@ -0,0 +1,133 @@
+package dev.fnvir.kajz.storageservice.config;
+
+import java.time.Duration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+import org.springframework.validation.annotation.Validated;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.DecimalMax;
+import jakarta.validation.constraints.DecimalMin;
+import jakarta.validation.constraints.NotNull;
+import lombok.Data;
+
+/**
+ * Properties for the caches of the storage service.
+ */
+@Data
+@Component
+@Validated
+@ConfigurationProperties("storage.cache")
+public class StorageCacheProperties {
+    
+    /**
+     * Cache of the access-relevant metadata of files.
+     */
+    private Metadata metadata = new Metadata();
+    
+    /**
+     * Local disk cache of hot public files.
+     */
+    private Disk disk = new Disk();
+    
+    /**
+     * In-memory cache of pre-signed download URLs.
+     */
+    @Valid
+    private PresignedUrl presignedUrl = new PresignedUrl();
+    
+    @Data
+    public static class Metadata {
+        
+        /**
+         * Whether to cache file metadata at all.
+         * Default is true.
+         */
+        private Boolean enabled = true;
+        
+        /**
+         * Max number of entries kept in the in-memory (L1) cache.
+         */
+        private Long localMaxSize = 10_000L;
+        
+        /**
+         * Time-to-live of in-memory (L1) entries. Invalidations only reach the
+         * L1 cache of the instance that made the change, so this bounds how long
+         * other instances may serve stale metadata.
+         */
+        private Duration localTtl = Duration.ofSeconds(30);
+        
+        /**
+         * Time-to-live of the Redis (L2) entries.
+         */
+        private Duration redisTtl = Duration.ofHours(1);
+        
+        /**
+         * Prefix of the Redis (L2) keys.
+         */
+        private String redisKeyPrefix = "storage-service:file-meta:";
+        
+    }
+    
+    @Data
+    public static class Disk {
+        
+        /**
+         * Whether to cache hot public files on the local disk.
+         * Default is false.
+         */
+        private Boolean enabled = false;
+        
+        /**
+         * The directory in which cached files are kept. It is owned by the
+         * cache, leftover partial files are removed on startup.
+         */
+        private String dir = "./data/cache";
+        
+        /**
+         * Max total size (in bytes) of the cached files.
+         * Default is 1GB.
+         */
+        private Long maxSize = 1024L * 1024 * 1024;
+        
+        /**
+         * Number of downloads of a file (within {@link #admissionWindow}) after
+         * which it is admitted to the cache.
+         */
+        private Integer admissionHits = 3;
+        
+        /**
+         * Time window in which downloads are counted for admission.
+         */
+        private Duration admissionWindow = Duration.ofMinutes(10);
+        
+    }
+    
+    @Data
+    public static class PresignedUrl {
+        
+        /**
+         * Whether to reuse pre-signed download URLs.
+         * Default is true.
+         */
+        private Boolean enabled = true;
+        
+        /**
+         * Max number of cached URLs.
+         */
+        private Long maxSize = 10_000L;
+        
+        /**
+         * Fraction (between 0 and 1, exclusive) of a URL's lifetime during which
+         * it is reused. E.g. with 0.5 a 3 minute URL is handed out for 90 seconds,
+         * so it stays valid for at least another 90 seconds.
+         */
+        @NotNull
+        @DecimalMin(value = "0", inclusive = false)
+        @DecimalMax(value = "1", inclusive = false)
+        private Double reuseFraction = 0.5;
+        
+    }
+
+}
@@ -1,5 +1,6 @@
 package dev.fnvir.kajz.storageservice.config;
 
+import java.time.Duration;
 import java.util.Set;
 
 import org.springframework.boot.context.properties.ConfigurationProperties;
@@ -28,5 +29,133 @@ public class StorageProperties {
      * Default is 5MB.
      */
     private Long maxSize = 5L * 1024 * 1024;
+    
+    /**
+     * The maximum allowed size (in bytes) of a file uploaded in multiple parts.
+     * Default is 5GB.
+     */
+    private Long multipartMaxSize = 5L * 1024 * 1024 * 1024;
+    
+    /**
+     * The size (in bytes) of each part of a multipart upload, except the last.
+     * Raised automatically if the file would need more than 10,000 parts.
+     * Default is 8MB (S3 requires at least 5MB).
+     */
+    private Long multipartPartSize = 8L * 1024 * 1024;
+    
+    /**
+     * How long a multipart upload may stay incomplete before it's aborted by the
+     * cleanup job. Default is 24 hours.
+     */
+    private Duration multipartExpiry = Duration.ofHours(24);
+    
+    /**
+     * The max number of uploads whose content is validated concurrently in the
+     * background. Default is 8.
+     */
+    private Integer validationConcurrency = 8;
+    
+    /**
+     * The max number of uploads waiting for a background validation worker.
+     * Uploads which don't fit are picked up later by the validation sweep.
+     * Default is 1000.
+     */
+    private Integer validationQueueCapacity = 1000;
+    
+    /**
+     * How long an upload may stay as PROCESSING before the validation sweep
+     * queues it again (e.g. the node validating it went down). Default is 2
+     * minutes.
+     */
+    private Duration validationTimeout = Duration.ofMinutes(2);
+    
+    /**
+     * The number of workers (per instance) deleting files from the storage
+     * provider through the delete outbox. Default is 2.
+     */
+    private Integer deleteWorkers = 2;
+    
+    /**
+     * Whether uploads with the same content share a single stored object.
+     */
+    private Boolean dedupEnabled = true;
+    
+    /**
+     * The max size (in bytes) of a file to deduplicate, as its whole content is
+     * read to hash it. Default is 64MB.
+     */
+    private Long dedupMaxSize = 64L * 1024 * 1024;
+    
+    /**
+     * The mime-types worth compressing when served to clients accepting gzip.
+     */
+    private Set<String> compressibleTypes = Set.of(
+            "text/plain",
+            "text/csv",
+            "text/html",
+            "text/css",
+            "text/xml",
+            "application/json",
+            "application/xml",
+            "application/javascript",
+            "image/svg+xml",
+            "application/pdf"
+    );
+    
+    /**
+     * Whether a precompressed (gzip) variant of compressible files is stored
+     * next to the original once their upload is validated.
+     */
+    private Boolean precompressEnabled = true;
+    
+    /**
+     * The max size (in bytes) of a file to precompress, as the compressed
+     * content is buffered in memory. Larger files are compressed while they're
+     * streamed. Default is 16MB.
+     */
+    private Long precompressMaxSize = 16L * 1024 * 1024;
+    
+    /**
+     * The min fraction of the size a precompressed variant must save to be
+     * kept. Files which don't compress well (e.g. PDFs of scans) are then
+     * always served as is. Default is 0.1 (10%).
+     */
+    private Double precompressMinSavings = 0.1;
+    
+    /**
+     * The widths and heights (in pixels) image derivatives may be requested in.
+     * Kept to a small set so the number of variants stored per image is bounded.
+     */
+    private Set<Integer> derivativeSizes = Set.of(64, 96, 128, 256, 512, 1024);
+    
+    /**
+     * The max number of image derivatives generated concurrently. Default is 4.
+     */
+    private Integer derivativeConcurrency = 4;
+    
+    /**
+     * The max number of image derivatives waiting to be generated. Requests which
+     * don't fit are rejected with 503. Default is 100.
+     */
+    private Integer derivativeQueueCapacity = 100;
+    
+    /**
+     * How long a request waits for its derivative to be generated. Default is 30
+     * seconds.
+     */
+    private Duration derivativeTimeout = Duration.ofSeconds(30);
+    
+    /**
+     * The max number of pixels of an image derivatives are generated from, to
+     * guard against decompression bombs. Default is 50 megapixels.
+     */
+    private Long derivativeMaxSourcePixels = 50_000_000L;
+    
+    /**
+     * How long a non-blocking download may go without writing to the client
+     * before it's abandoned (the provider or the client stalled). Downloads
+     * have no limit on their total duration. Default is 2 minutes.
+     */
+    private Duration downloadIdleTimeout = Duration.ofMinutes(2);
 
 }
@@ -12,7 +12,7 @@ import lombok.Data;
 public class StorageProviderConfig {
     
     /**
-     * The type/name of the storage provider (e.g. S3).
+     * The type/name of the storage provider (e.g. aws-s3, azure-blob, local-fs).
      */
     private StorageProviderType provider;
 
@@ -0,0 +1,158 @@
+package dev.fnvir.kajz.storageservice.config;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import lombok.Data;
+
+/**
+ * Properties for the resilience policies (timeout, circuit breaker, bulkhead
+ * and hedged reads) around the calls to the storage providers.
+ */
+@Data
+@Component
+@ConfigurationProperties("storage.resilience")
+public class StorageResilienceProperties {
+
+    /**
+     * Whether to apply the policies to the storage provider calls.
+     * Default is true.
+     */
+    private Boolean enabled = true;
+
+    /**
+     * The policy of the operations without one of their own.
+     */
+    private Policy defaults = Policy.defaults();
+
+    /**
+     * The policies of single operations, by the operation tag of the
+     * {@code storage.provider.operation} timer (e.g. {@code download-open},
+     * {@code validate-upload-completion}). Properties not set are taken from
+     * the defaults.
+     */
+    private Map<String, Policy> operations = new HashMap<>();
+
+    /**
+     * Get the policy of an operation.
+     *
+     * @param operation the operation.
+     * @return its policy, completed with the defaults.
+     */
+    public Policy policy(String operation) {
+        Policy policy = operations.get(operation);
+        return policy == null ? defaults : policy.withDefaults(defaults);
+    }
+
+    @Data
+    public static class Policy {
+
+        /**
+         * How long a call may take before it's abandoned. For downloads, how
+         * long opening the stream may take.
+         */
+        private Duration timeout;
+
+        /**
+         * The failure rate (percentage) from which the circuit opens.
+         */
+        private Float failureRateThreshold;
+
+        /**
+         * Calls taking longer than this are slow.
+         */
+        private Duration slowCallDuration;
+
+        /**
+         * The rate (percentage) of slow calls from which the circuit opens.
+         */
+        private Float slowCallRateThreshold;
+
+        /**
+         * The number of recent calls the rates are computed on.
+         */
+        private Integer slidingWindowSize;
+
+        /**
+         * The number of calls needed before the rates are checked.
+         */
+        private Integer minimumNumberOfCalls;
+
+        /**
+         * How long the circuit stays open before letting trial calls through.
+         */
+        private Duration waitInOpenState;
+
+        /**
+         * The maximum number of concurrent calls of the operation per provider.
+         */
+        private Integer maxConcurrentCalls;
+
+        /**
+         * How long a call waits for a free slot once the maximum is reached,
+         * before being rejected.
+         */
+        private Duration maxWait;
+
+        /**
+         * Whether to send a second (hedged) request when the first one hasn't
+         * responded after the hedge delay, using the first response. Only
+         * applies to reads ({@code download-open}, {@code download-range-open}).
+         */
+        private Boolean hedge;
+
+        /**
+         * The delay before a hedged request. If not set, the p95 latency of the
+         * recent calls of the operation.
+         */
+        private Duration hedgeDelay;
+
+        /**
+         * The minimum delay before a hedged request, bounding the extra load
+         * when the provider is fast.
+         */
+        private Duration hedgeMinDelay;
+
+        static Policy defaults() {
+            var policy = new Policy();
+            policy.timeout = Duration.ofSeconds(10);
+            policy.failureRateThreshold = 50f;
+            policy.slowCallDuration = Duration.ofSeconds(5);
+            policy.slowCallRateThreshold = 80f;
+            policy.slidingWindowSize = 50;
+            policy.minimumNumberOfCalls = 20;
+            policy.waitInOpenState = Duration.ofSeconds(30);
+            policy.maxConcurrentCalls = 200;
+            policy.maxWait = Duration.ofMillis(50);
+            policy.hedge = false;
+            policy.hedgeMinDelay = Duration.ofMillis(20);
+            return policy;
+        }
+
+        Policy withDefaults(Policy defaults) {
+            var policy = new Policy();
+            policy.timeout = timeout != null ? timeout : defaults.timeout;
+            policy.failureRateThreshold = failureRateThreshold != null ? failureRateThreshold
+                    : defaults.failureRateThreshold;
+            policy.slowCallDuration = slowCallDuration != null ? slowCallDuration : defaults.slowCallDuration;
+            policy.slowCallRateThreshold = slowCallRateThreshold != null ? slowCallRateThreshold
+                    : defaults.slowCallRateThreshold;
+            policy.slidingWindowSize = slidingWindowSize != null ? slidingWindowSize : defaults.slidingWindowSize;
+            policy.minimumNumberOfCalls = minimumNumberOfCalls != null ? minimumNumberOfCalls
+                    : defaults.minimumNumberOfCalls;
+            policy.waitInOpenState = waitInOpenState != null ? waitInOpenState : defaults.waitInOpenState;
+            policy.maxConcurrentCalls = maxConcurrentCalls != null ? maxConcurrentCalls : defaults.maxConcurrentCalls;
+            policy.maxWait = maxWait != null ? maxWait : defaults.maxWait;
+            policy.hedge = hedge != null ? hedge : defaults.hedge;
+            policy.hedgeDelay = hedgeDelay != null ? hedgeDelay : defaults.hedgeDelay;
+            policy.hedgeMinDelay = hedgeMinDelay != null ? hedgeMinDelay : defaults.hedgeMinDelay;
+            return policy;
+        }
+
+    }
+
+}
@@ -0,0 +1,114 @@
+package dev.fnvir.kajz.storageservice.config;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import dev.fnvir.kajz.storageservice.enums.FileAccessLevel;
+import dev.fnvir.kajz.storageservice.enums.StorageProviderType;
+import lombok.Data;
+
+/**
+ * Properties for routing files to storage providers (backends) and moving cold
+ * files to a cheaper tier.
+ */
+@Data
+@Component
+@ConfigurationProperties("storage.routing")
+public class StorageRoutingProperties {
+
+    /**
+     * Storage providers enabled in addition to the primary one
+     * ({@code storage.provider}), to route files to or move cold files to.
+     */
+    private Set<StorageProviderType> providers = new HashSet<>();
+
+    /**
+     * Rules choosing the backend of new files, checked in order. The first
+     * matching rule wins; files matching none go to the primary provider.
+     */
+    private List<Rule> rules = new ArrayList<>();
+
+    /**
+     * Moving files which haven't been read for a while to a cheaper tier.
+     */
+    private Cold cold = new Cold();
+
+    @Data
+    public static class Rule {
+
+        /**
+         * Only files with this access level (any if not set).
+         */
+        private FileAccessLevel access;
+
+        /**
+         * Only files with this purpose (any if not set).
+         */
+        private String purpose;
+
+        /**
+         * Only files of at least this size in bytes (any if not set).
+         */
+        private Long minSize;
+
+        /**
+         * Only files of at most this size in bytes (any if not set).
+         */
+        private Long maxSize;
+
+        /**
+         * The backend of the matching files.
+         */
+        private StorageProviderType provider;
+
+    }
+
+    @Data
+    public static class Cold {
+
+        /**
+         * Whether to move cold files to the cold tier.
+         * Default is false.
+         */
+        private Boolean enabled = false;
+
+        /**
+         * How long a file must not have been read to be moved.
+         */
+        private Duration after = Duration.ofDays(30);
+
+        /**
+         * The backend to move cold files to. If not set, files are moved to the
+         * cold storage class of the backend holding them (S3 Standard-IA, Azure
+         * Cool tier) without changing their backend.
+         */
+        private StorageProviderType provider;
+
+        /**
+         * Files smaller than this (in bytes) stay where they are. Cold storage
+         * classes bill small objects as if they were 128KB.
+         */
+        private Long minSize = 128L * 1024;
+
+        /**
+         * The number of files moved per batch.
+         */
+        private Integer batchSize = 100;
+
+        /**
+         * How long the old copy of a file moved to another backend is kept, so
+         * instances still serving it from cached metadata or pre-signed URLs
+         * don't fail. Should exceed the local metadata cache TTL and the reuse
+         * window of pre-signed URLs.
+         */
+        private Duration deleteDelay = Duration.ofMinutes(10);
+
+    }
+
+}
@@ -0,0 +1,119 @@
+package dev.fnvir.kajz.storageservice.controller;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import dev.fnvir.kajz.storageservice.annotation.ConditionalOnStorageProvider;
+import dev.fnvir.kajz.storageservice.enums.StorageProviderType;
+import dev.fnvir.kajz.storageservice.service.LocalObjectCreatedPublisher;
+import dev.fnvir.kajz.storageservice.service.impl.LocalFsStorageProvider;
+import dev.fnvir.kajz.storageservice.util.FileChannelInputStream;
+import io.swagger.v3.oas.annotations.security.SecurityRequirements;
+import jakarta.servlet.http.HttpServletRequest;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Target of the signed URLs generated by {@link LocalFsStorageProvider}. Only
+ * active when the local filesystem provider is in use.
+ */
+@RestController
+@RequestMapping(path = LocalFsStorageProvider.OBJECTS_PATH, version = "1")
+@RequiredArgsConstructor
+@ConditionalOnStorageProvider(StorageProviderType.LOCAL_FS)
+public class LocalFsStorageController {
+
+    private final LocalFsStorageProvider storageProvider;
+    private final ObjectProvider<LocalObjectCreatedPublisher> objectCreatedPublisher;
+
+    /**
+     * Upload an object using a signed upload URL.
+     *
+     * @param key       the key of the object
+     * @param expires   the expiry (epoch seconds) of the signed URL
+     * @param sig       the signature of the URL
+     * @param request   the request containing the file content as body
+     * @return 200 with the ETag of the uploaded object
+     * @throws IOException if the object can't be written
+     */
+    @PutMapping
+    @SecurityRequirements
+    public ResponseEntity<Void> uploadObject(
+            @RequestParam String key,
+            @RequestParam long expires,
+            @RequestParam String sig,
+            HttpServletRequest request
+    ) throws IOException {
+        storageProvider.verifySignature(LocalFsStorageProvider.OP_UPLOAD, key, expires, sig);
+        try (InputStream in = request.getInputStream()) {
+            var stored = storageProvider.writeObject(key, in);
+            objectCreatedPublisher.ifAvailable(p -> p.publish(key, stored.size(), stored.eTag()));
+            return ResponseEntity.ok().eTag(stored.eTag()).build();
+        }
+    }
+
+    /**
+     * Upload a part of a multipart upload using a signed part upload URL.
+     *
+     * @param uploadId   the ID of the multipart upload
+     * @param partNumber the number (1-based) of the part
+     * @param expires    the expiry (epoch seconds) of the signed URL
+     * @param sig        the signature of the URL
+     * @param request    the request containing the part content as body
+     * @return 200 with the ETag of the uploaded part
+     * @throws IOException if the part can't be written
+     */
+    @PutMapping(params = {"uploadId", "partNumber"})
+    @SecurityRequirements
+    public ResponseEntity<Void> uploadObjectPart(
+            @RequestParam String uploadId,
+            @RequestParam int partNumber,
+            @RequestParam long expires,
+            @RequestParam String sig,
+            HttpServletRequest request
+    ) throws IOException {
+        storageProvider.verifyPartSignature(uploadId, partNumber, expires, sig);
+        try (InputStream in = request.getInputStream()) {
+            return ResponseEntity.ok().eTag(storageProvider.writeObjectPart(uploadId, partNumber, in)).build();
+        }
+    }
+
+    /**
+     * Download an object using a signed download URL.
+     *
+     * @param key     the key of the object
+     * @param expires the expiry (epoch seconds) of the signed URL
+     * @param sig     the signature of the URL
+     * @return the file stream
+     * @throws IOException if the object doesn't exist or can't be read
+     */
+    @GetMapping
+    @SecurityRequirements
+    public ResponseEntity<StreamingResponseBody> downloadObject(
+            @RequestParam String key,
+            @RequestParam long expires,
+            @RequestParam String sig
+    ) throws IOException {
+        storageProvider.verifySignature(LocalFsStorageProvider.OP_DOWNLOAD, key, expires, sig);
+        FileChannelInputStream in = storageProvider.openObject(key);
+        return ResponseEntity.ok()
+                .contentLength(in.remaining())
+                .contentType(MediaTypeFactory.getMediaType(key).orElse(MediaType.APPLICATION_OCTET_STREAM))
+                .body(outStream -> {
+                    try (in) {
+                        in.transferTo(outStream);
+                    }
+                });
+    }
+
+}
@@ -1,16 +1,26 @@
 package dev.fnvir.kajz.storageservice.controller;
 
+import java.nio.ByteBuffer;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+import org.reactivestreams.Publisher;
 
 import org.springframework.http.CacheControl;
 import org.springframework.http.ContentDisposition;
 import org.springframework.http.ETag;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
+import org.springframework.util.MimeTypeUtils;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
@@ -18,23 +28,47 @@ import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import dev.fnvir.kajz.storageservice.config.StorageProperties;
+import dev.fnvir.kajz.storageservice.dto.DerivativeSpec;
 import dev.fnvir.kajz.storageservice.dto.StreamFileDto;
+import dev.fnvir.kajz.storageservice.dto.StreamFileDto.Region;
+import dev.fnvir.kajz.storageservice.dto.req.BatchFileInfoRequest;
+import dev.fnvir.kajz.storageservice.dto.req.BatchInitiateUploadRequest;
 import dev.fnvir.kajz.storageservice.dto.req.CompleteUploadRequest;
+import dev.fnvir.kajz.storageservice.dto.req.InitiateMultipartUploadRequest;
 import dev.fnvir.kajz.storageservice.dto.req.InitiateUploadRequest;
+import dev.fnvir.kajz.storageservice.dto.req.PartUploadUrlsRequest;
+import dev.fnvir.kajz.storageservice.dto.res.BatchFileInfoResponse;
+import dev.fnvir.kajz.storageservice.dto.res.BatchInitiateUploadResponse;
 import dev.fnvir.kajz.storageservice.dto.res.CompleteUploadResponse;
+import dev.fnvir.kajz.storageservice.dto.res.CursorPageResponse;
 import dev.fnvir.kajz.storageservice.dto.res.ErrorResponse;
 import dev.fnvir.kajz.storageservice.dto.res.FileUploadResponse;
+import dev.fnvir.kajz.storageservice.dto.res.InitiateMultipartUploadResponse;
 import dev.fnvir.kajz.storageservice.dto.res.InitiateUploadResponse;
+import dev.fnvir.kajz.storageservice.dto.res.MultipartUploadProgressResponse;
+import dev.fnvir.kajz.storageservice.dto.res.PartUploadUrl;
 import dev.fnvir.kajz.storageservice.dto.res.PreSignedDownloadUrlResponse;
+import dev.fnvir.kajz.storageservice.dto.res.UploadStatusResponse;
+import dev.fnvir.kajz.storageservice.enums.DerivativeFormat;
+import dev.fnvir.kajz.storageservice.enums.FileAccessLevel;
+import dev.fnvir.kajz.storageservice.enums.UploadStatus;
+import dev.fnvir.kajz.storageservice.exception.ApiException;
 import dev.fnvir.kajz.storageservice.service.StorageService;
+import dev.fnvir.kajz.storageservice.util.ByteBufferPublisherUtils;
 import io.swagger.v3.oas.annotations.media.Content;
 import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.security.SecurityRequirements;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.Valid;
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
 import lombok.RequiredArgsConstructor;
 
 @RestController
@@ -43,6 +77,7 @@ import lombok.RequiredArgsConstructor;
 public class StorageController {
     
     private final StorageService storageService;
+    private final StorageProperties storageProperties;
     
     /**
      * Initiate an upload process by generating a pre-signed URL for uploading.
@@ -61,7 +96,82 @@ public class StorageController {
     }
     
     /**
-     * Complete an upload by verifying and validating the uploaded file.
+     * Initiate multiple uploads at once (e.g. all images of a gig). Each file is
+     * validated separately, so invalid files are reported in their result
+     * without failing the rest of the batch.
+     * 
+     * @param req            the batch initiate upload request payload
+     * @param authentication the authentication object
+     * @return the result of each file, in request order
+     */
+    @PostMapping("/initiate-upload/batch")
+    public ResponseEntity<BatchInitiateUploadResponse> initiateUploadBatch(
+            @RequestBody @Valid BatchInitiateUploadRequest req,
+            Authentication authentication
+    ) {
+        UUID userId = UUID.fromString(authentication.getName());
+        return ResponseEntity.ok(storageService.initiateUploadBatch(userId, req));
+    }
+    
+    /**
+     * Initiate a multipart (resumable) upload for large files. Each part is
+     * uploaded to its own pre-signed URL, so parts can be uploaded in parallel
+     * and a failed part can be retried alone. Complete the upload with
+     * {@code /complete-upload} once all parts are uploaded.
+     * 
+     * @param req            the initiate multipart upload request payload
+     * @param authentication the authentication object
+     * @return response containing the part size and the upload URL of each part
+     */
+    @PostMapping("/initiate-multipart-upload")
+    public ResponseEntity<InitiateMultipartUploadResponse> initiateMultipartUpload(
+            @RequestBody @Valid InitiateMultipartUploadRequest req,
+            Authentication authentication
+    ) {
+        UUID userId = UUID.fromString(authentication.getName());
+        return ResponseEntity.ok(storageService.initiateMultipartUpload(userId, req));
+    }
+    
+    /**
+     * Generate fresh upload URLs for parts of an incomplete multipart upload, to
+     * resume it after the previous URLs expired.
+     * 
+     * @param fileId         the ID of the file
+     * @param req            the numbers of the parts
+     * @param authentication the authentication object
+     * @return the upload URL of each requested part
+     */
+    @PostMapping("/multipart-upload/{fileId}/part-urls")
+    public List<PartUploadUrl> generatePartUploadUrls(
+            @PathVariable Long fileId,
+            @RequestBody @Valid PartUploadUrlsRequest req,
+            Authentication authentication
+    ) {
+        UUID userId = UUID.fromString(authentication.getName());
+        return storageService.generatePartUploadUrls(fileId, userId, req);
+    }
+    
+    /**
+     * Get the uploaded and missing parts of an incomplete multipart upload.
+     * 
+     * @param fileId         the ID of the file
+     * @param authentication the authentication object
+     * @return the progress of the upload
+     */
+    @GetMapping("/multipart-upload/{fileId}/progress")
+    public MultipartUploadProgressResponse getMultipartUploadProgress(
+            @PathVariable Long fileId,
+            Authentication authentication
+    ) {
+        UUID userId = UUID.fromString(authentication.getName());
+        return storageService.getMultipartUploadProgress(fileId, userId);
+    }
+    
+    /**
+     * Complete an upload by verifying the uploaded file exists and its size is
+     * allowed. The content is validated in the background: the upload stays
+     * {@code PROCESSING} until it's {@code VALIDATED} or {@code FAILED}, which can
+     * be polled with {@code /files/{fileId}/status}.
      * 
      * @param req            the complete upload request
      * @param authentication the authentication object
@@ -92,22 +202,49 @@ public class StorageController {
      *   <li>User's with ADMIN role can access all files.</li>
      * </ul>
      * 
-     * @param fileId      the ID of the file to serve.
-     * @param ifNoneMatch the ETag from the client for cache validation.
-     * @param response    the server HTTP response to write to.
-     * @return the file stream.
+     * <p>
+     * Supports byte range requests. A single range is served as 206 with a
+     * {@code Content-Range} header, multiple ranges as {@code multipart/byteranges}.
+     * The range is ignored (full file is served) if the {@code If-Range} validator
+     * doesn't match the current ETag of the file.
+     * </p>
+     * 
+     * <p>
+     * Compressible files (e.g. SVG, JSON) are served gzipped to clients
+     * accepting it, with an ETag of their own. Range requests are always served
+     * from the original.
+     * </p>
+     * 
+     * @param fileId         the ID of the file to serve.
+     * @param ifNoneMatch    the ETag from the client for cache validation.
+     * @param range          the requested byte range(s).
+     * @param ifRange        the ETag the requested range is conditional on.
+     * @param acceptEncoding the content codings accepted by the client.
+     * @param request        the current request.
+     * @param servletResponse the current response, written asynchronously for
+     *                       non-blocking downloads.
+     * @return the file stream, or null if the response is written asynchronously.
      */
     @GetMapping(path = "/files/{fileId}", produces = MediaType.APPLICATION_OCTET_STREAM_VALUE)
     @SecurityRequirements
     @ApiResponse(responseCode = "200", description = "A stream of the file", content = @Content)
+    @ApiResponse(responseCode = "206", description = "A stream of the requested byte range(s)", content = @Content)
     @ApiResponse(responseCode = "401", description = "Unauthorized (for protected/private files)", content = @Content)
     @ApiResponse(responseCode = "403", description = "Forbidden (for private files)", content = @Content)
+    @ApiResponse(responseCode = "416", description = "Requested range not satisfiable", content = @Content)
     @ApiResponse(responseCode = "500", description = "Internal Server Error", content = @Content(schema = @Schema(implementation = ErrorResponse.class)))
     public ResponseEntity<StreamingResponseBody> serveFileValidatingAccess(
             @PathVariable Long fileId,
-            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+            @RequestHeader(value = HttpHeaders.RANGE, required = false) String range,
+            @RequestHeader(value = HttpHeaders.IF_RANGE, required = false) String ifRange,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding,
+            HttpServletRequest request,
+            HttpServletResponse servletResponse
     ) {
-        StreamFileDto result = storageService.downloadFileValidatingAccess(fileId, ifNoneMatch);
+        // byte ranges are served from the original, so they stay valid across encodings
+        StreamFileDto result = storageService.downloadFileValidatingAccess(
+                fileId, ifNoneMatch, range == null ? acceptEncoding : null);
         
         if (result == null) {
             return ResponseEntity.notFound().build();
@@ -116,19 +253,253 @@ public class StorageController {
         if (ifNoneMatch != null && result.getEtag() != null
                 && ETag.create(ifNoneMatch).equals(ETag.create(result.getEtag()))
         ) {
-            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).build();
+            var notModified = ResponseEntity.status(HttpStatus.NOT_MODIFIED);
+            if (result.isVaryByEncoding()) {
+                notModified.varyBy(HttpHeaders.ACCEPT_ENCODING);
+            }
+            return notModified.build();
         }
         
-        return ResponseEntity.ok()
+        List<HttpRange> ranges = parseRanges(range, ifRange, result.getEtag());
+        if (!ranges.isEmpty()) {
+            return serveRanges(result, ranges, request, servletResponse);
+        }
+        
+        var response = ResponseEntity.ok()
                 .header(HttpHeaders.CONTENT_DISPOSITION,
                         ContentDisposition.attachment().filename(result.getFilename()).build().toString())
+                .header(HttpHeaders.ACCEPT_RANGES, "bytes")
+                .cacheControl(CacheControl.maxAge(Duration.ofDays(30)).cachePublic().mustRevalidate())
+                .contentType(result.getMediaType())
+                .eTag(result.getEtag());
+        if (result.getContentLength() >= 0) {
+            response.contentLength(result.getContentLength());
+        }
+        if (result.getContentEncoding() != null) {
+            response.header(HttpHeaders.CONTENT_ENCODING, result.getContentEncoding());
+        }
+        if (result.isVaryByEncoding()) {
+            response.varyBy(HttpHeaders.ACCEPT_ENCODING);
+        }
+        return respond(response, result.nonBlockingFile(), result::streamFile, request, servletResponse);
+    }
+    
+    /**
+     * Serve a scaled down variant of an image (e.g. a 96px avatar), generated on
+     * the first request and stored next to the original. The image is scaled to
+     * fit within the given width and/or height (keeping its aspect ratio) and is
+     * never scaled up. Access rules are the same as for the original file.
+     * 
+     * @param fileId      the ID of the original image.
+     * @param width       the max width in pixels (one of {@code storage.file.derivative-sizes}).
+     * @param height      the max height in pixels (one of {@code storage.file.derivative-sizes}).
+     * @param format      the format of the derivative ({@code jpeg} or {@code png}).
+     * @param ifNoneMatch the ETag from the client for cache validation.
+     * @param request     the current request.
+     * @param servletResponse the current response, written asynchronously for
+     *                    non-blocking downloads.
+     * @return the derivative stream, or null if the response is written asynchronously.
+     */
+    @GetMapping(path = "/files/{fileId}/derivative", produces = { MediaType.IMAGE_JPEG_VALUE, MediaType.IMAGE_PNG_VALUE })
+    @SecurityRequirements
+    @ApiResponse(responseCode = "200", description = "A stream of the derivative", content = @Content)
+    @ApiResponse(responseCode = "400", description = "Not an image or unsupported size/format", content = @Content(schema = @Schema(implementation = ErrorResponse.class)))
+    @ApiResponse(responseCode = "401", description = "Unauthorized (for protected/private files)", content = @Content)
+    @ApiResponse(responseCode = "403", description = "Forbidden (for private files)", content = @Content)
+    @ApiResponse(responseCode = "503", description = "Derivative workers are busy, retry later", content = @Content(schema = @Schema(implementation = ErrorResponse.class)))
+    public ResponseEntity<StreamingResponseBody> serveDerivativeValidatingAccess(
+            @PathVariable Long fileId,
+            @RequestParam(name = "w", required = false) Integer width,
+            @RequestParam(name = "h", required = false) Integer height,
+            @RequestParam(defaultValue = "jpeg") String format,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+            HttpServletRequest request,
+            HttpServletResponse servletResponse
+    ) {
+        DerivativeFormat derivativeFormat;
+        try {
+            derivativeFormat = DerivativeFormat.fromExtension(format);
+        } catch (IllegalArgumentException e) {
+            throw new ApiException(HttpStatus.BAD_REQUEST, e.getMessage());
+        }
+        StreamFileDto result = storageService.downloadDerivativeValidatingAccess(
+                fileId, new DerivativeSpec(width, height, derivativeFormat), ifNoneMatch);
+        
+        if (ifNoneMatch != null && result.getEtag() != null
+                && ETag.create(ifNoneMatch).equals(ETag.create(result.getEtag()))
+        ) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).build();
+        }
+        
+        var response = ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION,
+                        ContentDisposition.inline().filename(result.getFilename()).build().toString())
                 .cacheControl(CacheControl.maxAge(Duration.ofDays(30)).cachePublic().mustRevalidate())
                 .contentLength(result.getContentLength())
                 .contentType(result.getMediaType())
-                .eTag(result.getEtag())
-                .body(result.streamFile());
+                .eTag(result.getEtag());
+        return respond(response, result.nonBlockingFile(), result::streamFile, request, servletResponse);
+    }
+    
+    /**
+     * Respond with the non-blocking download if there is one, or with the
+     * blocking stream otherwise. A non-blocking download is written by the
+     * container's non-blocking I/O once the request is in async mode, so
+     * there is no body to return: null tells Spring MVC the response is
+     * handled (same as for a {@code DeferredResult}).
+     */
+    private ResponseEntity<StreamingResponseBody> respond(
+            ResponseEntity.BodyBuilder response,
+            Supplier<CompletableFuture<Publisher<ByteBuffer>>> nonBlocking,
+            Supplier<StreamingResponseBody> blocking,
+            HttpServletRequest request,
+            HttpServletResponse servletResponse
+    ) {
+        if (nonBlocking == null) {
+            return response.body(blocking.get());
+        }
+        ByteBufferPublisherUtils.respondAsync(response.build(), nonBlocking, request, servletResponse,
+                storageProperties.getDownloadIdleTimeout());
+        return null;
+    }
+    
+    /**
+     * Parse the range header, ignoring it if it's malformed or if the
+     * {@code If-Range} validator doesn't match the current ETag.
+     */
+    private List<HttpRange> parseRanges(String range, String ifRange, String eTag) {
+        if (range == null || range.isBlank()) {
+            return List.of();
+        }
+        if (ifRange != null) {
+            ETag ifRangeTag = ETag.create(ifRange);
+            // only strong ETags are valid validators, a date can't be verified
+            if (eTag == null || ifRangeTag.weak() || !ifRangeTag.compare(ETag.create(eTag), true)) {
+                return List.of();
+            }
+        }
+        try {
+            return HttpRange.parseRanges(range);
+        } catch (IllegalArgumentException e) {
+            return List.of();
+        }
+    }
+    
+    private ResponseEntity<StreamingResponseBody> serveRanges(StreamFileDto file, List<HttpRange> ranges,
+            HttpServletRequest request, HttpServletResponse servletResponse) {
+        long length = file.getContentLength();
+        
+        List<Region> regions = new ArrayList<>(ranges.size());
+        long requestedLength = 0;
+        for (HttpRange httpRange : ranges) {
+            long start = httpRange.getRangeStart(length);
+            long end = httpRange.getRangeEnd(length);
+            if (start >= length || start > end) {
+                continue;
+            }
+            regions.add(new Region(start, end));
+            requestedLength += end - start + 1;
+        }
+        
+        // ranges adding up to more than the file are rejected, as by HttpRange#toResourceRegions
+        if (regions.isEmpty() || requestedLength > length) {
+            return ResponseEntity.status(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE)
+                    .header(HttpHeaders.CONTENT_RANGE, "bytes */" + length)
+                    .build();
+        }
+        regions = mergeRegions(regions);
+        
+        var response = ResponseEntity.status(HttpStatus.PARTIAL_CONTENT)
+                .header(HttpHeaders.CONTENT_DISPOSITION,
+                        ContentDisposition.attachment().filename(file.getFilename()).build().toString())
+                .header(HttpHeaders.ACCEPT_RANGES, "bytes")
+                .cacheControl(CacheControl.maxAge(Duration.ofDays(30)).cachePublic().mustRevalidate())
+                .eTag(file.getEtag());
+        
+        if (regions.size() == 1) {
+            Region region = regions.getFirst();
+            response.header(HttpHeaders.CONTENT_RANGE, region.toContentRange(length))
+                    .contentLength(region.length())
+                    .contentType(file.getMediaType());
+            return respond(response, file.nonBlockingRange(region), () -> file.streamRange(region),
+                    request, servletResponse);
+        }
+        
+        String boundary = MimeTypeUtils.generateMultipartBoundaryString();
+        return response
+                .contentType(MediaType.parseMediaType("multipart/byteranges; boundary=" + boundary))
+                .body(file.streamRanges(regions, boundary));
+    }
+
+    /**
+     * Merge overlapping and adjacent regions, so no byte is streamed twice.
+     * 
+     * @param regions the requested regions.
+     * @return the merged regions, ordered by their start.
+     */
+    static List<Region> mergeRegions(List<Region> regions) {
+        List<Region> sorted = regions.stream().sorted(Comparator.comparingLong(Region::start)).toList();
+        List<Region> merged = new ArrayList<>(sorted.size());
+        Region current = sorted.getFirst();
+        for (Region next : sorted.subList(1, sorted.size())) {
+            if (next.start() <= current.end() + 1) {
+                current = new Region(current.start(), Math.max(current.end(), next.end()));
+            } else {
+                merged.add(current);
+                current = next;
+            }
+        }
+        merged.add(current);
+        return merged;
     }
 
+    /**
+     * List the files of a user, newest first. The owner and admins see all of
+     * their files; other users only see the available files which aren't
+     * private.
+     * 
+     * @param owner          (optional) the ID of the owner, defaults to the
+     *                       current user
+     * @param cursor         (optional) the cursor returned with the previous page
+     * @param status         (optional) only files with this status
+     * @param access         (optional) only files with this access level
+     * @param purpose        (optional) only files with this purpose
+     * @param limit          (optional) the max number of files to return
+     *                       (default is 20, max is 100)
+     * @param authentication the authentication object
+     * @return a page of files with the cursor of the next page
+     */
+    @GetMapping("/files")
+    public CursorPageResponse<FileUploadResponse> listFiles(
+            @RequestParam(required = false) UUID owner,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) UploadStatus status,
+            @RequestParam(required = false) FileAccessLevel access,
+            @RequestParam(required = false) String purpose,
+            @RequestParam(defaultValue = "20") @Min(1) @Max(100) int limit,
+            Authentication authentication
+    ) {
+        UUID ownerId = owner != null ? owner : UUID.fromString(authentication.getName());
+        return storageService.listFilesOfOwner(ownerId, cursor, status, access, purpose, limit);
+    }
+    
+    /**
+     * Get the status of an upload, e.g. to poll until its content has been
+     * validated after completing the upload.
+     * 
+     * @param fileId         the ID of the file
+     * @param authentication the authentication object
+     * @return the status of the upload
+     */
+    @GetMapping("/files/{fileId}/status")
+    public UploadStatusResponse getUploadStatus(
+            @PathVariable Long fileId,
+            Authentication authentication
+    ) {
+        UUID userId = UUID.fromString(authentication.getName());
+        return storageService.getUploadStatus(fileId, userId);
+    }
+    
     /**
      * Generate a pre-signed temporary URL for downloading a file.
      * 
@@ -176,4 +547,17 @@ public class StorageController {
         return storageService.getFileInfo(fileId);
     }
     
+    /**
+     * Get the metadata of multiple files at once (e.g. all images of a listing
+     * page). Each file is checked separately, so missing or inaccessible files
+     * are reported in their result without failing the rest of the batch.
+     * 
+     * @param req the IDs of the files
+     * @return 200 the result of each file, by ID
+     */
+    @PostMapping("/files/metadata/batch")
+    public BatchFileInfoResponse getFileInfoBatch(@RequestBody @Valid BatchFileInfoRequest req) {
+        return storageService.getFileInfoBatch(req);
+    }
+    
 }
@@ -0,0 +1,116 @@
+package dev.fnvir.kajz.storageservice.dto;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import dev.fnvir.kajz.storageservice.enums.ContentEncoding;
+import dev.fnvir.kajz.storageservice.enums.FileAccessLevel;
+import dev.fnvir.kajz.storageservice.enums.StorageProviderType;
+import dev.fnvir.kajz.storageservice.enums.UploadStatus;
+import dev.fnvir.kajz.storageservice.model.FileUpload;
+
+/**
+ * The access-relevant fields of a {@link FileUpload} which are cached for the
+ * download and metadata paths.
+ * 
+ * @param id             the ID of the file upload
+ * @param ownerId        the ID of the file owner
+ * @param filename       the name of the file
+ * @param storagePath    the path of the file in the storage provider
+ * @param storageBackend the storage provider holding the file (null for the primary provider)
+ * @param mimeType       the MIME type of the file
+ * @param contentSize    the size of the file in bytes
+ * @param eTag           the ETag of the uploaded file
+ * @param access         the access level of the file
+ * @param status         the upload status of the file
+ * @param available      whether the file is ready for access
+ * @param derivatives    the size of each generated image derivative, by name
+ * @param encodings      the size of each stored content encoding, by token
+ */
+public record CachedFileMetadata(
+        Long id,
+        UUID ownerId,
+        String filename,
+        String storagePath,
+        StorageProviderType storageBackend,
+        String mimeType,
+        Long contentSize,
+        String eTag,
+        FileAccessLevel access,
+        UploadStatus status,
+        boolean available,
+        Map<String, Long> derivatives,
+        Map<String, Long> encodings
+) {
+    
+    public static CachedFileMetadata from(FileUpload file) {
+        return new CachedFileMetadata(
+                file.getId(),
+                file.getOwnerId(),
+                file.getFilename(),
+                file.getStoragePath(),
+                file.getStorageBackend(),
+                file.getMimeType(),
+                file.getContentSize(),
+                file.getETag(),
+                file.getAccess(),
+                file.getStatus(),
+                file.isAvailable(),
+                DerivativeSpec.fromMetadata(file.getMetadata()),
+                ContentEncoding.fromMetadata(file.getMetadata())
+        );
+    }
+    
+    /**
+     * Flatten into a string map to be stored as a Redis hash. Null fields are
+     * omitted.
+     */
+    public Map<String, String> toHash() {
+        Map<String, String> hash = new HashMap<>();
+        hash.put("id", id.toString());
+        hash.put("ownerId", ownerId.toString());
+        hash.put("filename", filename);
+        hash.put("storagePath", storagePath);
+        if (storageBackend != null)
+            hash.put("storageBackend", storageBackend.name());
+        hash.put("mimeType", mimeType);
+        hash.put("contentSize", contentSize.toString());
+        if (eTag != null)
+            hash.put("eTag", eTag);
+        hash.put("access", access.name());
+        hash.put("status", status.name());
+        hash.put("available", Boolean.toString(available));
+        if (derivatives != null)
+            derivatives.forEach((name, size) -> hash.put(DerivativeSpec.METADATA_KEY_PREFIX + name, size.toString()));
+        if (encodings != null)
+            encodings.forEach((token, size) -> hash.put(ContentEncoding.METADATA_KEY_PREFIX + token, size.toString()));
+        return hash;
+    }
+    
+    /**
+     * Restore from a Redis hash created by {@link #toHash()}.
+     * 
+     * @return the metadata, or null if the hash is empty (i.e. key doesn't exist).
+     */
+    public static CachedFileMetadata fromHash(Map<String, String> hash) {
+        if (hash == null || hash.isEmpty())
+            return null;
+        return new CachedFileMetadata(
+                Long.valueOf(hash.get("id")),
+                UUID.fromString(hash.get("ownerId")),
+                hash.get("filename"),
+                hash.get("storagePath"),
+                hash.get("storageBackend") == null ? null : StorageProviderType.valueOf(hash.get("storageBackend")),
+                hash.get("mimeType"),
+                Long.valueOf(hash.get("contentSize")),
+                hash.get("eTag"),
+                FileAccessLevel.valueOf(hash.get("access")),
+                UploadStatus.valueOf(hash.get("status")),
+                Boolean.parseBoolean(hash.get("available")),
+                DerivativeSpec.fromMetadata(hash),
+                ContentEncoding.fromMetadata(hash)
+        );
+    }
+
+}
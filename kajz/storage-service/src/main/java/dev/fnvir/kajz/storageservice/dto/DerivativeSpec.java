@@ -0,0 +1,86 @@
+package dev.fnvir.kajz.storageservice.dto;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.springframework.util.StringUtils;
+
+import dev.fnvir.kajz.storageservice.enums.DerivativeFormat;
+
+/**
+ * A variant of an image, scaled down to fit within the given box. Either side
+ * may be left out to only bound the other; images are never scaled up.
+ * 
+ * @param width  the max width in pixels (nullable)
+ * @param height the max height in pixels (nullable)
+ * @param format the format of the derivative
+ */
+public record DerivativeSpec(
+        Integer width,
+        Integer height,
+        DerivativeFormat format
+) {
+    
+    /** The prefix of the metadata entries recording the derivatives of a file. */
+    public static final String METADATA_KEY_PREFIX = "derivative:";
+    
+    /**
+     * The name of the derivative, unique per file (e.g. {@code w96-h96.jpeg}).
+     */
+    public String name() {
+        StringBuilder name = new StringBuilder();
+        if (width != null)
+            name.append('w').append(width);
+        if (height != null)
+            name.append(name.isEmpty() ? "" : "-").append('h').append(height);
+        return name.append('.').append(format.getExtension()).toString();
+    }
+    
+    /**
+     * The key of the metadata entry recording this derivative.
+     */
+    public String metadataKey() {
+        return METADATA_KEY_PREFIX + name();
+    }
+    
+    /**
+     * The path of this derivative in the storage provider, next to the original.
+     * 
+     * @param originalPath the storage path of the original file.
+     */
+    public String storagePath(String originalPath) {
+        return storagePath(originalPath, name());
+    }
+    
+    /**
+     * The path of a derivative in the storage provider, next to the original
+     * (e.g. {@code public/abc/avatar-xyz.png} to {@code public/abc/avatar-xyz_w96.jpeg}).
+     * 
+     * @param originalPath the storage path of the original file.
+     * @param name         the name of the derivative.
+     */
+    public static String storagePath(String originalPath, String name) {
+        return StringUtils.stripFilenameExtension(originalPath) + "_" + name;
+    }
+    
+    /**
+     * Find the derivatives recorded in the metadata of a file.
+     * 
+     * @param metadata the metadata of the file (nullable).
+     * @return the size in bytes of each derivative, by name.
+     */
+    public static Map<String, Long> fromMetadata(Map<String, String> metadata) {
+        Map<String, Long> derivatives = new HashMap<>();
+        if (metadata == null)
+            return derivatives;
+        metadata.forEach((key, value) -> {
+            if (key.startsWith(METADATA_KEY_PREFIX)) {
+                try {
+                    derivatives.put(key.substring(METADATA_KEY_PREFIX.length()), Long.valueOf(value));
+                } catch (NumberFormatException _) {}
+            }
+        });
+        return derivatives;
+    }
+    
+}
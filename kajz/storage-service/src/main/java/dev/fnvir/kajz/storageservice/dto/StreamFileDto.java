@@ -1,12 +1,25 @@
 package dev.fnvir.kajz.storageservice.dto;
 
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+import java.util.zip.GZIPOutputStream;
 
+import org.jspecify.annotations.Nullable;
+import org.reactivestreams.Publisher;
+
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.http.MediaTypeFactory;
 import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import dev.fnvir.kajz.storageservice.util.ByteBufferPublisherUtils;
+
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
@@ -20,13 +33,33 @@ import lombok.NoArgsConstructor;
 @AllArgsConstructor
 @NoArgsConstructor
 public class StreamFileDto {
-    
+
+    private static final int GZIP_BUFFER_SIZE = 64 * 1024;
+
     private Callable<InputStream> inputStreamProvider;
+    private RangeStreamProvider rangeStreamProvider;
+    
+    /** If set, used instead of {@link #inputStreamProvider}. */
+    private Supplier<CompletableFuture<Publisher<ByteBuffer>>> nonBlockingStreamProvider;
+    
+    /** If set, used instead of {@link #rangeStreamProvider}. */
+    private NonBlockingRangeStreamProvider nonBlockingRangeStreamProvider;
     private String filename;
+    
+    /** The length of the streamed body, or -1 if it's compressed while streaming. */
     private long contentLength;
     private String contentType;
     private String etag;
     
+    /** The {@code Content-Encoding} of the streamed body (null if not encoded). */
+    private String contentEncoding;
+    
+    /** Whether the original is gzipped while it's streamed. */
+    private boolean compressWhileStreaming;
+    
+    /** Whether the representation depends on the {@code Accept-Encoding} of the request. */
+    private boolean varyByEncoding;
+
     public MediaType getMediaType() {
         if (contentType != null && !contentType.equals("application/octet-stream")) {
             try { return MediaType.valueOf(contentType); }
@@ -35,18 +68,162 @@ public class StreamFileDto {
         return MediaTypeFactory.getMediaType(filename)
                 .orElse(MediaType.APPLICATION_OCTET_STREAM);
     }
-    
+
+    /**
+     * Get the non-blocking download of the file, to be written with
+     * {@link ByteBufferPublisherUtils#respondAsync}.
+     *
+     * @return opens the file, or null if it's streamed with
+     *         {@link #streamFile()} (no non-blocking download, or compressed
+     *         while streaming).
+     */
+    public @Nullable Supplier<CompletableFuture<Publisher<ByteBuffer>>> nonBlockingFile() {
+        return compressWhileStreaming ? null : nonBlockingStreamProvider;
+    }
+
+    /**
+     * Get the non-blocking download of a single byte range of the file, same
+     * as {@link #nonBlockingFile()}.
+     *
+     * @param region the byte range.
+     * @return opens the byte range, or null if it's streamed with
+     *         {@link #streamRange(Region)}.
+     */
+    public @Nullable Supplier<CompletableFuture<Publisher<ByteBuffer>>> nonBlockingRange(Region region) {
+        if (nonBlockingRangeStreamProvider == null) {
+            return null;
+        }
+        return () -> nonBlockingRangeStreamProvider.forRange(region.start(), region.end());
+    }
+
+    /**
+     * Stream the file. The stream is opened right away, so provider errors
+     * (e.g. file doesn't exist) are thrown before the response is committed.
+     *
+     * @return the response body.
+     */
     public StreamingResponseBody streamFile() {
+        StreamingResponseBody body = transferOpened(open(inputStreamProvider));
+        return compressWhileStreaming ? gzip(body) : body;
+    }
+
+    /**
+     * Stream a single byte range of the file. The stream is opened right away,
+     * same as {@link #streamFile()}.
+     *
+     * @param region the byte range to stream.
+     * @return the response body.
+     */
+    public StreamingResponseBody streamRange(Region region) {
+        return transferOpened(open(rangeStreamProvider.forRange(region.start(), region.end())));
+    }
+
+    /**
+     * Stream multiple byte ranges of the file as a {@code multipart/byteranges}
+     * body.
+     *
+     * @param regions  the byte ranges to stream.
+     * @param boundary the multipart boundary.
+     * @return the response body.
+     */
+    public StreamingResponseBody streamRanges(List<Region> regions, String boundary) {
+        String partContentType = getMediaType().toString();
         return outStream -> {
-            try (InputStream inputStream = inputStreamProvider.call()) {
-                if (inputStream == null) {
-                    return;
-                }
+            for (Region region : regions) {
+                String partHeader = "\r\n--" + boundary + "\r\n"
+                        + HttpHeaders.CONTENT_TYPE + ": " + partContentType + "\r\n"
+                        + HttpHeaders.CONTENT_RANGE + ": " + region.toContentRange(contentLength) + "\r\n"
+                        + "\r\n";
+                outStream.write(partHeader.getBytes(StandardCharsets.US_ASCII));
+                transfer(rangeStreamProvider.forRange(region.start(), region.end()), outStream);
+            }
+            outStream.write(("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.US_ASCII));
+        };
+    }
+
+    private static InputStream open(Callable<InputStream> streamProvider) {
+        try {
+            return streamProvider.call();
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static StreamingResponseBody transferOpened(InputStream inputStream) {
+        return outStream -> {
+            if (inputStream == null) {
+                return;
+            }
+            try (inputStream) {
                 inputStream.transferTo(outStream);
-            } catch (Exception e) {
-                throw new RuntimeException(e);
             }
         };
     }
 
+    private static StreamingResponseBody gzip(StreamingResponseBody body) {
+        return outStream -> {
+            var gzip = new GZIPOutputStream(outStream, GZIP_BUFFER_SIZE);
+            body.writeTo(gzip);
+            gzip.finish(); // the response stream is closed by the container
+        };
+    }
+
+    private static void transfer(Callable<InputStream> streamProvider, OutputStream outStream) {
+        try (InputStream inputStream = streamProvider.call()) {
+            if (inputStream == null) {
+                return;
+            }
+            inputStream.transferTo(outStream);
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Provides a stream for a byte range of the file.
+     */
+    @FunctionalInterface
+    public interface RangeStreamProvider {
+
+        /**
+         * @param start the position of the first byte (inclusive).
+         * @param end   the position of the last byte (inclusive).
+         * @return a Callable that provides an InputStream of the byte range.
+         */
+        Callable<InputStream> forRange(long start, long end);
+    }
+
+    /**
+     * Provides a non-blocking stream for a byte range of the file.
+     */
+    @FunctionalInterface
+    public interface NonBlockingRangeStreamProvider {
+
+        /**
+         * @param start the position of the first byte (inclusive).
+         * @param end   the position of the last byte (inclusive).
+         * @return a future of the publisher of the byte range.
+         */
+        CompletableFuture<Publisher<ByteBuffer>> forRange(long start, long end);
+    }
+
+    /**
+     * A satisfiable byte range of a file.
+     *
+     * @param start the position of the first byte (inclusive).
+     * @param end   the position of the last byte (inclusive).
+     */
+    public record Region(long start, long end) {
+
+        public long length() {
+            return end - start + 1;
+        }
+
+        public String toContentRange(long totalLength) {
+            return "bytes " + start + "-" + end + "/" + totalLength;
+        }
+    }
+
 }
@@ -19,6 +19,9 @@ public class UploadValidationResultDTO {
     /** The ETag of the uploaded file. */
     private String eTag;
     
+    /** The size of the uploaded file in bytes, if known. */
+    private Long contentLength;
+    
     
     private UploadValidationResultDTO(boolean success) {
         this.success = success;
@@ -62,6 +65,11 @@ public class UploadValidationResultDTO {
         return this;
     }
     
+    public UploadValidationResultDTO contentLength(long contentLength) {
+        this.contentLength = contentLength;
+        return this;
+    }
+    
     
     public enum UploadValidationFailureReason {
         FILE_DOESNT_EXIST,
@@ -0,0 +1,32 @@
+package dev.fnvir.kajz.storageservice.dto.event;
+
+import java.time.Instant;
+import java.util.UUID;
+
+import dev.fnvir.kajz.storageservice.enums.UploadStatus;
+import dev.fnvir.kajz.storageservice.model.FileUpload;
+
+/**
+ * Application event published (after commit) whenever an upload moves to a
+ * new status in its lifecycle, e.g. from PROCESSING to VALIDATED or FAILED.
+ *
+ * @param fileId     the ID of the file
+ * @param ownerId    the ID of the owner of the file
+ * @param status     the new status of the upload
+ * @param message    the reason of the failure (null unless FAILED)
+ * @param occurredAt the timestamp of the status change
+ */
+public record FileStatusChangedEvent(
+        Long fileId,
+        UUID ownerId,
+        UploadStatus status,
+        String message,
+        Instant occurredAt
+) {
+
+    public static FileStatusChangedEvent of(FileUpload file) {
+        return new FileStatusChangedEvent(file.getId(), file.getOwnerId(), file.getStatus(),
+                file.getStatusMessage(), Instant.now());
+    }
+
+}
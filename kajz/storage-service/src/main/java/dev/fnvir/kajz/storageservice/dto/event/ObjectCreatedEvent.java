@@ -0,0 +1,21 @@
+package dev.fnvir.kajz.storageservice.dto.event;
+
+import org.jspecify.annotations.Nullable;
+
+import dev.fnvir.kajz.storageservice.enums.StorageProviderType;
+
+/**
+ * An object created in a storage provider, from its notifications (S3 event
+ * notifications, Azure Event Grid {@code BlobCreated} events).
+ *
+ * @param provider the storage provider holding the object
+ * @param key      the key (storage path) of the object
+ * @param size     the size of the object in bytes, if notified
+ */
+public record ObjectCreatedEvent(
+        StorageProviderType provider,
+        String key,
+        @Nullable Long size
+) {
+
+}
@@ -0,0 +1,20 @@
+package dev.fnvir.kajz.storageservice.dto.req;
+
+import java.util.List;
+
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Size;
+
+/**
+ * Request payload for looking up the metadata of multiple files at once.
+ * 
+ * @param fileIds the IDs of the files (duplicates are ignored)
+ */
+public record BatchFileInfoRequest(
+        @NotEmpty
+        @Size(max = BatchFileInfoRequest.MAX_BATCH_SIZE)
+        List<@NotNull Long> fileIds
+) {
+    public static final int MAX_BATCH_SIZE = 100;
+}
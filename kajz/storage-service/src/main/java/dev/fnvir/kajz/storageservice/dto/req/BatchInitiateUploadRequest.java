@@ -0,0 +1,20 @@
+package dev.fnvir.kajz.storageservice.dto.req;
+
+import java.util.List;
+
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.Size;
+
+/**
+ * Request payload for initiating multiple file uploads at once. The items are
+ * validated one by one, so an invalid item doesn't fail the whole batch.
+ * 
+ * @param files the uploads to initiate
+ */
+public record BatchInitiateUploadRequest(
+        @NotEmpty
+        @Size(max = BatchInitiateUploadRequest.MAX_BATCH_SIZE)
+        List<InitiateUploadRequest> files
+) {
+    public static final int MAX_BATCH_SIZE = 25;
+}
@@ -0,0 +1,22 @@
+package dev.fnvir.kajz.storageservice.dto.req;
+
+import dev.fnvir.kajz.storageservice.annotation.ValidFileUpload;
+import dev.fnvir.kajz.storageservice.enums.FileAccessLevel;
+
+/**
+ * Common description of a file to be uploaded, validated by
+ * {@link ValidFileUpload}.
+ */
+public interface FileUploadRequest {
+    
+    String filename();
+    
+    String mimeType();
+    
+    Long fileSize();
+    
+    FileAccessLevel accessLevel();
+    
+    String purpose();
+    
+}
@@ -31,4 +31,4 @@ public record InitiateUploadRequest (
         
         @Size(max = 80)
         String purpose // e.g. profile-picture, gig-thumbnail, etc.
-) {}
+) implements FileUploadRequest {}
@@ -0,0 +1,20 @@
+package dev.fnvir.kajz.storageservice.dto.req;
+
+import java.util.List;
+
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Positive;
+import jakarta.validation.constraints.Size;
+
+/**
+ * Request for fresh upload URLs of parts of a multipart upload (e.g. to resume
+ * after the previous URLs expired).
+ * 
+ * @param partNumbers the numbers (1-based) of the parts
+ */
+public record PartUploadUrlsRequest(
+        @NotEmpty
+        @Size(max = 1000)
+        List<@NotNull @Positive Integer> partNumbers
+) {}
@@ -0,0 +1,41 @@
+package dev.fnvir.kajz.storageservice.dto.res;
+
+import java.util.Map;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
+
+/**
+ * Response of a batch file metadata lookup, with one result per requested
+ * file.
+ * 
+ * @param results the result of each file, by file ID (in request order)
+ */
+public record BatchFileInfoResponse(
+        Map<Long, ItemResult> results
+) {
+    
+    /**
+     * Result of a single file of the batch. Either {@code file} or
+     * {@code status} and {@code error} are set.
+     * 
+     * @param file   the metadata of the file, if accessible
+     * @param status the HTTP status the single lookup would have failed with
+     * @param error  the error message, if failed
+     */
+    @JsonInclude(Include.NON_NULL)
+    public record ItemResult(
+            FileUploadResponse file,
+            Integer status,
+            String error
+    ) {
+        public static ItemResult success(FileUploadResponse file) {
+            return new ItemResult(file, null, null);
+        }
+        
+        public static ItemResult failed(int status, String error) {
+            return new ItemResult(null, status, error);
+        }
+    }
+
+}
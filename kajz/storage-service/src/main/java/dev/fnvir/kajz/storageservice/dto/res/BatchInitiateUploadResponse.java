@@ -0,0 +1,50 @@
+package dev.fnvir.kajz.storageservice.dto.res;
+
+import java.util.List;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
+
+/**
+ * Response of a batch initiate upload, with one result per requested file in
+ * the same order as the request.
+ * 
+ * @param results the result of each item
+ */
+public record BatchInitiateUploadResponse(
+        List<ItemResult> results
+) {
+    
+    /**
+     * Result of a single item of the batch. Either {@code upload} or
+     * {@code errors} is set.
+     * 
+     * @param index  the index of the item in the request
+     * @param upload the initiated upload, if successful
+     * @param errors the validation errors, if failed
+     */
+    @JsonInclude(Include.NON_NULL)
+    public record ItemResult(
+            int index,
+            InitiateUploadResponse upload,
+            List<ItemError> errors
+    ) {
+        public static ItemResult success(int index, InitiateUploadResponse upload) {
+            return new ItemResult(index, upload, null);
+        }
+        
+        public static ItemResult failed(int index, List<ItemError> errors) {
+            return new ItemResult(index, null, errors);
+        }
+    }
+    
+    /**
+     * @param field   the invalid field (null if not field-specific)
+     * @param message the error message
+     */
+    public record ItemError(
+            String field,
+            String message
+    ) {}
+
+}
@@ -0,0 +1,19 @@
+package dev.fnvir.kajz.storageservice.dto.res;
+
+import java.util.List;
+
+import lombok.Builder;
+
+/**
+ * Cursor based pagination response.
+ * 
+ * @param <T>        The type of the content.
+ * @param content    The list of content.
+ * @param nextCursor The opaque cursor to fetch the next page, or null if this
+ *                   is the last page.
+ */
+@Builder
+public record CursorPageResponse<T> (
+        List<T> content,
+        String nextCursor
+) {}
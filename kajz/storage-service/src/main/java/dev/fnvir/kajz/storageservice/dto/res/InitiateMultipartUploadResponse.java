@@ -0,0 +1,27 @@
+package dev.fnvir.kajz.storageservice.dto.res;
+
+import java.util.List;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import com.fasterxml.jackson.annotation.JsonFormat.Shape;
+
+import lombok.Builder;
+
+/**
+ * Response of initiating a multipart upload. Part {@code n} covers the bytes
+ * {@code [(n - 1) * partSize, min(n * partSize, fileSize) - 1]}. Parts can be
+ * uploaded in any order and in parallel.
+ * 
+ * @param fileId    the ID of the file to be uploaded
+ * @param partSize  the size of each part (except the last) in bytes
+ * @param partCount the number of parts
+ * @param parts     the upload URL of each part
+ */
+@Builder
+public record InitiateMultipartUploadResponse(
+        @JsonFormat(shape = Shape.STRING)
+        Long fileId,
+        long partSize,
+        int partCount,
+        List<PartUploadUrl> parts
+) {}
@@ -0,0 +1,27 @@
+package dev.fnvir.kajz.storageservice.dto.res;
+
+import java.util.List;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import com.fasterxml.jackson.annotation.JsonFormat.Shape;
+
+import lombok.Builder;
+
+/**
+ * Progress of a multipart upload, as reported by the storage provider.
+ * 
+ * @param fileId        the ID of the file being uploaded
+ * @param partSize      the size of each part (except the last) in bytes
+ * @param partCount     the number of parts
+ * @param uploadedParts the numbers of the parts which have been uploaded
+ * @param missingParts  the numbers of the parts which are still missing
+ */
+@Builder
+public record MultipartUploadProgressResponse(
+        @JsonFormat(shape = Shape.STRING)
+        Long fileId,
+        long partSize,
+        int partCount,
+        List<Integer> uploadedParts,
+        List<Integer> missingParts
+) {}
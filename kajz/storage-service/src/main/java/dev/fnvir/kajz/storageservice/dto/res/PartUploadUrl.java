@@ -0,0 +1,26 @@
+package dev.fnvir.kajz.storageservice.dto.res;
+
+import java.time.Instant;
+import java.util.Map;
+
+import lombok.Builder;
+
+/**
+ * Pre-signed URL for uploading a single part of a multipart upload.
+ * 
+ * @param partNumber    the number (1-based) of the part
+ * @param uploadUrl     the pre-signed URL for uploading the part
+ * @param expiresAt     the expiration timestamp of the upload URL
+ * @param uploadHeaders additional headers to be sent when using the upload URL
+ */
+@Builder
+public record PartUploadUrl(
+        int partNumber,
+        String uploadUrl,
+        Instant expiresAt,
+        Map<String, Object> uploadHeaders
+) {
+    public PartUploadUrl {
+        uploadHeaders = uploadHeaders != null ? uploadHeaders : Map.of();
+    }
+}
@@ -0,0 +1,24 @@
+package dev.fnvir.kajz.storageservice.dto.res;
+
+import java.time.Instant;
+
+import dev.fnvir.kajz.storageservice.enums.UploadStatus;
+import lombok.Builder;
+
+/**
+ * The current status of an upload, for polling while its content is validated.
+ *
+ * @param fileId      the ID of the file
+ * @param status      the status of the upload
+ * @param message     the reason of the failure (null unless FAILED)
+ * @param completedAt the timestamp when the upload was completed
+ * @param updatedAt   the timestamp of the last status change
+ */
+@Builder
+public record UploadStatusResponse(
+        String fileId,
+        UploadStatus status,
+        String message,
+        Instant completedAt,
+        Instant updatedAt
+) {}
@@ -0,0 +1,65 @@
+package dev.fnvir.kajz.storageservice.enums;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * The content codings files may be served with. A precompressed variant of a
+ * file is stored next to the original and recorded in its metadata.
+ */
+@Getter
+@RequiredArgsConstructor
+public enum ContentEncoding {
+    /** The original content, recorded when compressing it isn't worth it. */
+    IDENTITY("identity", null),
+    GZIP("gzip", ".gz");
+    
+    /** The prefix of the metadata entries recording the encodings of a file. */
+    public static final String METADATA_KEY_PREFIX = "encoding:";
+    
+    /** The {@code Content-Encoding} token. */
+    private final String token;
+    
+    /** The suffix of the path of the variant (null if it's the original). */
+    private final String pathSuffix;
+    
+    /**
+     * The key of the metadata entry recording this encoding.
+     */
+    public String metadataKey() {
+        return METADATA_KEY_PREFIX + token;
+    }
+    
+    /**
+     * The path of the variant in the storage provider, next to the original
+     * (e.g. {@code public/abc/data-xyz.json} to {@code public/abc/data-xyz.json.gz}).
+     * 
+     * @param originalPath the storage path of the original file.
+     */
+    public String storagePath(String originalPath) {
+        return pathSuffix == null ? originalPath : originalPath + pathSuffix;
+    }
+    
+    /**
+     * Find the encodings recorded in the metadata of a file.
+     * 
+     * @param metadata the metadata of the file (nullable).
+     * @return the size in bytes of each encoding, by token.
+     */
+    public static Map<String, Long> fromMetadata(Map<String, String> metadata) {
+        Map<String, Long> encodings = new HashMap<>();
+        if (metadata == null)
+            return encodings;
+        metadata.forEach((key, value) -> {
+            if (key.startsWith(METADATA_KEY_PREFIX)) {
+                try {
+                    encodings.put(key.substring(METADATA_KEY_PREFIX.length()), Long.valueOf(value));
+                } catch (NumberFormatException _) {}
+            }
+        });
+        return encodings;
+    }
+}
@@ -0,0 +1,39 @@
+package dev.fnvir.kajz.storageservice.enums;
+
+import java.util.Arrays;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * The formats image derivatives can be generated in.
+ */
+@Getter
+@RequiredArgsConstructor
+public enum DerivativeFormat {
+    JPEG("jpeg", "image/jpeg"),
+    PNG("png", "image/png");
+    
+    /** The file extension (and the {@code ImageIO} format name). */
+    private final String extension;
+    
+    private final String mimeType;
+    
+    /**
+     * Find a format by its extension (case-insensitive). Also accepts
+     * {@code jpg} for JPEG.
+     * 
+     * @param extension the extension of the format.
+     * @return the format.
+     * @throws IllegalArgumentException if there is no such format.
+     */
+    public static DerivativeFormat fromExtension(String extension) {
+        if ("jpg".equalsIgnoreCase(extension)) {
+            return JPEG;
+        }
+        return Arrays.stream(values())
+                .filter(f -> f.extension.equalsIgnoreCase(extension))
+                .findFirst()
+                .orElseThrow(() -> new IllegalArgumentException("Unsupported derivative format: " + extension));
+    }
+}
@@ -2,5 +2,6 @@ package dev.fnvir.kajz.storageservice.enums;
 
 public enum StorageProviderType {
     AZURE_BLOB,
-    AWS_S3
+    AWS_S3,
+    LOCAL_FS
 }
@@ -0,0 +1,28 @@
+package dev.fnvir.kajz.storageservice.exception;
+
+import java.io.Serial;
+
+import org.springframework.http.HttpStatus;
+
+public class ServiceUnavailableException extends ApiException {
+
+    @Serial
+    private static final long serialVersionUID = 1L;
+
+    public ServiceUnavailableException() {
+        super(HttpStatus.SERVICE_UNAVAILABLE, "Service Unavailable");
+    }
+
+    public ServiceUnavailableException(String message) {
+        super(HttpStatus.SERVICE_UNAVAILABLE, message);
+    }
+
+    public ServiceUnavailableException(String message, Throwable cause) {
+        super(HttpStatus.SERVICE_UNAVAILABLE, message, cause);
+    }
+
+    public ServiceUnavailableException(Throwable cause) {
+        super(HttpStatus.SERVICE_UNAVAILABLE, cause);
+    }
+    
+}
@@ -5,8 +5,10 @@ import org.mapstruct.Mapping;
 import org.mapstruct.MappingConstants.ComponentModel;
 import org.mapstruct.factory.Mappers;
 
+import dev.fnvir.kajz.storageservice.dto.CachedFileMetadata;
 import dev.fnvir.kajz.storageservice.dto.res.CompleteUploadResponse;
 import dev.fnvir.kajz.storageservice.dto.res.FileUploadResponse;
+import dev.fnvir.kajz.storageservice.dto.res.UploadStatusResponse;
 import dev.fnvir.kajz.storageservice.model.FileUpload;
 
 @Mapper(componentModel = ComponentModel.SPRING)
@@ -23,5 +25,12 @@ public interface FileUploadMapper {
     
     @Mapping(target = "fileId", source = "id")
     FileUploadResponse toResponseDto(FileUpload fileUpload);
+    
+    @Mapping(target = "fileId", source = "id")
+    @Mapping(target = "message", source = "statusMessage")
+    UploadStatusResponse toStatusResponse(FileUpload fileUpload);
+    
+    @Mapping(target = "fileId", source = "id")
+    FileUploadResponse toResponseDto(CachedFileMetadata metadata);
 
 }
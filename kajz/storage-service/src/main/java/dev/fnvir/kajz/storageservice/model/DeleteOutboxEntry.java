@@ -0,0 +1,83 @@
+package dev.fnvir.kajz.storageservice.model;
+
+import java.time.Instant;
+
+import org.hibernate.annotations.ColumnDefault;
+
+import dev.fnvir.kajz.storageservice.enums.StorageProviderType;
+import io.hypersistence.utils.hibernate.id.Tsid;
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * A file waiting to be deleted from the storage provider. Written in the same
+ * transaction which deletes the {@link FileUpload}, so the delete isn't lost
+ * if the service goes down before the provider call.
+ */
+@Entity
+@Table(name = "file_delete_outbox")
+@Getter @Setter
+public class DeleteOutboxEntry {
+    
+    @Id
+    @Tsid
+    private Long id;
+    
+    /**
+     * The path of the file in the storage provider.
+     */
+    @Column(nullable = false)
+    private String storagePath;
+    
+    /**
+     * The storage provider holding the file (null for the primary provider).
+     */
+    @Column(length = 32)
+    @Enumerated(EnumType.STRING)
+    private StorageProviderType storageBackend;
+    
+    /**
+     * The provider's ID of an incomplete multipart upload to abort (if any).
+     */
+    @Column(length = 1024)
+    private String multipartUploadId;
+    
+    /**
+     * The number of failed delete attempts.
+     */
+    @Column(nullable = false)
+    @ColumnDefault("0")
+    private int attempts = 0;
+    
+    /**
+     * The earliest time of the next delete attempt.
+     */
+    @Column(nullable = false)
+    @ColumnDefault("current_timestamp")
+    private Instant nextAttemptAt = Instant.now();
+    
+    /**
+     * The error of the last failed attempt.
+     */
+    @Column(length = 512)
+    private String lastError;
+    
+    @Column(nullable = false, updatable = false)
+    @ColumnDefault("current_timestamp")
+    private Instant createdAt = Instant.now();
+    
+    public static DeleteOutboxEntry of(StorageProviderType storageBackend, String storagePath, String multipartUploadId) {
+        var entry = new DeleteOutboxEntry();
+        entry.setStorageBackend(storageBackend);
+        entry.setStoragePath(storagePath);
+        entry.setMultipartUploadId(multipartUploadId);
+        return entry;
+    }
+    
+}
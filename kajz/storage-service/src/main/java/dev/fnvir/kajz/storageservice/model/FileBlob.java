@@ -0,0 +1,83 @@
+package dev.fnvir.kajz.storageservice.model;
+
+import java.time.Instant;
+
+import org.hibernate.annotations.ColumnDefault;
+
+import dev.fnvir.kajz.storageservice.enums.StorageProviderType;
+import io.hypersistence.utils.hibernate.id.Tsid;
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * A stored object shared by all {@link FileUpload}s with the same content.
+ * Uploads are only shared within the same scope (public/private prefix of the
+ * storage path), so a private file is never reachable through a public path.
+ */
+@Entity
+@Table(name = "file_blobs", indexes = {
+        @Index(name = "uk_file_blobs_hash_scope", columnList = "contentHash, scope", unique = true)
+})
+@Getter @Setter
+public class FileBlob {
+    
+    @Id
+    @Tsid
+    private Long id;
+    
+    /**
+     * The SHA-256 (hex) of the content.
+     */
+    @Column(nullable = false, length = 64)
+    private String contentHash;
+    
+    /**
+     * The first segment of the storage path ({@code public} or {@code private}).
+     */
+    @Column(nullable = false, length = 16)
+    private String scope;
+    
+    /**
+     * The path of the shared object in the storage provider.
+     */
+    @Column(nullable = false)
+    private String storagePath;
+    
+    /**
+     * The storage provider holding the shared object (null for the primary
+     * provider).
+     */
+    @Column(length = 32)
+    @Enumerated(EnumType.STRING)
+    private StorageProviderType storageBackend;
+    
+    /**
+     * The ETag of the shared object.
+     */
+    private String eTag;
+    
+    /**
+     * The size of the content in bytes.
+     */
+    @Column(nullable = false)
+    private Long contentSize;
+    
+    /**
+     * The number of uploads pointing at the object.
+     */
+    @Column(nullable = false)
+    @ColumnDefault("1")
+    private int refCount = 1;
+    
+    @Column(nullable = false, updatable = false)
+    @ColumnDefault("current_timestamp")
+    private Instant createdAt = Instant.now();
+    
+}
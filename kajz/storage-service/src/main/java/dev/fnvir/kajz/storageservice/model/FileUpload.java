@@ -9,6 +9,7 @@ import org.hibernate.annotations.ColumnDefault;
 import org.hibernate.annotations.Type;
 
 import dev.fnvir.kajz.storageservice.enums.FileAccessLevel;
+import dev.fnvir.kajz.storageservice.enums.StorageProviderType;
 import dev.fnvir.kajz.storageservice.enums.UploadStatus;
 import io.hypersistence.utils.hibernate.id.Tsid;
 import io.hypersistence.utils.hibernate.type.json.JsonType;
@@ -47,6 +48,14 @@ public class FileUpload extends Auditable {
     @Column(nullable = false)
     private String storagePath;
     
+    /**
+     * The storage provider holding the file (null for files stored before
+     * files were routed, which are in the primary provider).
+     */
+    @Column(length = 32)
+    @Enumerated(EnumType.STRING)
+    private StorageProviderType storageBackend;
+    
     /**
      * The MIME type of the file.
      */
@@ -79,18 +88,81 @@ public class FileUpload extends Auditable {
     private UploadStatus status;
     
     /**
-     * Additional metadata associated with the file upload.
+     * Additional metadata associated with the file upload. Also records the
+     * generated image derivatives (see {@link dev.fnvir.kajz.storageservice.dto.DerivativeSpec}).
      */
     @Type(JsonType.class)
     @Column(columnDefinition = "jsonb")
-    @Size(max = 5)
+    @Size(max = 100)
     private Map<String, String> metadata = new HashMap<>();
     
+    /**
+     * The provider's ID of a multipart upload (null for single request uploads).
+     */
+    @Column(length = 1024)
+    private String multipartUploadId;
+    
+    /**
+     * The size of each part (except the last) of a multipart upload in bytes.
+     */
+    private Long partSize;
+    
+    /**
+     * The number of parts of a multipart upload.
+     */
+    private Integer partCount;
+    
+    /**
+     * The parts of a multipart upload which have been uploaded, by part number:
+     * the ETag (S3) or block ID (Azure Blob) of each part. Synced from the
+     * provider when the progress is checked or the upload is completed.
+     */
+    @Type(JsonType.class)
+    @Column(columnDefinition = "jsonb")
+    private Map<Integer, String> uploadedParts;
+    
+    /**
+     * The purpose of the file (e.g. profile-picture, gig-thumbnail), normalized
+     * as in the generated filename.
+     */
+    @Column(length = 80)
+    private String purpose;
+    
+    /**
+     * The SHA-256 (hex) of the content, set once the file has been deduplicated
+     * against the {@link FileBlob} index. The storage path may then point at an
+     * object shared with other uploads.
+     */
+    @Column(length = 64)
+    private String contentHash;
+    
+    /**
+     * The reason why the upload failed validation (null unless FAILED).
+     */
+    private String statusMessage;
+    
     /**
      * The timestamp at which this upload was completed.
      */
     private Instant completedAt;
     
+    /**
+     * When a caller claimed the completion of this upload (null unless it's
+     * being completed), so the storage provider is asked about it once.
+     */
+    private Instant completionClaimedAt;
+    
+    /**
+     * When the file was last read (at minute granularity, null if never read
+     * since it was tracked). Used to find cold files.
+     */
+    private Instant lastAccessedAt;
+    
+    /**
+     * When the file was moved to the cold tier (null while it's hot).
+     */
+    private Instant coldTieredAt;
+    
     /**
      * Whether the file has been marked as deleted.
      */
@@ -114,4 +186,14 @@ public class FileUpload extends Auditable {
         return !deleted && completedAt != null && status == UploadStatus.VALIDATED;
     }
     
+    /**
+     * Check whether the file is uploaded in multiple parts.
+     * 
+     * @return true if this is a multipart upload, else false.
+     */
+    @Transient
+    public boolean isMultipart() {
+        return multipartUploadId != null;
+    }
+    
 }
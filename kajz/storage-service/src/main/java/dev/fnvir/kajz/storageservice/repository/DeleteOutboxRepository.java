@@ -0,0 +1,49 @@
+package dev.fnvir.kajz.storageservice.repository;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.transaction.annotation.Transactional;
+
+import dev.fnvir.kajz.storageservice.model.DeleteOutboxEntry;
+
+public interface DeleteOutboxRepository extends JpaRepository<DeleteOutboxEntry, Long> {
+    
+    /**
+     * Lock entries due for a delete attempt, skipping entries locked by other
+     * workers. Must be called in a transaction.
+     * 
+     * @param now   the current time
+     * @param limit max results to return
+     * @return list of locked entries
+     */
+    @Query(value = """
+            SELECT * FROM file_delete_outbox
+            WHERE next_attempt_at <= :now
+            ORDER BY next_attempt_at
+            LIMIT :limit
+            FOR UPDATE SKIP LOCKED
+            """, nativeQuery = true)
+    List<DeleteOutboxEntry> lockDue(Instant now, int limit);
+    
+    /**
+     * Hold entries back from other workers until the given time.
+     * 
+     * @param ids   the IDs of the entries
+     * @param until the time until which the entries are leased
+     * @return the number of updated rows
+     */
+    @Modifying
+    @Query("UPDATE DeleteOutboxEntry e SET e.nextAttemptAt = :until WHERE e.id IN :ids")
+    int lease(Collection<Long> ids, Instant until);
+    
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM DeleteOutboxEntry e WHERE e.id IN :ids")
+    int deleteByIds(Collection<Long> ids);
+    
+}
@@ -0,0 +1,74 @@
+package dev.fnvir.kajz.storageservice.repository;
+
+import java.util.Optional;
+
+import org.jspecify.annotations.Nullable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+
+import dev.fnvir.kajz.storageservice.enums.StorageProviderType;
+import dev.fnvir.kajz.storageservice.model.FileBlob;
+
+public interface FileBlobRepository extends JpaRepository<FileBlob, Long> {
+    
+    Optional<FileBlob> findByContentHashAndScope(String contentHash, String scope);
+    
+    /**
+     * Add a reference to the object with the given content, registering the
+     * given object as the shared one if there is none yet. Locks the row until
+     * the transaction ends.
+     * 
+     * @param id          the ID of the new row (if inserted)
+     * @param contentHash the SHA-256 (hex) of the content
+     * @param scope       the scope of the object
+     * @param storagePath the path of the object to register
+     * @param eTag        the ETag of the object to register
+     * @param contentSize    the size of the content in bytes
+     * @param storageBackend the backend of the object to register (name of
+     *                       the {@code StorageProviderType}, null for the primary)
+     * @return the number of inserted or updated rows
+     */
+    @Modifying
+    @Query(value = """
+            INSERT INTO file_blobs (id, content_hash, scope, storage_path, e_tag, content_size, storage_backend, ref_count, created_at)
+            VALUES (:id, :contentHash, :scope, :storagePath, :eTag, :contentSize, :storageBackend, 1, current_timestamp)
+            ON CONFLICT (content_hash, scope) DO UPDATE SET ref_count = file_blobs.ref_count + 1
+            """, nativeQuery = true)
+    int addReference(Long id, String contentHash, String scope, String storagePath, String eTag, Long contentSize,
+            @Nullable String storageBackend);
+    
+    /**
+     * Remove a reference to an object.
+     * 
+     * @return the number of updated rows
+     */
+    @Modifying
+    @Query("""
+            UPDATE FileBlob b SET b.refCount = b.refCount - 1
+            WHERE b.contentHash = :contentHash AND b.scope = :scope
+            """)
+    int removeReference(String contentHash, String scope);
+    
+    /**
+     * Remove the row of an object if nothing references it anymore.
+     * 
+     * @return 1 if the row was removed (the object can be deleted), else 0
+     */
+    @Modifying
+    @Query("""
+            DELETE FROM FileBlob b
+            WHERE b.contentHash = :contentHash AND b.scope = :scope AND b.refCount <= 0
+            """)
+    int deleteIfUnreferenced(String contentHash, String scope);
+    
+    /**
+     * Record that the shared object at a path has been moved to another backend.
+     * 
+     * @return the number of updated rows
+     */
+    @Modifying
+    @Query("UPDATE FileBlob b SET b.storageBackend = :storageBackend WHERE b.storagePath = :storagePath")
+    int updateStorageBackend(String storagePath, StorageProviderType storageBackend);
+    
+}
@@ -2,26 +2,64 @@ package dev.fnvir.kajz.storageservice.repository;
 
 import java.time.Duration;
 import java.time.Instant;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
 
+import org.jspecify.annotations.Nullable;
 import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.transaction.annotation.Transactional;
 
+import dev.fnvir.kajz.storageservice.enums.FileAccessLevel;
+import dev.fnvir.kajz.storageservice.enums.StorageProviderType;
+import dev.fnvir.kajz.storageservice.enums.UploadStatus;
 import dev.fnvir.kajz.storageservice.model.FileUpload;
 
 public interface StorageRepository extends JpaRepository<FileUpload, Long> {
     
+    /**
+     * Find invalid uploads (see {@link #findInvalidUploadsPendingSince(Duration, int)})
+     * ordered by ID, starting after the given ID. Meant for keyset pagination:
+     * pass the ID of the last upload of the previous page.
+     * 
+     * @param afterId         only uploads with a greater ID
+     * @param before          single request uploads pending since before this
+     * @param multipartBefore multipart uploads pending since before this
+     * @param limit           max results to return
+     * @return list of invalid uploads
+     */
     @Query("""
             FROM FileUpload f
-            WHERE
+            WHERE f.id > :afterId AND f.deleted = false AND (
                 (f.status = 'FAILED')
             OR 
-                (f.createdAt <= :before AND f.completedAt IS NULL AND f.status = 'UPLOADING')
-            ORDER BY f.createdAt
+                (f.createdAt <= :before AND f.completedAt IS NULL AND f.status = 'UPLOADING'
+                    AND f.multipartUploadId IS NULL)
+            OR 
+                (f.createdAt <= :multipartBefore AND f.completedAt IS NULL AND f.status = 'UPLOADING'
+                    AND f.multipartUploadId IS NOT NULL)
+            )
+            ORDER BY f.id
             """)
-    List<FileUpload> findInvalidUploads(Instant before, Limit limit);
+    List<FileUpload> findInvalidUploads(Long afterId, Instant before, Instant multipartBefore, Limit limit);
+    
+    @Query("""
+            SELECT count(f) FROM FileUpload f
+            WHERE f.deleted = false AND (
+                (f.status = 'FAILED')
+            OR 
+                (f.createdAt <= :before AND f.completedAt IS NULL AND f.status = 'UPLOADING'
+                    AND f.multipartUploadId IS NULL)
+            OR 
+                (f.createdAt <= :multipartBefore AND f.completedAt IS NULL AND f.status = 'UPLOADING'
+                    AND f.multipartUploadId IS NOT NULL)
+            )
+            """)
+    long countInvalidUploads(Instant before, Instant multipartBefore);
     
     /**
      * Find failed uploads or uploads pending for a long time.
@@ -40,12 +78,369 @@ public interface StorageRepository extends JpaRepository<FileUpload, Long> {
      * @return list of invalid uploads
      */
     default List<FileUpload> findInvalidUploadsPendingSince(Duration pendingSince, int maxResults) {
-        Instant createdBefore = Instant.now().minus(pendingSince);
-        return findInvalidUploads(createdBefore, Limit.of(maxResults));
+        return findInvalidUploadsPendingSince(pendingSince, pendingSince, maxResults);
+    }
+    
+    /**
+     * Same as {@link #findInvalidUploadsPendingSince(Duration, int)}, but
+     * multipart uploads may remain as UPLOADING for a separate (longer) duration.
+     *
+     * @param pendingSince          how long a single request upload may remain as
+     *                              UPLOADING before being considered invalid
+     * @param multipartPendingSince how long a multipart upload may remain as
+     *                              UPLOADING before being considered invalid
+     * @param maxResults            max results to return
+     * 
+     * @return list of invalid uploads
+     */
+    default List<FileUpload> findInvalidUploadsPendingSince(Duration pendingSince, Duration multipartPendingSince, int maxResults) {
+        Instant now = Instant.now();
+        return findInvalidUploads(Long.MIN_VALUE, now.minus(pendingSince), now.minus(multipartPendingSince), Limit.of(maxResults));
     }
     
+    /**
+     * Find the files of an owner ordered by ID (i.e. creation time) descending,
+     * starting before the given ID. Meant for keyset pagination: pass the ID of
+     * the last file of the previous page. Null filters are ignored.
+     * 
+     * @param ownerId        the ID of the owner
+     * @param beforeId       only files with a smaller ID
+     * @param status         only files with this status (nullable)
+     * @param access         only files with this access level (nullable)
+     * @param purpose        only files with this purpose (nullable)
+     * @param includePrivate whether to include private files
+     * @param limit          max results to return
+     * @return list of files of the owner
+     */
+    @Query("""
+            FROM FileUpload f
+            WHERE f.ownerId = :ownerId AND f.deleted = false AND f.id < :beforeId
+                AND f.status = COALESCE(:status, f.status)
+                AND f.access = COALESCE(:access, f.access)
+                AND (:purpose IS NULL OR f.purpose = :purpose)
+                AND (:includePrivate = true OR f.access <> 'PRIVATE')
+            ORDER BY f.id DESC
+            """)
+    List<FileUpload> findByOwnerBeforeId(
+            UUID ownerId,
+            Long beforeId,
+            @Nullable UploadStatus status,
+            @Nullable FileAccessLevel access,
+            @Nullable String purpose,
+            boolean includePrivate,
+            Limit limit
+    );
+    
+    /**
+     * Find uploads stuck as PROCESSING, e.g. because the node validating them
+     * went down or its validation queue was full.
+     * 
+     * @param before only uploads which became PROCESSING before this
+     * @param limit  max results to return
+     * @return list of uploads waiting for validation
+     */
+    @Query("""
+            FROM FileUpload f
+            WHERE f.status = 'PROCESSING' AND f.deleted = false AND f.updatedAt <= :before
+            ORDER BY f.updatedAt
+            """)
+    List<FileUpload> findPendingValidation(Instant before, Limit limit);
+    
+    /**
+     * Move an upload out of PROCESSING. Does nothing if another worker already
+     * did, so the same upload may safely be validated more than once.
+     * 
+     * @param id      the ID of the file
+     * @param status  the new status
+     * @param message the reason of the failure (null unless FAILED)
+     * @param now     the timestamp of the status change
+     * @return 1 if the status was changed, else 0
+     */
+    @Transactional
+    @Modifying(clearAutomatically = true)
+    @Query("""
+            UPDATE FileUpload f
+            SET f.status = :status, f.statusMessage = :message, f.updatedAt = :now
+            WHERE f.id = :id AND f.status = 'PROCESSING'
+            """)
+    int finishProcessing(Long id, UploadStatus status, String message, Instant now);
+    
+    /**
+     * Set a single metadata entry of all files stored at the given path (more
+     * than one if deduplicated), merged into the jsonb column so concurrent
+     * writers of different keys don't overwrite each other. Does nothing if the
+     * files have been moved to another backend meanwhile, as the variant the
+     * entry records was stored in the old one.
+     * 
+     * @param storagePath    the storage path of the files
+     * @param storageBackend the backend of the files (name of the
+     *                       {@code StorageProviderType}, null for the primary)
+     * @param key            the metadata key
+     * @param value          the metadata value
+     * @return the number of updated files
+     */
+    @Transactional
+    @Modifying(clearAutomatically = true)
+    @Query(value = """
+            UPDATE file_uploads
+            SET metadata = coalesce(metadata, CAST('{}' AS jsonb)) || jsonb_build_object(:key, :value)
+            WHERE storage_path = :storagePath AND deleted = false
+                AND storage_backend IS NOT DISTINCT FROM CAST(:storageBackend AS varchar)
+            """, nativeQuery = true)
+    int putMetadata(String storagePath, @Nullable String storageBackend, String key, String value);
+    
+    /**
+     * Set the content hash of an upload being validated. Does nothing if it's
+     * already set (e.g. by another worker) or the upload isn't PROCESSING.
+     * 
+     * @param id          the ID of the file
+     * @param contentHash the SHA-256 (hex) of the content
+     * @return 1 if the hash was set, else 0
+     */
+    @Modifying(clearAutomatically = true)
+    @Query("""
+            UPDATE FileUpload f SET f.contentHash = :contentHash
+            WHERE f.id = :id AND f.contentHash IS NULL AND f.status = 'PROCESSING' AND f.deleted = false
+            """)
+    int claimContentHash(Long id, String contentHash);
+    
+    /**
+     * Point an upload at an object shared with other uploads, also copying the
+     * image derivatives and encodings recorded on the other uploads.
+     * 
+     * @param id             the ID of the file
+     * @param storagePath    the path of the shared object
+     * @param eTag           the ETag of the shared object
+     * @param storageBackend the backend of the shared object (name of the
+     *                       {@code StorageProviderType}, null for the primary)
+     * @return 1 if the file was updated, else 0
+     */
+    @Modifying(clearAutomatically = true)
+    @Query(value = """
+            UPDATE file_uploads f
+            SET storage_path = :storagePath, e_tag = :eTag, storage_backend = :storageBackend,
+                metadata = coalesce(f.metadata, CAST('{}' AS jsonb)) || coalesce((
+                    SELECT jsonb_object_agg(m.key, m.value)
+                    FROM file_uploads s, jsonb_each(s.metadata) m
+                    WHERE s.storage_path = :storagePath AND s.deleted = false AND (m.key LIKE 'derivative:%' OR m.key LIKE 'encoding:%')
+                ), CAST('{}' AS jsonb))
+            WHERE f.id = :id
+            """, nativeQuery = true)
+    int linkToBlob(Long id, String storagePath, String eTag, @Nullable String storageBackend);
+    
+    /**
+     * Mark uploads as deleted (soft delete).
+     * 
+     * @param ids the IDs of the files
+     * @return the number of updated rows
+     */
+    @Modifying
+    @Query("UPDATE FileUpload f SET f.deleted = true WHERE f.id IN :ids")
+    int markDeleted(Collection<Long> ids);
+    
     @Modifying
     @Query("DELETE FROM FileUpload f WHERE f.deleted = true")
     int deleteAllSoftDeleted();
+    
+    /**
+     * Delete a bounded chunk of soft deleted uploads, so purging a large number
+     * of rows doesn't run as one long transaction.
+     * 
+     * @param limit max rows to delete
+     * @return the number of deleted rows
+     */
+    @Transactional
+    @Modifying
+    @Query(value = """
+            DELETE FROM file_uploads
+            WHERE id IN (SELECT id FROM file_uploads WHERE deleted = true LIMIT :limit)
+            """, nativeQuery = true)
+    int deleteSoftDeletedChunk(int limit);
+    
+    /**
+     * Record that uploads have been read.
+     * 
+     * @param ids the IDs of the files
+     * @param now the time of the reads
+     * @return the number of updated rows
+     */
+    @Transactional
+    @Modifying
+    @Query("UPDATE FileUpload f SET f.lastAccessedAt = :now WHERE f.id IN :ids")
+    int touchLastAccessed(Collection<Long> ids, Instant now);
+    
+    /**
+     * Find validated files of a backend which haven't been read since the given
+     * time and aren't in the cold tier yet, ordered by ID, starting after the
+     * given ID (keyset pagination). Files sharing their object with a file read
+     * since then (deduplicated) are skipped.
+     * 
+     * @param afterId        only files with a greater ID
+     * @param storageBackend the backend holding the files (name of the {@code StorageProviderType})
+     * @param primary        the primary backend, holding the files without a recorded backend
+     * @param coldBefore     only files not read since this
+     * @param minSize        only files of at least this size in bytes
+     * @param maxSize        only files of at most this size in bytes
+     * @param limit          max results to return
+     * @return list of cold files
+     */
+    @Query(value = """
+            SELECT * FROM file_uploads f
+            WHERE f.id > :afterId AND f.deleted = false AND f.status = 'VALIDATED' AND f.cold_tiered_at IS NULL
+                AND coalesce(f.storage_backend, :primary) = :storageBackend
+                AND f.content_size BETWEEN :minSize AND :maxSize
+                AND coalesce(f.last_accessed_at, f.completed_at) < :coldBefore
+                AND NOT EXISTS (
+                    SELECT 1 FROM file_uploads s
+                    WHERE s.storage_path = f.storage_path AND s.id <> f.id AND s.deleted = false
+                        AND coalesce(s.last_accessed_at, s.completed_at) >= :coldBefore
+                )
+            ORDER BY f.id
+            LIMIT :limit
+            """, nativeQuery = true)
+    List<FileUpload> findColdFiles(Long afterId, String storageBackend, String primary, Instant coldBefore,
+            long minSize, long maxSize, int limit);
+    
+    /**
+     * Record that the objects at the given paths have been moved to the cold
+     * storage class of their backend.
+     * 
+     * @param storagePaths the storage paths of the files
+     * @param now          the time of the move
+     * @return the number of updated rows
+     */
+    @Modifying
+    @Query("UPDATE FileUpload f SET f.coldTieredAt = :now WHERE f.storagePath IN :storagePaths")
+    int markColdTiered(Collection<String> storagePaths, Instant now);
+    
+    /**
+     * Point the (not deleted) files at a path to the copy of their object in
+     * another backend, marking them as cold. Their image derivatives stay in
+     * the old backend, so they're removed from the metadata to be generated
+     * again when requested. Files already moved are left as they are.
+     * 
+     * @param storagePath the storage path of the files
+     * @param from        the backend the object was copied from (name of the
+     *                    {@code StorageProviderType})
+     * @param primary     the primary backend, holding the files without a recorded backend
+     * @param to          the backend the object was copied to
+     * @param now         the time of the move
+     * @return the number of updated rows
+     */
+    @Modifying(clearAutomatically = true)
+    @Query(value = """
+            UPDATE file_uploads f
+            SET storage_backend = :to, cold_tiered_at = :now,
+                metadata = (
+                    SELECT coalesce(jsonb_object_agg(m.key, m.value), CAST('{}' AS jsonb))
+                    FROM jsonb_each(coalesce(f.metadata, CAST('{}' AS jsonb))) m
+                    WHERE m.key NOT LIKE 'derivative:%'
+                )
+            WHERE f.storage_path = :storagePath AND f.deleted = false AND coalesce(f.storage_backend, :primary) = :from
+            """, nativeQuery = true)
+    int moveToBackend(String storagePath, String from, String primary, String to, Instant now);
+    
+    /**
+     * Find the IDs of the (not deleted) files stored at a path in a backend,
+     * e.g. to evict all the files switched over by
+     * {@link #moveToBackend(String, String, String, String, Instant)}.
+     * 
+     * @param storagePath    the storage path of the files
+     * @param storageBackend the backend holding the files
+     * @return the IDs of the files
+     */
+    @Query("""
+            SELECT f.id FROM FileUpload f
+            WHERE f.storagePath = :storagePath AND f.storageBackend = :storageBackend AND f.deleted = false
+            """)
+    List<Long> findIdsByStoragePath(String storagePath, StorageProviderType storageBackend);
+    
+    boolean existsByStoragePathAndDeletedFalse(String storagePath);
+    
+    /**
+     * Find the upload waiting for its object at the given path.
+     * 
+     * @param storagePath the storage path of the uploaded object
+     * @return the upload, if it's still UPLOADING
+     */
+    @Query("""
+            FROM FileUpload f
+            WHERE f.storagePath = :storagePath AND f.status = 'UPLOADING'
+                AND f.completedAt IS NULL AND f.deleted = false
+            """)
+    Optional<FileUpload> findUploadingByStoragePath(String storagePath);
+    
+    /**
+     * Claim the completion of an upload, so completing it from the client and
+     * from a provider notification at the same time asks the provider once,
+     * without holding a row lock meanwhile. A claim made before
+     * {@code staleBefore} is taken over, as its caller is assumed gone.
+     * 
+     * @param id          the ID of the file
+     * @param now         the time of the claim, identifying it
+     * @param staleBefore claims made before this are taken over
+     * @return 1 if the upload was claimed, else 0
+     */
+    @Transactional
+    @Modifying(clearAutomatically = true)
+    @Query("""
+            UPDATE FileUpload f SET f.completionClaimedAt = :now
+            WHERE f.id = :id AND f.status = 'UPLOADING' AND f.completedAt IS NULL AND f.deleted = false
+                AND (f.completionClaimedAt IS NULL OR f.completionClaimedAt < :staleBefore)
+            """)
+    int claimCompletion(Long id, Instant now, Instant staleBefore);
+    
+    /**
+     * Release the claim on the completion of an upload which couldn't be
+     * completed yet (e.g. a part is missing), so it can be retried.
+     * 
+     * @param id        the ID of the file
+     * @param claimedAt the time of the claim
+     * @return 1 if the claim was released, else 0
+     */
+    @Transactional
+    @Modifying(clearAutomatically = true)
+    @Query("""
+            UPDATE FileUpload f SET f.completionClaimedAt = NULL
+            WHERE f.id = :id AND f.completionClaimedAt = :claimedAt
+            """)
+    int releaseCompletion(Long id, Instant claimedAt);
+    
+    /**
+     * Move a claimed upload from UPLOADING to PROCESSING. Does nothing if the
+     * claim has been taken over meanwhile.
+     * 
+     * @param id        the ID of the file
+     * @param eTag      the ETag of the uploaded object
+     * @param claimedAt the time of the claim
+     * @param now       the time of the completion
+     * @return 1 if the upload was completed, else 0
+     */
+    @Modifying(clearAutomatically = true)
+    @Query("""
+            UPDATE FileUpload f
+            SET f.status = 'PROCESSING', f.completedAt = :now, f.eTag = :eTag, f.updatedAt = :now,
+                f.completionClaimedAt = NULL
+            WHERE f.id = :id AND f.status = 'UPLOADING' AND f.completionClaimedAt = :claimedAt AND f.deleted = false
+            """)
+    int finishUploading(Long id, @Nullable String eTag, Instant claimedAt, Instant now);
+    
+    /**
+     * Move a claimed upload from UPLOADING to FAILED. Does nothing if the claim
+     * has been taken over meanwhile.
+     * 
+     * @param id        the ID of the file
+     * @param message   the reason of the failure
+     * @param claimedAt the time of the claim
+     * @param now       the time of the failure
+     * @return 1 if the upload was failed, else 0
+     */
+    @Modifying(clearAutomatically = true)
+    @Query("""
+            UPDATE FileUpload f
+            SET f.status = 'FAILED', f.statusMessage = :message, f.updatedAt = :now, f.completionClaimedAt = NULL
+            WHERE f.id = :id AND f.status = 'UPLOADING' AND f.completionClaimedAt = :claimedAt
+            """)
+    int failUploading(Long id, String message, Instant claimedAt, Instant now);
 
 }
@@ -1,16 +1,32 @@
 package dev.fnvir.kajz.storageservice.service;
 
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.time.Duration;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.IntStream;
 
-import org.springframework.scheduling.annotation.Async;
+import org.reactivestreams.Publisher;
+
+import org.springframework.beans.factory.annotation.Autowired;
 
 import dev.fnvir.kajz.storageservice.dto.UploadValidationResultDTO;
 import dev.fnvir.kajz.storageservice.dto.res.InitiateUploadResponse;
+import dev.fnvir.kajz.storageservice.dto.res.PartUploadUrl;
 import dev.fnvir.kajz.storageservice.dto.res.PreSignedDownloadUrlResponse;
 import dev.fnvir.kajz.storageservice.enums.StorageProviderType;
+import dev.fnvir.kajz.storageservice.exception.ConflictException;
 import dev.fnvir.kajz.storageservice.model.FileUpload;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
 import lombok.extern.slf4j.Slf4j;
 
 @Slf4j
@@ -20,6 +36,38 @@ public abstract class AbstractStorageProvider {
      * The duration after which the upload URL expires.
      */
     protected static final Duration UPLOAD_EXPIRY_TIME = Duration.ofMinutes(2);
+    
+    /**
+     * The duration after which the upload URL of a part of a multipart upload
+     * expires. Fresh URLs can be requested to resume an upload.
+     */
+    protected static final Duration PART_UPLOAD_EXPIRY_TIME = Duration.ofHours(1);
+    
+    private MeterRegistry meterRegistry = Metrics.globalRegistry;
+    
+    /** The provider call counters by operation. */
+    private final Map<String, Counter> providerCalls = new ConcurrentHashMap<>();
+    
+    @Autowired
+    protected void setMeterRegistry(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+        providerCalls.clear();
+    }
+    
+    /**
+     * Record a request made to the storage provider. Compared with the number of
+     * served files, this shows the provider round-trips per download.
+     * 
+     * @param operation the operation of the request (e.g. get-object).
+     */
+    protected void recordProviderCall(String operation) {
+        providerCalls.computeIfAbsent(operation, _ -> Counter.builder("storage.provider.calls")
+                .description("Requests made to the storage provider")
+                .tag("provider", getProviderType().name())
+                .tag("operation", operation)
+                .register(meterRegistry))
+                .increment();
+    }
 
     /**
      * Initiate an upload on the storage provider.
@@ -37,12 +85,95 @@ public abstract class AbstractStorageProvider {
     public abstract StorageProviderType getProviderType();
 
     /**
-     * Verify and validate the upload on the storage provider.
+     * Verify and validate the upload on the storage provider. Runs both
+     * {@link #checkUploadCompletion(FileUpload)} and
+     * {@link #validateUploadContent(FileUpload)}.
      * 
      * @param file the {@link FileUpload} entity.
      * @return the upload validation result.
      */
-    public abstract UploadValidationResultDTO validateUploadCompletion(FileUpload file);
+    public UploadValidationResultDTO validateUploadCompletion(FileUpload file) {
+        var result = checkUploadCompletion(file);
+        if (!result.isSuccess()) {
+            return result;
+        }
+        var contentResult = validateUploadContent(file);
+        return contentResult.isSuccess() ? contentResult.eTag(result.getETag()) : contentResult;
+    }
+
+    /**
+     * Verify that the upload exists on the storage provider and its size is
+     * allowed. Only reads the metadata of the file, so it's cheap enough to run
+     * while the client waits.
+     * 
+     * @param file the {@link FileUpload} entity.
+     * @return the upload validation result, with the ETag of the file on success.
+     */
+    public abstract UploadValidationResultDTO checkUploadCompletion(FileUpload file);
+
+    /**
+     * Validate the actual content of the upload (e.g. sniff the mime-type from
+     * the first bytes). Reads from the file, so it's run in the background.
+     * 
+     * @param file the {@link FileUpload} entity.
+     * @return the upload validation result.
+     */
+    public abstract UploadValidationResultDTO validateUploadContent(FileUpload file);
+
+    /**
+     * Upload a file generated by the service itself (e.g. an image derivative),
+     * replacing the existing file with the same key.
+     * 
+     * @param key         the object-key (S3) / blob-name (Azure Blob) of the file.
+     * @param content     the content of the file.
+     * @param contentType the MIME type of the file.
+     */
+    public abstract void uploadFile(String key, byte[] content, String contentType);
+
+    /**
+     * Upload a file copied from another storage provider (e.g. when moving it
+     * to another tier), streamed instead of buffered in memory. Replaces the
+     * existing file with the same key.
+     * 
+     * @param key           the object-key (S3) / blob-name (Azure Blob) of the file.
+     * @param content       the content of the file (not closed).
+     * @param contentLength the size of the content in bytes.
+     * @param contentType   the MIME type of the file.
+     */
+    public abstract void uploadFile(String key, InputStream content, long contentLength, String contentType);
+
+    /**
+     * Whether this provider can move files to a cheaper storage class in place,
+     * through {@link #moveToColdStorageClass(Collection)}.
+     * 
+     * @return true if cold storage classes are supported, else false.
+     */
+    public boolean supportsColdStorageClass() {
+        return false;
+    }
+
+    /**
+     * The size of the largest file which can be moved through
+     * {@link #moveToColdStorageClass(Collection)}, larger files stay where they are.
+     * 
+     * @return the max size in bytes.
+     */
+    public long maxColdStorageClassSize() {
+        return Long.MAX_VALUE;
+    }
+
+    /**
+     * Move files to the cold storage class of the provider (e.g. S3
+     * Standard-IA, Azure Cool tier). Their keys don't change, so they're read
+     * as before, only slower and at a higher cost per read.
+     * 
+     * @param keys the object-keys (S3) / blob-names (Azure Blob) to move.
+     * @return the keys which couldn't be moved (missing ones included), to retry later.
+     * @throws UnsupportedOperationException if not supported by the provider.
+     */
+    public Set<String> moveToColdStorageClass(Collection<String> keys) {
+        throw new UnsupportedOperationException("Cold storage classes aren't supported by " + getProviderType());
+    }
 
     /**
      * Delete the uploaded file from the storage provider.
@@ -66,25 +197,161 @@ public abstract class AbstractStorageProvider {
     public abstract boolean deleteFile(String key);
 
     /**
-     * Asynchronously delete a file from the storage provider.
-     * This is the same as {@link #deleteFile(String)} but executes asynchronously.
+     * Delete multiple files from the storage provider, batching the requests
+     * where the provider supports it. Files which don't exist count as deleted.
      * 
-     * @param key the object-key (S3) / blob-name (Azure Blob) to delete.
+     * @param keys the object-keys (S3) / blob-names (Azure Blob) to delete.
+     * @return the keys which couldn't be deleted, to retry later.
      */
-    @Async
-    public void deleteFileAsync(String key) {
-        deleteFile(key);
+    public Set<String> deleteFiles(Collection<String> keys) {
+        Set<String> failed = new HashSet<>();
+        for (String key : keys) {
+            try {
+                deleteFile(key);
+            } catch (RuntimeException e) {
+                log.warn("Failed to delete file with key {}: {}", key, e.getMessage());
+                failed.add(key);
+            }
+        }
+        return failed;
     }
 
     /**
      * Stream a file from the storage provider. This is useful if there isn't direct
      * public access to the file or no CDN has been set up yet.
      * 
+     * <p>
+     * Nothing is requested from the provider until the Callable is invoked, which
+     * opens the stream in a single round-trip and throws
+     * {@link dev.fnvir.kajz.storageservice.exception.NotFoundException} if the
+     * file doesn't exist.
+     * </p>
+     * 
      * @param key the object-key (S3) / blob-name (Azure Blob) to delete.
      * @return a Callable that provides an InputStream to read the file.
      */
     public abstract Callable<InputStream> downloadFile(String key);
 
+    /**
+     * Stream a byte range of a file from the storage provider.
+     * 
+     * @param key   the object-key (S3) / blob-name (Azure Blob) of the file.
+     * @param start the position of the first byte (inclusive).
+     * @param end   the position of the last byte (inclusive).
+     * @return a Callable that provides an InputStream to read the byte range.
+     */
+    public abstract Callable<InputStream> downloadFileRange(String key, long start, long end);
+
+    /**
+     * Download a file without blocking a thread for the duration of the transfer.
+     * The future completes once the provider has responded, and fails with
+     * {@link dev.fnvir.kajz.storageservice.exception.NotFoundException} if the
+     * file doesn't exist.
+     * 
+     * @param key the object-key (S3) / blob-name (Azure Blob) of the file.
+     * @return a future of the publisher of the file content.
+     */
+    public abstract CompletableFuture<Publisher<ByteBuffer>> downloadFileNonBlocking(String key);
+
+    /**
+     * Download a byte range of a file without blocking a thread for the duration
+     * of the transfer. Same as {@link #downloadFileNonBlocking(String)}.
+     * 
+     * @param key   the object-key (S3) / blob-name (Azure Blob) of the file.
+     * @param start the position of the first byte (inclusive).
+     * @param end   the position of the last byte (inclusive).
+     * @return a future of the publisher of the byte range.
+     */
+    public abstract CompletableFuture<Publisher<ByteBuffer>> downloadFileRangeNonBlocking(String key, long start, long end);
+
+    /**
+     * Start a multipart upload on the storage provider.
+     * 
+     * @param file the {@link FileUpload} entity (storage path and mime type set).
+     * @return the provider's ID of the multipart upload.
+     */
+    public abstract String createMultipartUpload(FileUpload file);
+
+    /**
+     * Generate pre-signed upload URLs for parts of a multipart upload.
+     * 
+     * @param file        the {@link FileUpload} entity of the multipart upload.
+     * @param partNumbers the numbers (1-based) of the parts.
+     * @return the upload URL of each part.
+     */
+    public abstract List<PartUploadUrl> generatePartUploadUrls(FileUpload file, Collection<Integer> partNumbers);
+
+    /**
+     * List the parts of a multipart upload which have been uploaded so far.
+     * 
+     * @param file the {@link FileUpload} entity of the multipart upload.
+     * @return the ETag (S3) or block ID (Azure Blob) of each uploaded part, by
+     *         part number.
+     */
+    public abstract Map<Integer, String> listUploadedParts(FileUpload file);
+
+    /**
+     * Assemble the uploaded parts of a multipart upload into the final file.
+     * Also updates the uploaded parts of the entity. Returns normally if the
+     * upload was already assembled and the file exists, so completing can be
+     * retried after a rolled back transaction or a timed out call.
+     * 
+     * @param file the {@link FileUpload} entity of the multipart upload.
+     * @throws ConflictException if any part is missing.
+     * @throws dev.fnvir.kajz.storageservice.exception.NotFoundException if
+     *         neither the upload nor the file exists.
+     */
+    public abstract void completeMultipartUpload(FileUpload file);
+
+    /**
+     * Abort a multipart upload and discard its uploaded parts.
+     * 
+     * @param key      the object-key (S3) / blob-name (Azure Blob) of the file.
+     * @param uploadId the provider's ID of the multipart upload.
+     */
+    public abstract void abortMultipartUpload(String key, String uploadId);
+
+    /**
+     * Verify that all parts of a multipart upload have been uploaded.
+     * 
+     * @param file          the {@link FileUpload} entity of the multipart upload.
+     * @param uploadedParts the uploaded parts by part number.
+     * @throws ConflictException if any part is missing.
+     */
+    protected static void requireAllParts(FileUpload file, Map<Integer, String> uploadedParts) {
+        List<Integer> missing = missingParts(file.getPartCount(), uploadedParts.keySet());
+        if (!missing.isEmpty()) {
+            throw new ConflictException("Missing parts: " + missing);
+        }
+    }
+
+    /**
+     * The size a part of a multipart upload must have: the part size, except
+     * for the last part which holds the rest of the file.
+     * 
+     * @param file       the {@link FileUpload} entity of the multipart upload.
+     * @param partNumber the number (1-based) of the part.
+     * @return the size of the part in bytes.
+     */
+    public static long partLength(FileUpload file, int partNumber) {
+        long offset = (long) (partNumber - 1) * file.getPartSize();
+        return Math.max(0, Math.min(file.getPartSize(), file.getContentSize() - offset));
+    }
+
+    /**
+     * Find the parts (1-based) which haven't been uploaded.
+     * 
+     * @param partCount     the number of parts.
+     * @param uploadedParts the numbers of the uploaded parts.
+     * @return the numbers of the missing parts.
+     */
+    public static List<Integer> missingParts(int partCount, Collection<Integer> uploadedParts) {
+        return IntStream.rangeClosed(1, partCount)
+                .filter(n -> !uploadedParts.contains(n))
+                .boxed()
+                .toList();
+    }
+
     /**
      * Generate a pre-signed download URL for the given key with the specified
      * expiry duration.
@@ -0,0 +1,186 @@
+package dev.fnvir.kajz.storageservice.service;
+
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.util.HexFormat;
+
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import dev.fnvir.kajz.storageservice.config.StorageProperties;
+import dev.fnvir.kajz.storageservice.enums.StorageProviderType;
+import dev.fnvir.kajz.storageservice.model.FileBlob;
+import dev.fnvir.kajz.storageservice.model.FileUpload;
+import dev.fnvir.kajz.storageservice.repository.FileBlobRepository;
+import dev.fnvir.kajz.storageservice.repository.StorageRepository;
+import io.hypersistence.tsid.TSID;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Content-addressed deduplication of uploaded files.
+ *
+ * <p>
+ * Once an upload's content has been validated, its SHA-256 is looked up in the
+ * reference-counted {@link FileBlob} index. The first upload of some content
+ * becomes the shared object; later uploads with the same content (in the same
+ * scope) are pointed at it and their own object is deleted. Deleting an upload
+ * only deletes the object once nothing references it anymore.
+ * </p>
+ */
+@Slf4j
+@Service
+public class ContentDeduplicationService {
+
+    private static final String METRIC_PREFIX = "storage.dedup";
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final StorageRepository storageRepository;
+    private final FileBlobRepository blobRepository;
+    private final StorageProviderRouter providerRouter;
+    private final DeleteOutboxService deleteOutbox;
+    private final StorageProperties storageProperties;
+    private final TransactionTemplate transaction;
+
+    private final Counter duplicates;
+    private final Counter savedBytes;
+
+    public ContentDeduplicationService(
+            StorageRepository storageRepository,
+            FileBlobRepository blobRepository,
+            StorageProviderRouter providerRouter,
+            DeleteOutboxService deleteOutbox,
+            StorageProperties storageProperties,
+            PlatformTransactionManager transactionManager,
+            MeterRegistry meterRegistry
+    ) {
+        this.storageRepository = storageRepository;
+        this.blobRepository = blobRepository;
+        this.providerRouter = providerRouter;
+        this.deleteOutbox = deleteOutbox;
+        this.storageProperties = storageProperties;
+        this.transaction = new TransactionTemplate(transactionManager);
+
+        this.duplicates = Counter.builder(METRIC_PREFIX + ".duplicates")
+                .description("Uploads pointed at an object shared with other uploads")
+                .register(meterRegistry);
+        this.savedBytes = Counter.builder(METRIC_PREFIX + ".saved.bytes")
+                .description("Bytes of storage saved by deduplicating uploads")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Whether the content of an upload should be deduplicated.
+     *
+     * @param file the {@link FileUpload} entity.
+     */
+    public boolean isEnabledFor(FileUpload file) {
+        return Boolean.TRUE.equals(storageProperties.getDedupEnabled())
+                && file.getContentHash() == null
+                && file.getContentSize() != null
+                && file.getContentSize() <= storageProperties.getDedupMaxSize();
+    }
+
+    /**
+     * Hash the content of a validated upload and add it to the index, pointing
+     * the upload at the shared object if the content is already stored. Must be
+     * called while the upload is still PROCESSING, so no one downloads it while
+     * its storage path changes. Failures are logged and leave the upload as is.
+     *
+     * @param file the {@link FileUpload} entity (updated in place).
+     */
+    public void deduplicate(FileUpload file) {
+        if (!isEnabledFor(file)) {
+            return;
+        }
+        String contentHash;
+        try {
+            contentHash = hash(file);
+        } catch (Exception e) {
+            log.warn("Skipping deduplication of upload {}: failed to hash content: {}", file.getId(), e.getMessage());
+            return;
+        }
+
+        String ownPath = file.getStoragePath();
+        FileBlob blob = transaction.execute(_ -> {
+            if (storageRepository.claimContentHash(file.getId(), contentHash) == 0) {
+                return null; // deduplicated by another worker or no longer PROCESSING
+            }
+            String scope = scopeOf(ownPath);
+            blobRepository.addReference(TSID.fast().toLong(), contentHash, scope, ownPath,
+                    file.getETag(), file.getContentSize(), nameOf(file.getStorageBackend()));
+            FileBlob shared = blobRepository.findByContentHashAndScope(contentHash, scope).orElseThrow();
+            if (!shared.getStoragePath().equals(ownPath)) {
+                // the shared object may be in another backend (routed by other rules or moved to the cold tier)
+                storageRepository.linkToBlob(file.getId(), shared.getStoragePath(), shared.getETag(),
+                        nameOf(shared.getStorageBackend()));
+                deleteOutbox.enqueuePath(file.getStorageBackend(), ownPath);
+            }
+            return shared;
+        });
+        if (blob == null) {
+            return;
+        }
+
+        file.setContentHash(contentHash);
+        if (!blob.getStoragePath().equals(ownPath)) {
+            file.setStoragePath(blob.getStoragePath());
+            file.setStorageBackend(blob.getStorageBackend());
+            file.setETag(blob.getETag());
+            duplicates.increment();
+            savedBytes.increment(file.getContentSize());
+            log.debug("Upload {} is a duplicate, pointed at {}", file.getId(), blob.getStoragePath());
+        }
+    }
+
+    /**
+     * Remove the reference of a deleted upload to its object. Must be called in
+     * the transaction deleting the upload.
+     *
+     * @param file the {@link FileUpload} entity.
+     * @return true if the object (and its derivatives) should be deleted, false
+     *         if it's still referenced by other uploads.
+     */
+    public boolean release(FileUpload file) {
+        if (file.getContentHash() == null) {
+            return true; // never deduplicated, the object is its own
+        }
+        String scope = scopeOf(file.getStoragePath());
+        if (blobRepository.removeReference(file.getContentHash(), scope) == 0) {
+            return true;
+        }
+        return blobRepository.deleteIfUnreferenced(file.getContentHash(), scope) > 0;
+    }
+
+    /**
+     * The SHA-256 (hex) of the object of an upload, streamed from its backend.
+     */
+    private String hash(FileUpload file) throws Exception {
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        try (InputStream in = providerRouter.provider(file).downloadFile(file.getStoragePath()).call()) {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, n);
+            }
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private static String nameOf(StorageProviderType backend) {
+        return backend == null ? null : backend.name();
+    }
+
+    /**
+     * The scope of an object: the first segment of its path ({@code public} or
+     * {@code private}). Objects are only shared within a scope.
+     */
+    static String scopeOf(String storagePath) {
+        int slash = storagePath.indexOf('/');
+        return slash < 0 ? "" : storagePath.substring(0, slash);
+    }
+
+}
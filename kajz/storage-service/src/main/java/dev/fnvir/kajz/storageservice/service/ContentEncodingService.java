@@ -0,0 +1,226 @@
+package dev.fnvir.kajz.storageservice.service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.util.Locale;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+import org.springframework.stereotype.Service;
+
+import dev.fnvir.kajz.storageservice.config.StorageProperties;
+import dev.fnvir.kajz.storageservice.dto.CachedFileMetadata;
+import dev.fnvir.kajz.storageservice.enums.ContentEncoding;
+import dev.fnvir.kajz.storageservice.model.FileUpload;
+import dev.fnvir.kajz.storageservice.repository.StorageRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Content negotiation on {@code Accept-Encoding} for compressible files.
+ *
+ * <p>
+ * Once a compressible upload has been validated, a gzip variant is stored next
+ * to the original and recorded in its metadata, or the original is recorded as
+ * the encoding to serve if compressing it doesn't save enough. Files without a
+ * recorded encoding (e.g. too large to precompress) are compressed while
+ * they're streamed. Both produce the same bytes, so they share an ETag.
+ * </p>
+ */
+@Slf4j
+@Service
+public class ContentEncodingService {
+
+    private static final String METRIC_PREFIX = "storage.content.encoding";
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * The representation of a file to serve.
+     *
+     * @param encoding    the content coding of the representation
+     * @param storagePath the path of the object to stream
+     * @param contentSize the size of the representation in bytes, or null if
+     *                    it's compressed while streaming
+     */
+    public record Representation(ContentEncoding encoding, String storagePath, Long contentSize) {
+
+        /** Whether the original has to be compressed while it's streamed. */
+        public boolean compressWhileStreaming() {
+            return encoding != ContentEncoding.IDENTITY && contentSize == null;
+        }
+    }
+
+    private final StorageProviderRouter providerRouter;
+    private final StorageRepository storageRepository;
+    private final StorageProperties storageProperties;
+
+    private final Counter precompressed;
+    private final Counter servedPrecompressed;
+    private final Counter servedStreamed;
+
+    public ContentEncodingService(
+            StorageProviderRouter providerRouter,
+            StorageRepository storageRepository,
+            StorageProperties storageProperties,
+            MeterRegistry meterRegistry
+    ) {
+        this.providerRouter = providerRouter;
+        this.storageRepository = storageRepository;
+        this.storageProperties = storageProperties;
+
+        this.precompressed = Counter.builder(METRIC_PREFIX + ".precompressed")
+                .description("Compressed variants stored for validated uploads")
+                .register(meterRegistry);
+        this.servedPrecompressed = served(meterRegistry, "precompressed");
+        this.servedStreamed = served(meterRegistry, "streamed");
+    }
+
+    private static Counter served(MeterRegistry registry, String mode) {
+        return Counter.builder(METRIC_PREFIX + ".responses")
+                .description("Downloads served compressed")
+                .tag("mode", mode)
+                .register(registry);
+    }
+
+    /**
+     * Whether files of a mime-type are worth compressing (see
+     * {@code storage.file.compressible-types}). Responses for them vary by
+     * {@code Accept-Encoding}.
+     *
+     * @param mimeType the mime-type of the file (nullable).
+     */
+    public boolean isCompressible(String mimeType) {
+        if (mimeType == null) {
+            return false;
+        }
+        int params = mimeType.indexOf(';');
+        String type = (params < 0 ? mimeType : mimeType.substring(0, params)).strip().toLowerCase(Locale.ROOT);
+        return storageProperties.getCompressibleTypes().contains(type);
+    }
+
+    /**
+     * Choose the representation of a file to serve.
+     *
+     * @param file           the metadata of the file.
+     * @param acceptEncoding the {@code Accept-Encoding} header (nullable).
+     * @return the representation to serve.
+     */
+    public Representation negotiate(CachedFileMetadata file, String acceptEncoding) {
+        if (!isCompressible(file.mimeType()) || !acceptsGzip(acceptEncoding)) {
+            return identity(file);
+        }
+        Map<String, Long> encodings = file.encodings() == null ? Map.of() : file.encodings();
+        Long gzipSize = encodings.get(ContentEncoding.GZIP.getToken());
+        if (gzipSize != null) {
+            servedPrecompressed.increment();
+            return new Representation(ContentEncoding.GZIP, ContentEncoding.GZIP.storagePath(file.storagePath()), gzipSize);
+        }
+        if (encodings.containsKey(ContentEncoding.IDENTITY.getToken())) {
+            return identity(file); // compressing it isn't worth it
+        }
+        servedStreamed.increment();
+        return new Representation(ContentEncoding.GZIP, file.storagePath(), null);
+    }
+
+    private static Representation identity(CachedFileMetadata file) {
+        return new Representation(ContentEncoding.IDENTITY, file.storagePath(), file.contentSize());
+    }
+
+    /**
+     * Store a gzip variant of a validated upload, if it's compressible and
+     * compressing it is worth it. Failures are logged, the file is then
+     * compressed while it's streamed.
+     *
+     * @param file the {@link FileUpload} entity.
+     */
+    public void precompress(FileUpload file) {
+        if (!Boolean.TRUE.equals(storageProperties.getPrecompressEnabled())
+                || !isCompressible(file.getMimeType())
+                || file.getContentSize() == null
+                || file.getContentSize() > storageProperties.getPrecompressMaxSize()) {
+            return;
+        }
+        String storagePath = file.getStoragePath();
+        String backend = file.getStorageBackend() == null ? null : file.getStorageBackend().name();
+        var storageProvider = providerRouter.provider(file);
+        try {
+            byte[] content = gzip(storageProvider, storagePath, file.getContentSize());
+            long maxSize = (long) (file.getContentSize() * (1 - storageProperties.getPrecompressMinSavings()));
+            if (content.length > maxSize) {
+                storageRepository.putMetadata(storagePath, backend, ContentEncoding.IDENTITY.metadataKey(),
+                        String.valueOf(file.getContentSize()));
+                return;
+            }
+            storageProvider.uploadFile(ContentEncoding.GZIP.storagePath(storagePath), content, "application/gzip");
+            storageRepository.putMetadata(storagePath, backend, ContentEncoding.GZIP.metadataKey(), String.valueOf(content.length));
+            precompressed.increment();
+            log.debug("Precompressed upload {} from {} to {} bytes", file.getId(), file.getContentSize(), content.length);
+        } catch (Exception e) {
+            log.warn("Failed to precompress upload {}: {}", file.getId(), e.getMessage());
+        }
+    }
+
+    private static byte[] gzip(AbstractStorageProvider storageProvider, String storagePath, long contentSize) throws Exception {
+        var out = new ByteArrayOutputStream((int) Math.min(contentSize, Integer.MAX_VALUE - 8));
+        try (InputStream in = storageProvider.downloadFile(storagePath).call();
+                GZIPOutputStream gzip = new GZIPOutputStream(out, BUFFER_SIZE)) {
+            in.transferTo(gzip);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * The ETag of a representation, derived from the ETag of the original.
+     *
+     * @param eTag     the ETag of the original (nullable).
+     * @param encoding the encoding of the representation.
+     */
+    public static String eTagOf(String eTag, ContentEncoding encoding) {
+        if (eTag == null || encoding == ContentEncoding.IDENTITY) {
+            return eTag;
+        }
+        String opaque = eTag.startsWith("\"") && eTag.endsWith("\"") && eTag.length() > 1
+                ? eTag.substring(1, eTag.length() - 1) : eTag;
+        return opaque + "-" + encoding.getToken();
+    }
+
+    /**
+     * Whether an {@code Accept-Encoding} header accepts gzip, either by name or
+     * through {@code *}, with a non-zero quality.
+     */
+    static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null || acceptEncoding.isBlank()) {
+            return false;
+        }
+        Double gzip = null;
+        Double any = null;
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parts = coding.split(";");
+            String token = parts[0].strip().toLowerCase(Locale.ROOT);
+            double quality = quality(parts);
+            if (token.equals("gzip") || token.equals("x-gzip")) {
+                gzip = quality;
+            } else if (token.equals("*")) {
+                any = quality;
+            }
+        }
+        return gzip != null ? gzip > 0 : any != null && any > 0;
+    }
+
+    private static double quality(String[] params) {
+        for (int i = 1; i < params.length; i++) {
+            String param = params[i].strip();
+            if (param.startsWith("q=")) {
+                try {
+                    return Double.parseDouble(param.substring(2));
+                } catch (NumberFormatException _) {
+                    return 0;
+                }
+            }
+        }
+        return 1;
+    }
+
+}
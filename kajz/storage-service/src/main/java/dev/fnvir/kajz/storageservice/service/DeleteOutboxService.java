@@ -0,0 +1,304 @@
+package dev.fnvir.kajz.storageservice.service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jspecify.annotations.Nullable;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import dev.fnvir.kajz.storageservice.config.StorageProperties;
+import dev.fnvir.kajz.storageservice.dto.DerivativeSpec;
+import dev.fnvir.kajz.storageservice.enums.ContentEncoding;
+import dev.fnvir.kajz.storageservice.enums.StorageProviderType;
+import dev.fnvir.kajz.storageservice.model.DeleteOutboxEntry;
+import dev.fnvir.kajz.storageservice.model.FileUpload;
+import dev.fnvir.kajz.storageservice.repository.DeleteOutboxRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Durable queue of files to delete from the storage provider.
+ *
+ * <p>
+ * Deletes are enqueued in the caller's transaction, and drained by a bounded
+ * pool of {@code storage.file.delete-workers} workers in batches. Workers on
+ * all instances drain concurrently: each claims a batch by locking it with
+ * {@code SKIP LOCKED} and leasing it for a while, so a worker which dies
+ * mid-batch only delays the batch. Failed deletes are retried with
+ * exponential backoff.
+ * </p>
+ */
+@Slf4j
+@Service
+public class DeleteOutboxService {
+
+    private static final String METRIC_PREFIX = "storage.delete.outbox";
+
+    /** The number of entries claimed (and deleted from the provider) at once. */
+    static final int DRAIN_BATCH_SIZE = 1000;
+
+    /** How long a claimed batch is hidden from other workers. */
+    private static final Duration LEASE_TIME = Duration.ofMinutes(5);
+
+    private static final Duration MIN_RETRY_DELAY = Duration.ofSeconds(30);
+    private static final Duration MAX_RETRY_DELAY = Duration.ofHours(1);
+
+    private static final int MAX_ERROR_LENGTH = 512;
+
+    private final DeleteOutboxRepository outboxRepository;
+    private final StorageProviderRouter providerRouter;
+    private final StorageProperties storageProperties;
+    private final TransactionTemplate transaction;
+    private final ThreadPoolExecutor executor;
+
+    private final AtomicLong depth = new AtomicLong();
+    private final Counter deleted;
+    private final Counter failures;
+
+    public DeleteOutboxService(
+            DeleteOutboxRepository outboxRepository,
+            StorageProviderRouter providerRouter,
+            StorageProperties storageProperties,
+            PlatformTransactionManager transactionManager,
+            MeterRegistry meterRegistry
+    ) {
+        this.outboxRepository = outboxRepository;
+        this.providerRouter = providerRouter;
+        this.storageProperties = storageProperties;
+        this.transaction = new TransactionTemplate(transactionManager);
+
+        int workers = storageProperties.getDeleteWorkers();
+        this.executor = new ThreadPoolExecutor(
+                workers, workers, 0, TimeUnit.SECONDS,
+                new SynchronousQueue<>(), // no backlog, a busy worker keeps draining anyway
+                Thread.ofVirtual().name("delete-outbox-", 0).factory(),
+                new ThreadPoolExecutor.AbortPolicy());
+
+        Gauge.builder(METRIC_PREFIX + ".depth", depth, AtomicLong::get)
+                .description("Files waiting to be deleted from the storage provider")
+                .register(meterRegistry);
+        this.deleted = Counter.builder(METRIC_PREFIX + ".deleted")
+                .description("Files deleted from the storage provider through the outbox")
+                .register(meterRegistry);
+        this.failures = Counter.builder(METRIC_PREFIX + ".failures")
+                .description("Failed attempts to delete a file from the storage provider")
+                .register(meterRegistry);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Enqueue the file of an upload for deletion. Incomplete multipart uploads
+     * are aborted as well.
+     *
+     * @param file the {@link FileUpload} entity.
+     */
+    public void enqueue(FileUpload file) {
+        enqueue(List.of(file));
+    }
+
+    /**
+     * Enqueue the files of uploads for deletion, in the current transaction.
+     * Their image derivatives and compressed variants are deleted as well.
+     *
+     * @param files the {@link FileUpload} entities.
+     */
+    public void enqueue(Collection<FileUpload> files) {
+        List<DeleteOutboxEntry> entries = new ArrayList<>();
+        for (FileUpload f : files) {
+            if (f.getStoragePath() == null) {
+                continue;
+            }
+            entries.add(DeleteOutboxEntry.of(f.getStorageBackend(), f.getStoragePath(),
+                    f.isMultipart() && f.getCompletedAt() == null ? f.getMultipartUploadId() : null));
+            addVariants(entries, f.getStorageBackend(), f.getStoragePath(), f.getMetadata());
+        }
+        if (!entries.isEmpty()) {
+            outboxRepository.saveAll(entries);
+        }
+    }
+
+    /**
+     * Enqueue the old copy of a file moved to another backend for deletion
+     * (with its image derivatives and compressed variants) once a delay has
+     * passed, in the current transaction.
+     *
+     * @param storageBackend the backend the file was moved from (null for the primary).
+     * @param storagePath    the path of the file in that backend.
+     * @param metadata       the metadata of the file, recording its variants.
+     * @param delay          how long to keep the old copy.
+     */
+    public void enqueueDelayed(@Nullable StorageProviderType storageBackend, String storagePath,
+            @Nullable Map<String, String> metadata, Duration delay) {
+        List<DeleteOutboxEntry> entries = new ArrayList<>();
+        entries.add(DeleteOutboxEntry.of(storageBackend, storagePath, null));
+        addVariants(entries, storageBackend, storagePath, metadata);
+        Instant notBefore = Instant.now().plus(delay);
+        entries.forEach(entry -> entry.setNextAttemptAt(notBefore));
+        outboxRepository.saveAll(entries);
+    }
+
+    private static void addVariants(List<DeleteOutboxEntry> entries, StorageProviderType storageBackend,
+            String storagePath, Map<String, String> metadata) {
+        DerivativeSpec.fromMetadata(metadata).keySet().forEach(name -> entries.add(
+                DeleteOutboxEntry.of(storageBackend, DerivativeSpec.storagePath(storagePath, name), null)));
+        if (ContentEncoding.fromMetadata(metadata).containsKey(ContentEncoding.GZIP.getToken())) {
+            entries.add(DeleteOutboxEntry.of(storageBackend, ContentEncoding.GZIP.storagePath(storagePath), null));
+        }
+    }
+
+    /**
+     * Enqueue a single object for deletion, in the current transaction.
+     *
+     * @param storageBackend the backend of the object (null for the primary).
+     * @param storagePath    the path of the object in the storage provider.
+     */
+    public void enqueuePath(@Nullable StorageProviderType storageBackend, String storagePath) {
+        outboxRepository.save(DeleteOutboxEntry.of(storageBackend, storagePath, null));
+    }
+
+    /**
+     * Start idle workers, which keep draining until nothing is due.
+     */
+    @Scheduled(initialDelay = 30, fixedDelay = 10, timeUnit = TimeUnit.SECONDS)
+    protected void drain() {
+        depth.set(outboxRepository.count());
+        if (depth.get() == 0) {
+            return;
+        }
+        for (int i = executor.getActiveCount(); i < storageProperties.getDeleteWorkers(); i++) {
+            try {
+                executor.execute(this::drainDue);
+            } catch (RejectedExecutionException e) {
+                break; // all workers busy
+            }
+        }
+    }
+
+    void drainDue() {
+        List<DeleteOutboxEntry> batch;
+        while (!(batch = claimDue()).isEmpty()) {
+            process(batch);
+        }
+    }
+
+    private List<DeleteOutboxEntry> claimDue() {
+        return transaction.execute(_ -> {
+            Instant now = Instant.now();
+            List<DeleteOutboxEntry> due = outboxRepository.lockDue(now, DRAIN_BATCH_SIZE);
+            if (!due.isEmpty()) {
+                outboxRepository.lease(due.stream().map(DeleteOutboxEntry::getId).toList(), now.plus(LEASE_TIME));
+            }
+            return due;
+        });
+    }
+
+    void process(List<DeleteOutboxEntry> batch) {
+        Map<DeleteOutboxEntry, String> errors = new HashMap<>();
+        Map<StorageProviderType, List<DeleteOutboxEntry>> byBackend = new HashMap<>(); // null key for the primary
+        for (var entry : batch) {
+            byBackend.computeIfAbsent(entry.getStorageBackend(), _ -> new ArrayList<>()).add(entry);
+        }
+        byBackend.forEach((backend, entries) -> {
+            AbstractStorageProvider storageProvider;
+            try {
+                storageProvider = providerRouter.provider(backend);
+            } catch (IllegalStateException e) {
+                entries.forEach(entry -> errors.put(entry, e.getMessage()));
+                return;
+            }
+            process(storageProvider, entries, errors);
+        });
+
+        List<Long> doneIds = batch.stream()
+                .filter(entry -> !errors.containsKey(entry))
+                .map(DeleteOutboxEntry::getId)
+                .toList();
+        if (!doneIds.isEmpty()) {
+            outboxRepository.deleteByIds(doneIds);
+            deleted.increment(doneIds.size());
+        }
+        if (!errors.isEmpty()) {
+            scheduleRetries(errors);
+        }
+    }
+
+    /**
+     * Delete the entries of a batch held by one storage provider, collecting
+     * the failed entries.
+     */
+    private void process(AbstractStorageProvider storageProvider, List<DeleteOutboxEntry> batch,
+            Map<DeleteOutboxEntry, String> errors) {
+        List<DeleteOutboxEntry> toDelete = new ArrayList<>();
+        for (var entry : batch) {
+            if (entry.getMultipartUploadId() != null) {
+                try {
+                    storageProvider.abortMultipartUpload(entry.getStoragePath(), entry.getMultipartUploadId());
+                    entry.setMultipartUploadId(null);
+                } catch (RuntimeException e) {
+                    errors.put(entry, "Abort multipart upload failed: " + e.getMessage());
+                    continue;
+                }
+            }
+            toDelete.add(entry);
+        }
+
+        Set<String> failedKeys;
+        try {
+            failedKeys = storageProvider.deleteFiles(toDelete.stream().map(DeleteOutboxEntry::getStoragePath).toList());
+        } catch (RuntimeException e) {
+            log.error("Failed to delete batch of {} files: {}", toDelete.size(), e.getMessage());
+            toDelete.forEach(entry -> errors.put(entry, e.getMessage()));
+            failedKeys = Set.of();
+        }
+        for (var entry : toDelete) {
+            if (failedKeys.contains(entry.getStoragePath())) {
+                errors.put(entry, "Delete failed");
+            }
+        }
+    }
+
+    private void scheduleRetries(Map<DeleteOutboxEntry, String> errors) {
+        Instant now = Instant.now();
+        errors.forEach((entry, error) -> {
+            entry.setAttempts(entry.getAttempts() + 1);
+            entry.setNextAttemptAt(now.plus(retryDelay(entry.getAttempts())));
+            entry.setLastError(error == null || error.length() <= MAX_ERROR_LENGTH
+                    ? error : error.substring(0, MAX_ERROR_LENGTH));
+        });
+        transaction.executeWithoutResult(_ -> outboxRepository.saveAll(errors.keySet()));
+        failures.increment(errors.size());
+        log.warn("Failed to delete {} files from the storage provider, retrying later", errors.size());
+    }
+
+    /**
+     * Exponential backoff from {@link #MIN_RETRY_DELAY}, capped at
+     * {@link #MAX_RETRY_DELAY}.
+     */
+    static Duration retryDelay(int attempts) {
+        int exponent = Math.min(Math.max(attempts - 1, 0), 20);
+        Duration delay = MIN_RETRY_DELAY.multipliedBy(1L << exponent);
+        return delay.compareTo(MAX_RETRY_DELAY) > 0 ? MAX_RETRY_DELAY : delay;
+    }
+
+}
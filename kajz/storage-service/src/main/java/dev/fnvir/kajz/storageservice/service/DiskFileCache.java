@@ -0,0 +1,358 @@
+package dev.fnvir.kajz.storageservice.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import org.springframework.stereotype.Component;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+
+import dev.fnvir.kajz.storageservice.config.StorageCacheProperties;
+import dev.fnvir.kajz.storageservice.util.FileChannelInputStream;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Local disk cache of hot files, keyed by storage path + ETag, so a changed
+ * file never hits a stale entry.
+ *
+ * <p>
+ * A file is only admitted after it has been downloaded
+ * {@code storage.cache.disk.admission-hits} times within the admission window.
+ * The admitting download is streamed to the client as usual while being copied
+ * to the cache, so nobody waits for the fill. Entries are evicted by total size
+ * using Caffeine's size-bounded policy (recency and frequency based, close to
+ * LRU for this access pattern).
+ * </p>
+ */
+@Slf4j
+@Component
+public class DiskFileCache {
+
+    private static final String METRIC_PREFIX = "storage.disk.cache";
+    private static final String TEMP_FILE_SUFFIX = ".part";
+
+    private final StorageCacheProperties.Disk properties;
+    private final Path dir;
+
+    /** The cached files (by cache key) and their sizes. */
+    private final Cache<String, Long> index;
+    private final Cache<String, AtomicInteger> admissionCounts;
+    private final Set<String> filling = ConcurrentHashMap.newKeySet();
+
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter bytesServed;
+
+    public DiskFileCache(StorageCacheProperties cacheProperties, MeterRegistry meterRegistry) {
+        this.properties = cacheProperties.getDisk();
+        this.dir = Path.of(properties.getDir()).toAbsolutePath().normalize();
+        this.index = Caffeine.newBuilder()
+                .maximumWeight(properties.getMaxSize())
+                .weigher((String _, Long size) -> (int) Math.min(size, Integer.MAX_VALUE))
+                .removalListener((String key, Long _, RemovalCause cause) -> {
+                    if (cause != RemovalCause.REPLACED)
+                        deleteQuietly(dir.resolve(key));
+                })
+                .build();
+        this.admissionCounts = Caffeine.newBuilder()
+                .maximumSize(100_000)
+                .expireAfterWrite(properties.getAdmissionWindow())
+                .build();
+
+        this.hits = Counter.builder(METRIC_PREFIX + ".requests")
+                .description("Lookups of the disk file cache")
+                .tag("result", "hit")
+                .register(meterRegistry);
+        this.misses = Counter.builder(METRIC_PREFIX + ".requests")
+                .description("Lookups of the disk file cache")
+                .tag("result", "miss")
+                .register(meterRegistry);
+        this.bytesServed = Counter.builder(METRIC_PREFIX + ".served")
+                .description("Bytes served from the disk file cache")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        Gauge.builder(METRIC_PREFIX + ".size", index,
+                        c -> c.policy().eviction().flatMap(e -> e.weightedSize()).orElse(0L))
+                .description("Total size of the cached files")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Rebuild the index from the files left by a previous run, and remove
+     * partially filled ones.
+     */
+    @PostConstruct
+    void init() throws IOException {
+        if (!isEnabled()) {
+            return;
+        }
+        Files.createDirectories(dir);
+        try (Stream<Path> files = Files.list(dir)) {
+            files.filter(Files::isRegularFile).forEach(f -> {
+                String name = f.getFileName().toString();
+                if (name.endsWith(TEMP_FILE_SUFFIX)) {
+                    deleteQuietly(f);
+                } else {
+                    try {
+                        index.put(name, Files.size(f));
+                    } catch (IOException e) {
+                        deleteQuietly(f);
+                    }
+                }
+            });
+        }
+        log.info("Disk file cache initialized at {} with {} entries", dir, index.estimatedSize());
+    }
+
+    public boolean isEnabled() {
+        return Boolean.TRUE.equals(properties.getEnabled());
+    }
+
+    /**
+     * Serve a file from the cache if present, otherwise from the origin. Counts
+     * towards admission and fills the cache while streaming once admitted.
+     *
+     * @param storagePath   the storage path of the file.
+     * @param eTag          the ETag of the file.
+     * @param contentLength the size of the file in bytes.
+     * @param origin        opens the file from the storage provider.
+     * @return a Callable that provides an InputStream to read the file.
+     */
+    public Callable<InputStream> cached(String storagePath, String eTag, long contentLength, Callable<InputStream> origin) {
+        if (!isEnabled()) {
+            return origin;
+        }
+        String key = cacheKey(storagePath, eTag);
+        return () -> {
+            InputStream cachedStream = openCached(key, 0, contentLength - 1);
+            if (cachedStream != null) {
+                return cachedStream;
+            }
+            if (!shouldAdmit(key, contentLength) || !filling.add(key)) {
+                return origin.call();
+            }
+            try {
+                return new CacheFillInputStream(origin.call(), key, contentLength);
+            } catch (Exception e) {
+                filling.remove(key);
+                throw e;
+            }
+        };
+    }
+
+    /**
+     * Serve a byte range of a file from the cache if present, otherwise from the
+     * origin. Range requests don't count towards admission.
+     *
+     * @param storagePath the storage path of the file.
+     * @param eTag        the ETag of the file.
+     * @param start       the position of the first byte (inclusive).
+     * @param end         the position of the last byte (inclusive).
+     * @param origin      opens the byte range from the storage provider.
+     * @return a Callable that provides an InputStream to read the byte range.
+     */
+    public Callable<InputStream> cachedRange(String storagePath, String eTag, long start, long end, Callable<InputStream> origin) {
+        if (!isEnabled()) {
+            return origin;
+        }
+        String key = cacheKey(storagePath, eTag);
+        return () -> {
+            InputStream cachedStream = openCached(key, start, end);
+            return cachedStream != null ? cachedStream : origin.call();
+        };
+    }
+
+    /**
+     * Remove a file from the cache.
+     *
+     * @param storagePath the storage path of the file.
+     * @param eTag        the ETag of the file.
+     */
+    public void evict(String storagePath, String eTag) {
+        if (isEnabled() && eTag != null) {
+            index.invalidate(cacheKey(storagePath, eTag));
+        }
+    }
+
+    private InputStream openCached(String key, long start, long end) throws IOException {
+        if (index.getIfPresent(key) == null) {
+            misses.increment();
+            return null;
+        }
+        try {
+            FileChannelInputStream in = FileChannelInputStream.open(dir.resolve(key), start, end);
+            hits.increment();
+            // count what the client actually read, which is less if it disconnects early
+            return in.onClose(bytesServed::increment);
+        } catch (NoSuchFileException e) {
+            index.invalidate(key);
+            misses.increment();
+            return null;
+        }
+    }
+
+    private boolean shouldAdmit(String key, long contentLength) {
+        if (contentLength <= 0 || contentLength > properties.getMaxSize()) {
+            return false;
+        }
+        int count = admissionCounts.get(key, _ -> new AtomicInteger()).incrementAndGet();
+        return count >= properties.getAdmissionHits();
+    }
+
+    private static String cacheKey(String storagePath, String eTag) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(
+                    (storagePath + "\n" + eTag).getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            log.warn("Failed to delete cached file {}: {}", path, e.getMessage());
+        }
+    }
+
+    /**
+     * Passes the origin stream through to the client while copying it to a temp
+     * file, which is moved into the cache once the whole file has been read.
+     * The fill is abandoned (without affecting the client) if writing fails or
+     * the client stops early.
+     */
+    private class CacheFillInputStream extends InputStream {
+
+        private final InputStream in;
+        private final String key;
+        private final long expectedLength;
+        private Path temp;
+        private OutputStream out;
+        private long written;
+        private boolean finished;
+
+        CacheFillInputStream(InputStream in, String key, long expectedLength) {
+            this.in = in;
+            this.key = key;
+            this.expectedLength = expectedLength;
+            try {
+                this.temp = Files.createTempFile(dir, key, TEMP_FILE_SUFFIX);
+                this.out = Files.newOutputStream(temp);
+            } catch (IOException e) {
+                log.warn("Failed to start filling disk cache: {}", e.getMessage());
+                abandon();
+            }
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = in.read();
+            if (b == -1) {
+                complete();
+            } else if (out != null) {
+                try {
+                    out.write(b);
+                    written++;
+                } catch (IOException e) {
+                    abandon();
+                }
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = in.read(b, off, len);
+            if (n == -1) {
+                complete();
+            } else if (out != null && n > 0) {
+                try {
+                    out.write(b, off, n);
+                    written += n;
+                } catch (IOException e) {
+                    abandon();
+                }
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            abandon(); // the cached copy would have a hole
+            return in.skip(n);
+        }
+
+        @Override
+        public int available() throws IOException {
+            return in.available();
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                in.close();
+            } finally {
+                if (!finished)
+                    abandon();
+                filling.remove(key);
+            }
+        }
+
+        private void complete() {
+            if (finished || out == null) {
+                return;
+            }
+            finished = true;
+            try {
+                out.close();
+                if (written != expectedLength) {
+                    log.warn("Not caching file with unexpected length {} (expected {})", written, expectedLength);
+                    deleteQuietly(temp);
+                    return;
+                }
+                Files.move(temp, dir.resolve(key), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                index.put(key, written);
+            } catch (IOException e) {
+                log.warn("Failed to complete filling disk cache: {}", e.getMessage());
+                deleteQuietly(temp);
+            }
+        }
+
+        private void abandon() {
+            finished = true;
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException _) {}
+                out = null;
+            }
+            if (temp != null) {
+                deleteQuietly(temp);
+            }
+        }
+    }
+
+}
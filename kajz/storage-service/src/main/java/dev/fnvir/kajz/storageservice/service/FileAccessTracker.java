@@ -0,0 +1,89 @@
+package dev.fnvir.kajz.storageservice.service;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import dev.fnvir.kajz.storageservice.config.StorageRoutingProperties;
+import dev.fnvir.kajz.storageservice.repository.StorageRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Tracks when files were last read, to find the cold ones.
+ *
+ * <p>
+ * Reads are collected in memory and written in batches once a minute, so
+ * serving a file never waits on a write. Only tracked while moving cold files
+ * is enabled.
+ * </p>
+ */
+@Slf4j
+@Component
+public class FileAccessTracker {
+
+    /** The number of files updated per statement. */
+    static final int FLUSH_BATCH_SIZE = 1000;
+
+    private final StorageRepository storageRepository;
+    private final StorageRoutingProperties.Cold properties;
+
+    /** The files read since the last flush. */
+    private final Set<Long> accessed = ConcurrentHashMap.newKeySet();
+
+    public FileAccessTracker(StorageRepository storageRepository, StorageRoutingProperties routingProperties) {
+        this.storageRepository = storageRepository;
+        this.properties = routingProperties.getCold();
+    }
+
+    /**
+     * Record that a file has been read.
+     *
+     * @param fileId the ID of the file.
+     */
+    public void touch(Long fileId) {
+        if (Boolean.TRUE.equals(properties.getEnabled())) {
+            accessed.add(fileId);
+        }
+    }
+
+    /**
+     * Write the reads collected since the last flush.
+     */
+    @Scheduled(initialDelay = 1, fixedDelay = 1, timeUnit = TimeUnit.MINUTES)
+    protected void flush() {
+        if (accessed.isEmpty()) {
+            return;
+        }
+        Instant now = Instant.now();
+        List<Long> batch = new ArrayList<>(FLUSH_BATCH_SIZE);
+        Iterator<Long> it = accessed.iterator();
+        while (it.hasNext()) {
+            batch.add(it.next());
+            it.remove();
+            if (batch.size() == FLUSH_BATCH_SIZE || !it.hasNext()) {
+                try {
+                    storageRepository.touchLastAccessed(batch, now);
+                } catch (RuntimeException e) {
+                    log.warn("Failed to record reads of {} files: {}", batch.size(), e.getMessage());
+                    accessed.addAll(batch); // retried on the next flush
+                    return;
+                }
+                batch.clear();
+            }
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        flush();
+    }
+
+}
@@ -0,0 +1,356 @@
+package dev.fnvir.kajz.storageservice.service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import dev.fnvir.kajz.storageservice.config.StorageCacheProperties;
+import dev.fnvir.kajz.storageservice.dto.CachedFileMetadata;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Two-level read-through cache of {@link CachedFileMetadata}: an in-memory
+ * Caffeine cache (L1) in front of Redis hashes (L2) shared by all instances.
+ * 
+ * <p>
+ * Redis failures are logged and treated as a miss, so an unavailable Redis only
+ * costs a database lookup.
+ * </p>
+ * 
+ * <p>
+ * Each eviction bumps a per-file version key in Redis. A loaded entry is only
+ * written back if the version is still the one read before loading, so a load
+ * which raced an eviction (possibly on another instance) can't re-cache the
+ * state from before the change.
+ * </p>
+ */
+@Slf4j
+@Component
+public class FileMetadataCache {
+    
+    private static final String METRIC_NAME = "storage.file.metadata.cache";
+    
+    /**
+     * Replaces the hash of a file and sets its TTL, in one step, unless the
+     * file's version key differs from the version read before loading.
+     * KEYS: hash key, version key. ARGV: version ('' if none), TTL in millis,
+     * then the fields and values of the hash. Returns 1 if written.
+     */
+    private static final RedisScript<Long> WRITE_IF_NOT_EVICTED = RedisScript.of("""
+            if (redis.call('GET', KEYS[2]) or '') ~= ARGV[1] then
+                return 0
+            end
+            redis.call('DEL', KEYS[1])
+            redis.call('HSET', KEYS[1], unpack(ARGV, 3))
+            redis.call('PEXPIRE', KEYS[1], ARGV[2])
+            return 1
+            """, Long.class);
+    
+    private final StringRedisTemplate redis;
+    private final StorageCacheProperties.Metadata properties;
+    private final Cache<Long, CachedFileMetadata> localCache;
+    
+    private final Counter localHits;
+    private final Counter localMisses;
+    private final Counter redisHits;
+    private final Counter redisMisses;
+    
+    public FileMetadataCache(
+            StringRedisTemplate redis,
+            StorageCacheProperties cacheProperties,
+            MeterRegistry meterRegistry
+    ) {
+        this.redis = redis;
+        this.properties = cacheProperties.getMetadata();
+        this.localCache = Caffeine.newBuilder()
+                .maximumSize(properties.getLocalMaxSize())
+                .expireAfterWrite(properties.getLocalTtl())
+                .build();
+        this.localHits = counter(meterRegistry, "local", "hit");
+        this.localMisses = counter(meterRegistry, "local", "miss");
+        this.redisHits = counter(meterRegistry, "redis", "hit");
+        this.redisMisses = counter(meterRegistry, "redis", "miss");
+    }
+    
+    private static Counter counter(MeterRegistry registry, String level, String result) {
+        return Counter.builder(METRIC_NAME)
+                .description("Lookups of the file metadata cache")
+                .tag("level", level)
+                .tag("result", result)
+                .register(registry);
+    }
+    
+    /**
+     * Get the metadata of a file, loading it from Redis or else from the loader
+     * on a miss. Concurrent misses for the same file on this instance share a
+     * single load.
+     * 
+     * @param fileId the ID of the file.
+     * @param loader loads the metadata from the database; may return null if the
+     *               file doesn't exist (nulls are not cached).
+     * @return the metadata, or null if the loader returned null.
+     */
+    public CachedFileMetadata get(Long fileId, Supplier<CachedFileMetadata> loader) {
+        if (!Boolean.TRUE.equals(properties.getEnabled())) {
+            return loader.get();
+        }
+        
+        CachedFileMetadata cached = localCache.getIfPresent(fileId);
+        if (cached != null) {
+            localHits.increment();
+            return cached;
+        }
+        localMisses.increment();
+        
+        boolean[] evicted = {false};
+        CachedFileMetadata metadata = localCache.get(fileId, id -> {
+            CachedFileMetadata fromRedis = readFromRedis(id);
+            if (fromRedis != null) {
+                redisHits.increment();
+                return fromRedis;
+            }
+            redisMisses.increment();
+            
+            String version = readVersion(id);
+            CachedFileMetadata loaded = loader.get();
+            if (loaded != null) {
+                evicted[0] = !writeToRedis(loaded, version);
+            }
+            return loaded;
+        });
+        if (evicted[0]) {
+            // serve the load to this caller, but don't keep what may be stale
+            localCache.invalidate(fileId);
+        }
+        return metadata;
+    }
+    
+    /**
+     * Get the metadata of several files at once: the local misses are read from
+     * Redis in a single pipeline, and the Redis misses are passed to the loader
+     * in a single call.
+     * 
+     * @param fileIds the IDs of the files.
+     * @param loader  loads the metadata of the given files from the database,
+     *                omitting the files which don't exist.
+     * @return the metadata of the files which exist, by ID.
+     */
+    public Map<Long, CachedFileMetadata> getAll(
+            Collection<Long> fileIds,
+            Function<Collection<Long>, Map<Long, CachedFileMetadata>> loader
+    ) {
+        if (fileIds.isEmpty()) {
+            return Map.of();
+        }
+        if (!Boolean.TRUE.equals(properties.getEnabled())) {
+            return loader.apply(fileIds);
+        }
+        
+        Map<Long, CachedFileMetadata> result = new HashMap<>(localCache.getAllPresent(fileIds));
+        localHits.increment(result.size());
+        List<Long> localMissing = fileIds.stream().filter(id -> !result.containsKey(id)).toList();
+        if (localMissing.isEmpty()) {
+            return result;
+        }
+        localMisses.increment(localMissing.size());
+        
+        Map<Long, CachedFileMetadata> fromRedis = readAllFromRedis(localMissing);
+        redisHits.increment(fromRedis.size());
+        localCache.putAll(fromRedis);
+        result.putAll(fromRedis);
+        List<Long> redisMissing = localMissing.stream().filter(id -> !fromRedis.containsKey(id)).toList();
+        if (redisMissing.isEmpty()) {
+            return result;
+        }
+        redisMisses.increment(redisMissing.size());
+        
+        Map<Long, String> versions = readVersions(redisMissing);
+        Map<Long, CachedFileMetadata> loaded = loader.apply(redisMissing);
+        loaded.forEach((id, metadata) -> {
+            if (writeToRedis(metadata, versions.get(id))) {
+                localCache.put(id, metadata);
+            }
+        });
+        result.putAll(loaded);
+        return result;
+    }
+    
+    /**
+     * Evict the metadata of files from both cache levels. If a transaction is
+     * active, eviction is deferred until after it commits so that a concurrent
+     * read can't re-cache the old state.
+     * 
+     * @param fileIds the IDs of the files.
+     */
+    public void evict(Collection<Long> fileIds) {
+        if (fileIds.isEmpty()) {
+            return;
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            List<Long> ids = List.copyOf(fileIds);
+            TransactionSynchronizationManager.registerSynchronization(
+                new TransactionSynchronization() {
+                    @Override
+                    public void afterCommit() {
+                        evictNow(ids);
+                    }
+                }
+            );
+        } else {
+            evictNow(fileIds);
+        }
+    }
+    
+    public void evict(Long fileId) {
+        evict(List.of(fileId));
+    }
+    
+    @SuppressWarnings("unchecked")
+    private void evictNow(Collection<Long> fileIds) {
+        localCache.invalidateAll(fileIds);
+        try {
+            redis.executePipelined(new SessionCallback<Object>() {
+                @Override
+                public <K, V> Object execute(RedisOperations<K, V> operations) {
+                    var ops = (RedisOperations<String, String>) operations;
+                    // bump the versions before deleting, so a write-back between the
+                    // two commands is refused rather than left in place
+                    for (Long id : fileIds) {
+                        ops.opsForValue().increment(versionKey(id));
+                        ops.expire(versionKey(id), properties.getRedisTtl());
+                    }
+                    ops.delete(fileIds.stream().map(FileMetadataCache.this::redisKey).toList());
+                    return null;
+                }
+            });
+        } catch (DataAccessException e) {
+            log.warn("Failed to evict file metadata from redis: {}", e.getMessage());
+        }
+    }
+    
+    private CachedFileMetadata readFromRedis(Long fileId) {
+        try {
+            return CachedFileMetadata.fromHash(redis.<String, String>opsForHash().entries(redisKey(fileId)));
+        } catch (DataAccessException | IllegalArgumentException e) {
+            log.warn("Failed to read file metadata from redis: {}", e.getMessage());
+            return null;
+        }
+    }
+    
+    @SuppressWarnings("unchecked")
+    private Map<Long, CachedFileMetadata> readAllFromRedis(List<Long> fileIds) {
+        List<Object> hashes;
+        try {
+            hashes = redis.executePipelined(new SessionCallback<Object>() {
+                @Override
+                public <K, V> Object execute(RedisOperations<K, V> operations) {
+                    var ops = (RedisOperations<String, String>) operations;
+                    fileIds.forEach(id -> ops.opsForHash().entries(redisKey(id)));
+                    return null;
+                }
+            });
+        } catch (DataAccessException e) {
+            log.warn("Failed to read file metadata from redis: {}", e.getMessage());
+            return Map.of();
+        }
+        
+        Map<Long, CachedFileMetadata> result = new HashMap<>();
+        for (Object hash : hashes) {
+            try {
+                CachedFileMetadata metadata = CachedFileMetadata.fromHash((Map<String, String>) hash);
+                if (metadata != null) {
+                    result.put(metadata.id(), metadata);
+                }
+            } catch (IllegalArgumentException e) {
+                log.warn("Failed to read file metadata from redis: {}", e.getMessage());
+            }
+        }
+        return result;
+    }
+    
+    /**
+     * Read the version of a file's entry, before loading it.
+     * 
+     * @return the version ('' if never evicted), or null if Redis failed.
+     */
+    private String readVersion(Long fileId) {
+        try {
+            String version = redis.opsForValue().get(versionKey(fileId));
+            return version == null ? "" : version;
+        } catch (DataAccessException e) {
+            log.warn("Failed to read file metadata version from redis: {}", e.getMessage());
+            return null;
+        }
+    }
+    
+    private Map<Long, String> readVersions(List<Long> fileIds) {
+        List<String> versions;
+        try {
+            versions = redis.opsForValue().multiGet(fileIds.stream().map(this::versionKey).toList());
+        } catch (DataAccessException e) {
+            log.warn("Failed to read file metadata versions from redis: {}", e.getMessage());
+            return Map.of();
+        }
+        Map<Long, String> result = new HashMap<>();
+        for (int i = 0; i < fileIds.size() && versions != null; i++) {
+            String version = versions.get(i);
+            result.put(fileIds.get(i), version == null ? "" : version);
+        }
+        return result;
+    }
+    
+    /**
+     * Write a loaded entry to Redis, unless it was evicted since its version
+     * was read.
+     * 
+     * @param version the version read before loading, or null if unknown.
+     * @return false if the entry was evicted meanwhile, so it may be stale.
+     */
+    private boolean writeToRedis(CachedFileMetadata metadata, String version) {
+        if (version == null) {
+            return true; // Redis is failing; don't write what can't be checked
+        }
+        List<String> args = new ArrayList<>();
+        args.add(version);
+        args.add(String.valueOf(properties.getRedisTtl().toMillis()));
+        metadata.toHash().forEach((field, value) -> {
+            args.add(field);
+            args.add(value);
+        });
+        try {
+            Long written = redis.execute(WRITE_IF_NOT_EVICTED,
+                    List.of(redisKey(metadata.id()), versionKey(metadata.id())), args.toArray());
+            return written == null || written == 1L;
+        } catch (DataAccessException e) {
+            log.warn("Failed to write file metadata to redis: {}", e.getMessage());
+            return true;
+        }
+    }
+    
+    private String redisKey(Long fileId) {
+        return properties.getRedisKeyPrefix() + fileId;
+    }
+    
+    private String versionKey(Long fileId) {
+        return properties.getRedisKeyPrefix() + "version:" + fileId;
+    }
+
+}
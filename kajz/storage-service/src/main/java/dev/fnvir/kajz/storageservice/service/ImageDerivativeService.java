@@ -0,0 +1,314 @@
+package dev.fnvir.kajz.storageservice.service;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+
+import dev.fnvir.kajz.storageservice.config.StorageProperties;
+import dev.fnvir.kajz.storageservice.dto.CachedFileMetadata;
+import dev.fnvir.kajz.storageservice.dto.DerivativeSpec;
+import dev.fnvir.kajz.storageservice.enums.DerivativeFormat;
+import dev.fnvir.kajz.storageservice.exception.ApiException;
+import dev.fnvir.kajz.storageservice.repository.StorageRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Generates scaled down variants (thumbnails etc.) of images on demand.
+ *
+ * <p>
+ * A derivative is generated once, stored through the storage provider next to
+ * the original and recorded in the metadata of the file, so later requests
+ * are served straight from the provider. Generation runs on a bounded worker
+ * pool, and concurrent requests for the same derivative on this instance share
+ * a single generation. Instances racing on the same derivative write the same
+ * content to the same key, so that's harmless.
+ * </p>
+ */
+@Slf4j
+@Service
+public class ImageDerivativeService {
+
+    private static final String METRIC_PREFIX = "storage.image.derivative";
+
+    private static final float JPEG_QUALITY = 0.85f;
+
+    /**
+     * A derivative stored in the storage provider.
+     *
+     * @param storagePath the path of the derivative in the storage provider
+     * @param contentSize the size of the derivative in bytes
+     */
+    public record Derivative(String storagePath, long contentSize) {}
+
+    private final StorageProviderRouter providerRouter;
+    private final StorageRepository storageRepository;
+    private final FileMetadataCache metadataCache;
+    private final StorageProperties storageProperties;
+    private final ThreadPoolExecutor executor;
+
+    /** The derivatives being generated on this node, by storage path. */
+    private final Map<String, CompletableFuture<Long>> inFlight = new ConcurrentHashMap<>();
+
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter joined;
+    private final Timer generation;
+
+    public ImageDerivativeService(
+            StorageProviderRouter providerRouter,
+            StorageRepository storageRepository,
+            FileMetadataCache metadataCache,
+            StorageProperties storageProperties,
+            MeterRegistry meterRegistry
+    ) {
+        this.providerRouter = providerRouter;
+        this.storageRepository = storageRepository;
+        this.metadataCache = metadataCache;
+        this.storageProperties = storageProperties;
+
+        int concurrency = storageProperties.getDerivativeConcurrency();
+        this.executor = new ThreadPoolExecutor(
+                concurrency, concurrency, 0, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(storageProperties.getDerivativeQueueCapacity()),
+                Thread.ofVirtual().name("image-derivative-", 0).factory(),
+                new ThreadPoolExecutor.AbortPolicy());
+
+        this.hits = requests(meterRegistry, "hit");
+        this.misses = requests(meterRegistry, "miss");
+        this.joined = requests(meterRegistry, "joined");
+        this.generation = Timer.builder(METRIC_PREFIX + ".generation")
+                .description("Time to generate and store an image derivative")
+                .register(meterRegistry);
+        meterRegistry.gauge(METRIC_PREFIX + ".in.flight", inFlight, Map::size);
+
+        // pick up the reader plugins from the (nested) application jars
+        ImageIO.scanForPlugins();
+        ImageIO.setUseCache(false);
+    }
+
+    private static Counter requests(MeterRegistry registry, String result) {
+        return Counter.builder(METRIC_PREFIX + ".requests")
+                .description("Requests for image derivatives")
+                .tag("result", result)
+                .register(registry);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Get a derivative of an image, generating it first if it doesn't exist yet.
+     *
+     * @param file the metadata of the original image.
+     * @param spec the derivative.
+     * @return the stored derivative.
+     * @throws ApiException 503 if the workers are saturated or the derivative
+     *                      isn't generated within {@code storage.file.derivative-timeout}.
+     */
+    public Derivative getOrCreate(CachedFileMetadata file, DerivativeSpec spec) {
+        String storagePath = spec.storagePath(file.storagePath());
+        Long existing = file.derivatives() == null ? null : file.derivatives().get(spec.name());
+        if (existing != null) {
+            hits.increment();
+            return new Derivative(storagePath, existing);
+        }
+
+        var created = new CompletableFuture<Long>();
+        var future = inFlight.putIfAbsent(storagePath, created);
+        if (future == null) {
+            misses.increment();
+            future = created;
+            submit(file, spec, storagePath, created);
+        } else {
+            joined.increment();
+        }
+        return new Derivative(storagePath, await(future));
+    }
+
+    private void submit(CachedFileMetadata file, DerivativeSpec spec, String storagePath, CompletableFuture<Long> result) {
+        try {
+            executor.execute(() -> {
+                try {
+                    result.complete(generation.recordCallable(() -> generate(file, spec, storagePath)));
+                } catch (Throwable e) {
+                    result.completeExceptionally(e);
+                } finally {
+                    inFlight.remove(storagePath, result);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            inFlight.remove(storagePath, result);
+            result.completeExceptionally(new ApiException(HttpStatus.SERVICE_UNAVAILABLE,
+                    "Too many derivatives being generated, try again later"));
+        }
+    }
+
+    private long await(CompletableFuture<Long> future) {
+        try {
+            return future.get(storageProperties.getDerivativeTimeout().toMillis(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            // keeps running, so a retry is likely to find it ready
+            throw new ApiException(HttpStatus.SERVICE_UNAVAILABLE, "Derivative is still being generated, try again later");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof ApiException apiException) {
+                throw apiException;
+            }
+            log.error("Failed to generate image derivative", e.getCause());
+            throw new ApiException(HttpStatus.INTERNAL_SERVER_ERROR, "Failed to generate derivative");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ApiException(HttpStatus.SERVICE_UNAVAILABLE, "Interrupted while generating derivative");
+        }
+    }
+
+    /**
+     * Generate the derivative, store it and record it on the file.
+     *
+     * @return the size of the derivative in bytes.
+     */
+    private long generate(CachedFileMetadata file, DerivativeSpec spec, String storagePath) throws Exception {
+        var storageProvider = providerRouter.provider(file.storageBackend());
+        BufferedImage source;
+        try (InputStream in = storageProvider.downloadFile(file.storagePath()).call()) {
+            source = read(in);
+        }
+        byte[] content = write(scale(source, spec), spec.format());
+
+        storageProvider.uploadFile(storagePath, content, spec.format().getMimeType());
+        String backend = file.storageBackend() == null ? null : file.storageBackend().name();
+        storageRepository.putMetadata(file.storagePath(), backend, spec.metadataKey(), String.valueOf(content.length));
+        metadataCache.evict(file.id());
+        log.debug("Generated derivative {} of file {} ({} bytes)", spec.name(), file.id(), content.length);
+        return content.length;
+    }
+
+    /**
+     * Decode an image, checking its dimensions before decoding the pixels.
+     */
+    private BufferedImage read(InputStream in) throws IOException {
+        try (ImageInputStream iis = ImageIO.createImageInputStream(in)) {
+            Iterator<ImageReader> readers = iis == null ? null : ImageIO.getImageReaders(iis);
+            if (readers == null || !readers.hasNext()) {
+                throw new ApiException(HttpStatus.UNSUPPORTED_MEDIA_TYPE, "Unsupported image format");
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(iis, true, true);
+                long pixels = (long) reader.getWidth(0) * reader.getHeight(0);
+                if (pixels > storageProperties.getDerivativeMaxSourcePixels()) {
+                    throw new ApiException(HttpStatus.UNPROCESSABLE_CONTENT, "Image is too large to generate derivatives");
+                }
+                return reader.read(0);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * Scale an image down to fit the derivative, halving it in steps first so
+     * bilinear sampling doesn't skip pixels on large reductions.
+     */
+    static BufferedImage scale(BufferedImage source, DerivativeSpec spec) {
+        int[] size = targetSize(source.getWidth(), source.getHeight(), spec.width(), spec.height());
+        int type = spec.format() == DerivativeFormat.JPEG ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB;
+
+        BufferedImage image = source;
+        int width = source.getWidth();
+        int height = source.getHeight();
+        do {
+            width = Math.max(size[0], width / 2);
+            height = Math.max(size[1], height / 2);
+            image = draw(image, width, height, type);
+        } while (width != size[0] || height != size[1]);
+        return image;
+    }
+
+    private static BufferedImage draw(BufferedImage source, int width, int height, int type) {
+        BufferedImage target = new BufferedImage(width, height, type);
+        Graphics2D g = target.createGraphics();
+        try {
+            if (type == BufferedImage.TYPE_INT_RGB) {
+                g.setColor(Color.WHITE); // JPEG has no alpha
+                g.fillRect(0, 0, width, height);
+            }
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            g.drawImage(source, 0, 0, width, height, null);
+        } finally {
+            g.dispose();
+        }
+        return target;
+    }
+
+    /**
+     * The size of an image scaled down (keeping its aspect ratio) to fit within
+     * the given box. Images smaller than the box keep their size.
+     *
+     * @param width     the width of the image.
+     * @param height    the height of the image.
+     * @param maxWidth  the max width (nullable).
+     * @param maxHeight the max height (nullable).
+     * @return the width and height of the scaled image.
+     */
+    static int[] targetSize(int width, int height, Integer maxWidth, Integer maxHeight) {
+        double scale = 1;
+        if (maxWidth != null)
+            scale = Math.min(scale, (double) maxWidth / width);
+        if (maxHeight != null)
+            scale = Math.min(scale, (double) maxHeight / height);
+        return new int[] {
+                Math.max(1, (int) Math.round(width * scale)),
+                Math.max(1, (int) Math.round(height * scale))
+        };
+    }
+
+    private static byte[] write(BufferedImage image, DerivativeFormat format) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName(format.getExtension()).next();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ImageOutputStream ios = ImageIO.createImageOutputStream(out)) {
+            writer.setOutput(ios);
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            if (format == DerivativeFormat.JPEG) {
+                param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+                param.setCompressionQuality(JPEG_QUALITY);
+            }
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return out.toByteArray();
+    }
+
+}
@@ -0,0 +1,49 @@
+package dev.fnvir.kajz.storageservice.service;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnBooleanProperty;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.stereotype.Component;
+
+import dev.fnvir.kajz.storageservice.annotation.ConditionalOnStorageProvider;
+import dev.fnvir.kajz.storageservice.config.KafkaTopicConfig;
+import dev.fnvir.kajz.storageservice.enums.StorageProviderType;
+import dev.fnvir.kajz.storageservice.util.ObjectCreatedNotifications;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import tools.jackson.databind.json.JsonMapper;
+
+/**
+ * Local stand-in for the notification bridges of the cloud providers: publishes
+ * an S3 shaped object created notification for each object written to the
+ * local filesystem provider, so uploads to it are completed by the
+ * {@link ObjectCreatedEventListener} as well (e.g. on CI and dev setups).
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+@ConditionalOnBooleanProperty("storage.upload-events.enabled")
+@ConditionalOnStorageProvider(StorageProviderType.LOCAL_FS)
+public class LocalObjectCreatedPublisher {
+
+    private final KafkaTemplate<String, String> kafkaTemplate;
+    private final JsonMapper jsonMapper;
+
+    /**
+     * Publish that an object was written.
+     *
+     * @param key  the key of the object.
+     * @param size the size of the object in bytes.
+     * @param eTag the ETag of the object.
+     */
+    public void publish(String key, long size, String eTag) {
+        String notification = jsonMapper.writeValueAsString(
+                ObjectCreatedNotifications.localFsNotification(jsonMapper, key, size, eTag));
+        kafkaTemplate.send(KafkaTopicConfig.OBJECT_CREATED_TOPIC, key, notification)
+                .whenComplete((_, ex) -> {
+                    if (ex != null) {
+                        log.error("Failed to publish object created notification of {}: {}", key, ex.getMessage());
+                    }
+                });
+    }
+
+}
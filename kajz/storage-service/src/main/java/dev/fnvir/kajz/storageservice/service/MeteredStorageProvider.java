@@ -0,0 +1,363 @@
+package dev.fnvir.kajz.storageservice.service;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import dev.fnvir.kajz.storageservice.dto.UploadValidationResultDTO;
+import dev.fnvir.kajz.storageservice.dto.res.InitiateUploadResponse;
+import dev.fnvir.kajz.storageservice.dto.res.PartUploadUrl;
+import dev.fnvir.kajz.storageservice.dto.res.PreSignedDownloadUrlResponse;
+import dev.fnvir.kajz.storageservice.enums.StorageProviderType;
+import dev.fnvir.kajz.storageservice.exception.NotFoundException;
+import dev.fnvir.kajz.storageservice.model.FileUpload;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Decorates a storage provider with a timer per operation, tagged with the
+ * provider type and the outcome, and counts the bytes of the downloads
+ * streamed from it.
+ *
+ * <p>
+ * The timers publish histogram buckets around the latency SLOs of the service
+ * rather than percentiles computed per instance, so p95/p99 can be aggregated
+ * across instances (e.g. with {@code histogram_quantile}). Downloads are timed
+ * until the provider has responded (the stream is open), not until the body has
+ * been transferred, which depends on the client.
+ * </p>
+ */
+class MeteredStorageProvider extends AbstractStorageProvider {
+
+    static final String METRIC_PREFIX = "storage.provider";
+
+    static final String SUCCESS = "success";
+    static final String REJECTED = "rejected";
+    static final String NOT_FOUND = "not-found";
+    static final String ERROR = "error";
+
+    /**
+     * The bucket boundaries of the latency histograms: metadata requests and
+     * opening a download should stay in the tens of milliseconds, content
+     * validation and multipart completion may take seconds.
+     */
+    static final Duration[] SLO_BUCKETS = {
+            Duration.ofMillis(5), Duration.ofMillis(10), Duration.ofMillis(25), Duration.ofMillis(50),
+            Duration.ofMillis(100), Duration.ofMillis(250), Duration.ofMillis(500), Duration.ofSeconds(1),
+            Duration.ofMillis(2500), Duration.ofSeconds(5), Duration.ofSeconds(10), Duration.ofSeconds(30) };
+
+    private final AbstractStorageProvider delegate;
+    private final StorageProviderType providerType;
+    private final MeterRegistry meterRegistry;
+
+    /** The timers by operation and outcome. */
+    private final Map<String, Timer> timers = new ConcurrentHashMap<>();
+
+    private final Counter bytesStreamed;
+    private final Counter bytesStreamedNonBlocking;
+
+    MeteredStorageProvider(AbstractStorageProvider delegate, MeterRegistry meterRegistry) {
+        this.delegate = delegate;
+        this.providerType = delegate.getProviderType();
+        this.meterRegistry = meterRegistry;
+        this.bytesStreamed = bytesStreamed(meterRegistry, "blocking");
+        this.bytesStreamedNonBlocking = bytesStreamed(meterRegistry, "non-blocking");
+    }
+
+    private Counter bytesStreamed(MeterRegistry registry, String mode) {
+        return Counter.builder(METRIC_PREFIX + ".bytes.streamed")
+                .description("Bytes of files and byte ranges streamed from the storage provider")
+                .baseUnit("bytes")
+                .tag("provider", providerType.name())
+                .tag("mode", mode)
+                .register(registry);
+    }
+
+    /**
+     * @return the decorated storage provider.
+     */
+    AbstractStorageProvider getDelegate() {
+        return delegate;
+    }
+
+    @Override
+    public StorageProviderType getProviderType() {
+        return providerType;
+    }
+
+    @Override
+    public InitiateUploadResponse initiateUpload(FileUpload file) {
+        return timed("initiate-upload", () -> delegate.initiateUpload(file));
+    }
+
+    @Override
+    public UploadValidationResultDTO validateUploadCompletion(FileUpload file) {
+        return timed("validate-upload-completion", () -> delegate.validateUploadCompletion(file));
+    }
+
+    @Override
+    public UploadValidationResultDTO checkUploadCompletion(FileUpload file) {
+        return timed("check-upload-completion", () -> delegate.checkUploadCompletion(file));
+    }
+
+    @Override
+    public UploadValidationResultDTO validateUploadContent(FileUpload file) {
+        return timed("validate-upload-content", () -> delegate.validateUploadContent(file));
+    }
+
+    @Override
+    public void uploadFile(String key, byte[] content, String contentType) {
+        timed("upload-file", () -> {
+            delegate.uploadFile(key, content, contentType);
+            return null;
+        });
+    }
+
+    @Override
+    public void uploadFile(String key, InputStream content, long contentLength, String contentType) {
+        timed("upload-file", () -> {
+            delegate.uploadFile(key, content, contentLength, contentType);
+            return null;
+        });
+    }
+
+    @Override
+    public boolean supportsColdStorageClass() {
+        return delegate.supportsColdStorageClass();
+    }
+
+    @Override
+    public long maxColdStorageClassSize() {
+        return delegate.maxColdStorageClassSize();
+    }
+
+    @Override
+    public Set<String> moveToColdStorageClass(Collection<String> keys) {
+        return timed("move-to-cold-storage-class", () -> delegate.moveToColdStorageClass(keys));
+    }
+
+    @Override
+    public boolean deleteFile(String key) {
+        return timed("delete-file", () -> delegate.deleteFile(key));
+    }
+
+    @Override
+    public Set<String> deleteFiles(Collection<String> keys) {
+        return timed("delete-files", () -> delegate.deleteFiles(keys));
+    }
+
+    @Override
+    public Callable<InputStream> downloadFile(String key) {
+        Callable<InputStream> open = delegate.downloadFile(key);
+        return () -> counting(timedCall("download-open", open));
+    }
+
+    @Override
+    public Callable<InputStream> downloadFileRange(String key, long start, long end) {
+        Callable<InputStream> open = delegate.downloadFileRange(key, start, end);
+        return () -> counting(timedCall("download-range-open", open));
+    }
+
+    @Override
+    public CompletableFuture<Publisher<ByteBuffer>> downloadFileNonBlocking(String key) {
+        return timedAsync("download-open", () -> delegate.downloadFileNonBlocking(key));
+    }
+
+    @Override
+    public CompletableFuture<Publisher<ByteBuffer>> downloadFileRangeNonBlocking(String key, long start, long end) {
+        return timedAsync("download-range-open", () -> delegate.downloadFileRangeNonBlocking(key, start, end));
+    }
+
+    @Override
+    public String createMultipartUpload(FileUpload file) {
+        return timed("create-multipart-upload", () -> delegate.createMultipartUpload(file));
+    }
+
+    @Override
+    public List<PartUploadUrl> generatePartUploadUrls(FileUpload file, Collection<Integer> partNumbers) {
+        return timed("presign-part-uploads", () -> delegate.generatePartUploadUrls(file, partNumbers));
+    }
+
+    @Override
+    public Map<Integer, String> listUploadedParts(FileUpload file) {
+        return timed("list-uploaded-parts", () -> delegate.listUploadedParts(file));
+    }
+
+    @Override
+    public void completeMultipartUpload(FileUpload file) {
+        timed("complete-multipart-upload", () -> {
+            delegate.completeMultipartUpload(file);
+            return null;
+        });
+    }
+
+    @Override
+    public void abortMultipartUpload(String key, String uploadId) {
+        timed("abort-multipart-upload", () -> {
+            delegate.abortMultipartUpload(key, uploadId);
+            return null;
+        });
+    }
+
+    @Override
+    public PreSignedDownloadUrlResponse generatePreSignedDownloadUrl(String key, Duration expiry) {
+        return timed("presign-download", () -> delegate.generatePreSignedDownloadUrl(key, expiry));
+    }
+
+    private <T> T timed(String operation, Supplier<T> call) {
+        long start = System.nanoTime();
+        try {
+            T result = call.get();
+            record(operation, start, outcomeOf(result));
+            return result;
+        } catch (RuntimeException e) {
+            record(operation, start, outcomeOf(e));
+            throw e;
+        }
+    }
+
+    private <T> T timedCall(String operation, Callable<T> call) throws Exception {
+        long start = System.nanoTime();
+        try {
+            T result = call.call();
+            record(operation, start, SUCCESS);
+            return result;
+        } catch (Exception e) {
+            record(operation, start, outcomeOf(e));
+            throw e;
+        }
+    }
+
+    /**
+     * Time a non-blocking download until the provider has responded.
+     */
+    private CompletableFuture<Publisher<ByteBuffer>> timedAsync(String operation,
+            Supplier<CompletableFuture<Publisher<ByteBuffer>>> call) {
+        long start = System.nanoTime();
+        CompletableFuture<Publisher<ByteBuffer>> future;
+        try {
+            future = call.get();
+        } catch (RuntimeException e) {
+            record(operation, start, outcomeOf(e));
+            throw e;
+        }
+        return future.whenComplete((_, e) -> record(operation, start, e == null ? SUCCESS : outcomeOf(e)))
+                .thenApply(this::counting);
+    }
+
+    private void record(String operation, long startNanos, String outcome) {
+        timer(operation, outcome).record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    Timer timer(String operation, String outcome) {
+        return timers.computeIfAbsent(operation + ':' + outcome, _ -> Timer.builder(METRIC_PREFIX + ".operation")
+                .description("Latency of the operations of the storage provider")
+                .tag("provider", providerType.name())
+                .tag("operation", operation)
+                .tag("outcome", outcome)
+                .serviceLevelObjectives(SLO_BUCKETS)
+                .minimumExpectedValue(SLO_BUCKETS[0])
+                .maximumExpectedValue(SLO_BUCKETS[SLO_BUCKETS.length - 1])
+                .register(meterRegistry));
+    }
+
+    private static String outcomeOf(Object result) {
+        return result instanceof UploadValidationResultDTO validation && !validation.isSuccess() ? REJECTED : SUCCESS;
+    }
+
+    private static String outcomeOf(Throwable e) {
+        while ((e instanceof CompletionException || e instanceof ExecutionException) && e.getCause() != null) {
+            e = e.getCause();
+        }
+        return e instanceof NotFoundException ? NOT_FOUND : ERROR;
+    }
+
+    private InputStream counting(InputStream in) {
+        return in == null ? null : new CountingInputStream(in, bytesStreamed);
+    }
+
+    private Publisher<ByteBuffer> counting(Publisher<ByteBuffer> publisher) {
+        return subscriber -> publisher.subscribe(new Subscriber<ByteBuffer>() {
+            @Override
+            public void onSubscribe(Subscription subscription) {
+                subscriber.onSubscribe(subscription);
+            }
+
+            @Override
+            public void onNext(ByteBuffer buffer) {
+                bytesStreamedNonBlocking.increment(buffer.remaining()); // before it's consumed
+                subscriber.onNext(buffer);
+            }
+
+            @Override
+            public void onError(Throwable e) {
+                subscriber.onError(e);
+            }
+
+            @Override
+            public void onComplete() {
+                subscriber.onComplete();
+            }
+        });
+    }
+
+    /**
+     * Counts the bytes read from a stream. {@link #transferTo(OutputStream)} is
+     * delegated as is, keeping the zero-copy transfers of the local provider.
+     */
+    private static final class CountingInputStream extends FilterInputStream {
+
+        private final Counter counter;
+
+        CountingInputStream(InputStream in, Counter counter) {
+            super(in);
+            this.counter = counter;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = in.read();
+            if (b >= 0) {
+                counter.increment();
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = in.read(b, off, len);
+            if (n > 0) {
+                counter.increment(n);
+            }
+            return n;
+        }
+
+        @Override
+        public long transferTo(OutputStream out) throws IOException {
+            long n = in.transferTo(out);
+            counter.increment(n);
+            return n;
+        }
+
+    }
+
+}
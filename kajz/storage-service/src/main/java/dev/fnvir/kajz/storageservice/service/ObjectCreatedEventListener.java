@@ -0,0 +1,115 @@
+package dev.fnvir.kajz.storageservice.service;
+
+import java.util.List;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnBooleanProperty;
+import org.springframework.kafka.annotation.BackOff;
+import org.springframework.kafka.annotation.DltHandler;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.annotation.RetryableTopic;
+import org.springframework.kafka.retrytopic.TopicSuffixingStrategy;
+import org.springframework.kafka.support.KafkaHeaders;
+import org.springframework.messaging.handler.annotation.Header;
+import org.springframework.stereotype.Service;
+
+import dev.fnvir.kajz.storageservice.config.KafkaTopicConfig;
+import dev.fnvir.kajz.storageservice.dto.event.ObjectCreatedEvent;
+import dev.fnvir.kajz.storageservice.exception.ApiException;
+import dev.fnvir.kajz.storageservice.util.ObjectCreatedNotifications;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import tools.jackson.core.JacksonException;
+import tools.jackson.databind.json.JsonMapper;
+
+/**
+ * Completes uploads when their storage provider notifies that the object was
+ * created, so clients don't have to call the complete upload endpoint (and
+ * forgotten uploads aren't left to the cleanup job).
+ *
+ * <p>
+ * Consumes the S3 event notifications and Azure Event Grid {@code BlobCreated}
+ * events forwarded to {@link KafkaTopicConfig#OBJECT_CREATED_TOPIC} by a
+ * bridge. Notifications may be delivered more than once and race the client
+ * completing the upload itself, which is handled by
+ * {@link StorageService#completeUploadedObject(ObjectCreatedEvent)}.
+ * </p>
+ */
+@Slf4j
+@Service
+@ConditionalOnBooleanProperty("storage.upload-events.enabled")
+public class ObjectCreatedEventListener {
+
+    private static final String METRIC_PREFIX = "storage.upload.events";
+
+    private final StorageService storageService;
+    private final JsonMapper jsonMapper;
+
+    private final Counter completed;
+    private final Counter skipped;
+    private final Counter rejected;
+
+    public ObjectCreatedEventListener(StorageService storageService, JsonMapper jsonMapper,
+            MeterRegistry meterRegistry) {
+        this.storageService = storageService;
+        this.jsonMapper = jsonMapper;
+        this.completed = outcome(meterRegistry, "completed");
+        this.skipped = outcome(meterRegistry, "skipped");
+        this.rejected = outcome(meterRegistry, "rejected");
+    }
+
+    private static Counter outcome(MeterRegistry registry, String outcome) {
+        return Counter.builder(METRIC_PREFIX)
+                .description("Object created notifications, by what they did to the upload")
+                .tag("outcome", outcome)
+                .register(registry);
+    }
+
+    @KafkaListener(topics = KafkaTopicConfig.OBJECT_CREATED_TOPIC, groupId = "storage-service-group")
+    @RetryableTopic(
+        attempts = "3",
+        backOff = @BackOff(delay = 5000, multiplier = 2.0, maxDelay = 30000),
+        topicSuffixingStrategy = TopicSuffixingStrategy.SUFFIX_WITH_INDEX_VALUE
+    )
+    public void handleObjectCreated(
+            String payload,
+            @Header(KafkaHeaders.RECEIVED_TOPIC) String topic,
+            @Header(KafkaHeaders.RECEIVED_PARTITION) int partition,
+            @Header(KafkaHeaders.OFFSET) long offset
+    ) {
+        List<ObjectCreatedEvent> events;
+        try {
+            events = ObjectCreatedNotifications.parse(jsonMapper.readTree(payload));
+        } catch (JacksonException e) {
+            log.error("Skipping event! Unable to read object created notification in topic: {}, partition: {}, offset: {}.",
+                    topic, partition, offset);
+            return;
+        }
+        log.debug("Received {} created objects from topic: {}, partition: {}, offset: {}",
+                events.size(), topic, partition, offset);
+
+        for (ObjectCreatedEvent event : events) {
+            try {
+                if (storageService.completeUploadedObject(event)) {
+                    completed.increment();
+                } else {
+                    skipped.increment();
+                }
+            } catch (ApiException e) {
+                if (e.getResponseStatus().is5xxServerError()) {
+                    throw e; // e.g. the provider is unavailable, retried (completing is idempotent)
+                }
+                // not retried: the object is gone or isn't a valid upload (already marked as FAILED)
+                log.debug("Upload of {} in {} not completed: {}", event.key(), event.provider(), e.getMessage());
+                rejected.increment();
+            }
+        }
+    }
+
+    @DltHandler
+    public void handleObjectCreatedDlt(String payload, @Header(KafkaHeaders.RECEIVED_TOPIC) String topic) {
+        log.warn("New event on object-created-dlt from topic {}, its uploads are left to the client or the cleanup job",
+                topic);
+    }
+
+}
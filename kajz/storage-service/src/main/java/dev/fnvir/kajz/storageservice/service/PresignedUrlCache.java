@@ -0,0 +1,138 @@
+package dev.fnvir.kajz.storageservice.service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+import org.springframework.stereotype.Component;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+
+import dev.fnvir.kajz.storageservice.config.StorageCacheProperties;
+import dev.fnvir.kajz.storageservice.dto.res.PreSignedDownloadUrlResponse;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * In-memory cache of pre-signed download URLs, so repeated requests for the
+ * same file get the same URL (which browsers can cache) instead of signing a
+ * new one every time.
+ *
+ * <p>
+ * A URL is reused until {@code storage.cache.presigned-url.reuse-fraction} of
+ * its lifetime has passed, so a returned URL still has at least
+ * {@code (1 - reuse-fraction)} of its lifetime left.
+ * </p>
+ */
+@Component
+public class PresignedUrlCache {
+
+    private static final String METRIC_PREFIX = "storage.presigned.url";
+
+    private final StorageCacheProperties.PresignedUrl properties;
+    private final Cache<Key, PreSignedDownloadUrlResponse> cache;
+
+    /** The keys of the cached URLs by file, so a file's URLs are evicted without a scan. */
+    private final Map<Long, Set<Key>> keysByFile = new ConcurrentHashMap<>();
+
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter signed;
+
+    public PresignedUrlCache(StorageCacheProperties cacheProperties, MeterRegistry meterRegistry) {
+        this.properties = cacheProperties.getPresignedUrl();
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(properties.getMaxSize())
+                .expireAfter(Expiry.creating((Key _, PreSignedDownloadUrlResponse url) -> reuseWindow(url)))
+                .evictionListener((Key key, PreSignedDownloadUrlResponse _, RemovalCause _) -> unindex(key))
+                .build();
+
+        this.hits = Counter.builder(METRIC_PREFIX + ".cache")
+                .description("Lookups of the pre-signed URL cache")
+                .tag("result", "hit")
+                .register(meterRegistry);
+        this.misses = Counter.builder(METRIC_PREFIX + ".cache")
+                .description("Lookups of the pre-signed URL cache")
+                .tag("result", "miss")
+                .register(meterRegistry);
+        this.signed = Counter.builder(METRIC_PREFIX + ".signed")
+                .description("Pre-signed download URLs generated")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Get a reusable pre-signed URL, signing a new one on a miss.
+     *
+     * @param fileId the ID of the file.
+     * @param userId the ID of the user the URL is for.
+     * @param expiry the lifetime of the URL.
+     * @param signer signs a new URL.
+     * @return the pre-signed URL.
+     */
+    public PreSignedDownloadUrlResponse get(Long fileId, UUID userId, Duration expiry,
+            Supplier<PreSignedDownloadUrlResponse> signer) {
+        if (!Boolean.TRUE.equals(properties.getEnabled())) {
+            signed.increment();
+            return signer.get();
+        }
+        Key key = new Key(fileId, userId, expiry.toSeconds());
+        PreSignedDownloadUrlResponse cached = cache.getIfPresent(key);
+        if (cached != null) {
+            hits.increment();
+            return cached;
+        }
+        misses.increment();
+        return cache.get(key, _ -> {
+            signed.increment();
+            PreSignedDownloadUrlResponse url = signer.get();
+            keysByFile.computeIfAbsent(fileId, _ -> ConcurrentHashMap.newKeySet()).add(key);
+            return url;
+        });
+    }
+
+    /**
+     * Drop the cached URLs of a file, e.g. once it's deleted.
+     *
+     * @param fileId the ID of the file.
+     */
+    public void evict(Long fileId) {
+        Set<Key> keys = keysByFile.remove(fileId);
+        if (keys != null) {
+            cache.invalidateAll(keys);
+        }
+    }
+
+    /**
+     * Drop an expired or evicted URL from the index of its file.
+     */
+    private void unindex(Key key) {
+        keysByFile.computeIfPresent(key.fileId(), (_, keys) -> {
+            keys.remove(key);
+            return keys.isEmpty() ? null : keys;
+        });
+    }
+
+    private Duration reuseWindow(PreSignedDownloadUrlResponse url) {
+        Duration remaining = Duration.between(Instant.now(), url.expiresAt());
+        if (remaining.isNegative()) {
+            return Duration.ZERO;
+        }
+        return Duration.ofMillis((long) (remaining.toMillis() * properties.getReuseFraction()));
+    }
+
+    /**
+     * @param fileId        the ID of the file
+     * @param userId        the ID of the user the URL is for
+     * @param expirySeconds the lifetime of the URL, so callers asking for
+     *                      different lifetimes don't share URLs
+     */
+    private record Key(Long fileId, UUID userId, long expirySeconds) {}
+
+}
@@ -0,0 +1,607 @@
+package dev.fnvir.kajz.storageservice.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import org.jspecify.annotations.Nullable;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import dev.fnvir.kajz.storageservice.config.StorageResilienceProperties;
+import dev.fnvir.kajz.storageservice.dto.UploadValidationResultDTO;
+import dev.fnvir.kajz.storageservice.dto.res.InitiateUploadResponse;
+import dev.fnvir.kajz.storageservice.dto.res.PartUploadUrl;
+import dev.fnvir.kajz.storageservice.dto.res.PreSignedDownloadUrlResponse;
+import dev.fnvir.kajz.storageservice.enums.StorageProviderType;
+import dev.fnvir.kajz.storageservice.exception.ApiException;
+import dev.fnvir.kajz.storageservice.exception.ServiceUnavailableException;
+import dev.fnvir.kajz.storageservice.model.FileUpload;
+import io.github.resilience4j.bulkhead.Bulkhead;
+import io.github.resilience4j.bulkhead.BulkheadConfig;
+import io.github.resilience4j.bulkhead.BulkheadFullException;
+import io.github.resilience4j.bulkhead.BulkheadRegistry;
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.github.resilience4j.micrometer.tagged.TaggedBulkheadMetrics;
+import io.github.resilience4j.micrometer.tagged.TaggedCircuitBreakerMetrics;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Decorates a storage provider with resilience policies per operation, so an
+ * outage of the provider fails calls fast instead of piling them up:
+ * <ul>
+ * <li>a timeout: calls run on virtual threads and are abandoned (interrupted)
+ * once it expires, releasing the caller and its transaction,</li>
+ * <li>a circuit breaker, opening on a high rate of failed or slow calls,</li>
+ * <li>a bulkhead, limiting the concurrent calls,</li>
+ * <li>optionally, hedged reads: when opening a download hasn't responded after
+ * the p95 latency, a second request is sent and the first response used.</li>
+ * </ul>
+ *
+ * <p>
+ * Rejected calls fail with a {@link ServiceUnavailableException}. Errors of the
+ * request itself ({@link ApiException}, e.g. a missing file) don't count as
+ * failures. The circuit breakers and bulkheads are exported as
+ * {@code resilience4j.*} metrics, named {@code <provider>.<operation>}.
+ * </p>
+ */
+class ResilientStorageProvider extends AbstractStorageProvider {
+
+    static final String METRIC_PREFIX = "storage.provider";
+
+    private static final Consumer<Object> IGNORE = _ -> {};
+    private static final Consumer<InputStream> CLOSE = ResilientStorageProvider::closeQuietly;
+    private static final Consumer<Publisher<ByteBuffer>> CANCEL = ResilientStorageProvider::cancel;
+
+    private final AbstractStorageProvider delegate;
+    private final StorageProviderType providerType;
+    private final StorageResilienceProperties properties;
+    private final MeterRegistry meterRegistry;
+
+    private final CircuitBreakerRegistry circuitBreakers = CircuitBreakerRegistry.ofDefaults();
+    private final BulkheadRegistry bulkheads = BulkheadRegistry.ofDefaults();
+
+    /** The policies by operation, created on first use. */
+    private final Map<String, Guard> guards = new ConcurrentHashMap<>();
+
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    ResilientStorageProvider(AbstractStorageProvider delegate, StorageResilienceProperties properties,
+            MeterRegistry meterRegistry) {
+        this.delegate = delegate;
+        this.providerType = delegate.getProviderType();
+        this.properties = properties;
+        this.meterRegistry = meterRegistry;
+        TaggedCircuitBreakerMetrics.ofCircuitBreakerRegistry(circuitBreakers).bindTo(meterRegistry);
+        TaggedBulkheadMetrics.ofBulkheadRegistry(bulkheads).bindTo(meterRegistry);
+    }
+
+    /**
+     * @return the decorated storage provider.
+     */
+    AbstractStorageProvider getDelegate() {
+        return delegate;
+    }
+
+    /**
+     * Interrupt the calls still running, e.g. abandoned after their timeout.
+     */
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    @Override
+    public StorageProviderType getProviderType() {
+        return providerType;
+    }
+
+    @Override
+    public InitiateUploadResponse initiateUpload(FileUpload file) {
+        return call("initiate-upload", () -> delegate.initiateUpload(file));
+    }
+
+    @Override
+    public UploadValidationResultDTO validateUploadCompletion(FileUpload file) {
+        return call("validate-upload-completion", () -> delegate.validateUploadCompletion(file));
+    }
+
+    @Override
+    public UploadValidationResultDTO checkUploadCompletion(FileUpload file) {
+        return call("check-upload-completion", () -> delegate.checkUploadCompletion(file));
+    }
+
+    @Override
+    public UploadValidationResultDTO validateUploadContent(FileUpload file) {
+        return call("validate-upload-content", () -> delegate.validateUploadContent(file));
+    }
+
+    @Override
+    public void uploadFile(String key, byte[] content, String contentType) {
+        call("upload-file", () -> {
+            delegate.uploadFile(key, content, contentType);
+            return null;
+        });
+    }
+
+    @Override
+    public void uploadFile(String key, InputStream content, long contentLength, String contentType) {
+        call("upload-file", () -> {
+            delegate.uploadFile(key, content, contentLength, contentType);
+            return null;
+        });
+    }
+
+    @Override
+    public boolean supportsColdStorageClass() {
+        return delegate.supportsColdStorageClass();
+    }
+
+    @Override
+    public long maxColdStorageClassSize() {
+        return delegate.maxColdStorageClassSize();
+    }
+
+    @Override
+    public Set<String> moveToColdStorageClass(Collection<String> keys) {
+        return call("move-to-cold-storage-class", () -> delegate.moveToColdStorageClass(keys));
+    }
+
+    @Override
+    public boolean deleteFile(String key) {
+        return call("delete-file", () -> delegate.deleteFile(key));
+    }
+
+    @Override
+    public Set<String> deleteFiles(Collection<String> keys) {
+        return call("delete-files", () -> delegate.deleteFiles(keys));
+    }
+
+    @Override
+    public Callable<InputStream> downloadFile(String key) {
+        Callable<InputStream> open = delegate.downloadFile(key);
+        return () -> await(read("download-open", () -> submit(open, CLOSE), CLOSE));
+    }
+
+    @Override
+    public Callable<InputStream> downloadFileRange(String key, long start, long end) {
+        Callable<InputStream> open = delegate.downloadFileRange(key, start, end);
+        return () -> await(read("download-range-open", () -> submit(open, CLOSE), CLOSE));
+    }
+
+    @Override
+    public CompletableFuture<Publisher<ByteBuffer>> downloadFileNonBlocking(String key) {
+        return read("download-open", () -> delegate.downloadFileNonBlocking(key), CANCEL)
+                .exceptionallyCompose(e -> CompletableFuture.failedFuture(failure(e)));
+    }
+
+    @Override
+    public CompletableFuture<Publisher<ByteBuffer>> downloadFileRangeNonBlocking(String key, long start, long end) {
+        return read("download-range-open", () -> delegate.downloadFileRangeNonBlocking(key, start, end), CANCEL)
+                .exceptionallyCompose(e -> CompletableFuture.failedFuture(failure(e)));
+    }
+
+    @Override
+    public String createMultipartUpload(FileUpload file) {
+        return call("create-multipart-upload", () -> delegate.createMultipartUpload(file));
+    }
+
+    @Override
+    public List<PartUploadUrl> generatePartUploadUrls(FileUpload file, Collection<Integer> partNumbers) {
+        return call("presign-part-uploads", () -> delegate.generatePartUploadUrls(file, partNumbers));
+    }
+
+    @Override
+    public Map<Integer, String> listUploadedParts(FileUpload file) {
+        return call("list-uploaded-parts", () -> delegate.listUploadedParts(file));
+    }
+
+    @Override
+    public void completeMultipartUpload(FileUpload file) {
+        call("complete-multipart-upload", () -> {
+            delegate.completeMultipartUpload(file);
+            return null;
+        });
+    }
+
+    @Override
+    public void abortMultipartUpload(String key, String uploadId) {
+        call("abort-multipart-upload", () -> {
+            delegate.abortMultipartUpload(key, uploadId);
+            return null;
+        });
+    }
+
+    @Override
+    public PreSignedDownloadUrlResponse generatePreSignedDownloadUrl(String key, Duration expiry) {
+        return call("presign-download", () -> delegate.generatePreSignedDownloadUrl(key, expiry));
+    }
+
+    Guard guard(String operation) {
+        return guards.computeIfAbsent(operation, _ -> {
+            var policy = properties.policy(operation);
+            String name = providerType.name() + "." + operation;
+            var circuitBreaker = circuitBreakers.circuitBreaker(name, CircuitBreakerConfig.custom()
+                    .failureRateThreshold(policy.getFailureRateThreshold())
+                    .slowCallDurationThreshold(policy.getSlowCallDuration())
+                    .slowCallRateThreshold(policy.getSlowCallRateThreshold())
+                    .slidingWindowSize(policy.getSlidingWindowSize())
+                    .minimumNumberOfCalls(policy.getMinimumNumberOfCalls())
+                    .waitDurationInOpenState(policy.getWaitInOpenState())
+                    .ignoreExceptions(ApiException.class, UnsupportedOperationException.class)
+                    .build());
+            var bulkhead = bulkheads.bulkhead(name, BulkheadConfig.custom()
+                    .maxConcurrentCalls(policy.getMaxConcurrentCalls())
+                    .maxWaitDuration(policy.getMaxWait())
+                    .build());
+            return new Guard(policy, circuitBreaker, bulkhead, new LatencyWindow(),
+                    hedged(operation, "first"), hedged(operation, "hedge"));
+        });
+    }
+
+    private Counter hedged(String operation, String winner) {
+        return Counter.builder(METRIC_PREFIX + ".hedged")
+                .description("Reads for which a hedged request was sent, by the request responding first")
+                .tag("provider", providerType.name())
+                .tag("operation", operation)
+                .tag("winner", winner)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Run a call under the policy of its operation, waiting for the result.
+     */
+    private <T> T call(String operation, Supplier<T> call) {
+        Guard guard = guard(operation);
+        try {
+            return await(attempt(guard, () -> submit(call::get, IGNORE), IGNORE));
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IllegalStateException(e); // not thrown by suppliers
+        }
+    }
+
+    /**
+     * Open a read under the policy of its operation, hedged if enabled.
+     */
+    private <T> CompletableFuture<T> read(String operation, Supplier<CompletableFuture<T>> start,
+            Consumer<? super T> discard) {
+        Guard guard = guard(operation);
+        Duration delay = guard.hedgeDelay();
+        if (delay == null) {
+            return attempt(guard, start, discard);
+        }
+        var hedge = new Hedge<T>(guard, () -> attempt(guard, start, discard), discard);
+        hedge.launch(false);
+        CompletableFuture.delayedExecutor(delay.toNanos(), TimeUnit.NANOSECONDS, executor)
+                .execute(() -> hedge.launch(true));
+        return hedge.result;
+    }
+
+    /**
+     * Start one attempt of a call through the bulkhead and the circuit breaker
+     * of its operation, timing out after the timeout of the operation.
+     *
+     * @param start   starts the call.
+     * @param discard releases a result which arrives after the attempt was
+     *                abandoned.
+     * @return the result of the attempt.
+     */
+    private <T> CompletableFuture<T> attempt(Guard guard, Supplier<CompletableFuture<T>> start,
+            Consumer<? super T> discard) {
+        try {
+            guard.bulkhead().acquirePermission();
+        } catch (BulkheadFullException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        try {
+            guard.circuitBreaker().acquirePermission();
+        } catch (CallNotPermittedException e) {
+            guard.bulkhead().onComplete();
+            return CompletableFuture.failedFuture(e);
+        }
+
+        long startNanos = System.nanoTime();
+        CompletableFuture<T> call;
+        try {
+            call = start.get();
+        } catch (RuntimeException e) {
+            call = CompletableFuture.failedFuture(e);
+        }
+        CompletableFuture<T> pending = call;
+        // records the outcome and frees the permits exactly once, whether the
+        // attempt completes, times out or is abandoned by the caller
+        var released = new AtomicBoolean();
+        Consumer<@Nullable Throwable> release = e -> {
+            if (!released.compareAndSet(false, true)) {
+                return;
+            }
+            long duration = System.nanoTime() - startNanos;
+            Throwable cause = unwrap(e);
+            if (cause == null) {
+                guard.circuitBreaker().onSuccess(duration, TimeUnit.NANOSECONDS);
+                if (guard.policy().getHedge()) {
+                    guard.latencies().record(duration);
+                }
+            } else if (cause instanceof CancellationException) {
+                guard.circuitBreaker().releasePermission(); // e.g. the other hedged request won
+            } else {
+                guard.circuitBreaker().onError(duration, TimeUnit.NANOSECONDS, cause);
+            }
+            guard.bulkhead().onComplete();
+            if (e != null) {
+                pending.cancel(true);
+            }
+        };
+
+        CompletableFuture<T> attempt = new CompletableFuture<>();
+        call.whenComplete((value, e) -> {
+            if (e != null) {
+                attempt.completeExceptionally(e);
+            } else if (!attempt.complete(value)) {
+                discard.accept(value);
+            }
+        });
+        // the caller sees the result once it's recorded, and may abandon the attempt
+        CompletableFuture<T> settled = new CompletableFuture<>();
+        attempt.orTimeout(guard.policy().getTimeout().toNanos(), TimeUnit.NANOSECONDS)
+                .whenComplete((value, e) -> {
+            release.accept(e);
+            if (e != null) {
+                settled.completeExceptionally(e);
+            } else if (!settled.complete(value)) {
+                discard.accept(value); // abandoned while completing
+            }
+        });
+        settled.whenComplete((_, e) -> {
+            if (e instanceof CancellationException) {
+                attempt.cancel(true);
+                release.accept(e);
+            }
+        });
+        return settled;
+    }
+
+    /**
+     * Run a blocking call on a virtual thread, interrupted once abandoned.
+     */
+    private <T> CompletableFuture<T> submit(Callable<T> call, Consumer<? super T> discard) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        Future<?> task = executor.submit(() -> {
+            try {
+                T value = call.call();
+                if (!future.complete(value)) {
+                    discard.accept(value);
+                }
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
+            }
+        });
+        future.whenComplete((_, e) -> {
+            if (e != null) {
+                task.cancel(true);
+            }
+        });
+        return future;
+    }
+
+    private static <T> T await(CompletableFuture<T> future) throws Exception {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw e;
+        } catch (ExecutionException e) {
+            throw failure(e.getCause());
+        }
+    }
+
+    /**
+     * Map a failed call to the exception thrown to the caller.
+     */
+    private static Exception failure(Throwable e) {
+        Throwable cause = unwrap(e);
+        return switch (cause) {
+            case CallNotPermittedException _ ->
+                new ServiceUnavailableException("Storage provider is unavailable", cause);
+            case BulkheadFullException _ ->
+                new ServiceUnavailableException("Storage provider is overloaded", cause);
+            case TimeoutException _ ->
+                new ServiceUnavailableException("Storage provider timed out", cause);
+            case Exception ex -> ex;
+            case Error err -> throw err;
+            default -> new IllegalStateException(cause);
+        };
+    }
+
+    private static @Nullable Throwable unwrap(@Nullable Throwable e) {
+        while ((e instanceof CompletionException || e instanceof ExecutionException) && e.getCause() != null) {
+            e = e.getCause();
+        }
+        return e;
+    }
+
+    private static void closeQuietly(InputStream in) {
+        try {
+            in.close();
+        } catch (IOException _) {
+        }
+    }
+
+    /** Release the connection of a download which won't be read. */
+    private static void cancel(Publisher<ByteBuffer> publisher) {
+        publisher.subscribe(new Subscriber<ByteBuffer>() {
+            @Override
+            public void onSubscribe(Subscription subscription) {
+                subscription.cancel();
+            }
+
+            @Override
+            public void onNext(ByteBuffer buffer) {
+            }
+
+            @Override
+            public void onError(Throwable e) {
+            }
+
+            @Override
+            public void onComplete() {
+            }
+        });
+    }
+
+    /**
+     * The policy, circuit breaker and bulkhead of an operation.
+     */
+    record Guard(
+            StorageResilienceProperties.Policy policy,
+            CircuitBreaker circuitBreaker,
+            Bulkhead bulkhead,
+            LatencyWindow latencies,
+            Counter firstWon,
+            Counter hedgeWon
+    ) {
+
+        /**
+         * @return the delay before a hedged request, null if reads of the
+         *         operation aren't hedged (yet).
+         */
+        @Nullable Duration hedgeDelay() {
+            if (!policy.getHedge()) {
+                return null;
+            }
+            Duration delay = policy.getHedgeDelay() != null ? policy.getHedgeDelay() : latencies.p95();
+            if (delay == null) {
+                return null; // not enough samples yet
+            }
+            return delay.compareTo(policy.getHedgeMinDelay()) < 0 ? policy.getHedgeMinDelay() : delay;
+        }
+
+    }
+
+    /**
+     * A read sent once, and a second time if the first request hasn't
+     * responded after the hedge delay. Completes with the first response; the
+     * other request is cancelled.
+     */
+    private static final class Hedge<T> {
+
+        private final Guard guard;
+        private final Supplier<CompletableFuture<T>> attempt;
+        private final Consumer<? super T> discard;
+
+        final CompletableFuture<T> result = new CompletableFuture<>();
+        private final List<CompletableFuture<T>> attempts = new ArrayList<>(2);
+        private int pending;
+        private boolean hedged;
+
+        Hedge(Guard guard, Supplier<CompletableFuture<T>> attempt, Consumer<? super T> discard) {
+            this.guard = guard;
+            this.attempt = attempt;
+            this.discard = discard;
+        }
+
+        synchronized void launch(boolean hedge) {
+            if (result.isDone() || (hedge && hedged)) {
+                return;
+            }
+            if (hedge) {
+                hedged = true;
+            }
+            pending++;
+            CompletableFuture<T> next = attempt.get();
+            attempts.add(next);
+            next.whenComplete((value, e) -> settle(hedge, value, e));
+        }
+
+        private synchronized void settle(boolean hedge, T value, Throwable e) {
+            pending--;
+            if (e == null) {
+                if (result.isDone()) {
+                    discard.accept(value);
+                    return;
+                }
+                if (hedged) {
+                    (hedge ? guard.hedgeWon() : guard.firstWon()).increment();
+                }
+                attempts.forEach(a -> a.cancel(true));
+                if (!result.complete(value)) {
+                    discard.accept(value); // cancelled by the caller
+                }
+            } else if (pending == 0) {
+                result.completeExceptionally(e); // no hedge after a failure, it's not a retry
+            }
+        }
+
+    }
+
+    /**
+     * The latencies of the recent successful calls of an operation, for the
+     * p95 hedge delay.
+     */
+    static final class LatencyWindow {
+
+        private static final int SIZE = 256;
+
+        /** The samples needed before hedging on the p95. */
+        static final int MIN_SAMPLES = 20;
+
+        /** The p95 is computed again after this many samples. */
+        private static final int REFRESH_INTERVAL = 32;
+
+        private final long[] samples = new long[SIZE];
+        private int count;
+        private int next;
+        private long p95 = -1;
+
+        synchronized void record(long nanos) {
+            samples[next] = nanos;
+            next = (next + 1) % SIZE;
+            count = Math.min(count + 1, SIZE);
+            if (next % REFRESH_INTERVAL == 0) {
+                p95 = -1;
+            }
+        }
+
+        synchronized @Nullable Duration p95() {
+            if (count < MIN_SAMPLES) {
+                return null;
+            }
+            if (p95 < 0) {
+                long[] sorted = Arrays.copyOf(samples, count);
+                Arrays.sort(sorted);
+                p95 = sorted[(int) Math.ceil(count * 0.95) - 1];
+            }
+            return Duration.ofNanos(p95);
+        }
+
+    }
+
+}
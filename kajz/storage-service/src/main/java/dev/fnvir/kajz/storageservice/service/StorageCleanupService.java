@@ -1,47 +1,177 @@
 package dev.fnvir.kajz.storageservice.service;
 
 import java.time.Duration;
+import java.time.Instant;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
+import org.springframework.data.domain.Limit;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import dev.fnvir.kajz.storageservice.config.StorageProperties;
 import dev.fnvir.kajz.storageservice.model.FileUpload;
 import dev.fnvir.kajz.storageservice.repository.StorageRepository;
-import lombok.RequiredArgsConstructor;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
 import net.javacrumbs.shedlock.core.LockAssert;
 import net.javacrumbs.shedlock.spring.annotation.SchedulerLock;
 
 @Slf4j
 @Service
-@RequiredArgsConstructor
 public class StorageCleanupService {
-    
+
+    private static final String METRIC_PREFIX = "storage.cleanup";
+
+    /** How long a single request upload may stay as UPLOADING. */
+    private static final Duration PENDING_UPLOAD_TIMEOUT = Duration.ofMinutes(5);
+
+    /** The number of uploads cleaned up per page. */
+    static final int CLEANUP_BATCH_SIZE = 1000;
+
+    /** How long a cleanup run may keep paging, kept below the lock's lockAtMostFor. */
+    static final Duration CLEANUP_TIME_BUDGET = Duration.ofMinutes(8);
+
+    /** The number of soft deleted rows purged per transaction. */
+    static final int PURGE_CHUNK_SIZE = 1000;
+
+    /** The pause between purged chunks. */
+    static final Duration PURGE_PAUSE = Duration.ofMillis(200);
+
+    /** How long a purge run may keep deleting chunks, kept below the lock's lockAtMostFor. */
+    static final Duration PURGE_TIME_BUDGET = Duration.ofMinutes(45);
+
     private final StorageRepository storageRepository;
-    private final AbstractStorageProvider storageProvider;
-    
-    @Transactional
+    private final DeleteOutboxService deleteOutbox;
+    private final FileMetadataCache metadataCache;
+    private final StorageProperties storageProperties;
+    private final TransactionTemplate transaction;
+
+    private final AtomicLong backlog = new AtomicLong();
+    private final Counter cleanedUp;
+    private final Counter purged;
+
+    public StorageCleanupService(
+            StorageRepository storageRepository,
+            DeleteOutboxService deleteOutbox,
+            FileMetadataCache metadataCache,
+            StorageProperties storageProperties,
+            PlatformTransactionManager transactionManager,
+            MeterRegistry meterRegistry
+    ) {
+        this.storageRepository = storageRepository;
+        this.deleteOutbox = deleteOutbox;
+        this.metadataCache = metadataCache;
+        this.storageProperties = storageProperties;
+        this.transaction = new TransactionTemplate(transactionManager);
+
+        Gauge.builder(METRIC_PREFIX + ".backlog", backlog, AtomicLong::get)
+                .description("Invalid uploads waiting to be cleaned up")
+                .register(meterRegistry);
+        this.cleanedUp = Counter.builder(METRIC_PREFIX + ".uploads")
+                .description("Invalid uploads cleaned up")
+                .register(meterRegistry);
+        this.purged = Counter.builder(METRIC_PREFIX + ".purged")
+                .description("Soft deleted uploads purged from the database")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Walk the invalid uploads page by page (keyset pagination by ID) until the
+     * backlog is drained or the time budget is used up. Their files are deleted
+     * from the provider in batches through the {@link DeleteOutboxService}.
+     */
     @Scheduled(initialDelay = 2, fixedRate = 10, timeUnit = TimeUnit.MINUTES)
     @SchedulerLock(name = "cleanupInvalidUploads", lockAtMostFor = "9m")
     protected void cleanupInvalidUploads() {
         LockAssert.assertLocked();
-        
-        List<FileUpload> uploads = storageRepository.findInvalidUploadsPendingSince(Duration.ofMinutes(5), 99);
-        for (var f : uploads) {
-            if (f.getStoragePath() != null && !f.isDeleted())
-                storageProvider.deleteFileAsync(f.getStoragePath());
-            f.setDeleted(true); // soft delete
+
+        Instant now = Instant.now();
+        Instant before = now.minus(PENDING_UPLOAD_TIMEOUT);
+        Instant multipartBefore = now.minus(storageProperties.getMultipartExpiry());
+        Instant deadline = now.plus(CLEANUP_TIME_BUDGET);
+
+        backlog.set(storageRepository.countInvalidUploads(before, multipartBefore));
+
+        long afterId = Long.MIN_VALUE;
+        int total = 0;
+        while (Instant.now().isBefore(deadline)) {
+            List<FileUpload> page = storageRepository.findInvalidUploads(
+                    afterId, before, multipartBefore, Limit.of(CLEANUP_BATCH_SIZE));
+            if (page.isEmpty()) {
+                break;
+            }
+            afterId = page.getLast().getId();
+
+            int cleaned = cleanup(page);
+            total += cleaned;
+            backlog.addAndGet(-cleaned);
+
+            if (page.size() < CLEANUP_BATCH_SIZE) {
+                break;
+            }
         }
-        storageRepository.saveAll(uploads);
+        if (total > 0) {
+            log.info("Cleaned up {} invalid uploads, {} left", total, backlog.get());
+        }
+    }
+
+    /**
+     * Soft delete the uploads and enqueue the deletion of their files, in one
+     * transaction.
+     *
+     * @return the number of uploads cleaned up.
+     */
+    private int cleanup(List<FileUpload> uploads) {
+        List<Long> ids = uploads.stream().map(FileUpload::getId).toList();
+        transaction.executeWithoutResult(_ -> {
+            storageRepository.markDeleted(ids);
+            deleteOutbox.enqueue(uploads);
+        });
+        metadataCache.evict(ids);
+        cleanedUp.increment(ids.size());
+        return ids.size();
     }
-    
-    @Transactional
+
+    /**
+     * Purge soft deleted uploads in chunks, pausing between them so the job
+     * doesn't spike IO or hold long locks on the table.
+     */
     @Scheduled(initialDelay = 15, fixedRate = 60, timeUnit = TimeUnit.MINUTES)
+    @SchedulerLock(name = "deleteSoftDeletedEntries", lockAtMostFor = "50m")
     protected void deleteSoftDeletedEntries() {
-        storageRepository.deleteAllSoftDeleted();
+        LockAssert.assertLocked();
+        
+        Instant deadline = Instant.now().plus(PURGE_TIME_BUDGET);
+        long total = 0;
+        int deleted;
+        do {
+            deleted = storageRepository.deleteSoftDeletedChunk(PURGE_CHUNK_SIZE);
+            total += deleted;
+            purged.increment(deleted);
+            if (deleted == PURGE_CHUNK_SIZE && !sleep(PURGE_PAUSE)) {
+                break;
+            }
+        } while (deleted == PURGE_CHUNK_SIZE && Instant.now().isBefore(deadline));
+        
+        if (total > 0) {
+            log.info("Purged {} soft deleted uploads", total);
+        }
+    }
+
+    private static boolean sleep(Duration duration) {
+        try {
+            Thread.sleep(duration);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
     }
 
 }
@@ -0,0 +1,163 @@
+package dev.fnvir.kajz.storageservice.service;
+
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+import org.jspecify.annotations.Nullable;
+import org.springframework.stereotype.Component;
+
+import dev.fnvir.kajz.storageservice.config.StorageProviderConfig;
+import dev.fnvir.kajz.storageservice.config.StorageResilienceProperties;
+import dev.fnvir.kajz.storageservice.config.StorageRoutingProperties;
+import dev.fnvir.kajz.storageservice.enums.StorageProviderType;
+import dev.fnvir.kajz.storageservice.model.FileUpload;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Routes files to the storage providers (backends) enabled for the service.
+ *
+ * <p>
+ * New files are placed by the first matching {@code storage.routing.rules}
+ * (access level, purpose, size) or in the primary provider
+ * ({@code storage.provider}). Their backend is recorded on the
+ * {@link FileUpload}, so all later operations on a file go to the backend
+ * currently holding it, even after it's moved to another tier.
+ * </p>
+ *
+ * <p>
+ * The providers are wrapped in a {@link MeteredStorageProvider}, timing every
+ * operation going through the router, and unless disabled in a
+ * {@link ResilientStorageProvider} applying the {@code storage.resilience}
+ * policies to them.
+ * </p>
+ */
+@Slf4j
+@Component
+public class StorageProviderRouter {
+
+    private final Map<StorageProviderType, AbstractStorageProvider> providers = new EnumMap<>(StorageProviderType.class);
+    private final StorageProviderType primary;
+    private final List<StorageRoutingProperties.Rule> rules;
+
+    public StorageProviderRouter(
+            List<AbstractStorageProvider> providers,
+            StorageProviderConfig providerConfig,
+            StorageRoutingProperties routingProperties,
+            StorageResilienceProperties resilienceProperties,
+            MeterRegistry meterRegistry
+    ) {
+        for (AbstractStorageProvider provider : providers) {
+            AbstractStorageProvider decorated = new MeteredStorageProvider(provider, meterRegistry);
+            if (Boolean.TRUE.equals(resilienceProperties.getEnabled())) {
+                decorated = new ResilientStorageProvider(decorated, resilienceProperties, meterRegistry);
+            }
+            this.providers.put(provider.getProviderType(), decorated);
+        }
+        this.primary = providerConfig.getProvider();
+        this.rules = List.copyOf(routingProperties.getRules());
+
+        if (primary == null || !this.providers.containsKey(primary)) {
+            throw new IllegalStateException("storage.provider must be set to an available storage provider.");
+        }
+        for (var rule : rules) {
+            requireEnabled(rule.getProvider(), "storage.routing.rules[].provider");
+        }
+        var cold = routingProperties.getCold();
+        if (Boolean.TRUE.equals(cold.getEnabled()) && cold.getProvider() != null) {
+            requireEnabled(cold.getProvider(), "storage.routing.cold.provider");
+        }
+        log.info("Storage providers enabled: {} (primary: {})", this.providers.keySet(), primary);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        for (AbstractStorageProvider provider : providers.values()) {
+            if (provider instanceof ResilientStorageProvider resilient) {
+                resilient.shutdown();
+            }
+        }
+    }
+
+    private void requireEnabled(@Nullable StorageProviderType type, String property) {
+        if (type == null || !providers.containsKey(type)) {
+            throw new IllegalStateException(property + " must be the primary storage provider"
+                    + " or one of storage.routing.providers, but was: " + type);
+        }
+    }
+
+    /**
+     * @return the type of the primary storage provider.
+     */
+    public StorageProviderType primaryType() {
+        return primary;
+    }
+
+    /**
+     * @return the primary storage provider.
+     */
+    public AbstractStorageProvider primary() {
+        return providers.get(primary);
+    }
+
+    /**
+     * Get the storage provider of a backend.
+     *
+     * @param backend the backend recorded on a file (null for the primary).
+     * @return the storage provider.
+     * @throws IllegalStateException if the backend isn't enabled.
+     */
+    public AbstractStorageProvider provider(@Nullable StorageProviderType backend) {
+        if (backend == null) {
+            return primary();
+        }
+        AbstractStorageProvider provider = providers.get(backend);
+        if (provider == null) {
+            throw new IllegalStateException("Storage provider " + backend + " isn't enabled.");
+        }
+        return provider;
+    }
+
+    /**
+     * Get the storage provider holding a file.
+     *
+     * @param file the file.
+     * @return the storage provider of its backend.
+     */
+    public AbstractStorageProvider provider(FileUpload file) {
+        return provider(file.getStorageBackend());
+    }
+
+    /**
+     * @return all the enabled storage providers.
+     */
+    public Collection<AbstractStorageProvider> providers() {
+        return providers.values();
+    }
+
+    /**
+     * Choose the backend of a new file by the routing rules.
+     *
+     * @param file the new file (access, purpose and size set).
+     * @return the backend of the first matching rule, else the primary.
+     */
+    public StorageProviderType route(FileUpload file) {
+        for (var rule : rules) {
+            if (matches(rule, file)) {
+                return rule.getProvider();
+            }
+        }
+        return primary;
+    }
+
+    static boolean matches(StorageRoutingProperties.Rule rule, FileUpload file) {
+        return (rule.getAccess() == null || rule.getAccess() == file.getAccess())
+                && (rule.getPurpose() == null || rule.getPurpose().equals(file.getPurpose()))
+                && (rule.getMinSize() == null || file.getContentSize() >= rule.getMinSize())
+                && (rule.getMaxSize() == null || file.getContentSize() <= rule.getMaxSize());
+    }
+
+}
@@ -1,12 +1,31 @@
 package dev.fnvir.kajz.storageservice.service;
 
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.time.Duration;
 import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
 import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import org.jspecify.annotations.Nullable;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.Limit;
 import org.springframework.http.ETag;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
@@ -15,15 +34,38 @@ import org.springframework.transaction.annotation.Transactional;
 import org.springframework.transaction.support.TransactionSynchronization;
 import org.springframework.transaction.support.TransactionSynchronizationManager;
 import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.DigestUtils;
 import org.springframework.util.StringUtils;
 
+import dev.fnvir.kajz.storageservice.config.StorageProperties;
+import dev.fnvir.kajz.storageservice.dto.CachedFileMetadata;
+import dev.fnvir.kajz.storageservice.dto.DerivativeSpec;
 import dev.fnvir.kajz.storageservice.dto.StreamFileDto;
+import dev.fnvir.kajz.storageservice.dto.StreamFileDto.RangeStreamProvider;
+import dev.fnvir.kajz.storageservice.dto.UploadValidationResultDTO;
+import dev.fnvir.kajz.storageservice.dto.event.FileStatusChangedEvent;
+import dev.fnvir.kajz.storageservice.dto.event.ObjectCreatedEvent;
+import dev.fnvir.kajz.storageservice.dto.req.BatchFileInfoRequest;
+import dev.fnvir.kajz.storageservice.dto.req.BatchInitiateUploadRequest;
 import dev.fnvir.kajz.storageservice.dto.req.CompleteUploadRequest;
+import dev.fnvir.kajz.storageservice.dto.req.FileUploadRequest;
+import dev.fnvir.kajz.storageservice.dto.req.InitiateMultipartUploadRequest;
 import dev.fnvir.kajz.storageservice.dto.req.InitiateUploadRequest;
+import dev.fnvir.kajz.storageservice.dto.req.PartUploadUrlsRequest;
+import dev.fnvir.kajz.storageservice.dto.res.BatchFileInfoResponse;
+import dev.fnvir.kajz.storageservice.dto.res.BatchInitiateUploadResponse;
+import dev.fnvir.kajz.storageservice.dto.res.BatchInitiateUploadResponse.ItemError;
+import dev.fnvir.kajz.storageservice.dto.res.BatchInitiateUploadResponse.ItemResult;
 import dev.fnvir.kajz.storageservice.dto.res.CompleteUploadResponse;
+import dev.fnvir.kajz.storageservice.dto.res.CursorPageResponse;
 import dev.fnvir.kajz.storageservice.dto.res.FileUploadResponse;
+import dev.fnvir.kajz.storageservice.dto.res.InitiateMultipartUploadResponse;
 import dev.fnvir.kajz.storageservice.dto.res.InitiateUploadResponse;
+import dev.fnvir.kajz.storageservice.dto.res.MultipartUploadProgressResponse;
+import dev.fnvir.kajz.storageservice.dto.res.PartUploadUrl;
 import dev.fnvir.kajz.storageservice.dto.res.PreSignedDownloadUrlResponse;
+import dev.fnvir.kajz.storageservice.dto.res.UploadStatusResponse;
+import dev.fnvir.kajz.storageservice.enums.ContentEncoding;
 import dev.fnvir.kajz.storageservice.enums.FileAccessLevel;
 import dev.fnvir.kajz.storageservice.enums.UploadStatus;
 import dev.fnvir.kajz.storageservice.exception.ApiException;
@@ -37,6 +79,7 @@ import dev.fnvir.kajz.storageservice.util.SecurityContextUtils;
 import dev.fnvir.kajz.storageservice.util.UuidEncodeUtils;
 import io.hypersistence.tsid.TSID;
 import jakarta.validation.Valid;
+import jakarta.validation.Validator;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 
@@ -46,13 +89,38 @@ import lombok.extern.slf4j.Slf4j;
 public class StorageService {
     
     private final StorageRepository storageRepository;
-    private final AbstractStorageProvider storageProvider;
+    private final StorageProviderRouter providerRouter;
     private final FileUploadMapper fileUploadMapper;
+    private final FileMetadataCache metadataCache;
+    private final DiskFileCache diskFileCache;
+    private final Validator validator;
+    private final StorageProperties storageProperties;
+    private final ApplicationEventPublisher eventPublisher;
+    private final PresignedUrlCache presignedUrlCache;
+    private final DeleteOutboxService deleteOutbox;
+    private final ImageDerivativeService imageDerivativeService;
+    private final ContentDeduplicationService deduplicationService;
+    private final ContentEncodingService contentEncodingService;
+    private final FileAccessTracker accessTracker;
     
+    /** The max number of parts of a multipart upload allowed by the providers (S3). */
+    private static final int MAX_PART_COUNT = 10_000;
+    
+    /** The lifetime of the temp download URLs. */
+    private static final Duration TEMP_DOWNLOAD_URL_EXPIRY = Duration.ofMinutes(3);
+    
+    /**
+     * How long a claim on the completion of an upload holds before another
+     * caller may take it over, longer than the provider calls it covers.
+     */
+    private static final Duration COMPLETION_CLAIM_TIMEOUT = Duration.ofMinutes(5);
+    
+    private TransactionTemplate transaction;
     private TransactionTemplate readOnlyTransaction;
     
     @Autowired
     protected void setTransaction(PlatformTransactionManager transactionManager) {
+        this.transaction = new TransactionTemplate(transactionManager);
         TransactionTemplate tpl = new TransactionTemplate(transactionManager);
         tpl.setReadOnly(true);
         this.readOnlyTransaction = tpl;
@@ -61,34 +129,204 @@ public class StorageService {
     
     @Transactional
     public InitiateUploadResponse initiateUploadProcess(UUID uploaderId, @Valid InitiateUploadRequest req) {
-        String filenameWithExt = generateFilenameWithExt(req.filename(), req.purpose());
+        FileUpload file = storageRepository.saveAndFlush(newFileUpload(uploaderId, req));
+        return providerRouter.provider(file).initiateUpload(file);
+    }
+    
+    /**
+     * Initiate multiple uploads at once. Each item is validated separately and
+     * invalid items are reported without failing the others. The valid items are
+     * inserted in a single JDBC batch and their upload URLs are generated
+     * concurrently.
+     * 
+     * @param uploaderId the ID of the uploader.
+     * @param req        the batch of uploads to initiate.
+     * @return the result of each item, in request order.
+     */
+    @Transactional
+    public BatchInitiateUploadResponse initiateUploadBatch(UUID uploaderId, @Valid BatchInitiateUploadRequest req) {
+        List<InitiateUploadRequest> items = req.files();
+        ItemResult[] results = new ItemResult[items.size()];
+        
+        List<Integer> validIndexes = new ArrayList<>(items.size());
+        List<FileUpload> files = new ArrayList<>(items.size());
+        for (int i = 0; i < items.size(); i++) {
+            InitiateUploadRequest item = items.get(i);
+            List<ItemError> errors = validateBatchItem(item);
+            if (errors.isEmpty()) {
+                validIndexes.add(i);
+                files.add(newFileUpload(uploaderId, item));
+            } else {
+                results[i] = ItemResult.failed(i, errors);
+            }
+        }
+        
+        files = storageRepository.saveAllAndFlush(files);
+        
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<InitiateUploadResponse>> uploads = files.stream()
+                    .map(file -> executor.submit(() -> providerRouter.provider(file).initiateUpload(file)))
+                    .toList();
+            for (int i = 0; i < uploads.size(); i++) {
+                int index = validIndexes.get(i);
+                try {
+                    results[index] = ItemResult.success(index, uploads.get(i).get());
+                } catch (ExecutionException e) {
+                    // the row stays UPLOADING and is removed by the cleanup job
+                    log.error("Failed to initiate upload of batch item {}", index, e.getCause());
+                    results[index] = ItemResult.failed(index,
+                            List.of(new ItemError(null, "Failed to generate upload URL")));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new ApiException(HttpStatus.SERVICE_UNAVAILABLE, "Interrupted while initiating uploads");
+                }
+            }
+        }
+        
+        return new BatchInitiateUploadResponse(List.of(results));
+    }
+    
+    private List<ItemError> validateBatchItem(InitiateUploadRequest item) {
+        if (item == null) {
+            return List.of(new ItemError(null, "must not be null"));
+        }
+        return validator.validate(item).stream()
+                .map(v -> new ItemError(
+                        StringUtils.hasText(v.getPropertyPath().toString()) ? v.getPropertyPath().toString() : null,
+                        v.getMessage()))
+                .toList();
+    }
+    
+    /**
+     * Initiate a multipart upload for large files. The file is uploaded in parts
+     * (in any order, possibly in parallel) using the returned per-part URLs, and
+     * assembled when the upload is completed.
+     * 
+     * @param uploaderId the ID of the uploader.
+     * @param req        the initiate multipart upload request.
+     * @return the upload URL of each part.
+     */
+    @Transactional
+    public InitiateMultipartUploadResponse initiateMultipartUpload(UUID uploaderId, @Valid InitiateMultipartUploadRequest req) {
+        FileUpload file = newFileUpload(uploaderId, req);
+        var storageProvider = providerRouter.provider(file);
+        
+        long partSize = multipartPartSize(req.fileSize());
+        file.setPartSize(partSize);
+        file.setPartCount((int) Math.max(1, (req.fileSize() + partSize - 1) / partSize));
+        file.setUploadedParts(new TreeMap<>());
+        file.setMultipartUploadId(storageProvider.createMultipartUpload(file));
+        file = storageRepository.saveAndFlush(file);
+        
+        var partNumbers = IntStream.rangeClosed(1, file.getPartCount()).boxed().toList();
+        return InitiateMultipartUploadResponse.builder()
+                .fileId(file.getId())
+                .partSize(partSize)
+                .partCount(file.getPartCount())
+                .parts(storageProvider.generatePartUploadUrls(file, partNumbers))
+                .build();
+    }
+    
+    /**
+     * The part size for a file, raised (to whole MBs) if the configured part size
+     * would need more parts than the providers allow.
+     */
+    private long multipartPartSize(long fileSize) {
+        long partSize = storageProperties.getMultipartPartSize();
+        if ((fileSize + partSize - 1) / partSize > MAX_PART_COUNT) {
+            long mb = 1024L * 1024;
+            long minPartSize = (fileSize + MAX_PART_COUNT - 1) / MAX_PART_COUNT;
+            partSize = (minPartSize + mb - 1) / mb * mb;
+        }
+        return partSize;
+    }
+    
+    /**
+     * Generate fresh upload URLs for parts of an incomplete multipart upload, e.g.
+     * to resume after a failure.
+     * 
+     * @param fileId the ID of the file.
+     * @param userId the ID of the user (must be the owner).
+     * @param req    the numbers of the parts.
+     * @return the upload URL of each part.
+     */
+    public List<PartUploadUrl> generatePartUploadUrls(Long fileId, UUID userId, @Valid PartUploadUrlsRequest req) {
+        var file = readOnlyTransaction.execute(_ -> findIncompleteMultipartUpload(fileId, userId));
+        for (Integer partNumber : req.partNumbers()) {
+            if (partNumber > file.getPartCount()) {
+                throw new ApiException(HttpStatus.BAD_REQUEST,
+                        "Invalid part number: " + partNumber + " (part count is " + file.getPartCount() + ")");
+            }
+        }
+        return providerRouter.provider(file).generatePartUploadUrls(file, req.partNumbers().stream().distinct().sorted().toList());
+    }
+    
+    /**
+     * Get the progress of an incomplete multipart upload, as reported by the
+     * storage provider. The uploaded parts are also saved on the file.
+     * 
+     * @param fileId the ID of the file.
+     * @param userId the ID of the user (must be the owner).
+     * @return the uploaded and missing parts.
+     */
+    @Transactional
+    public MultipartUploadProgressResponse getMultipartUploadProgress(Long fileId, UUID userId) {
+        var file = findIncompleteMultipartUpload(fileId, userId);
+        Map<Integer, String> parts = providerRouter.provider(file).listUploadedParts(file);
+        file.setUploadedParts(parts);
+        storageRepository.save(file);
+        
+        return MultipartUploadProgressResponse.builder()
+                .fileId(file.getId())
+                .partSize(file.getPartSize())
+                .partCount(file.getPartCount())
+                .uploadedParts(parts.keySet().stream().sorted().toList())
+                .missingParts(AbstractStorageProvider.missingParts(file.getPartCount(), parts.keySet()))
+                .build();
+    }
+    
+    private FileUpload findIncompleteMultipartUpload(Long fileId, UUID userId) {
+        var file = findByIdAndVerifyOwnershipOrThrow(fileId, userId);
+        if (!file.isMultipart()) {
+            throw new ApiException(HttpStatus.BAD_REQUEST, "Not a multipart upload");
+        }
+        if (file.getStatus() != UploadStatus.UPLOADING || file.getCompletedAt() != null) {
+            throw new ConflictException("Upload has already been completed");
+        }
+        return file;
+    }
+    
+    private FileUpload newFileUpload(UUID uploaderId, FileUploadRequest req) {
+        String purpose = normalizePurpose(req.purpose());
+        String filenameWithExt = generateFilenameWithExt(req.filename(), purpose);
         String storagePath = generateStoragePath(filenameWithExt, req.accessLevel(), uploaderId);
         
         FileUpload file = new FileUpload();
         file.setOwnerId(uploaderId);
         file.setFilename(filenameWithExt);
+        file.setPurpose(purpose);
         file.setStoragePath(storagePath);
         file.setAccess(req.accessLevel());
         file.setMimeType(req.mimeType());
         file.setContentSize(req.fileSize());
         file.setStatus(UploadStatus.UPLOADING);
-        file = storageRepository.saveAndFlush(file);
-        
-        return storageProvider.initiateUpload(file);
+        file.setStorageBackend(providerRouter.route(file));
+        return file;
     }
     
-    private String generateFilenameWithExt(String originalFilename, String purpose) {
-        String uploadIntent = purpose != null ? purpose : "upload";
+    static String generateFilenameWithExt(String originalFilename, String purpose) {
         String fileExt = Optional.ofNullable(StringUtils.getFilenameExtension(originalFilename))
                 .orElse("bin"); // default to ".bin" format
-        String newName = String.join("-",
-                uploadIntent.replaceAll("[^a-zA-Z0-9_-]", "_").replaceAll("_+", "_").toLowerCase(),
-                TSID.fast().toLowerCase()
-        );
+        String newName = String.join("-", purpose, TSID.fast().toLowerCase());
         return newName + "." + fileExt;
     }
     
-    private String generateStoragePath(String filename, FileAccessLevel accessLevel, @Nullable UUID ownerId) {
+    static String normalizePurpose(@Nullable String purpose) {
+        String uploadIntent = purpose != null ? purpose : "upload";
+        return uploadIntent.replaceAll("[^a-zA-Z0-9_-]", "_").replaceAll("_+", "_").toLowerCase();
+    }
+    
+    static String generateStoragePath(String filename, FileAccessLevel accessLevel, @Nullable UUID ownerId) {
         String subfolder = ownerId == null ? "common" : UuidEncodeUtils.encodeCrockford(ownerId);
         return String.join("/",
                     accessLevel == FileAccessLevel.PRIVATE ? "private" : "public",
@@ -97,107 +335,491 @@ public class StorageService {
                 ).strip();
     }
 
-    @Transactional
+    /**
+     * Complete the upload of a file once its object has been uploaded.
+     * 
+     * <p>
+     * No row lock or transaction is held while the provider is asked for the
+     * object (assembling the parts of a multipart upload may take minutes).
+     * The upload is claimed with a conditional update first, and the result is
+     * applied with another one if the claim still holds, so a client and a
+     * provider notification completing it at the same time complete it once.
+     * </p>
+     * 
+     * @param userId the ID of the user (must be the owner).
+     * @param req    the upload to complete.
+     * @return the completed upload.
+     * @throws ConflictException if the upload isn't valid, or is being
+     *                           completed by another caller (try again).
+     */
     public CompleteUploadResponse verifyAndCompleteUpload(UUID userId, @Valid CompleteUploadRequest req) {
         var file = findByIdAndVerifyOwnershipOrThrow(req.fileId(), userId);
-        
+        if (isCompleted(file)) {
+            // e.g. completed by the provider's object-created notification first
+            return fileUploadMapper.toUploadCompleteResponse(file);
+        }
         if(file.getStatus() != UploadStatus.UPLOADING || file.getCompletedAt() != null) {
             throw new ConflictException("Already completed post-upload validation!");
         }
         
-        var validationResult = storageProvider.validateUploadCompletion(file);
+        Instant claimedAt = claimCompletion(file);
+        if (claimedAt == null) {
+            return fileUploadMapper.toUploadCompleteResponse(completedConcurrently(file.getId()));
+        }
+        return fileUploadMapper.toUploadCompleteResponse(completeUpload(file, claimedAt));
+    }
+    
+    /**
+     * Complete the upload of an object notified as created by its storage
+     * provider, as if the client had called
+     * {@link #verifyAndCompleteUpload(UUID, CompleteUploadRequest)}. Does
+     * nothing if the upload was already completed or is being completed by its
+     * client, so notifications may be delivered more than once. Objects whose
+     * notified size doesn't match the upload are rejected without asking the
+     * provider.
+     * 
+     * @param event the object created in the storage provider.
+     * @return true if an upload was completed, else false.
+     * @throws NotFoundException if the object doesn't exist (anymore).
+     * @throws ConflictException if the object isn't a valid upload.
+     */
+    public boolean completeUploadedObject(ObjectCreatedEvent event) {
+        var file = storageRepository.findUploadingByStoragePath(event.key()).orElse(null);
+        if (file == null || file.isMultipart()) {
+            return false; // unknown, completed, or a multipart upload completed by its client
+        }
+        if (providerRouter.provider(file).getProviderType() != event.provider()) {
+            return false;
+        }
+        Instant claimedAt = claimCompletion(file);
+        if (claimedAt == null) {
+            return false; // completed or being completed by its client
+        }
+        if (event.size() != null && file.getContentSize() != null && !event.size().equals(file.getContentSize())) {
+            failUpload(file, claimedAt, "Uploaded file's size doesn't match the size it was initiated with!");
+        }
+        completeUpload(file, claimedAt);
+        return true;
+    }
+    
+    private static boolean isCompleted(FileUpload file) {
+        return file.getCompletedAt() != null
+                && (file.getStatus() == UploadStatus.PROCESSING || file.getStatus() == UploadStatus.VALIDATED);
+    }
+    
+    /** Claim the completion of an upload, returning the time of the claim or null if another caller holds it. */
+    private @Nullable Instant claimCompletion(FileUpload file) {
+        Instant now = Instant.now().truncatedTo(ChronoUnit.MICROS); // compared with the stored value
+        boolean claimed = storageRepository.claimCompletion(file.getId(), now, now.minus(COMPLETION_CLAIM_TIMEOUT)) > 0;
+        return claimed ? now : null;
+    }
+    
+    /** Get an upload completed (or being completed) by another caller. */
+    private FileUpload completedConcurrently(Long fileId) {
+        var file = storageRepository.findById(fileId).orElseThrow(NotFoundException::new);
+        if (isCompleted(file)) {
+            return file;
+        }
+        if (file.getStatus() == UploadStatus.UPLOADING && file.getCompletedAt() == null && !file.isDeleted()) {
+            throw new ConflictException("The upload is being completed, try again shortly!");
+        }
+        throw new ConflictException("Already completed post-upload validation!");
+    }
+    
+    private FileUpload completeUpload(FileUpload file, Instant claimedAt) {
+        var validationResult = checkUploaded(file, claimedAt);
         if (!validationResult.isSuccess()) {
             switch (validationResult.getFailureReason()) {
-                case FILE_DOESNT_EXIST -> throw new NotFoundException(validationResult.getMessage());
-                default -> {
-                    storageProvider.deleteFileAsync(file.getStoragePath());
-                    throw new ConflictException(validationResult.getMessage());
+                case FILE_DOESNT_EXIST -> {
+                    storageRepository.releaseCompletion(file.getId(), claimedAt);
+                    throw new NotFoundException(validationResult.getMessage());
                 }
+                default -> failUpload(file, claimedAt, validationResult.getMessage());
             }
         }
+        // part URLs of some providers can't pin the size, and the assembled size feeds ranges, copies and dedup
+        Long size = validationResult.getContentLength();
+        if (size != null && file.getContentSize() != null && !size.equals(file.getContentSize())) {
+            failUpload(file, claimedAt, "Uploaded file's size doesn't match the size it was initiated with!");
+        }
         
-        file.setStatus(UploadStatus.VALIDATED);
-        file.setCompletedAt(Instant.now());
-        file.setETag(validationResult.getETag());
-        file = storageRepository.save(file);
-        
-        return fileUploadMapper.toUploadCompleteResponse(file);
+        FileUpload completed = transaction.execute(_ -> {
+            if (storageRepository.finishUploading(file.getId(), validationResult.getETag(), claimedAt, Instant.now()) == 0) {
+                return null; // the claim was taken over
+            }
+            var f = storageRepository.findById(file.getId()).orElseThrow(NotFoundException::new);
+            publishStatusChangedAfterCommit(f);
+            return f;
+        });
+        if (completed == null) {
+            return completedConcurrently(file.getId());
+        }
+        metadataCache.evict(file.getId());
+        return completed;
+    }
+    
+    /**
+     * Ask the provider for the uploaded object, outside any transaction. The
+     * claim is released if the provider can't tell (yet), so it can be retried.
+     */
+    private UploadValidationResultDTO checkUploaded(FileUpload file, Instant claimedAt) {
+        var storageProvider = providerRouter.provider(file);
+        try {
+            if (file.isMultipart()) {
+                storageProvider.completeMultipartUpload(file); // assemble the parts first
+            }
+            // only the cheap checks here, the content is validated in the background
+            return storageProvider.checkUploadCompletion(file);
+        } catch (RuntimeException e) {
+            storageRepository.releaseCompletion(file.getId(), claimedAt);
+            throw e;
+        }
+    }
+    
+    /** Mark a claimed upload failed and enqueue the delete of its object. */
+    private void failUpload(FileUpload file, Instant claimedAt, String message) {
+        transaction.executeWithoutResult(_ -> {
+            if (storageRepository.failUploading(file.getId(), message, claimedAt, Instant.now()) > 0) {
+                deleteOutbox.enqueue(file);
+            }
+        });
+        throw new ConflictException(message);
+    }
+    
+    /**
+     * Get the status of an upload, e.g. to poll until its content has been
+     * validated.
+     * 
+     * @param fileId the ID of the file.
+     * @param userId the ID of the user (must be the owner).
+     * @return the status of the upload.
+     */
+    public UploadStatusResponse getUploadStatus(Long fileId, UUID userId) {
+        var file = findByIdAndVerifyOwnershipOrThrow(fileId, userId);
+        if (file.isDeleted())
+            throw new NotFoundException();
+        return fileUploadMapper.toStatusResponse(file);
+    }
+    
+    private void publishStatusChangedAfterCommit(FileUpload file) {
+        var event = FileStatusChangedEvent.of(file);
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            eventPublisher.publishEvent(event);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(
+            new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    eventPublisher.publishEvent(event);
+                }
+            }
+        );
     }
     
     private FileUpload findByIdAndVerifyOwnershipOrThrow(Long fileId, UUID userId) {
         var file = storageRepository.findById(fileId).orElseThrow(NotFoundException::new);
+        verifyOwnership(file, userId);
+        return file;
+    }
+    
+    private static void verifyOwnership(FileUpload file, UUID userId) {
         if (!userId.equals(file.getOwnerId())) {
             throw new ForbiddenException("User doesn't have ownership of this file");
         }
-        return file;
     }
     
-    public StreamFileDto downloadFileValidatingAccess(Long fileId, String eTag) {
-        var fileRecord = readOnlyTransaction.execute(_ -> findByIdAndValidateAccess(fileId, "ADMIN", "SYSTEM"));
+    /**
+     * Get a file to stream, with the same access rules as its metadata.
+     * Compressible files are served gzipped to clients accepting it, from the
+     * precompressed variant if there is one.
+     * 
+     * @param fileId         the ID of the file.
+     * @param eTag           the ETag from the client for cache validation.
+     * @param acceptEncoding the {@code Accept-Encoding} of the request (null to
+     *                       serve the original, e.g. for range requests).
+     * @return the file stream (only the ETag if it matches).
+     */
+    public StreamFileDto downloadFileValidatingAccess(Long fileId, String eTag, String acceptEncoding) {
+        var fileRecord = findMetadataAndValidateAccess(fileId, "ADMIN", "SYSTEM");
         
-        if (!fileRecord.isAvailable()) {
+        if (!fileRecord.available()) {
             throw new NotFoundException("File isn't active.");
         }
+        accessTracker.touch(fileId);
+        
+        var representation = contentEncodingService.negotiate(fileRecord, acceptEncoding);
+        boolean varyByEncoding = contentEncodingService.isCompressible(fileRecord.mimeType());
+        String representationETag = ContentEncodingService.eTagOf(fileRecord.eTag(), representation.encoding());
         
-        if (fileRecord.getETag() != null && eTag != null
-                && ETag.quoteETagIfNecessary(fileRecord.getETag()).equals(ETag.quoteETagIfNecessary(eTag))
+        if (representationETag != null && eTag != null
+                && ETag.quoteETagIfNecessary(representationETag).equals(ETag.quoteETagIfNecessary(eTag))
         ) {
-            return StreamFileDto.builder().etag(eTag.toString()).build();
+            return StreamFileDto.builder().etag(eTag.toString()).varyByEncoding(varyByEncoding).build();
+        }
+        
+        if (representation.encoding() != ContentEncoding.IDENTITY && !representation.compressWhileStreaming()) {
+            return precompressedStream(fileRecord, representation, representationETag);
+        }
+        
+        var storageProvider = providerRouter.provider(fileRecord.storageBackend());
+        String storagePath = fileRecord.storagePath();
+        Callable<InputStream> download = storageProvider.downloadFile(storagePath);
+        RangeStreamProvider rangeDownload = (start, end) -> storageProvider.downloadFileRange(storagePath, start, end);
+        
+        // only public files go to the disk cache, keyed by ETag so stale copies are never served
+        boolean diskCacheable = diskFileCache.isEnabled()
+                && fileRecord.access() == FileAccessLevel.PUBLIC && fileRecord.eTag() != null;
+        if (diskCacheable) {
+            String fileETag = fileRecord.eTag();
+            download = diskFileCache.cached(storagePath, fileETag, fileRecord.contentSize(), download);
+            RangeStreamProvider originRange = rangeDownload;
+            rangeDownload = (start, end) -> diskFileCache.cachedRange(
+                    storagePath, fileETag, start, end, originRange.forRange(start, end));
         }
         
-        String storagePath = fileRecord.getStoragePath();
+        boolean compress = representation.compressWhileStreaming();
+        var streamFile = StreamFileDto.builder()
+                .filename(fileRecord.filename())
+                .contentLength(compress ? -1 : fileRecord.contentSize())
+                .contentType(fileRecord.mimeType())
+                .etag(representationETag)
+                .contentEncoding(compress ? representation.encoding().getToken() : null)
+                .compressWhileStreaming(compress)
+                .varyByEncoding(varyByEncoding)
+                .inputStreamProvider(download)
+                .rangeStreamProvider(rangeDownload);
         
+        // files which may be served from the disk cache stick to the blocking path
+        if (!diskCacheable) {
+            streamFile.nonBlockingStreamProvider(() -> storageProvider.downloadFileNonBlocking(storagePath))
+                    .nonBlockingRangeStreamProvider((start, end) ->
+                            storageProvider.downloadFileRangeNonBlocking(storagePath, start, end));
+        }
+        
+        return streamFile.build();
+        
+    }
+    
+    /**
+     * Stream the stored compressed variant of a file. Byte ranges are always
+     * served from the original, so no range providers are set.
+     */
+    private StreamFileDto precompressedStream(CachedFileMetadata fileRecord,
+            ContentEncodingService.Representation representation, String eTag) {
+        var storageProvider = providerRouter.provider(fileRecord.storageBackend());
+        String storagePath = representation.storagePath();
         return StreamFileDto.builder()
-                .filename(fileRecord.getFilename())
-                .contentLength(fileRecord.getContentSize())
-                .contentType(fileRecord.getMimeType())
-                .etag(fileRecord.getETag())
+                .filename(fileRecord.filename())
+                .contentLength(representation.contentSize())
+                .contentType(fileRecord.mimeType())
+                .etag(eTag)
+                .contentEncoding(representation.encoding().getToken())
+                .varyByEncoding(true)
                 .inputStreamProvider(storageProvider.downloadFile(storagePath))
+                .nonBlockingStreamProvider(() -> storageProvider.downloadFileNonBlocking(storagePath))
                 .build();
+    }
+    
+    /**
+     * Get a scaled down variant of an image (e.g. a thumbnail), with the same
+     * access rules as the original. The derivative is generated on the first
+     * request and served from the storage provider afterwards.
+     * 
+     * @param fileId the ID of the original image.
+     * @param spec   the derivative.
+     * @param eTag   the ETag from the client for cache validation.
+     * @return the derivative stream (only the ETag if it matches).
+     */
+    public StreamFileDto downloadDerivativeValidatingAccess(Long fileId, DerivativeSpec spec, String eTag) {
+        validateDerivativeSpec(spec);
+        var fileRecord = findMetadataAndValidateAccess(fileId, "ADMIN", "SYSTEM");
         
+        if (!fileRecord.available()) {
+            throw new NotFoundException("File isn't active.");
+        }
+        if (fileRecord.mimeType() == null || !fileRecord.mimeType().startsWith("image/")) {
+            throw new ApiException(HttpStatus.BAD_REQUEST, "Derivatives are only available for images");
+        }
+        accessTracker.touch(fileId);
+        
+        // derived from the original's ETag, so it's known without generating the derivative
+        String derivativeETag = fileRecord.eTag() == null ? null : DigestUtils.md5DigestAsHex(
+                (fileRecord.eTag() + "/" + spec.name()).getBytes(StandardCharsets.UTF_8));
+        if (derivativeETag != null && eTag != null
+                && ETag.quoteETagIfNecessary(derivativeETag).equals(ETag.quoteETagIfNecessary(eTag))
+        ) {
+            return StreamFileDto.builder().etag(eTag).build();
+        }
+        
+        var derivative = imageDerivativeService.getOrCreate(fileRecord, spec);
+        var storageProvider = providerRouter.provider(fileRecord.storageBackend());
+        String storagePath = derivative.storagePath();
+        return StreamFileDto.builder()
+                .filename(StringUtils.stripFilenameExtension(fileRecord.filename()) + "_" + spec.name())
+                .contentLength(derivative.contentSize())
+                .contentType(spec.format().getMimeType())
+                .etag(derivativeETag)
+                .inputStreamProvider(storageProvider.downloadFile(storagePath))
+                .nonBlockingStreamProvider(() -> storageProvider.downloadFileNonBlocking(storagePath))
+                .build();
+    }
+    
+    private void validateDerivativeSpec(DerivativeSpec spec) {
+        if (spec.width() == null && spec.height() == null) {
+            throw new ApiException(HttpStatus.BAD_REQUEST, "Width or height is required");
+        }
+        var sizes = storageProperties.getDerivativeSizes();
+        if ((spec.width() != null && !sizes.contains(spec.width()))
+                || (spec.height() != null && !sizes.contains(spec.height()))) {
+            throw new ApiException(HttpStatus.BAD_REQUEST,
+                    "Unsupported derivative size, allowed sizes are " + sizes.stream().sorted().toList());
+        }
+    }
+    
+    /**
+     * Find the cached metadata of a file and validate that the current user can
+     * access it. Goes to the database only on a cache miss.
+     */
+    private CachedFileMetadata findMetadataAndValidateAccess(Long fileId, String... allowedRoles) {
+        CachedFileMetadata file = metadataCache.get(fileId, () -> readOnlyTransaction.execute(
+                _ -> storageRepository.findById(fileId).map(CachedFileMetadata::from).orElse(null)));
+        if (file == null) {
+            throw new NotFoundException();
+        }
+        validateAccess(file.access(), file.ownerId(), allowedRoles);
+        return file;
     }
     
     private FileUpload findByIdAndValidateAccess(Long fileId, String... allowedRoles) {
         FileUpload file = storageRepository.findById(fileId).orElseThrow(NotFoundException::new);
-        
-        if (file.getAccess() != FileAccessLevel.PUBLIC) {
+        validateAccess(file.getAccess(), file.getOwnerId(), allowedRoles);
+        return file;
+    }
+    
+    private void validateAccess(FileAccessLevel access, UUID ownerId, String... allowedRoles) {
+        if (access != FileAccessLevel.PUBLIC) {
             if (!SecurityContextUtils.isAuthenticated())
                 throw new ApiException(HttpStatus.UNAUTHORIZED);
             
-            if (file.getAccess() == FileAccessLevel.PRIVATE) {
-                if (!SecurityContextUtils.matchesUserIdOrHasAnyRole(file.getOwnerId(), allowedRoles))
+            if (access == FileAccessLevel.PRIVATE) {
+                if (!SecurityContextUtils.matchesUserIdOrHasAnyRole(ownerId, allowedRoles))
                     throw new ForbiddenException("Not authorized to access this file");
             }
         }
-        
-        return file;
     }
 
     public PreSignedDownloadUrlResponse generateTempDownloadUrl(Long fileId, UUID userId) {
         var file = findByIdAndVerifyOwnershipOrThrow(fileId, userId);
         if (!file.isAvailable())
             throw new NotFoundException("File not validated or has been deleted");
-        return storageProvider.generatePreSignedDownloadUrl(file.getStoragePath(), Duration.ofMinutes(3));
+        accessTracker.touch(fileId);
+        return presignedUrlCache.get(fileId, userId, TEMP_DOWNLOAD_URL_EXPIRY,
+                () -> providerRouter.provider(file).generatePreSignedDownloadUrl(file.getStoragePath(), TEMP_DOWNLOAD_URL_EXPIRY));
     }
 
     @Transactional
     public void deleteFile(Long fileId, UUID userId) {
         var f = findByIdAndValidateAccess(fileId, "ADMIN", "SYSTEM"); // only owner and admins can delete files
         storageRepository.delete(f);
+        metadataCache.evict(fileId);
+        presignedUrlCache.evict(fileId);
+        if (!deduplicationService.release(f)) {
+            return; // the object is shared with other uploads
+        }
+        deleteOutbox.enqueue(f);
         
         TransactionSynchronizationManager.registerSynchronization(
             new TransactionSynchronization() {
                 @Override
                 public void afterCommit() {
-                    storageProvider.deleteFileAsync(f.getStoragePath());
+                    diskFileCache.evict(f.getStoragePath(), f.getETag());
                 }
             }
         );
     }
 
     public FileUploadResponse getFileInfo(Long fileId) {
-        var f = readOnlyTransaction.execute(_ -> findByIdAndValidateAccess(fileId, "ADMIN", "SYSTEM"));
+        var f = findMetadataAndValidateAccess(fileId, "ADMIN", "SYSTEM");
         return fileUploadMapper.toResponseDto(f);
     }
+    
+    /**
+     * List the files of an owner, newest first, with keyset pagination on the
+     * (time-ordered) ID. The owner and admins see all files; other users only
+     * see the available files which aren't private.
+     * 
+     * @param ownerId the ID of the owner.
+     * @param cursor  the cursor returned with the previous page (nullable).
+     * @param status  only files with this status (nullable).
+     * @param access  only files with this access level (nullable).
+     * @param purpose only files with this purpose (nullable).
+     * @param limit   the max number of files to return.
+     * @return a page of files with the cursor of the next page.
+     */
+    public CursorPageResponse<FileUploadResponse> listFilesOfOwner(UUID ownerId, @Nullable String cursor,
+            @Nullable UploadStatus status, @Nullable FileAccessLevel access, @Nullable String purpose, int limit) {
+        boolean fullAccess = SecurityContextUtils.matchesUserIdOrHasAnyRole(ownerId, "ADMIN", "SYSTEM");
+        if (!fullAccess) {
+            if (access == FileAccessLevel.PRIVATE)
+                throw new ForbiddenException("Not authorized to list private files of this user");
+            if (status != null && status != UploadStatus.VALIDATED)
+                throw new ForbiddenException("Not authorized to list unavailable files of this user");
+            status = UploadStatus.VALIDATED;
+        }
+        
+        var files = storageRepository.findByOwnerBeforeId(ownerId, decodeCursor(cursor), status, access,
+                purpose == null ? null : normalizePurpose(purpose), fullAccess, Limit.of(limit + 1));
+        
+        boolean hasNext = files.size() > limit;
+        var page = hasNext ? files.subList(0, limit) : files;
+        var content = page.stream().map(fileUploadMapper::toResponseDto).toList();
+        String nextCursor = hasNext ? TSID.from(page.getLast().getId()).toLowerCase() : null;
+        return new CursorPageResponse<>(content, nextCursor);
+    }
+    
+    /**
+     * The ID of the last file of the previous page, encoded as a TSID string.
+     */
+    private static Long decodeCursor(@Nullable String cursor) {
+        if (cursor == null || cursor.isBlank()) {
+            return Long.MAX_VALUE;
+        }
+        if (!TSID.isValid(cursor)) {
+            throw new ApiException(HttpStatus.BAD_REQUEST, "Invalid cursor");
+        }
+        return TSID.from(cursor).toLong();
+    }
+    
+    /**
+     * Get the metadata of multiple files, e.g. all images of a listing page.
+     * Cache misses are loaded with a single query, and each file is checked as
+     * in {@link #getFileInfo(Long)}, with failures reported in its result
+     * instead of failing the whole batch.
+     * 
+     * @param req the IDs of the files.
+     * @return the result of each file, by ID.
+     */
+    public BatchFileInfoResponse getFileInfoBatch(@Valid BatchFileInfoRequest req) {
+        Set<Long> fileIds = new LinkedHashSet<>(req.fileIds());
+        Map<Long, CachedFileMetadata> files = metadataCache.getAll(fileIds, ids -> readOnlyTransaction.execute(
+                _ -> storageRepository.findAllById(ids).stream()
+                        .collect(Collectors.toMap(FileUpload::getId, CachedFileMetadata::from))));
+        
+        Map<Long, BatchFileInfoResponse.ItemResult> results = new LinkedHashMap<>();
+        for (Long fileId : fileIds) {
+            CachedFileMetadata file = files.get(fileId);
+            try {
+                if (file == null) {
+                    throw new NotFoundException();
+                }
+                validateAccess(file.access(), file.ownerId(), "ADMIN", "SYSTEM");
+                results.put(fileId, BatchFileInfoResponse.ItemResult.success(fileUploadMapper.toResponseDto(file)));
+            } catch (ApiException e) {
+                results.put(fileId, BatchFileInfoResponse.ItemResult.failed(e.getResponseStatus().value(), e.getMessage()));
+            }
+        }
+        return new BatchFileInfoResponse(results);
+    }
 
 }
@@ -0,0 +1,268 @@
+package dev.fnvir.kajz.storageservice.service;
+
+import java.io.InputStream;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import dev.fnvir.kajz.storageservice.config.StorageRoutingProperties;
+import dev.fnvir.kajz.storageservice.enums.ContentEncoding;
+import dev.fnvir.kajz.storageservice.enums.StorageProviderType;
+import dev.fnvir.kajz.storageservice.model.FileUpload;
+import dev.fnvir.kajz.storageservice.repository.FileBlobRepository;
+import dev.fnvir.kajz.storageservice.repository.StorageRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import net.javacrumbs.shedlock.core.LockAssert;
+import net.javacrumbs.shedlock.spring.annotation.SchedulerLock;
+
+/**
+ * Moves files which haven't been read for {@code storage.routing.cold.after}
+ * to a cheaper tier, in batches.
+ *
+ * <p>
+ * Without a {@code storage.routing.cold.provider}, files are moved to the cold
+ * storage class of the backend holding them (S3 Standard-IA, Azure Cool tier),
+ * keeping their keys. Otherwise they're copied to that provider and their
+ * backend is switched in one transaction, so reads go to the new copy right
+ * away; the old copy is deleted through the {@link DeleteOutboxService} after
+ * {@code storage.routing.cold.delete-delay}.
+ * </p>
+ */
+@Slf4j
+@Service
+public class StorageTieringService {
+
+    private static final String METRIC_PREFIX = "storage.tiering";
+
+    /** How long a run may keep moving files, kept below the lock's lockAtMostFor. */
+    static final Duration TIERING_TIME_BUDGET = Duration.ofMinutes(50);
+
+    private final StorageRepository storageRepository;
+    private final FileBlobRepository blobRepository;
+    private final StorageProviderRouter providerRouter;
+    private final DeleteOutboxService deleteOutbox;
+    private final FileMetadataCache metadataCache;
+    private final PresignedUrlCache presignedUrlCache;
+    private final StorageRoutingProperties.Cold properties;
+    private final TransactionTemplate transaction;
+
+    private final Counter movedToStorageClass;
+    private final Counter movedToProvider;
+    private final Counter movedBytes;
+    private final Counter failures;
+
+    public StorageTieringService(
+            StorageRepository storageRepository,
+            FileBlobRepository blobRepository,
+            StorageProviderRouter providerRouter,
+            DeleteOutboxService deleteOutbox,
+            FileMetadataCache metadataCache,
+            PresignedUrlCache presignedUrlCache,
+            StorageRoutingProperties routingProperties,
+            PlatformTransactionManager transactionManager,
+            MeterRegistry meterRegistry
+    ) {
+        this.storageRepository = storageRepository;
+        this.blobRepository = blobRepository;
+        this.providerRouter = providerRouter;
+        this.deleteOutbox = deleteOutbox;
+        this.metadataCache = metadataCache;
+        this.presignedUrlCache = presignedUrlCache;
+        this.properties = routingProperties.getCold();
+        this.transaction = new TransactionTemplate(transactionManager);
+
+        this.movedToStorageClass = moved(meterRegistry, "storage-class");
+        this.movedToProvider = moved(meterRegistry, "provider");
+        this.movedBytes = Counter.builder(METRIC_PREFIX + ".moved.bytes")
+                .description("Bytes of cold files moved to the cold tier")
+                .register(meterRegistry);
+        this.failures = Counter.builder(METRIC_PREFIX + ".failures")
+                .description("Failed attempts to move a cold file, retried on the next run")
+                .register(meterRegistry);
+    }
+
+    private static Counter moved(MeterRegistry registry, String mode) {
+        return Counter.builder(METRIC_PREFIX + ".moved")
+                .description("Cold files moved to the cold tier")
+                .tag("mode", mode)
+                .register(registry);
+    }
+
+    /**
+     * Walk the cold files of each backend page by page (keyset pagination by
+     * ID) until all are moved or the time budget is used up.
+     */
+    @Scheduled(initialDelay = 30, fixedRate = 60, timeUnit = TimeUnit.MINUTES)
+    @SchedulerLock(name = "moveColdFiles", lockAtMostFor = "55m")
+    protected void moveColdFiles() {
+        if (!Boolean.TRUE.equals(properties.getEnabled())) {
+            return;
+        }
+        LockAssert.assertLocked();
+
+        Instant now = Instant.now();
+        Instant coldBefore = now.minus(properties.getAfter());
+        Instant deadline = now.plus(TIERING_TIME_BUDGET);
+
+        int total = 0;
+        for (AbstractStorageProvider source : providerRouter.providers()) {
+            total += moveColdFiles(source, coldBefore, deadline);
+        }
+        if (total > 0) {
+            log.info("Moved {} cold files to the cold tier", total);
+        }
+    }
+
+    /**
+     * Move the cold files held by a backend.
+     *
+     * @return the number of objects moved.
+     */
+    int moveColdFiles(AbstractStorageProvider source, Instant coldBefore, Instant deadline) {
+        StorageProviderType target = properties.getProvider();
+        if (target == source.getProviderType()) {
+            return 0; // already in the cold tier
+        }
+        if (target == null && !source.supportsColdStorageClass()) {
+            log.debug("Skipping cold files of {}, it has no cold storage class", source.getProviderType());
+            return 0;
+        }
+        long maxSize = target == null ? source.maxColdStorageClassSize() : Long.MAX_VALUE;
+
+        long afterId = Long.MIN_VALUE;
+        int total = 0;
+        while (Instant.now().isBefore(deadline)) {
+            List<FileUpload> page = storageRepository.findColdFiles(afterId, source.getProviderType().name(),
+                    providerRouter.primaryType().name(), coldBefore, properties.getMinSize(), maxSize,
+                    properties.getBatchSize());
+            if (page.isEmpty()) {
+                break;
+            }
+            afterId = page.getLast().getId();
+
+            // deduplicated files share their object, which is moved once
+            Map<String, List<FileUpload>> byPath = page.stream().collect(
+                    Collectors.groupingBy(FileUpload::getStoragePath, LinkedHashMap::new, Collectors.toList()));
+            if (target == null) {
+                total += moveToColdStorageClass(source, byPath);
+            } else {
+                AbstractStorageProvider targetProvider = providerRouter.provider(target);
+                for (List<FileUpload> files : byPath.values()) {
+                    if (moveToProvider(source, targetProvider, files)) {
+                        total++;
+                    }
+                }
+            }
+
+            if (page.size() < properties.getBatchSize()) {
+                break;
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Move objects to the cold storage class of their backend and mark their
+     * files as cold.
+     *
+     * @return the number of objects moved.
+     */
+    private int moveToColdStorageClass(AbstractStorageProvider provider, Map<String, List<FileUpload>> byPath) {
+        Set<String> failed;
+        try {
+            failed = provider.moveToColdStorageClass(byPath.keySet());
+        } catch (RuntimeException e) {
+            log.error("Failed to move {} files of {} to the cold storage class: {}",
+                    byPath.size(), provider.getProviderType(), e.getMessage());
+            failures.increment(byPath.size());
+            return 0;
+        }
+        List<String> moved = byPath.keySet().stream().filter(path -> !failed.contains(path)).toList();
+        if (!moved.isEmpty()) {
+            transaction.executeWithoutResult(_ -> storageRepository.markColdTiered(moved, Instant.now()));
+        }
+        moved.forEach(path -> movedBytes.increment(byPath.get(path).getFirst().getContentSize()));
+        movedToStorageClass.increment(moved.size());
+        failures.increment(failed.size());
+        return moved.size();
+    }
+
+    /**
+     * Copy an object (and its compressed variant) to another backend and switch
+     * the files sharing it over. Image derivatives aren't copied, they're
+     * generated again in the new backend when requested.
+     *
+     * @param files the files stored at the same path.
+     * @return true if the object was moved, else false.
+     */
+    private boolean moveToProvider(AbstractStorageProvider source, AbstractStorageProvider target,
+            List<FileUpload> files) {
+        FileUpload file = files.getFirst();
+        String storagePath = file.getStoragePath();
+        Long gzipSize = ContentEncoding.fromMetadata(file.getMetadata()).get(ContentEncoding.GZIP.getToken());
+        try {
+            copy(source, target, storagePath, file.getContentSize(), file.getMimeType());
+            if (gzipSize != null) {
+                copy(source, target, ContentEncoding.GZIP.storagePath(storagePath), gzipSize, "application/gzip");
+            }
+        } catch (Exception e) {
+            log.warn("Failed to copy cold file {} from {} to {}: {}",
+                    storagePath, source.getProviderType(), target.getProviderType(), e.getMessage());
+            failures.increment();
+            return false;
+        }
+
+        List<Long> movedIds = transaction.execute(_ -> {
+            // the blob first: waits for a concurrent deduplication against it to commit,
+            // so the files it links to the object are switched over as well
+            blobRepository.updateStorageBackend(storagePath, target.getProviderType());
+            int updated = storageRepository.moveToBackend(storagePath, source.getProviderType().name(),
+                    providerRouter.primaryType().name(), target.getProviderType().name(), Instant.now());
+            if (updated > 0) {
+                deleteOutbox.enqueueDelayed(source.getProviderType(), storagePath, file.getMetadata(),
+                        properties.getDeleteDelay());
+                // every file at the path, not only the page's (e.g. deduplicated uploads not cold yet)
+                return storageRepository.findIdsByStoragePath(storagePath, target.getProviderType());
+            }
+            // no file was switched over, so the object stays in the source backend
+            blobRepository.updateStorageBackend(storagePath, source.getProviderType());
+            if (!storageRepository.existsByStoragePathAndDeletedFalse(storagePath)) {
+                deleteOutbox.enqueuePath(target.getProviderType(), storagePath); // deleted while copying
+                if (gzipSize != null) {
+                    deleteOutbox.enqueuePath(target.getProviderType(), ContentEncoding.GZIP.storagePath(storagePath));
+                }
+            }
+            return null;
+        });
+        if (movedIds == null) {
+            return false;
+        }
+
+        metadataCache.evict(movedIds);
+        movedIds.forEach(presignedUrlCache::evict);
+        movedToProvider.increment();
+        movedBytes.increment(file.getContentSize());
+        log.debug("Moved cold file {} from {} to {}", storagePath, source.getProviderType(), target.getProviderType());
+        return true;
+    }
+
+    private static void copy(AbstractStorageProvider source, AbstractStorageProvider target, String key,
+            long contentSize, String contentType) throws Exception {
+        try (InputStream in = source.downloadFile(key).call()) {
+            target.uploadFile(key, in, contentSize, contentType);
+        }
+    }
+
+}
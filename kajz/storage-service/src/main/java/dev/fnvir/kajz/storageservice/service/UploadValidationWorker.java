@@ -0,0 +1,174 @@
+package dev.fnvir.kajz.storageservice.service;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import dev.fnvir.kajz.storageservice.config.StorageProperties;
+import dev.fnvir.kajz.storageservice.dto.UploadValidationResultDTO;
+import dev.fnvir.kajz.storageservice.dto.event.FileStatusChangedEvent;
+import dev.fnvir.kajz.storageservice.enums.UploadStatus;
+import dev.fnvir.kajz.storageservice.model.FileUpload;
+import dev.fnvir.kajz.storageservice.repository.StorageRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import net.javacrumbs.shedlock.core.LockAssert;
+import net.javacrumbs.shedlock.spring.annotation.SchedulerLock;
+
+/**
+ * Validates the content of completed uploads in the background.
+ *
+ * <p>
+ * The uploads with status PROCESSING are the queue: an upload is handed to the
+ * worker pool right after it's marked PROCESSING, and the sweep picks up those
+ * which were never validated (queue full, node went down). Moving the upload
+ * out of PROCESSING is conditional, so an upload validated twice is harmless.
+ * </p>
+ */
+@Slf4j
+@Service
+public class UploadValidationWorker {
+
+    private static final int SWEEP_BATCH_SIZE = 100;
+
+    private final StorageRepository storageRepository;
+    private final StorageProviderRouter providerRouter;
+    private final FileMetadataCache metadataCache;
+    private final ApplicationEventPublisher eventPublisher;
+    private final StorageProperties storageProperties;
+    private final ContentDeduplicationService deduplicationService;
+    private final ContentEncodingService contentEncodingService;
+
+    private final ThreadPoolExecutor executor;
+
+    /** The uploads queued or being validated on this node. */
+    private final Set<Long> queued = ConcurrentHashMap.newKeySet();
+
+    public UploadValidationWorker(
+            StorageRepository storageRepository,
+            StorageProviderRouter providerRouter,
+            FileMetadataCache metadataCache,
+            ApplicationEventPublisher eventPublisher,
+            StorageProperties storageProperties,
+            ContentDeduplicationService deduplicationService,
+            ContentEncodingService contentEncodingService,
+            MeterRegistry meterRegistry
+    ) {
+        this.storageRepository = storageRepository;
+        this.providerRouter = providerRouter;
+        this.metadataCache = metadataCache;
+        this.eventPublisher = eventPublisher;
+        this.storageProperties = storageProperties;
+        this.deduplicationService = deduplicationService;
+        this.contentEncodingService = contentEncodingService;
+
+        int concurrency = storageProperties.getValidationConcurrency();
+        this.executor = new ThreadPoolExecutor(
+                concurrency, concurrency, 0, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(storageProperties.getValidationQueueCapacity()),
+                Thread.ofVirtual().name("upload-validation-", 0).factory(),
+                new ThreadPoolExecutor.AbortPolicy());
+        meterRegistry.gauge("storage.upload.validation.queued", queued, Set::size);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    @EventListener
+    public void onStatusChanged(FileStatusChangedEvent event) {
+        if (event.status() == UploadStatus.PROCESSING) {
+            submit(event.fileId());
+        }
+    }
+
+    /**
+     * Queue uploads stuck as PROCESSING for longer than
+     * {@code storage.file.validation-timeout}.
+     */
+    @Scheduled(initialDelay = 1, fixedRate = 1, timeUnit = TimeUnit.MINUTES)
+    @SchedulerLock(name = "sweepPendingValidations", lockAtMostFor = "50s")
+    protected void sweepPendingValidations() {
+        LockAssert.assertLocked();
+
+        Instant before = Instant.now().minus(storageProperties.getValidationTimeout());
+        List<FileUpload> pending = storageRepository.findPendingValidation(before, Limit.of(SWEEP_BATCH_SIZE));
+        if (!pending.isEmpty()) {
+            log.info("Queueing {} uploads pending validation", pending.size());
+        }
+        pending.forEach(f -> submit(f.getId()));
+    }
+
+    /**
+     * Queue an upload for validation, unless it's already queued on this node or
+     * the queue is full (then it's left to the sweep).
+     *
+     * @param fileId the ID of the file.
+     */
+    public void submit(Long fileId) {
+        if (!queued.add(fileId)) {
+            return;
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    validate(fileId);
+                } finally {
+                    queued.remove(fileId);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            queued.remove(fileId);
+            log.warn("Validation queue full, leaving upload {} to the sweep", fileId);
+        }
+    }
+
+    void validate(Long fileId) {
+        FileUpload file = storageRepository.findById(fileId).orElse(null);
+        if (file == null || file.isDeleted() || file.getStatus() != UploadStatus.PROCESSING) {
+            return;
+        }
+
+        UploadValidationResultDTO result;
+        try {
+            result = providerRouter.provider(file).validateUploadContent(file);
+        } catch (Exception e) {
+            log.error("Failed to validate content of upload {}, retrying on the next sweep: {}", fileId, e.getMessage());
+            return;
+        }
+
+        if (result.isSuccess()) {
+            String ownPath = file.getStoragePath();
+            deduplicationService.deduplicate(file); // while still PROCESSING, as it may change the storage path
+            if (file.getStoragePath().equals(ownPath)) {
+                contentEncodingService.precompress(file); // shared objects already have their variants
+            }
+        }
+
+        UploadStatus status = result.isSuccess() ? UploadStatus.VALIDATED : UploadStatus.FAILED;
+        String message = result.isSuccess() ? null : result.getMessage();
+        if (storageRepository.finishProcessing(fileId, status, message, Instant.now()) == 0) {
+            return; // already done by another worker
+        }
+        metadataCache.evict(fileId);
+
+        file.setStatus(status);
+        file.setStatusMessage(message);
+        eventPublisher.publishEvent(FileStatusChangedEvent.of(file));
+        // FAILED uploads are deleted from the provider by the cleanup job
+    }
+
+}
@@ -2,65 +2,138 @@ package dev.fnvir.kajz.storageservice.service.impl;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.time.Duration;
 import java.time.Instant;
 import java.time.OffsetDateTime;
 import java.time.ZoneOffset;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BiFunction;
+
+import org.reactivestreams.Publisher;
 
-import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Service;
 import org.springframework.util.StringUtils;
 
+import com.azure.core.http.HttpClient;
+import com.azure.core.http.netty.NettyAsyncHttpClientBuilder;
+import com.azure.core.http.rest.Response;
+import com.azure.core.util.BinaryData;
+import com.azure.core.util.Context;
+import com.azure.storage.blob.BlobAsyncClient;
 import com.azure.storage.blob.BlobClient;
+import com.azure.storage.blob.BlobContainerAsyncClient;
 import com.azure.storage.blob.BlobContainerClient;
 import com.azure.storage.blob.BlobServiceClient;
 import com.azure.storage.blob.BlobServiceClientBuilder;
+import com.azure.storage.blob.batch.BlobBatch;
+import com.azure.storage.blob.batch.BlobBatchClient;
+import com.azure.storage.blob.batch.BlobBatchClientBuilder;
+import com.azure.storage.blob.models.AccessTier;
+import com.azure.storage.blob.models.BlobHttpHeaders;
 import com.azure.storage.blob.models.BlobProperties;
 import com.azure.storage.blob.models.BlobRange;
+import com.azure.storage.blob.models.BlobStorageException;
+import com.azure.storage.blob.models.Block;
+import com.azure.storage.blob.models.BlockListType;
+import com.azure.storage.blob.options.BlobParallelUploadOptions;
+import com.azure.storage.blob.options.BlockBlobCommitBlockListOptions;
 import com.azure.storage.blob.sas.BlobSasPermission;
 import com.azure.storage.blob.sas.BlobServiceSasSignatureValues;
+import com.azure.storage.blob.specialized.BlockBlobClient;
 import com.azure.storage.common.sas.SasProtocol;
 
+import dev.fnvir.kajz.storageservice.annotation.ConditionalOnStorageProvider;
 import dev.fnvir.kajz.storageservice.config.AzureBlobStorageProperties;
 import dev.fnvir.kajz.storageservice.dto.UploadValidationResultDTO;
 import dev.fnvir.kajz.storageservice.dto.res.InitiateUploadResponse;
+import dev.fnvir.kajz.storageservice.dto.res.PartUploadUrl;
 import dev.fnvir.kajz.storageservice.dto.res.PreSignedDownloadUrlResponse;
 import dev.fnvir.kajz.storageservice.enums.StorageProviderType;
+import dev.fnvir.kajz.storageservice.exception.ConflictException;
 import dev.fnvir.kajz.storageservice.exception.NotFoundException;
 import dev.fnvir.kajz.storageservice.model.FileUpload;
 import dev.fnvir.kajz.storageservice.service.AbstractStorageProvider;
 import dev.fnvir.kajz.storageservice.util.StorageFileValidatorUtils;
+import io.netty.channel.ChannelOption;
 import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
+import reactor.netty.resources.ConnectionProvider;
 
 @Slf4j
 @Service
-@ConditionalOnProperty(name = "storage.provider", havingValue = "azure-blob")
+@ConditionalOnStorageProvider(StorageProviderType.AZURE_BLOB)
 public class AzureBlobStorageProvider extends AbstractStorageProvider {
     
     private final StorageFileValidatorUtils fileValidatorUtils;
     
     private final AzureBlobStorageProperties blobProperties;
     private final BlobContainerClient blobContainerClient;
+    private final BlobContainerAsyncClient blobContainerAsyncClient;
+    private final BlobBatchClient blobBatchClient;
+    private final ConnectionProvider connectionProvider;
     
     private static final boolean FORCE_HTTPS_ON_SAS = true; // make this configurable later
     
+    /** The max number of sub-requests per blob batch. */
+    private static final int BLOB_BATCH_SIZE = 256;
+    
     public AzureBlobStorageProvider(
             AzureBlobStorageProperties blobProperties,
             StorageFileValidatorUtils fileValidatorUtils
     ) {
         
-        BlobServiceClient blobServiceClient = new BlobServiceClientBuilder()
+        this.connectionProvider = connectionProvider(blobProperties);
+        HttpClient httpClient = new NettyAsyncHttpClientBuilder(
+                reactor.netty.http.client.HttpClient.create(connectionProvider)
+                        .option(ChannelOption.SO_KEEPALIVE, blobProperties.getHttp().getTcpKeepAlive()))
+                .connectTimeout(blobProperties.getHttp().getConnectionTimeout())
+                .build();
+        
+        var blobServiceClientBuilder = new BlobServiceClientBuilder()
                 .connectionString(blobProperties.getConnectionString())
-                .buildClient();
+                .httpClient(httpClient);
+        BlobServiceClient blobServiceClient = blobServiceClientBuilder.buildClient();
         
         this.blobContainerClient = blobServiceClient.getBlobContainerClient(blobProperties.getContainerName());
+        this.blobContainerAsyncClient = blobServiceClientBuilder.buildAsyncClient()
+                .getBlobContainerAsyncClient(blobProperties.getContainerName());
+        this.blobBatchClient = new BlobBatchClientBuilder(blobServiceClient).buildClient();
         this.blobProperties = blobProperties;
         this.fileValidatorUtils = fileValidatorUtils;
     }
     
+    /**
+     * The connection pool shared by the blob clients. Its metrics (connections
+     * by state, time waited for a connection) are published under
+     * {@code reactor.netty.connection.provider.*} to the global registry,
+     * which includes the application's registries.
+     */
+    private static ConnectionProvider connectionProvider(AzureBlobStorageProperties blobProperties) {
+        var pool = blobProperties.getHttp();
+        return ConnectionProvider.builder("azure-blob")
+                .maxConnections(pool.getMaxConnections())
+                .pendingAcquireMaxCount(pool.getMaxPendingAcquires())
+                .pendingAcquireTimeout(pool.getAcquisitionTimeout())
+                .maxIdleTime(pool.getMaxIdleTime())
+                .evictInBackground(pool.getIdleEvictionInterval())
+                .metrics(true)
+                .build();
+    }
+    
     @PostConstruct
     void init() {
         if(!blobContainerClient.exists()) {
@@ -74,6 +147,11 @@ public class AzureBlobStorageProvider extends AbstractStorageProvider {
         }
     }
     
+    @PreDestroy
+    void cleanup() {
+        connectionProvider.dispose();
+    }
+    
     @Override
     public StorageProviderType getProviderType() {
         return StorageProviderType.AZURE_BLOB;
@@ -121,39 +199,210 @@ public class AzureBlobStorageProvider extends AbstractStorageProvider {
         return blobClient.getBlobUrl() + "?" + sasToken;
     }
 
+    /**
+     * Blocks are staged directly on the blob, so there's nothing to create. The
+     * returned ID only marks the upload as multipart.
+     */
     @Override
-    public UploadValidationResultDTO validateUploadCompletion(FileUpload file) {
-        String blobName = file.getStoragePath();
-        BlobClient blobClient = blobContainerClient.getBlobClient(blobName);
+    public String createMultipartUpload(FileUpload file) {
+        return UUID.randomUUID().toString();
+    }
+
+    @Override
+    public List<PartUploadUrl> generatePartUploadUrls(FileUpload file, Collection<Integer> partNumbers) {
+        BlobClient blobClient = blobContainerClient.getBlobClient(file.getStoragePath());
         
-        // verify file exists
-        if (!blobClient.exists())
-            return UploadValidationResultDTO.fileDoesntExist();
+        // one SAS covers all blocks: write (no create/read/delete)
+        BlobSasPermission perms = new BlobSasPermission()
+                .setWritePermission(true);
         
-        BlobProperties properties = blobClient.getProperties();
+        Instant expiresAt = Instant.now().plus(PART_UPLOAD_EXPIRY_TIME);
+        BlobServiceSasSignatureValues values = new BlobServiceSasSignatureValues(expiresAt.atOffset(ZoneOffset.UTC), perms)
+                .setProtocol(FORCE_HTTPS_ON_SAS ? SasProtocol.HTTPS_ONLY : SasProtocol.HTTPS_HTTP)
+                .setStartTime(OffsetDateTime.now().minusSeconds(5));
+        String sasToken = blobClient.generateSas(values);
         
-        // validate uploaded file's content-length
-        long filesize = properties.getBlobSize();
-        boolean isValidBlobSize = fileValidatorUtils.isValidFileSize(filesize);
-        String eTag = properties.getETag();
+        return partNumbers.stream().map(partNumber -> PartUploadUrl.builder()
+                .partNumber(partNumber)
+                .uploadUrl(blobClient.getBlobUrl()
+                        + "?comp=block&blockid=" + URLEncoder.encode(blockId(partNumber), StandardCharsets.UTF_8)
+                        + "&" + sasToken)
+                .expiresAt(expiresAt)
+                .build()
+        ).toList();
+    }
+
+    @Override
+    public Map<Integer, String> listUploadedParts(FileUpload file) {
+        Map<Integer, String> parts = new TreeMap<>();
+        uncommittedBlocks(file).forEach((partNumber, block) -> parts.put(partNumber, block.getName()));
+        return parts;
+    }
+
+    private Map<Integer, Block> uncommittedBlocks(FileUpload file) {
+        BlockBlobClient blockBlobClient = blobContainerClient.getBlobClient(file.getStoragePath()).getBlockBlobClient();
+        Map<Integer, Block> blocks = new TreeMap<>();
+        try {
+            for (Block block : blockBlobClient.listBlocks(BlockListType.UNCOMMITTED).getUncommittedBlocks()) {
+                Integer partNumber = partNumberOf(block.getName());
+                if (partNumber != null)
+                    blocks.put(partNumber, block);
+            }
+        } catch (BlobStorageException e) {
+            if (e.getStatusCode() != 404) // no block staged yet
+                throw e;
+        }
+        return blocks;
+    }
+
+    /**
+     * Committing discards the uncommitted blocks, so a committed blob with all
+     * parts counts as completed (e.g. when retried after a rolled back
+     * transaction).
+     * 
+     * <p>
+     * A SAS can't pin the size of a block, so the staged blocks are checked
+     * against the size of their part before committing. A block of the wrong
+     * size can be staged again.
+     * </p>
+     */
+    @Override
+    public void completeMultipartUpload(FileUpload file) {
+        Map<Integer, Block> blocks = uncommittedBlocks(file);
+        if (blocks.isEmpty() && committedParts(file).size() == file.getPartCount()) {
+            log.debug("Multipart upload already completed: {}", file.getStoragePath());
+            return;
+        }
+        Map<Integer, String> parts = new TreeMap<>();
+        blocks.forEach((partNumber, block) -> parts.put(partNumber, block.getName()));
+        file.setUploadedParts(parts);
+        requireAllParts(file, parts);
+        List<Integer> wrongSize = blocks.entrySet().stream()
+                .filter(e -> e.getValue().getSizeLong() != partLength(file, e.getKey()))
+                .map(Map.Entry::getKey)
+                .toList();
+        if (!wrongSize.isEmpty()) {
+            throw new ConflictException("Parts of the wrong size: " + wrongSize);
+        }
         
+        var options = new BlockBlobCommitBlockListOptions(List.copyOf(parts.values()))
+                .setHeaders(new BlobHttpHeaders().setContentType(file.getMimeType()));
+        blobContainerClient.getBlobClient(file.getStoragePath()).getBlockBlobClient()
+                .commitBlockListWithResponse(options, null, Context.NONE);
+    }
+
+    private Set<Integer> committedParts(FileUpload file) {
+        BlockBlobClient blockBlobClient = blobContainerClient.getBlobClient(file.getStoragePath()).getBlockBlobClient();
+        Set<Integer> parts = new HashSet<>();
+        try {
+            for (Block block : blockBlobClient.listBlocks(BlockListType.COMMITTED).getCommittedBlocks()) {
+                Integer partNumber = partNumberOf(block.getName());
+                if (partNumber != null)
+                    parts.add(partNumber);
+            }
+        } catch (BlobStorageException e) {
+            if (e.getStatusCode() != 404)
+                throw e;
+        }
+        return parts;
+    }
+
+    /**
+     * Uncommitted blocks are discarded by Azure after 7 days, and can't be
+     * removed individually. Delete the blob in case the list was committed.
+     */
+    @Override
+    public void abortMultipartUpload(String key, String uploadId) {
+        deleteFile(key);
+    }
+
+    /**
+     * Block IDs must be base64 and of equal length within a blob.
+     */
+    private static String blockId(int partNumber) {
+        return Base64.getEncoder().encodeToString(
+                String.format("%06d", partNumber).getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private static Integer partNumberOf(String blockId) {
+        try {
+            return Integer.valueOf(new String(Base64.getDecoder().decode(blockId), StandardCharsets.US_ASCII));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public UploadValidationResultDTO checkUploadCompletion(FileUpload file) {
+        BlobClient blobClient = blobContainerClient.getBlobClient(file.getStoragePath());
+        
+        // verify file exists (a missing blob fails with 404, no separate exists() round-trip)
+        BlobProperties properties;
+        try {
+            properties = blobClient.getProperties();
+        } catch (BlobStorageException e) {
+            if (e.getStatusCode() == 404)
+                return UploadValidationResultDTO.fileDoesntExist();
+            throw e;
+        }
+        
+        // validate uploaded file's content-length
+        boolean isValidBlobSize = fileValidatorUtils.isValidFileSize(properties.getBlobSize(), file.isMultipart());
         if (!isValidBlobSize) {
             return UploadValidationResultDTO.invalidContentLength();
         }
+        return UploadValidationResultDTO.success().eTag(properties.getETag()).contentLength(properties.getBlobSize());
+    }
+
+    @Override
+    public UploadValidationResultDTO validateUploadContent(FileUpload file) {
+        BlobClient blobClient = blobContainerClient.getBlobClient(file.getStoragePath());
         
         // validate uploaded file's actual content-type
-        // TODO: validate actual content-type in background worker asynchronously
-        try (InputStream in = blobClient.openInputStream(new BlobRange(0, 8192L), null)) { // read first 8KB only
+        try (InputStream in = blobClient.openInputStream(new BlobRange(0, (long) fileValidatorUtils.getSniffLength()), null)) { // only what detection needs
             boolean isValidMediaType = fileValidatorUtils.isValidMimeType(file.getFilename(), in);
             if(!isValidMediaType) {
                 return UploadValidationResultDTO.invalidContentType();
             }
+        } catch (BlobStorageException e) {
+            if (e.getStatusCode() == 404)
+                return UploadValidationResultDTO.fileDoesntExist();
+            throw e;
         } catch (IOException e) {
             log.error("Skipping content-type validation: IO error in input stream of blob. {}", e.getMessage());
-//            return UploadValidationResultDTO.failed();
         }
-        return UploadValidationResultDTO.success().eTag(eTag);
-        
+        return UploadValidationResultDTO.success();
+    }
+
+    @Override
+    public void uploadFile(String key, byte[] content, String contentType) {
+        var options = new BlobParallelUploadOptions(BinaryData.fromBytes(content))
+                .setHeaders(new BlobHttpHeaders().setContentType(contentType));
+        recordProviderCall("put-blob");
+        blobContainerClient.getBlobClient(key).uploadWithResponse(options, null, Context.NONE);
+    }
+
+    @Override
+    public void uploadFile(String key, InputStream content, long contentLength, String contentType) {
+        var options = new BlobParallelUploadOptions(BinaryData.fromStream(content, contentLength))
+                .setHeaders(new BlobHttpHeaders().setContentType(contentType));
+        recordProviderCall("put-blob");
+        blobContainerClient.getBlobClient(key).uploadWithResponse(options, null, Context.NONE);
+    }
+
+    @Override
+    public boolean supportsColdStorageClass() {
+        return true;
+    }
+
+    /**
+     * A missing blob isn't moved, so it's reported as failed like on S3 and
+     * isn't recorded as cold.
+     */
+    @Override
+    public Set<String> moveToColdStorageClass(Collection<String> keys) {
+        return submitInBatches(keys, "set-tier", false, (blobBatch, blobName) ->
+                blobBatch.setBlobAccessTier(blobContainerClient.getBlobContainerName(), blobName, AccessTier.COOL));
     }
 
     @Override
@@ -165,6 +414,59 @@ public class AzureBlobStorageProvider extends AbstractStorageProvider {
         return blobClient.deleteIfExists();
     }
 
+    @Override
+    public Set<String> deleteFiles(Collection<String> keys) {
+        return submitInBatches(keys, "delete", true, (blobBatch, blobName) ->
+                blobBatch.deleteBlob(blobContainerClient.getBlobContainerName(), blobName));
+    }
+
+    /**
+     * Submit one sub-request per blob, in batches of {@link #BLOB_BATCH_SIZE}.
+     * 
+     * @param keys          the blob-names (blank and duplicate names are skipped).
+     * @param operation     the name of the operation, for logs and call metrics.
+     * @param missingIsDone whether a missing blob (404) counts as done.
+     * @param subRequest    adds the sub-request of a blob to a batch.
+     * @return the blob-names the operation failed for.
+     */
+    private Set<String> submitInBatches(Collection<String> keys, String operation, boolean missingIsDone,
+            BiFunction<BlobBatch, String, Response<Void>> subRequest) {
+        List<String> blobNames = keys.stream().filter(StringUtils::hasText).distinct().toList();
+        Set<String> failed = new HashSet<>();
+        
+        for (int i = 0; i < blobNames.size(); i += BLOB_BATCH_SIZE) {
+            List<String> batch = blobNames.subList(i, Math.min(i + BLOB_BATCH_SIZE, blobNames.size()));
+            BlobBatch blobBatch = blobBatchClient.getBlobBatch();
+            Map<String, Response<Void>> responses = new HashMap<>();
+            for (String blobName : batch) {
+                responses.put(blobName, subRequest.apply(blobBatch, blobName));
+            }
+            
+            try {
+                recordProviderCall("blob-batch-" + operation);
+                blobBatchClient.submitBatchWithResponse(blobBatch, false, null, Context.NONE);
+            } catch (BlobStorageException e) {
+                log.error("Failed to {} batch of {} blobs: {}", operation, batch.size(), e.getMessage());
+                failed.addAll(batch);
+                continue;
+            }
+            
+            responses.forEach((blobName, response) -> {
+                int status;
+                try {
+                    status = response.getStatusCode();
+                } catch (BlobStorageException e) { // thrown for failed sub-requests
+                    status = e.getStatusCode();
+                }
+                if (status >= 300 && !(status == 404 && missingIsDone)) {
+                    log.warn("Failed to {} blob {}: status {}", operation, blobName, status);
+                    failed.add(blobName);
+                }
+            });
+        }
+        return failed;
+    }
+
     @Override
     public Callable<InputStream> downloadFile(String key) {
         final String blobName = key;
@@ -174,11 +476,62 @@ public class AzureBlobStorageProvider extends AbstractStorageProvider {
         }
         
         BlobClient blobClient = blobContainerClient.getBlobClient(blobName);
-        if (!blobClient.exists()) {
-            throw new NotFoundException("File doesn't exist");
+        return () -> openInputStream(blobClient, null);
+    }
+
+    @Override
+    public Callable<InputStream> downloadFileRange(String key, long start, long end) {
+        if (!StringUtils.hasText(key)) {
+            throw new NotFoundException("File not found");
         }
         
-        return blobClient::openInputStream;
+        BlobClient blobClient = blobContainerClient.getBlobClient(key);
+        BlobRange range = new BlobRange(start, end - start + 1);
+        return () -> openInputStream(blobClient, range);
+    }
+    
+    /**
+     * Open the blob stream, mapping a missing blob to {@link NotFoundException}
+     * instead of checking existence with a separate request.
+     */
+    private InputStream openInputStream(BlobClient blobClient, BlobRange range) {
+        recordProviderCall("get-blob");
+        try {
+            return blobClient.openInputStream(range, null);
+        } catch (BlobStorageException e) {
+            if (e.getStatusCode() == 404) {
+                throw new NotFoundException("File doesn't exist");
+            }
+            throw e;
+        }
+    }
+
+    @Override
+    public CompletableFuture<Publisher<ByteBuffer>> downloadFileNonBlocking(String key) {
+        if (!StringUtils.hasText(key)) {
+            throw new NotFoundException("File not found");
+        }
+        return downloadNonBlocking(blobContainerAsyncClient.getBlobAsyncClient(key), null);
+    }
+
+    @Override
+    public CompletableFuture<Publisher<ByteBuffer>> downloadFileRangeNonBlocking(String key, long start, long end) {
+        if (!StringUtils.hasText(key)) {
+            throw new NotFoundException("File not found");
+        }
+        BlobRange range = new BlobRange(start, end - start + 1);
+        return downloadNonBlocking(blobContainerAsyncClient.getBlobAsyncClient(key), range);
+    }
+    
+    private CompletableFuture<Publisher<ByteBuffer>> downloadNonBlocking(BlobAsyncClient blobClient, BlobRange range) {
+        recordProviderCall("get-blob");
+        return blobClient.downloadStreamWithResponse(range, null, null, false)
+                .<Publisher<ByteBuffer>>map(res -> res.getValue())
+                .onErrorMap(
+                    e -> e instanceof BlobStorageException bse && bse.getStatusCode() == 404,
+                    _ -> new NotFoundException("File doesn't exist")
+                )
+                .toFuture();
     }
 
     @Override
@@ -187,10 +540,8 @@ public class AzureBlobStorageProvider extends AbstractStorageProvider {
             throw new IllegalArgumentException("Blank key not allowed");
         }
         
+        // SAS generation is local, existence of the blob is already known from its record
         BlobClient blobClient = blobContainerClient.getBlobClient(key);
-        if (!blobClient.exists()) {
-            throw new NotFoundException("File doesn't exist");
-        }
         
         // Permissions: read
         BlobSasPermission perms = new BlobSasPermission()
@@ -0,0 +1,577 @@
+package dev.fnvir.kajz.storageservice.service.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.reactivestreams.Publisher;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.util.FileSystemUtils;
+import org.springframework.util.StringUtils;
+
+import dev.fnvir.kajz.storageservice.annotation.ConditionalOnStorageProvider;
+import dev.fnvir.kajz.storageservice.config.LocalFsStorageProperties;
+import dev.fnvir.kajz.storageservice.dto.UploadValidationResultDTO;
+import dev.fnvir.kajz.storageservice.dto.res.InitiateUploadResponse;
+import dev.fnvir.kajz.storageservice.dto.res.PartUploadUrl;
+import dev.fnvir.kajz.storageservice.dto.res.PreSignedDownloadUrlResponse;
+import dev.fnvir.kajz.storageservice.enums.StorageProviderType;
+import dev.fnvir.kajz.storageservice.exception.ApiException;
+import dev.fnvir.kajz.storageservice.exception.ForbiddenException;
+import dev.fnvir.kajz.storageservice.exception.NotFoundException;
+import dev.fnvir.kajz.storageservice.model.FileUpload;
+import dev.fnvir.kajz.storageservice.service.AbstractStorageProvider;
+import dev.fnvir.kajz.storageservice.util.FileChannelInputStream;
+import dev.fnvir.kajz.storageservice.util.StorageFileValidatorUtils;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Flux;
+
+/**
+ * Storage provider which keeps blobs on the local filesystem.
+ *
+ * <p>
+ * Meant for on-prem nodes and CI runs which can't reach a cloud provider.
+ * Uploads and downloads go through {@code /storage/local-fs/objects} using
+ * HMAC-signed URLs, so the initiate/complete flow works the same as with the
+ * pre-signed URLs of the cloud providers.
+ * </p>
+ *
+ * <p>
+ * Parts of multipart uploads are kept in {@code .multipart/<upload-id>/} under
+ * the root directory until the upload is completed, which concatenates them
+ * into the object.
+ * </p>
+ */
+@Slf4j
+@Service
+@ConditionalOnStorageProvider(StorageProviderType.LOCAL_FS)
+public class LocalFsStorageProvider extends AbstractStorageProvider {
+
+    public static final String OBJECTS_PATH = "/storage/local-fs/objects";
+    public static final String OP_UPLOAD = "upload";
+    public static final String OP_DOWNLOAD = "download";
+    public static final String OP_UPLOAD_PART = "upload-part";
+
+    private static final String HMAC_ALGORITHM = "HmacSHA256";
+    private static final int BUFFER_SIZE = 8192;
+    /** Size of the buffers of non-blocking downloads. */
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+    private static final String TEMP_FILE_SUFFIX = ".part";
+    private static final String MULTIPART_DIR = ".multipart";
+
+    private final StorageFileValidatorUtils fileValidatorUtils;
+    private final LocalFsStorageProperties localFsProperties;
+    private final Path rootDir;
+    private final SecretKeySpec signingKey;
+
+    public LocalFsStorageProvider(
+            LocalFsStorageProperties localFsProperties,
+            StorageFileValidatorUtils fileValidatorUtils
+    ) {
+        if (!StringUtils.hasText(localFsProperties.getSigningSecret())) {
+            throw new IllegalStateException("storage.local-fs.signing-secret must be set.");
+        }
+        this.rootDir = Path.of(localFsProperties.getRootDir()).toAbsolutePath().normalize();
+        this.signingKey = new SecretKeySpec(
+                localFsProperties.getSigningSecret().getBytes(StandardCharsets.UTF_8), HMAC_ALGORITHM);
+        this.localFsProperties = localFsProperties;
+        this.fileValidatorUtils = fileValidatorUtils;
+    }
+
+    @PostConstruct
+    void init() throws IOException {
+        if (!Files.isDirectory(rootDir)) {
+            if (Boolean.TRUE.equals(localFsProperties.getAutoCreateRootDir())) {
+                log.info("Creating local storage root directory: {}", rootDir);
+                Files.createDirectories(rootDir);
+            } else {
+                throw new IllegalStateException("Local storage root directory doesn't exist."
+                        + " Please create it first or enable auto-creation.");
+            }
+        }
+    }
+
+    @Override
+    public StorageProviderType getProviderType() {
+        return StorageProviderType.LOCAL_FS;
+    }
+
+    @Override
+    public InitiateUploadResponse initiateUpload(FileUpload file) {
+        Instant expiresAt = Instant.now().plus(UPLOAD_EXPIRY_TIME);
+        return InitiateUploadResponse.builder()
+                .fileId(file.getId())
+                .uploadUrl(generateSignedUrl(OP_UPLOAD, file.getStoragePath(), expiresAt))
+                .expiresAt(expiresAt)
+                .build();
+    }
+
+    @Override
+    public UploadValidationResultDTO checkUploadCompletion(FileUpload file) {
+        Path path = resolve(file.getStoragePath());
+
+        BasicFileAttributes attrs;
+        try {
+            attrs = Files.readAttributes(path, BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
+            return UploadValidationResultDTO.fileDoesntExist();
+        } catch (IOException e) {
+            log.error("Failed to read attributes of local file: {}", path);
+            throw new RuntimeException(e);
+        }
+
+        if (!attrs.isRegularFile())
+            return UploadValidationResultDTO.fileDoesntExist();
+
+        if (!fileValidatorUtils.isValidFileSize(attrs.size(), file.isMultipart()))
+            return UploadValidationResultDTO.invalidContentLength();
+
+        return UploadValidationResultDTO.success().eTag(eTagOf(attrs)).contentLength(attrs.size());
+    }
+
+    @Override
+    public UploadValidationResultDTO validateUploadContent(FileUpload file) {
+        Path path = resolve(file.getStoragePath());
+        try (InputStream in = FileChannelInputStream.open(path, 0, fileValidatorUtils.getSniffLength() - 1)) {
+            if (!fileValidatorUtils.isValidMimeType(file.getFilename(), in)) {
+                return UploadValidationResultDTO.invalidContentType();
+            }
+        } catch (NoSuchFileException e) {
+            return UploadValidationResultDTO.fileDoesntExist();
+        } catch (IOException e) {
+            log.error("Skipping content-type validation: IO error in input stream of local file. {}", e.getMessage());
+        }
+        return UploadValidationResultDTO.success();
+    }
+
+    @Override
+    public void uploadFile(String key, byte[] content, String contentType) {
+        recordProviderCall("write-file");
+        try {
+            writeObject(key, new ByteArrayInputStream(content));
+        } catch (IOException e) {
+            log.error("Failed to write local file with key: {}", key);
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void uploadFile(String key, InputStream content, long contentLength, String contentType) {
+        recordProviderCall("write-file");
+        try {
+            writeObject(key, content);
+        } catch (IOException e) {
+            log.error("Failed to write local file with key: {}", key);
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public boolean deleteFile(String key) {
+        if (!StringUtils.hasText(key)) {
+            return false;
+        }
+        try {
+            return Files.deleteIfExists(resolve(key));
+        } catch (IOException e) {
+            log.error("Failed to delete local file with key: {}", key, e);
+            return false;
+        }
+    }
+
+    @Override
+    public Callable<InputStream> downloadFile(String key) {
+        if (!StringUtils.hasText(key)) {
+            throw new NotFoundException("File not found");
+        }
+        return () -> {
+            recordProviderCall("open-file");
+            return openObject(key);
+        };
+    }
+
+    @Override
+    public Callable<InputStream> downloadFileRange(String key, long start, long end) {
+        if (!StringUtils.hasText(key)) {
+            throw new NotFoundException("File not found");
+        }
+        return () -> {
+            recordProviderCall("open-file");
+            try {
+                return FileChannelInputStream.open(resolve(key), start, end);
+            } catch (NoSuchFileException e) {
+                throw new NotFoundException("File doesn't exist");
+            }
+        };
+    }
+
+    @Override
+    public CompletableFuture<Publisher<ByteBuffer>> downloadFileNonBlocking(String key) {
+        if (!StringUtils.hasText(key)) {
+            throw new NotFoundException("File not found");
+        }
+        return readNonBlocking(key, 0, -1);
+    }
+
+    @Override
+    public CompletableFuture<Publisher<ByteBuffer>> downloadFileRangeNonBlocking(String key, long start, long end) {
+        if (!StringUtils.hasText(key)) {
+            throw new NotFoundException("File not found");
+        }
+        return readNonBlocking(key, start, end - start + 1);
+    }
+
+    /**
+     * Read a file with an {@link AsynchronousFileChannel}. The channel is opened
+     * right away, so a missing file fails the future, and is closed once the
+     * publisher completes or is cancelled.
+     *
+     * @param count the number of bytes to read, -1 to read up to the end.
+     */
+    private CompletableFuture<Publisher<ByteBuffer>> readNonBlocking(String key, long start, long count) {
+        recordProviderCall("open-file");
+        AsynchronousFileChannel channel;
+        try {
+            channel = AsynchronousFileChannel.open(resolve(key), StandardOpenOption.READ);
+        } catch (NoSuchFileException e) {
+            return CompletableFuture.failedFuture(new NotFoundException("File doesn't exist"));
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(new UncheckedIOException(e));
+        }
+        Flux<DataBuffer> content = DataBufferUtils.readAsynchronousFileChannel(
+                () -> channel, start, DefaultDataBufferFactory.sharedInstance, READ_BUFFER_SIZE);
+        if (count >= 0) {
+            content = DataBufferUtils.takeUntilByteCount(content, count);
+        }
+        // heap buffers of the default factory, handed over without a copy
+        return CompletableFuture.completedFuture(content.map(buffer -> ((DefaultDataBuffer) buffer).getNativeBuffer()));
+    }
+
+    @Override
+    public String createMultipartUpload(FileUpload file) {
+        String uploadId = UUID.randomUUID().toString();
+        try {
+            Files.createDirectories(partsDir(uploadId));
+        } catch (IOException e) {
+            log.error("Failed to create local multipart upload of: {}", file.getStoragePath());
+            throw new UncheckedIOException(e);
+        }
+        return uploadId;
+    }
+
+    @Override
+    public List<PartUploadUrl> generatePartUploadUrls(FileUpload file, Collection<Integer> partNumbers) {
+        Instant expiresAt = Instant.now().plus(PART_UPLOAD_EXPIRY_TIME);
+        long expires = expiresAt.getEpochSecond();
+        String uploadId = file.getMultipartUploadId();
+        return partNumbers.stream().map(partNumber -> PartUploadUrl.builder()
+                .partNumber(partNumber)
+                .uploadUrl(localFsProperties.getPublicBaseUrl() + OBJECTS_PATH
+                        + "?uploadId=" + uploadId
+                        + "&partNumber=" + partNumber
+                        + "&expires=" + expires
+                        + "&sig=" + Base64.getUrlEncoder().withoutPadding().encodeToString(
+                                sign(OP_UPLOAD_PART, partResource(uploadId, partNumber), expires)))
+                .expiresAt(expiresAt)
+                .build()
+        ).toList();
+    }
+
+    @Override
+    public Map<Integer, String> listUploadedParts(FileUpload file) {
+        Path partsDir = partsDir(file.getMultipartUploadId());
+        Map<Integer, String> parts = new TreeMap<>();
+        try (Stream<Path> files = Files.list(partsDir)) {
+            for (Path part : (Iterable<Path>) files::iterator) {
+                Integer partNumber = partNumberOf(part);
+                if (partNumber != null) {
+                    parts.put(partNumber, eTagOf(Files.readAttributes(part, BasicFileAttributes.class)));
+                }
+            }
+        } catch (NoSuchFileException e) {
+            throw new NotFoundException("Multipart upload doesn't exist or has already been completed");
+        } catch (IOException e) {
+            log.error("Failed to list parts of local multipart upload: {}", file.getMultipartUploadId());
+            throw new UncheckedIOException(e);
+        }
+        return parts;
+    }
+
+    @Override
+    public void completeMultipartUpload(FileUpload file) {
+        Path target = resolve(file.getStoragePath());
+        if (!Files.isDirectory(partsDir(file.getMultipartUploadId())) && Files.isRegularFile(target)) {
+            log.debug("Multipart upload already completed: {}", file.getStoragePath());
+            return;
+        }
+        Map<Integer, String> parts = listUploadedParts(file);
+        file.setUploadedParts(parts);
+        requireAllParts(file, parts);
+
+        Path partsDir = partsDir(file.getMultipartUploadId());
+        try {
+            Files.createDirectories(target.getParent());
+            Path temp = Files.createTempFile(target.getParent(), target.getFileName().toString(), TEMP_FILE_SUFFIX);
+            try {
+                try (OutputStream out = Files.newOutputStream(temp)) {
+                    for (Integer partNumber : parts.keySet()) {
+                        Files.copy(partsDir.resolve(partNumber.toString()), out);
+                    }
+                }
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+            FileSystemUtils.deleteRecursively(partsDir);
+        } catch (IOException e) {
+            log.error("Failed to assemble local multipart upload of: {}", file.getStoragePath());
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void abortMultipartUpload(String key, String uploadId) {
+        try {
+            FileSystemUtils.deleteRecursively(partsDir(uploadId));
+        } catch (IOException e) {
+            log.error("Failed to delete parts of local multipart upload: {}", uploadId, e);
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public PreSignedDownloadUrlResponse generatePreSignedDownloadUrl(String key, Duration expiry) {
+        if (!StringUtils.hasText(key)) {
+            throw new IllegalArgumentException("Blank key not allowed");
+        }
+        Instant expiresAt = Instant.now().plus(expiry);
+        return PreSignedDownloadUrlResponse.builder()
+                .url(generateSignedUrl(OP_DOWNLOAD, key, expiresAt))
+                .expiresAt(expiresAt)
+                .build();
+    }
+
+    /**
+     * Verify the signature and expiry of a signed local URL.
+     *
+     * @param operation the operation the URL was signed for.
+     * @param key       the key of the object.
+     * @param expires   the expiry (epoch seconds) of the URL.
+     * @param signature the signature of the URL.
+     * @throws ForbiddenException if the signature is invalid or has expired.
+     */
+    public void verifySignature(String operation, String key, long expires, String signature) {
+        if (Instant.now().getEpochSecond() > expires) {
+            throw new ForbiddenException("Signed URL has expired");
+        }
+        byte[] expected = sign(operation, key, expires);
+        byte[] actual;
+        try {
+            actual = Base64.getUrlDecoder().decode(signature);
+        } catch (IllegalArgumentException e) {
+            throw new ForbiddenException("Invalid signature");
+        }
+        if (!MessageDigest.isEqual(expected, actual)) {
+            throw new ForbiddenException("Invalid signature");
+        }
+    }
+
+    /**
+     * Write the uploaded content of an object. The content is first written to a
+     * temp file and then atomically moved in place, so partially uploaded files are
+     * never visible.
+     *
+     * @param key the key of the object.
+     * @param in  the content to write.
+     * @return the ETag and size of the stored object.
+     * @throws IOException if writing fails.
+     */
+    public StoredObject writeObject(String key, InputStream in) throws IOException {
+        Path target = resolve(key);
+        write(target, in, false);
+        var attributes = Files.readAttributes(target, BasicFileAttributes.class);
+        return new StoredObject(eTagOf(attributes), attributes.size());
+    }
+
+    /**
+     * An object written by {@link #writeObject(String, InputStream)}.
+     *
+     * @param eTag the ETag of the object.
+     * @param size the size of the object in bytes, as written (also for
+     *             chunked uploads, which have no content length).
+     */
+    public record StoredObject(String eTag, long size) {
+    }
+
+    /**
+     * Write an uploaded part of a multipart upload. Uploading a part again
+     * replaces it.
+     *
+     * @param uploadId   the ID of the multipart upload.
+     * @param partNumber the number (1-based) of the part.
+     * @param in         the content of the part.
+     * @return the ETag of the part.
+     * @throws NotFoundException if the multipart upload doesn't exist.
+     * @throws IOException       if writing fails.
+     */
+    public String writeObjectPart(String uploadId, int partNumber, InputStream in) throws IOException {
+        Path partsDir = partsDir(uploadId);
+        if (!Files.isDirectory(partsDir)) {
+            throw new NotFoundException("Multipart upload doesn't exist or has already been completed");
+        }
+        Path part = partsDir.resolve(Integer.toString(partNumber));
+        write(part, in, true);
+        return eTagOf(Files.readAttributes(part, BasicFileAttributes.class));
+    }
+
+    private void write(Path target, InputStream in, boolean multipart) throws IOException {
+        Files.createDirectories(target.getParent());
+        Path temp = Files.createTempFile(target.getParent(), target.getFileName().toString(), TEMP_FILE_SUFFIX);
+        try {
+            try (OutputStream out = Files.newOutputStream(temp)) {
+                byte[] buffer = new byte[BUFFER_SIZE];
+                long written = 0;
+                int n;
+                while ((n = in.read(buffer)) != -1) {
+                    written += n;
+                    if (!(multipart ? fileValidatorUtils.isValidFileSize(written, true) : fileValidatorUtils.isValidFileSize(written))) {
+                        throw new ApiException(HttpStatus.CONTENT_TOO_LARGE, "File size exceeds maximum allowed size");
+                    }
+                    out.write(buffer, 0, n);
+                }
+            }
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Open an object for reading.
+     *
+     * @param key the key of the object.
+     * @return a stream over the content of the object.
+     * @throws NotFoundException if the object doesn't exist.
+     * @throws IOException       if the object can't be opened.
+     */
+    public FileChannelInputStream openObject(String key) throws IOException {
+        try {
+            return FileChannelInputStream.open(resolve(key));
+        } catch (NoSuchFileException e) {
+            throw new NotFoundException("File doesn't exist");
+        }
+    }
+
+    /**
+     * Verify the signature and expiry of a signed part upload URL.
+     *
+     * @param uploadId   the ID of the multipart upload.
+     * @param partNumber the number of the part.
+     * @param expires    the expiry (epoch seconds) of the URL.
+     * @param signature  the signature of the URL.
+     * @throws ForbiddenException if the signature is invalid or has expired.
+     */
+    public void verifyPartSignature(String uploadId, int partNumber, long expires, String signature) {
+        verifySignature(OP_UPLOAD_PART, partResource(uploadId, partNumber), expires, signature);
+    }
+
+    /**
+     * Resolve the key of an object to a path inside the root directory.
+     *
+     * @param key the key of the object.
+     * @return the resolved path.
+     * @throws ForbiddenException if the key escapes the root directory.
+     */
+    public Path resolve(String key) {
+        Path path = rootDir.resolve(key).normalize();
+        if (!path.startsWith(rootDir) || path.equals(rootDir)) {
+            throw new ForbiddenException("Invalid key");
+        }
+        return path;
+    }
+
+    /**
+     * The directory of the parts of a multipart upload.
+     *
+     * @throws NotFoundException if the upload ID is invalid.
+     */
+    private Path partsDir(String uploadId) {
+        try {
+            return rootDir.resolve(MULTIPART_DIR).resolve(UUID.fromString(uploadId).toString());
+        } catch (IllegalArgumentException e) {
+            throw new NotFoundException("Multipart upload doesn't exist");
+        }
+    }
+
+    private static String partResource(String uploadId, int partNumber) {
+        return uploadId + "/" + partNumber;
+    }
+
+    private static Integer partNumberOf(Path part) {
+        try {
+            return Integer.valueOf(part.getFileName().toString());
+        } catch (NumberFormatException e) {
+            return null; // e.g. a part being written
+        }
+    }
+
+    private String generateSignedUrl(String operation, String key, Instant expiresAt) {
+        long expires = expiresAt.getEpochSecond();
+        String signature = Base64.getUrlEncoder().withoutPadding().encodeToString(sign(operation, key, expires));
+        return localFsProperties.getPublicBaseUrl() + OBJECTS_PATH
+                + "?op=" + operation
+                + "&key=" + URLEncoder.encode(key, StandardCharsets.UTF_8)
+                + "&expires=" + expires
+                + "&sig=" + signature;
+    }
+
+    private byte[] sign(String operation, String key, long expires) {
+        try {
+            Mac mac = Mac.getInstance(HMAC_ALGORITHM); // Mac isn't thread-safe
+            mac.init(signingKey);
+            return mac.doFinal(String.join("\n", operation, key, Long.toString(expires))
+                    .getBytes(StandardCharsets.UTF_8));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Failed to sign local URL", e);
+        }
+    }
+
+    private static String eTagOf(BasicFileAttributes attrs) {
+        return Long.toHexString(attrs.size()) + "-" + Long.toHexString(attrs.lastModifiedTime().toMillis());
+    }
+
+}
@@ -0,0 +1,85 @@
+package dev.fnvir.kajz.storageservice.service.impl;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import dev.fnvir.kajz.storageservice.enums.StorageProviderType;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import software.amazon.awssdk.http.HttpMetric;
+import software.amazon.awssdk.metrics.MetricCollection;
+import software.amazon.awssdk.metrics.MetricPublisher;
+import software.amazon.awssdk.metrics.SdkMetric;
+
+/**
+ * Publishes the connection pool metrics the AWS SDK collects for each request
+ * of an S3 client to Micrometer.
+ *
+ * <p>
+ * The SDK reports the state of the pool as seen by each request, so the gauges
+ * hold the state seen by the latest request.
+ * </p>
+ */
+class S3HttpPoolMetricPublisher implements MetricPublisher {
+
+    static final String METRIC_PREFIX = "storage.provider.http";
+
+    /** The provider tag, named as on the other storage provider meters. */
+    private static final String PROVIDER = StorageProviderType.AWS_S3.name();
+
+    private final AtomicInteger leased = new AtomicInteger();
+    private final AtomicInteger pending = new AtomicInteger();
+    private final AtomicInteger max = new AtomicInteger();
+    private final Timer acquire;
+
+    /**
+     * @param registry the registry to publish to.
+     * @param client   the name of the client (tag).
+     */
+    S3HttpPoolMetricPublisher(MeterRegistry registry, String client) {
+        gauge(registry, "leased", "Connections in use", client, leased);
+        gauge(registry, "pending", "Requests waiting for a connection", client, pending);
+        gauge(registry, "max", "Max number of connections", client, max);
+        this.acquire = Timer.builder(METRIC_PREFIX + ".connections.acquire")
+                .description("Time waited for a connection of the pool")
+                .tag("provider", PROVIDER)
+                .tag("client", client)
+                .register(registry);
+    }
+
+    private static void gauge(MeterRegistry registry, String state, String description, String client, AtomicInteger value) {
+        Gauge.builder(METRIC_PREFIX + ".connections", value, AtomicInteger::get)
+                .description(description)
+                .tag("provider", PROVIDER)
+                .tag("client", client)
+                .tag("state", state)
+                .register(registry);
+    }
+
+    @Override
+    public void publish(MetricCollection metrics) {
+        record(metrics, HttpMetric.LEASED_CONCURRENCY, leased);
+        record(metrics, HttpMetric.PENDING_CONCURRENCY_ACQUIRES, pending);
+        record(metrics, HttpMetric.MAX_CONCURRENCY, max);
+        for (Duration duration : metrics.metricValues(HttpMetric.CONCURRENCY_ACQUIRE_DURATION)) {
+            acquire.record(duration);
+        }
+        // the http metrics are collected per attempt, in child collections
+        metrics.children().forEach(this::publish);
+    }
+
+    private static void record(MetricCollection metrics, SdkMetric<Integer> metric, AtomicInteger gauge) {
+        List<Integer> values = metrics.metricValues(metric);
+        if (!values.isEmpty()) {
+            gauge.set(values.getLast());
+        }
+    }
+
+    @Override
+    public void close() {
+        // meters are owned by the registry
+    }
+
+}
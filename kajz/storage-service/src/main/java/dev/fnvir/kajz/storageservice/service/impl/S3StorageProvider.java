@@ -2,66 +2,135 @@ package dev.fnvir.kajz.storageservice.service.impl;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.time.Duration;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import org.reactivestreams.Publisher;
 
-import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Service;
 import org.springframework.util.StringUtils;
 
+import dev.fnvir.kajz.storageservice.annotation.ConditionalOnStorageProvider;
 import dev.fnvir.kajz.storageservice.config.AwsS3Properties;
 import dev.fnvir.kajz.storageservice.dto.UploadValidationResultDTO;
 import dev.fnvir.kajz.storageservice.dto.res.InitiateUploadResponse;
+import dev.fnvir.kajz.storageservice.dto.res.PartUploadUrl;
 import dev.fnvir.kajz.storageservice.dto.res.PreSignedDownloadUrlResponse;
 import dev.fnvir.kajz.storageservice.enums.StorageProviderType;
 import dev.fnvir.kajz.storageservice.exception.NotFoundException;
 import dev.fnvir.kajz.storageservice.model.FileUpload;
 import dev.fnvir.kajz.storageservice.service.AbstractStorageProvider;
 import dev.fnvir.kajz.storageservice.util.StorageFileValidatorUtils;
+import io.micrometer.core.instrument.MeterRegistry;
 import jakarta.annotation.PostConstruct;
 import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
 import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
 import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
 import software.amazon.awssdk.core.ResponseInputStream;
+import software.amazon.awssdk.core.async.AsyncResponseTransformer;
+import software.amazon.awssdk.core.sync.RequestBody;
 import software.amazon.awssdk.core.sync.ResponseTransformer;
+import software.amazon.awssdk.http.apache.ApacheHttpClient;
+import software.amazon.awssdk.http.nio.netty.NettyNioAsyncHttpClient;
 import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
 import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.AbortMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompleteMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompletedMultipartUpload;
+import software.amazon.awssdk.services.s3.model.CompletedPart;
+import software.amazon.awssdk.services.s3.model.CopyObjectRequest;
 import software.amazon.awssdk.services.s3.model.CreateBucketRequest;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.Delete;
 import software.amazon.awssdk.services.s3.model.DeleteObjectRequest;
+import software.amazon.awssdk.services.s3.model.DeleteObjectsRequest;
+import software.amazon.awssdk.services.s3.model.DeleteObjectsResponse;
 import software.amazon.awssdk.services.s3.model.GetObjectRequest;
 import software.amazon.awssdk.services.s3.model.GetObjectResponse;
 import software.amazon.awssdk.services.s3.model.HeadBucketRequest;
 import software.amazon.awssdk.services.s3.model.HeadObjectRequest;
 import software.amazon.awssdk.services.s3.model.HeadObjectResponse;
+import software.amazon.awssdk.services.s3.model.ListPartsRequest;
+import software.amazon.awssdk.services.s3.model.MetadataDirective;
 import software.amazon.awssdk.services.s3.model.NoSuchBucketException;
 import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
+import software.amazon.awssdk.services.s3.model.NoSuchUploadException;
+import software.amazon.awssdk.services.s3.model.ObjectIdentifier;
 import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.S3Error;
 import software.amazon.awssdk.services.s3.model.S3Exception;
+import software.amazon.awssdk.services.s3.model.StorageClass;
+import software.amazon.awssdk.services.s3.model.UploadPartRequest;
 import software.amazon.awssdk.services.s3.presigner.S3Presigner;
 import software.amazon.awssdk.services.s3.presigner.model.GetObjectPresignRequest;
 import software.amazon.awssdk.services.s3.presigner.model.PresignedPutObjectRequest;
 import software.amazon.awssdk.services.s3.presigner.model.PutObjectPresignRequest;
+import software.amazon.awssdk.services.s3.presigner.model.UploadPartPresignRequest;
 
 @Slf4j
 @Service
-@ConditionalOnProperty(name = "storage.provider", havingValue = "aws-s3")
+@ConditionalOnStorageProvider(StorageProviderType.AWS_S3)
 public class S3StorageProvider extends AbstractStorageProvider {
     
+    /** The max number of keys per DeleteObjects request. */
+    private static final int DELETE_BATCH_SIZE = 1000;
+    
+    /** The max size of an object copied by a single CopyObject request. */
+    private static final long MAX_COPY_OBJECT_SIZE = 5L * 1024 * 1024 * 1024;
+    
     private final StorageFileValidatorUtils fileValidatorUtils;
     private final AwsS3Properties s3Properties;
     private final S3Client s3Client;
+    private final S3AsyncClient s3AsyncClient;
     private final S3Presigner s3Presigner;
     private final String bucketName;
     
-    public S3StorageProvider(AwsS3Properties s3Properties, StorageFileValidatorUtils fileValidatorUtils) {
+    public S3StorageProvider(
+            AwsS3Properties s3Properties,
+            StorageFileValidatorUtils fileValidatorUtils,
+            MeterRegistry meterRegistry
+    ) {
         var credentialsProvider = StaticCredentialsProvider.create(
             AwsBasicCredentials.create(s3Properties.getAccessKey(), s3Properties.getSecretKey())
         );
+        var pool = s3Properties.getHttp();
         
         this.s3Client = S3Client.builder()
                 .region(Region.of(s3Properties.getRegion()))
                 .credentialsProvider(credentialsProvider)
+                .httpClientBuilder(ApacheHttpClient.builder()
+                        .maxConnections(pool.getMaxConnections())
+                        .connectionAcquisitionTimeout(pool.getAcquisitionTimeout())
+                        .connectionTimeout(pool.getConnectionTimeout())
+                        .connectionMaxIdleTime(pool.getMaxIdleTime())
+                        .useIdleConnectionReaper(true)
+                        .tcpKeepAlive(pool.getTcpKeepAlive()))
+                .overrideConfiguration(c -> c.addMetricPublisher(new S3HttpPoolMetricPublisher(meterRegistry, "sync")))
+                .build();
+        
+        this.s3AsyncClient = S3AsyncClient.builder()
+                .region(Region.of(s3Properties.getRegion()))
+                .credentialsProvider(credentialsProvider)
+                .httpClientBuilder(NettyNioAsyncHttpClient.builder()
+                        .maxConcurrency(pool.getMaxConnections())
+                        .maxPendingConnectionAcquires(pool.getMaxPendingAcquires())
+                        .connectionAcquisitionTimeout(pool.getAcquisitionTimeout())
+                        .connectionTimeout(pool.getConnectionTimeout())
+                        .connectionMaxIdleTime(pool.getMaxIdleTime())
+                        .useIdleConnectionReaper(true)
+                        .tcpKeepAlive(pool.getTcpKeepAlive()))
+                .overrideConfiguration(c -> c.addMetricPublisher(new S3HttpPoolMetricPublisher(meterRegistry, "async")))
                 .build();
         
         this.s3Presigner = S3Presigner.builder()
@@ -94,6 +163,9 @@ public class S3StorageProvider extends AbstractStorageProvider {
         if (this.s3Client != null) {
             s3Client.close();
         }
+        if (this.s3AsyncClient != null) {
+            s3AsyncClient.close();
+        }
         if (this.s3Presigner != null) {
             s3Presigner.close();
         }
@@ -168,7 +240,116 @@ public class S3StorageProvider extends AbstractStorageProvider {
     }
 
     @Override
-    public UploadValidationResultDTO validateUploadCompletion(FileUpload file) {
+    public String createMultipartUpload(FileUpload file) {
+        var createReq = CreateMultipartUploadRequest.builder()
+                .bucket(bucketName)
+                .key(file.getStoragePath())
+                .contentType(file.getMimeType())
+                .build();
+        return s3Client.createMultipartUpload(createReq).uploadId();
+    }
+
+    @Override
+    public List<PartUploadUrl> generatePartUploadUrls(FileUpload file, Collection<Integer> partNumbers) {
+        return partNumbers.stream().map(partNumber -> {
+            var partReq = UploadPartRequest.builder()
+                    .bucket(bucketName)
+                    .key(file.getStoragePath())
+                    .uploadId(file.getMultipartUploadId())
+                    .partNumber(partNumber)
+                    .contentLength(partLength(file, partNumber)) // signed, so a part of another size is refused
+                    .build();
+            var presignReq = UploadPartPresignRequest.builder()
+                    .signatureDuration(PART_UPLOAD_EXPIRY_TIME)
+                    .uploadPartRequest(partReq)
+                    .build();
+            var presigned = s3Presigner.presignUploadPart(presignReq);
+            return PartUploadUrl.builder()
+                    .partNumber(partNumber)
+                    .uploadUrl(presigned.url().toString())
+                    .expiresAt(presigned.expiration())
+                    .build();
+        }).toList();
+    }
+
+    @Override
+    public Map<Integer, String> listUploadedParts(FileUpload file) {
+        var listReq = ListPartsRequest.builder()
+                .bucket(bucketName)
+                .key(file.getStoragePath())
+                .uploadId(file.getMultipartUploadId())
+                .build();
+        Map<Integer, String> parts = new TreeMap<>();
+        try {
+            s3Client.listPartsPaginator(listReq).parts()
+                    .forEach(part -> parts.put(part.partNumber(), part.eTag()));
+        } catch (NoSuchUploadException e) {
+            throw new NotFoundException("Multipart upload doesn't exist or has already been completed");
+        }
+        return parts;
+    }
+
+    @Override
+    public void completeMultipartUpload(FileUpload file) {
+        Map<Integer, String> parts;
+        try {
+            parts = listUploadedParts(file);
+        } catch (NotFoundException e) {
+            requireCompletedObject(file);
+            return;
+        }
+        file.setUploadedParts(parts);
+        requireAllParts(file, parts);
+        
+        List<CompletedPart> completedParts = parts.entrySet().stream()
+                .map(e -> CompletedPart.builder().partNumber(e.getKey()).eTag(e.getValue()).build())
+                .toList();
+        var completeReq = CompleteMultipartUploadRequest.builder()
+                .bucket(bucketName)
+                .key(file.getStoragePath())
+                .uploadId(file.getMultipartUploadId())
+                .multipartUpload(CompletedMultipartUpload.builder().parts(completedParts).build())
+                .build();
+        try {
+            s3Client.completeMultipartUpload(completeReq);
+        } catch (NoSuchUploadException e) {
+            requireCompletedObject(file); // completed concurrently
+        }
+    }
+    
+    /**
+     * The multipart upload is gone: it was already completed if the object
+     * exists, e.g. by a call which timed out or whose transaction rolled back.
+     */
+    private void requireCompletedObject(FileUpload file) {
+        var headReq = HeadObjectRequest.builder()
+                .bucket(bucketName)
+                .key(file.getStoragePath())
+                .build();
+        try {
+            s3Client.headObject(headReq);
+            log.debug("Multipart upload already completed: {}", file.getStoragePath());
+        } catch (NoSuchKeyException e) {
+            throw new NotFoundException("Multipart upload doesn't exist or has already been completed");
+        }
+    }
+
+    @Override
+    public void abortMultipartUpload(String key, String uploadId) {
+        var abortReq = AbortMultipartUploadRequest.builder()
+                .bucket(bucketName)
+                .key(key)
+                .uploadId(uploadId)
+                .build();
+        try {
+            s3Client.abortMultipartUpload(abortReq);
+        } catch (NoSuchUploadException e) {
+            log.debug("Multipart upload already completed or aborted: {}", key);
+        }
+    }
+
+    @Override
+    public UploadValidationResultDTO checkUploadCompletion(FileUpload file) {
         String storageKey = file.getStoragePath();
 
         var headReq = HeadObjectRequest.builder()
@@ -176,31 +357,30 @@ public class S3StorageProvider extends AbstractStorageProvider {
                 .key(storageKey)
                 .build();
         
-        String eTag = null;
-        
         try {
             // verify uploaded file exists
             HeadObjectResponse headRes = s3Client.headObject(headReq);
             
-            eTag = headRes.eTag();
-            
             // validate uploaded file's size
-            boolean isValidFileSize = fileValidatorUtils.isValidFileSize(headRes.contentLength());
+            boolean isValidFileSize = fileValidatorUtils.isValidFileSize(headRes.contentLength(), file.isMultipart());
             if(!isValidFileSize) {
                 return UploadValidationResultDTO.invalidContentLength();
             }
+            return UploadValidationResultDTO.success().eTag(headRes.eTag()).contentLength(headRes.contentLength());
         } catch (NoSuchKeyException e) {
             return UploadValidationResultDTO.fileDoesntExist();
         } catch (S3Exception e) {
             log.error("Failed to read object from S3 with: {}", storageKey);
             throw new RuntimeException(e);
         }
-        
-        // validate content-type
+    }
+
+    @Override
+    public UploadValidationResultDTO validateUploadContent(FileUpload file) {
         var getReq = GetObjectRequest.builder()
                 .bucket(bucketName)
-                .key(storageKey)
-                .range("bytes=0-8191") // first 8KB only
+                .key(file.getStoragePath())
+                .range("bytes=0-" + (fileValidatorUtils.getSniffLength() - 1)) // only what detection needs
                 .build();
         
         try (ResponseInputStream<GetObjectResponse> in = s3Client.getObject(getReq)) {
@@ -208,10 +388,72 @@ public class S3StorageProvider extends AbstractStorageProvider {
             if(!isValidMediaType) {
                 return UploadValidationResultDTO.invalidContentType();
             }
+        } catch (NoSuchKeyException e) {
+            return UploadValidationResultDTO.fileDoesntExist();
         } catch (IOException e) {
             log.error("Skipping content-type validation: IO error in input stream of s3 object. {}", e.getMessage());
         }
-        return UploadValidationResultDTO.success().eTag(eTag);
+        return UploadValidationResultDTO.success();
+    }
+
+    @Override
+    public void uploadFile(String key, byte[] content, String contentType) {
+        var putReq = PutObjectRequest.builder()
+                .bucket(bucketName)
+                .key(key)
+                .contentType(contentType)
+                .contentLength((long) content.length)
+                .build();
+        recordProviderCall("put-object");
+        s3Client.putObject(putReq, RequestBody.fromBytes(content));
+    }
+
+    @Override
+    public void uploadFile(String key, InputStream content, long contentLength, String contentType) {
+        var putReq = PutObjectRequest.builder()
+                .bucket(bucketName)
+                .key(key)
+                .contentType(contentType)
+                .contentLength(contentLength)
+                .build();
+        recordProviderCall("put-object");
+        s3Client.putObject(putReq, RequestBody.fromInputStream(content, contentLength));
+    }
+
+    @Override
+    public boolean supportsColdStorageClass() {
+        return true;
+    }
+
+    @Override
+    public long maxColdStorageClassSize() {
+        return MAX_COPY_OBJECT_SIZE;
+    }
+
+    /**
+     * Copy each object onto itself with the Standard-IA storage class.
+     */
+    @Override
+    public Set<String> moveToColdStorageClass(Collection<String> keys) {
+        Set<String> failed = new HashSet<>();
+        for (String key : keys) {
+            var copyReq = CopyObjectRequest.builder()
+                    .sourceBucket(bucketName)
+                    .sourceKey(key)
+                    .destinationBucket(bucketName)
+                    .destinationKey(key)
+                    .storageClass(StorageClass.STANDARD_IA)
+                    .metadataDirective(MetadataDirective.COPY)
+                    .build();
+            try {
+                recordProviderCall("copy-object");
+                s3Client.copyObject(copyReq);
+            } catch (S3Exception e) {
+                log.warn("Failed to move S3 object {} to Standard-IA: {}", key, e.getMessage());
+                failed.add(key);
+            }
+        }
+        return failed;
     }
 
     @Override
@@ -232,29 +474,113 @@ public class S3StorageProvider extends AbstractStorageProvider {
         return true;
     }
 
+    @Override
+    public Set<String> deleteFiles(Collection<String> keys) {
+        List<String> validKeys = keys.stream().filter(StringUtils::hasText).distinct().toList();
+        Set<String> failed = new HashSet<>();
+        
+        for (int i = 0; i < validKeys.size(); i += DELETE_BATCH_SIZE) {
+            List<String> batch = validKeys.subList(i, Math.min(i + DELETE_BATCH_SIZE, validKeys.size()));
+            var deleteRequest = DeleteObjectsRequest.builder()
+                    .bucket(bucketName)
+                    .delete(Delete.builder()
+                            .objects(batch.stream().map(k -> ObjectIdentifier.builder().key(k).build()).toList())
+                            .quiet(true) // only report errors
+                            .build())
+                    .build();
+            try {
+                recordProviderCall("delete-objects");
+                DeleteObjectsResponse res = s3Client.deleteObjects(deleteRequest);
+                for (S3Error error : res.errors()) {
+                    log.warn("Failed to delete S3 object {}: {} {}", error.key(), error.code(), error.message());
+                    failed.add(error.key());
+                }
+            } catch (S3Exception e) {
+                log.error("Failed to delete batch of {} S3 objects: {}", batch.size(), e.getMessage());
+                failed.addAll(batch);
+            }
+        }
+        return failed;
+    }
+
     @Override
     public Callable<InputStream> downloadFile(String key) {
         if (!StringUtils.hasText(key)) {
             throw new NotFoundException("File not found");
         }
         
-        // first check if the object exists
-        var headReq = HeadObjectRequest.builder()
+        GetObjectRequest getReq = GetObjectRequest.builder()
                 .bucket(bucketName)
                 .key(key)
                 .build();
+        return () -> getObject(getReq);
+    }
+
+    @Override
+    public Callable<InputStream> downloadFileRange(String key, long start, long end) {
+        if (!StringUtils.hasText(key)) {
+            throw new NotFoundException("File not found");
+        }
+        
+        GetObjectRequest getReq = GetObjectRequest.builder()
+                .bucket(bucketName)
+                .key(key)
+                .range("bytes=" + start + "-" + end)
+                .build();
+        return () -> getObject(getReq);
+    }
+    
+    /**
+     * Open the object stream, mapping a missing key to {@link NotFoundException}
+     * instead of checking existence with a separate HEAD request.
+     */
+    private ResponseInputStream<GetObjectResponse> getObject(GetObjectRequest getReq) {
+        recordProviderCall("get-object");
         try {
-            s3Client.headObject(headReq);
+            return s3Client.getObject(getReq, ResponseTransformer.toInputStream());
         } catch (NoSuchKeyException e) {
             throw new NotFoundException("File doesn't exist");
         }
+    }
+
+    @Override
+    public CompletableFuture<Publisher<ByteBuffer>> downloadFileNonBlocking(String key) {
+        if (!StringUtils.hasText(key)) {
+            throw new NotFoundException("File not found");
+        }
+        
+        GetObjectRequest getReq = GetObjectRequest.builder()
+                .bucket(bucketName)
+                .key(key)
+                .build();
+        return getObjectNonBlocking(getReq);
+    }
+
+    @Override
+    public CompletableFuture<Publisher<ByteBuffer>> downloadFileRangeNonBlocking(String key, long start, long end) {
+        if (!StringUtils.hasText(key)) {
+            throw new NotFoundException("File not found");
+        }
         
-        // then open inputStream
         GetObjectRequest getReq = GetObjectRequest.builder()
                 .bucket(bucketName)
                 .key(key)
+                .range("bytes=" + start + "-" + end)
                 .build();
-        return () -> s3Client.getObject(getReq, ResponseTransformer.toInputStream());
+        return getObjectNonBlocking(getReq);
+    }
+    
+    private CompletableFuture<Publisher<ByteBuffer>> getObjectNonBlocking(GetObjectRequest getReq) {
+        recordProviderCall("get-object");
+        return s3AsyncClient.getObject(getReq, AsyncResponseTransformer.toPublisher())
+                .<Publisher<ByteBuffer>>thenApply(publisher -> publisher)
+                .exceptionally(e -> {
+                    Throwable cause = e instanceof CompletionException ? e.getCause() : e;
+                    if (cause instanceof NoSuchKeyException) {
+                        throw new NotFoundException("File doesn't exist");
+                    }
+                    throw e instanceof CompletionException ce ? ce : new CompletionException(e);
+                });
     }
 
     @Override
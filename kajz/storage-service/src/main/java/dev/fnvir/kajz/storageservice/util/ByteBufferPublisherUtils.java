@@ -0,0 +1,329 @@
+package dev.fnvir.kajz.storageservice.util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.Queue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+import org.jspecify.annotations.Nullable;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.context.request.async.AsyncRequestTimeoutException;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.context.request.async.WebAsyncUtils;
+
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+/**
+ * Helpers to write {@link ByteBuffer} publishers of the non-blocking provider
+ * clients to a response, using the non-blocking I/O of the servlet container:
+ * no thread is held while waiting for the provider or for the client.
+ */
+public class ByteBufferPublisherUtils {
+
+    /**
+     * Max number of buffers requested ahead of the writer. Bounds the memory held
+     * per download regardless of the file size.
+     */
+    private static final int PREFETCH = 8;
+
+    /**
+     * Disables the container's async request timeout, which would cut off any
+     * download running longer than it (30 seconds by default on Tomcat).
+     * Downloads time out when idle instead.
+     */
+    private static final long NO_ASYNC_TIMEOUT = -1L;
+
+    /** Checks the downloads for inactivity. The checks are cheap, so one thread serves all downloads. */
+    private static final ScheduledExecutorService IDLE_WATCHDOG = Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().name("download-idle-watchdog").daemon().factory());
+
+    private ByteBufferPublisherUtils() {
+    }
+
+    /**
+     * Respond with a download without holding a thread: the request is put
+     * into async mode and the handler returns right away. Once the download is
+     * opened, the status and headers are written and its buffers are written
+     * whenever the client can take more. Errors opening the download (e.g. a
+     * {@code NotFoundException}) are handled by the exception handlers as if
+     * thrown by the handler.
+     *
+     * <p>
+     * There is no limit on the duration of a download. It is abandoned once
+     * nothing has been written for {@code idleTimeout}: the provider or the
+     * client stalled.
+     * </p>
+     *
+     * @param head        the status and headers of the response (body ignored).
+     * @param open        opens the download.
+     * @param request     the current request.
+     * @param response    the current response.
+     * @param idleTimeout how long a download may go without writing.
+     */
+    public static void respondAsync(ResponseEntity<?> head, Supplier<CompletableFuture<Publisher<ByteBuffer>>> open,
+            HttpServletRequest request, HttpServletResponse response, Duration idleTimeout) {
+        var result = new DeferredResult<Void>(NO_ASYNC_TIMEOUT);
+        try {
+            WebAsyncUtils.getAsyncManager(request).startDeferredResultProcessing(result);
+        } catch (Exception e) {
+            throw new IllegalStateException("Failed to start async processing", e);
+        }
+        long started = System.nanoTime();
+        var opening = open.get();
+        var writer = new AtomicReference<AsyncWriter>();
+        // e.g. the download went idle or the client disconnected
+        Runnable abandon = () -> {
+            opening.cancel(true);
+            AsyncWriter current = writer.getAndSet(AsyncWriter.ABANDONED);
+            if (current != null) {
+                current.cancel();
+            }
+        };
+        result.onTimeout(abandon);
+        result.onError(_ -> abandon.run());
+        watchIdle(result, idleTimeout.toNanos(), idleTimeout.toNanos(), () -> {
+            AsyncWriter current = writer.get();
+            return current != null && current != AsyncWriter.ABANDONED ? current.lastActivity() : started;
+        }, () -> {
+            result.setErrorResult(new AsyncRequestTimeoutException());
+            abandon.run();
+        });
+
+        opening.whenComplete((publisher, e) -> {
+            if (e != null) {
+                result.setErrorResult(unwrap(e));
+                return;
+            }
+            if (writer.get() == AsyncWriter.ABANDONED) {
+                discard(publisher);
+                return;
+            }
+            response.setStatus(head.getStatusCode().value());
+            head.getHeaders().forEach((name, values) -> values.forEach(value -> response.addHeader(name, value)));
+            ServletOutputStream out;
+            try {
+                out = response.getOutputStream();
+            } catch (IOException ex) {
+                discard(publisher);
+                result.setErrorResult(ex);
+                return;
+            }
+            var next = new AsyncWriter(publisher, out, ex -> {
+                if (ex == null) {
+                    result.setResult(null);
+                } else {
+                    result.setErrorResult(ex);
+                }
+            });
+            if (writer.compareAndSet(null, next)) {
+                next.start();
+            } else {
+                discard(publisher); // abandoned meanwhile
+            }
+        });
+    }
+
+    /**
+     * Check a download for inactivity after {@code delayNanos}, then again until
+     * it's idle for {@code timeoutNanos} or done.
+     */
+    private static void watchIdle(DeferredResult<?> result, long delayNanos, long timeoutNanos,
+            LongSupplier lastActivity, Runnable onIdle) {
+        IDLE_WATCHDOG.schedule(() -> {
+            if (result.isSetOrExpired()) {
+                return;
+            }
+            long idle = System.nanoTime() - lastActivity.getAsLong();
+            if (idle >= timeoutNanos) {
+                onIdle.run();
+            } else {
+                watchIdle(result, timeoutNanos - idle, timeoutNanos, lastActivity, onIdle);
+            }
+        }, delayNanos, TimeUnit.NANOSECONDS);
+    }
+
+    private static Throwable unwrap(Throwable e) {
+        return e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+    }
+
+    /** Release the connection of a download which won't be written. */
+    static void discard(Publisher<ByteBuffer> publisher) {
+        publisher.subscribe(new Subscriber<ByteBuffer>() {
+            @Override
+            public void onSubscribe(Subscription s) {
+                s.cancel();
+            }
+
+            @Override
+            public void onNext(ByteBuffer buffer) {
+            }
+
+            @Override
+            public void onError(Throwable e) {
+            }
+
+            @Override
+            public void onComplete() {
+            }
+        });
+    }
+
+    /**
+     * Writes the buffers of a publisher to a servlet output stream in
+     * non-blocking mode, requesting at most {@value #PREFETCH} buffers ahead of
+     * the writes. Buffers are handed to the container as they are (no copy
+     * into a byte array). A failed write (e.g. the client disconnected)
+     * cancels the subscription.
+     */
+    static final class AsyncWriter implements Subscriber<ByteBuffer> {
+
+        /** Marks a response abandoned before its download was opened. */
+        static final AsyncWriter ABANDONED = new AsyncWriter(null, null, _ -> {});
+
+        private final Publisher<ByteBuffer> publisher;
+        private final ServletOutputStream out;
+        private final Consumer<@Nullable Throwable> onDone;
+
+        private final Queue<ByteBuffer> buffers = new ConcurrentLinkedQueue<>();
+        /** Serializes the writes, which are triggered by both the publisher and the container. */
+        private final AtomicInteger wip = new AtomicInteger();
+        private final AtomicBoolean subscribed = new AtomicBoolean();
+        private final AtomicBoolean done = new AtomicBoolean();
+
+        private volatile @Nullable Subscription subscription;
+        private volatile boolean completed;
+        private volatile long lastActivity = System.nanoTime();
+
+        /**
+         * @param publisher the publisher of the content.
+         * @param out       the output stream, of a request in async mode.
+         * @param onDone    called once when the transfer ends, with the error if
+         *                  it failed.
+         */
+        AsyncWriter(Publisher<ByteBuffer> publisher, ServletOutputStream out, Consumer<@Nullable Throwable> onDone) {
+            this.publisher = publisher;
+            this.out = out;
+            this.onDone = onDone;
+        }
+
+        /** Start writing, subscribing once the container can take the first write. */
+        void start() {
+            out.setWriteListener(new WriteListener() {
+                @Override
+                public void onWritePossible() {
+                    if (subscribed.compareAndSet(false, true)) {
+                        publisher.subscribe(AsyncWriter.this);
+                    } else {
+                        drain();
+                    }
+                }
+
+                @Override
+                public void onError(Throwable e) {
+                    cancel(e); // e.g. the client disconnected
+                }
+            });
+        }
+
+        void cancel() {
+            cancel(new CancellationException("Download abandoned"));
+        }
+
+        /** The {@link System#nanoTime()} of the latest write, or of the creation if none. */
+        long lastActivity() {
+            return lastActivity;
+        }
+
+        private void cancel(Throwable e) {
+            finish(e);
+            if (subscribed.compareAndSet(false, true)) {
+                discard(publisher); // the container never got to the first write
+                return;
+            }
+            Subscription s = subscription;
+            if (s != null) {
+                s.cancel();
+            }
+        }
+
+        @Override
+        public void onSubscribe(Subscription s) {
+            subscription = s;
+            if (done.get()) {
+                s.cancel();
+            } else {
+                s.request(PREFETCH);
+            }
+        }
+
+        @Override
+        public void onNext(ByteBuffer buffer) {
+            buffers.offer(buffer);
+            drain();
+        }
+
+        @Override
+        public void onError(Throwable e) {
+            finish(e);
+        }
+
+        @Override
+        public void onComplete() {
+            completed = true;
+            drain();
+        }
+
+        private void drain() {
+            if (wip.getAndIncrement() != 0) {
+                return;
+            }
+            do {
+                try {
+                    // once not ready, the container calls onWritePossible when it is
+                    while (!done.get() && out.isReady()) {
+                        ByteBuffer buffer = buffers.poll();
+                        if (buffer == null) {
+                            if (completed) {
+                                finish(null); // the last write has been flushed
+                            }
+                            break;
+                        }
+                        out.write(buffer);
+                        lastActivity = System.nanoTime();
+                        subscription.request(1);
+                    }
+                } catch (IOException | RuntimeException e) {
+                    cancel(e);
+                }
+            } while (wip.decrementAndGet() != 0);
+        }
+
+        private void finish(@Nullable Throwable e) {
+            if (done.compareAndSet(false, true)) {
+                buffers.clear();
+                onDone.accept(e);
+            }
+        }
+
+    }
+
+}
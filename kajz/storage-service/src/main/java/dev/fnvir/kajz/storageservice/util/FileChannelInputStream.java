@@ -0,0 +1,182 @@
+package dev.fnvir.kajz.storageservice.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Objects;
+import java.util.function.LongConsumer;
+
+import jakarta.servlet.ServletOutputStream;
+
+/**
+ * An {@link InputStream} over a region of a local file which avoids the
+ * heap-buffer copy loop of {@link InputStream#transferTo(OutputStream)}.
+ *
+ * <p>
+ * When the target is a {@link ServletOutputStream}, the file is memory-mapped in
+ * chunks and handed to the container as {@link ByteBuffer}s. For any other
+ * target, {@link FileChannel#transferTo(long, long, WritableByteChannel)} is
+ * used which lets the JDK pick the most efficient path.
+ * </p>
+ */
+public class FileChannelInputStream extends InputStream {
+
+    /** Regions smaller than this aren't worth mapping. */
+    private static final long MIN_MAPPED_LENGTH = 64 * 1024;
+
+    /** Max size of a single mapped region. */
+    private static final long MAPPED_CHUNK_SIZE = 4 * 1024 * 1024;
+
+    private final FileChannel channel;
+    private final long end;
+    private long position;
+    private long bytesRead;
+    private LongConsumer closeListener;
+    private boolean closed;
+
+    private FileChannelInputStream(FileChannel channel, long start, long end) {
+        this.channel = channel;
+        this.position = start;
+        this.end = end;
+    }
+
+    /**
+     * Open a stream over the whole file.
+     *
+     * @param path the path of the file.
+     * @return the opened stream.
+     * @throws IOException if the file can't be opened.
+     */
+    public static FileChannelInputStream open(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        return new FileChannelInputStream(channel, 0, channel.size());
+    }
+
+    /**
+     * Open a stream over the byte range {@code [start, end]} (both inclusive) of
+     * the file. The end is clamped to the size of the file.
+     *
+     * @param path  the path of the file.
+     * @param start the first byte position (inclusive).
+     * @param end   the last byte position (inclusive).
+     * @return the opened stream.
+     * @throws IOException if the file can't be opened.
+     */
+    public static FileChannelInputStream open(Path path, long start, long end) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        long size = channel.size();
+        long endExclusive = Math.min(end + 1, size);
+        return new FileChannelInputStream(channel, Math.min(start, endExclusive), endExclusive);
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] b = new byte[1];
+        int n = read(b, 0, 1);
+        return n == -1 ? -1 : b[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        Objects.checkFromIndexSize(off, len, b.length);
+        if (len == 0)
+            return 0;
+        long remaining = end - position;
+        if (remaining <= 0)
+            return -1;
+        int n = channel.read(ByteBuffer.wrap(b, off, (int) Math.min(len, remaining)), position);
+        if (n > 0) {
+            position += n;
+            bytesRead += n;
+        }
+        return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long skipped = Math.max(0, Math.min(n, end - position));
+        position += skipped;
+        return skipped;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return (int) Math.min(Integer.MAX_VALUE, remaining());
+    }
+
+    /**
+     * The number of bytes left to read in this stream.
+     *
+     * @return the remaining byte count.
+     */
+    public long remaining() {
+        return Math.max(0, end - position);
+    }
+
+    /**
+     * The number of bytes read from this stream so far, skipped bytes excluded.
+     *
+     * @return the read byte count.
+     */
+    public long bytesRead() {
+        return bytesRead;
+    }
+
+    /**
+     * Set a listener called once, when the stream is closed, with the number of
+     * bytes read from it.
+     *
+     * @param listener the listener.
+     * @return this stream.
+     */
+    public FileChannelInputStream onClose(LongConsumer listener) {
+        this.closeListener = listener;
+        return this;
+    }
+
+    @Override
+    public long transferTo(OutputStream out) throws IOException {
+        Objects.requireNonNull(out, "out");
+        long start = position;
+        if (out instanceof ServletOutputStream servletOut && end - position >= MIN_MAPPED_LENGTH) {
+            while (position < end) {
+                long len = Math.min(MAPPED_CHUNK_SIZE, end - position);
+                MappedByteBuffer mapped = channel.map(MapMode.READ_ONLY, position, len);
+                servletOut.write(mapped);
+                position += len;
+            }
+        } else {
+            WritableByteChannel target = Channels.newChannel(out);
+            while (position < end) {
+                long n = channel.transferTo(position, end - position, target);
+                if (n <= 0)
+                    break;
+                position += n;
+            }
+        }
+        bytesRead += position - start;
+        return position - start;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed)
+            return;
+        closed = true;
+        try {
+            channel.close();
+        } finally {
+            if (closeListener != null)
+                closeListener.accept(bytesRead);
+        }
+    }
+
+}
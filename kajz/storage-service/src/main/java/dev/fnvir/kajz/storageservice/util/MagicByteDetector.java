@@ -0,0 +1,237 @@
+package dev.fnvir.kajz.storageservice.util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Detects the media type of a file from its leading (magic) bytes, restricted
+ * to a set of media types.
+ *
+ * <p>
+ * The signatures of the given media types are compiled into a trie walked over
+ * the head of the file, so detection costs a few array lookups per byte of the
+ * longest signature. Signatures may contain wildcard bytes (e.g. the size field
+ * of a RIFF header), and a signature wins over the signatures it extends, so
+ * an APNG isn't reported as a plain PNG.
+ * </p>
+ *
+ * <p>
+ * Detection is inconclusive (and must be left to a full detector such as Tika)
+ * when the head matches a container shared by several formats (zip, ooxml,
+ * epub...), or when nothing matches but one of the media types has no known
+ * signature. Otherwise a miss means the file is none of the media types.
+ * </p>
+ */
+public final class MagicByteDetector {
+
+    /** The media type reported for files matching none of the signatures. */
+    public static final String UNKNOWN = "application/octet-stream";
+
+    /** Marks an ambiguous match, which has to be resolved by a full detector. */
+    private static final String AMBIGUOUS = "";
+
+    private static final int WILDCARD = -1;
+
+    /** Signatures of the media types known to the detector. */
+    private static final Map<String, List<int[]>> SIGNATURES = Map.ofEntries(
+            Map.entry("image/png", List.of(
+                    bytes(0x89, 'P', 'N', 'G', 0x0D, 0x0A, 0x1A, 0x0A))),
+            Map.entry("image/apng", List.of( // acTL chunk right after IHDR
+                    concat(bytes(0x89, 'P', 'N', 'G', 0x0D, 0x0A, 0x1A, 0x0A), wildcards(29), ascii("acTL")))),
+            Map.entry("image/jpeg", List.of(
+                    bytes(0xFF, 0xD8, 0xFF))),
+            Map.entry("image/gif", List.of(
+                    ascii("GIF87a"),
+                    ascii("GIF89a"))),
+            Map.entry("image/webp", List.of(
+                    concat(ascii("RIFF"), wildcards(4), ascii("WEBP")))),
+            Map.entry("image/bmp", List.of(
+                    ascii("BM"))),
+            Map.entry("image/tiff", List.of(
+                    bytes('I', 'I', 0x2A, 0x00),
+                    bytes('M', 'M', 0x00, 0x2A))),
+            Map.entry("application/pdf", List.of(
+                    ascii("%PDF-"),
+                    concat(bytes(0xEF, 0xBB, 0xBF), ascii("%PDF-"))))
+    );
+
+    /** Media types stored in zip containers, told apart by their entries. */
+    private static final List<String> ZIP_CONTAINERS = List.of(
+            "application/zip",
+            "application/epub+zip",
+            "application/java-archive",
+            "application/vnd.openxmlformats-officedocument.",
+            "application/vnd.oasis.opendocument."
+    );
+
+    private static final List<int[]> ZIP_SIGNATURES = List.of(
+            bytes('P', 'K', 0x03, 0x04),
+            bytes('P', 'K', 0x05, 0x06));
+
+    private final Node root = new Node();
+    private final int maxSignatureLength;
+    private final boolean fallbackOnMiss;
+    private final boolean hasContainers;
+
+    private MagicByteDetector(int maxSignatureLength, boolean fallbackOnMiss, boolean hasContainers) {
+        this.maxSignatureLength = maxSignatureLength;
+        this.fallbackOnMiss = fallbackOnMiss;
+        this.hasContainers = hasContainers;
+    }
+
+    /**
+     * Compile a detector for the given media types.
+     *
+     * @param mediaTypes the media types to detect (e.g. the allowed types).
+     * @return the detector.
+     */
+    public static MagicByteDetector compile(Collection<String> mediaTypes) {
+        List<int[]> ambiguous = new ArrayList<>();
+        List<Map.Entry<String, int[]>> signatures = new ArrayList<>();
+        boolean unsigned = false;
+        for (String mediaType : mediaTypes) {
+            String type = mediaType.strip().toLowerCase(Locale.ROOT);
+            if (SIGNATURES.containsKey(type)) {
+                SIGNATURES.get(type).forEach(s -> signatures.add(Map.entry(type, s)));
+            } else if (ZIP_CONTAINERS.stream().anyMatch(type::startsWith)) {
+                ambiguous.addAll(ZIP_SIGNATURES);
+            } else {
+                unsigned = true;
+            }
+        }
+
+        int maxLength = 0;
+        for (var signature : signatures)
+            maxLength = Math.max(maxLength, signature.getValue().length);
+        for (int[] signature : ambiguous)
+            maxLength = Math.max(maxLength, signature.length);
+
+        var detector = new MagicByteDetector(maxLength, unsigned, !ambiguous.isEmpty());
+        signatures.forEach(s -> detector.insert(s.getValue(), s.getKey()));
+        ambiguous.forEach(s -> detector.insert(s, AMBIGUOUS));
+        return detector;
+    }
+
+    /**
+     * Whether some files may need a full detector, which then reads further
+     * into the file than the signatures do.
+     */
+    public boolean needsFallback() {
+        return fallbackOnMiss || hasContainers;
+    }
+
+    /**
+     * The number of leading bytes detection needs: the length of the longest
+     * signature, or {@code fallbackLength} if a full detector may be needed.
+     *
+     * @param fallbackLength the number of bytes the full detector reads.
+     */
+    public int requiredPrefixLength(int fallbackLength) {
+        return needsFallback() ? Math.max(fallbackLength, maxSignatureLength) : maxSignatureLength;
+    }
+
+    /**
+     * Detect the media type of a file from its head.
+     *
+     * @param head   the leading bytes of the file.
+     * @param length the number of valid bytes in {@code head}.
+     * @return the media type, {@link #UNKNOWN} if the file is none of the media
+     *         types, or null if a full detector has to decide.
+     */
+    public String detect(byte[] head, int length) {
+        String match = longestMatch(root, head, Math.min(length, head.length), 0, null);
+        if (match == null) {
+            return fallbackOnMiss ? null : UNKNOWN;
+        }
+        return match.isEmpty() ? null : match;
+    }
+
+    private static String longestMatch(Node node, byte[] head, int length, int depth, String best) {
+        if (node.mediaType != null) {
+            best = node.mediaType;
+        }
+        if (depth == length) {
+            return best;
+        }
+        Node exact = node.children == null ? null : node.children[head[depth] & 0xFF];
+        if (exact != null) {
+            String match = longestMatch(exact, head, length, depth + 1, null);
+            if (match != null) {
+                return match;
+            }
+        }
+        if (node.wildcard != null) {
+            String match = longestMatch(node.wildcard, head, length, depth + 1, null);
+            if (match != null) {
+                return match;
+            }
+        }
+        return best;
+    }
+
+    private void insert(int[] signature, String mediaType) {
+        Node node = root;
+        for (int b : signature) {
+            node = b == WILDCARD ? node.wildcard() : node.child(b);
+        }
+        // a type sharing its signature with a container can't be told apart either
+        node.mediaType = node.mediaType == null || node.mediaType.equals(mediaType) ? mediaType : AMBIGUOUS;
+    }
+
+    private static final class Node {
+        private Node[] children;
+        private Node wildcard;
+        private String mediaType;
+
+        private Node child(int b) {
+            if (children == null)
+                children = new Node[256];
+            if (children[b] == null)
+                children[b] = new Node();
+            return children[b];
+        }
+
+        private Node wildcard() {
+            if (wildcard == null)
+                wildcard = new Node();
+            return wildcard;
+        }
+    }
+
+    private static int[] bytes(int... bytes) {
+        return bytes;
+    }
+
+    private static int[] ascii(String s) {
+        byte[] bytes = s.getBytes(StandardCharsets.US_ASCII);
+        int[] signature = new int[bytes.length];
+        for (int i = 0; i < bytes.length; i++)
+            signature[i] = bytes[i];
+        return signature;
+    }
+
+    private static int[] wildcards(int count) {
+        int[] signature = new int[count];
+        Arrays.fill(signature, WILDCARD);
+        return signature;
+    }
+
+    private static int[] concat(int[]... parts) {
+        int length = 0;
+        for (int[] part : parts)
+            length += part.length;
+        int[] signature = new int[length];
+        int i = 0;
+        for (int[] part : parts) {
+            System.arraycopy(part, 0, signature, i, part.length);
+            i += part.length;
+        }
+        return signature;
+    }
+
+}
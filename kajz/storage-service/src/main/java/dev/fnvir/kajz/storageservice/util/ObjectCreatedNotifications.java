@@ -0,0 +1,111 @@
+package dev.fnvir.kajz.storageservice.util;
+
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import dev.fnvir.kajz.storageservice.dto.event.ObjectCreatedEvent;
+import dev.fnvir.kajz.storageservice.enums.StorageProviderType;
+import tools.jackson.databind.JsonNode;
+import tools.jackson.databind.json.JsonMapper;
+import tools.jackson.databind.node.ObjectNode;
+
+/**
+ * Reads the object created notifications of the storage providers, as
+ * forwarded to Kafka by a bridge:
+ * <ul>
+ * <li>S3 event notifications ({@code {"Records": [...]}}, event names
+ * {@code ObjectCreated:*}),</li>
+ * <li>Azure Event Grid {@code Microsoft.Storage.BlobCreated} events, in the
+ * Event Grid or the CloudEvents schema, single or batched in an array.</li>
+ * </ul>
+ * Other events (e.g. the S3 test event, deletions) are ignored.
+ */
+public class ObjectCreatedNotifications {
+
+    /** The event source of the S3 shaped notifications of the local filesystem provider. */
+    public static final String LOCAL_FS_EVENT_SOURCE = "kajz:local-fs";
+
+    private static final String S3_EVENT_SOURCE = "aws:s3";
+    private static final String BLOB_CREATED = "Microsoft.Storage.BlobCreated";
+    private static final String BLOBS_SUBJECT_SEPARATOR = "/blobs/";
+
+    private ObjectCreatedNotifications() {
+    }
+
+    /**
+     * Get the objects created from a notification.
+     *
+     * @param notification the notification.
+     * @return the created objects, empty if it's no object created notification.
+     */
+    public static List<ObjectCreatedEvent> parse(JsonNode notification) {
+        List<ObjectCreatedEvent> events = new ArrayList<>();
+        if (notification.isArray()) {
+            notification.forEach(event -> addBlobCreated(event, events));
+        } else if (notification.has("Records")) {
+            notification.get("Records").forEach(event -> addS3ObjectCreated(event, events));
+        } else {
+            addBlobCreated(notification, events);
+        }
+        return events;
+    }
+
+    private static void addS3ObjectCreated(JsonNode record, List<ObjectCreatedEvent> events) {
+        if (!record.path("eventName").asString("").startsWith("ObjectCreated:")) {
+            return;
+        }
+        StorageProviderType provider = switch (record.path("eventSource").asString("")) {
+            case S3_EVENT_SOURCE -> StorageProviderType.AWS_S3;
+            case LOCAL_FS_EVENT_SOURCE -> StorageProviderType.LOCAL_FS;
+            default -> null;
+        };
+        JsonNode object = record.path("s3").path("object");
+        String key = object.path("key").asString("");
+        if (provider == null || key.isEmpty()) {
+            return;
+        }
+        // keys are URL encoded in S3 notifications (spaces as '+')
+        events.add(new ObjectCreatedEvent(provider, URLDecoder.decode(key, StandardCharsets.UTF_8),
+                object.has("size") ? object.get("size").asLong() : null));
+    }
+
+    private static void addBlobCreated(JsonNode event, List<ObjectCreatedEvent> events) {
+        String type = event.has("eventType") ? event.path("eventType").asString("") : event.path("type").asString("");
+        String subject = event.path("subject").asString("");
+        int blobs = subject.indexOf(BLOBS_SUBJECT_SEPARATOR);
+        if (!BLOB_CREATED.equals(type) || blobs < 0) {
+            return;
+        }
+        JsonNode data = event.path("data");
+        events.add(new ObjectCreatedEvent(StorageProviderType.AZURE_BLOB,
+                subject.substring(blobs + BLOBS_SUBJECT_SEPARATOR.length()),
+                data.has("contentLength") ? data.get("contentLength").asLong() : null));
+    }
+
+    /**
+     * Create an S3 shaped notification for an object written to the local
+     * filesystem provider, standing in for the notifications of the cloud
+     * providers.
+     *
+     * @param jsonMapper the JSON mapper.
+     * @param key        the key of the object.
+     * @param size       the size of the object in bytes.
+     * @param eTag       the ETag of the object.
+     * @return the notification.
+     */
+    public static ObjectNode localFsNotification(JsonMapper jsonMapper, String key, long size, String eTag) {
+        ObjectNode notification = jsonMapper.createObjectNode();
+        ObjectNode record = notification.putArray("Records").addObject();
+        record.put("eventSource", LOCAL_FS_EVENT_SOURCE);
+        record.put("eventName", "ObjectCreated:Put");
+        record.putObject("s3").putObject("object")
+                .put("key", URLEncoder.encode(key, StandardCharsets.UTF_8))
+                .put("size", size)
+                .put("eTag", eTag);
+        return notification;
+    }
+
+}
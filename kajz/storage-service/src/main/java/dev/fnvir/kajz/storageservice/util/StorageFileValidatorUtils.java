@@ -23,13 +23,30 @@ public class StorageFileValidatorUtils {
     private final StorageProperties storageProps;
     private final transient Set<MimeType> cachedAllowedMimeTypes = new HashSet<>();
     
+    private transient MagicByteDetector detector;
+    
     private static final Tika TIKA = new Tika();
     
+    /** The number of leading bytes read by the Tika fallback. */
+    static final int TIKA_SNIFF_LENGTH = 8192;
+    
     @PostConstruct
     void compileAllowedMimeTypes() {
         for (var e : storageProps.getAllowedTypes()) {
             cachedAllowedMimeTypes.add(MimeTypeUtils.parseMimeType(e));
         }
+        detector = MagicByteDetector.compile(storageProps.getAllowedTypes());
+        log.info("Content-type detection reads the first {} bytes of uploads (Tika fallback: {})",
+                getSniffLength(), detector.needsFallback());
+    }
+    
+    /**
+     * The number of leading bytes of a file needed to detect its media type.
+     * Only as many bytes as the longest signature of the allowed types, unless
+     * one of them has to be detected by Tika.
+     */
+    public int getSniffLength() {
+        return detector.requiredPrefixLength(TIKA_SNIFF_LENGTH);
     }
     
     /**
@@ -42,6 +59,20 @@ public class StorageFileValidatorUtils {
         return Long.compare(contentLength, storageProps.getMaxSize()) <= 0;
     }
     
+    /**
+     * Whether the content-length of a file is within the allowed size for its
+     * upload mode.
+     * 
+     * @param contentLength the size of the file in bytes.
+     * @param multipart     whether the file is uploaded in multiple parts.
+     * @return true if the size is valid, false otherwise.
+     */
+    public boolean isValidFileSize(long contentLength, boolean multipart) {
+        if (!multipart)
+            return isValidFileSize(contentLength);
+        return Long.compare(contentLength, storageProps.getMultipartMaxSize()) <= 0;
+    }
+    
     public boolean isValidMimeType(String mimeType) {
         return isValidMimeType(MimeTypeUtils.parseMimeType(mimeType));
     }
@@ -68,22 +99,36 @@ public class StorageFileValidatorUtils {
     }
     
     /**
-     * Detect actual media type of a file using Apache Tika.
+     * Detect actual media type of a file from its first {@link #getSniffLength()}
+     * bytes, by the magic bytes of the allowed types. Falls back to Apache Tika
+     * for files the signatures can't tell apart (e.g. zip based formats).
      * 
      * @param filename    the name of the file.
      * @param inputStream an open input-stream of the file.
      * @return the detected content type, or application/octet-stream if detection fails.
      */
     public String detectMediaType(String filename, InputStream inputStream) {
+        byte[] head;
         try {
-            String detected = TIKA.detect(inputStream, filename);
-            return detected != null ? detected : "application/octet-stream";
+            head = inputStream.readNBytes(getSniffLength());
         } catch (IOException e) {
             log.warn("Failed to detect content type for: {}! Error: {}", filename, e.getMessage());
-            return "application/octet-stream";
+            return MagicByteDetector.UNKNOWN;
         }
+        String detected = detector.detect(head, head.length);
+        return detected != null ? detected : detectWithTika(filename, head);
     }
     
-    
+    /**
+     * Detect the media type of a file from its head using Apache Tika.
+     * 
+     * @param filename the name of the file.
+     * @param head     the leading bytes of the file.
+     * @return the detected content type, or application/octet-stream if detection fails.
+     */
+    static String detectWithTika(String filename, byte[] head) {
+        String detected = TIKA.detect(head, filename);
+        return detected != null ? detected : MagicByteDetector.UNKNOWN;
+    }
 
 }
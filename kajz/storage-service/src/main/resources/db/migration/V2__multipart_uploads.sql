@@ -0,0 +1,5 @@
+ALTER TABLE file_uploads
+    ADD COLUMN multipart_upload_id varchar(1024),
+    ADD COLUMN part_size bigint,
+    ADD COLUMN part_count integer,
+    ADD COLUMN uploaded_parts jsonb;
@@ -0,0 +1,2 @@
+ALTER TABLE file_uploads
+    ADD COLUMN status_message varchar(255);
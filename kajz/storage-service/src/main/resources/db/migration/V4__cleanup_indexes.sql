@@ -0,0 +1,21 @@
+-- Partial indexes for the cleanup and purge jobs, only covering the (few) rows they look for.
+
+-- invalid uploads (failed or still uploading), paged by id
+CREATE INDEX idx_file_uploads_invalid
+    ON file_uploads (id)
+    WHERE deleted = false AND (status = 'FAILED' OR (status = 'UPLOADING' AND completed_at IS NULL));
+
+-- uploads waiting for content validation
+CREATE INDEX idx_file_uploads_processing
+    ON file_uploads (updated_at)
+    WHERE deleted = false AND status = 'PROCESSING';
+
+-- soft deleted rows to purge
+CREATE INDEX idx_file_uploads_soft_deleted
+    ON file_uploads (id)
+    WHERE deleted = true;
+
+-- files of an owner
+CREATE INDEX idx_file_uploads_owner
+    ON file_uploads (owner_id, id)
+    WHERE deleted = false;
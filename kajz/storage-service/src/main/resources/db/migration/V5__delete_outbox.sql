@@ -0,0 +1,11 @@
+CREATE TABLE file_delete_outbox (
+    id bigint not null primary key,
+    storage_path varchar(255) not null,
+    multipart_upload_id varchar(1024),
+    attempts integer default 0 not null,
+    next_attempt_at timestamptz default current_timestamp not null,
+    last_error varchar(512),
+    created_at timestamptz default current_timestamp not null
+);
+
+CREATE INDEX idx_file_delete_outbox_next_attempt ON file_delete_outbox (next_attempt_at);
@@ -0,0 +1,14 @@
+ALTER TABLE file_uploads ADD COLUMN content_hash varchar(64);
+
+CREATE TABLE file_blobs (
+    id bigint not null primary key,
+    content_hash varchar(64) not null,
+    scope varchar(16) not null,
+    storage_path varchar(255) not null,
+    e_tag varchar(255),
+    content_size bigint not null,
+    ref_count integer default 1 not null,
+    created_at timestamptz default current_timestamp not null
+);
+
+CREATE UNIQUE INDEX uk_file_blobs_hash_scope ON file_blobs (content_hash, scope);
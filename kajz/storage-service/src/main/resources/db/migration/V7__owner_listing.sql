@@ -0,0 +1,13 @@
+-- Persist the purpose of uploads so the files of an owner can be listed by purpose.
+ALTER TABLE file_uploads ADD COLUMN purpose varchar(80);
+
+-- existing uploads only have it in their generated filename (<purpose>-<tsid>.<ext>),
+-- capped at the max length of the purpose of upload requests
+UPDATE file_uploads
+    SET purpose = left(substring(filename from '^(.+)-[0-9a-z]{13}\.[^.]*$'), 80)
+    WHERE purpose IS NULL;
+
+-- files of an owner by purpose, newest first (the unfiltered listing uses idx_file_uploads_owner)
+CREATE INDEX idx_file_uploads_owner_purpose
+    ON file_uploads (owner_id, purpose, id)
+    WHERE deleted = false;
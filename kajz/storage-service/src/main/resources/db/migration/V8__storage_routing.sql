@@ -0,0 +1,23 @@
+-- Route files to several storage providers and move cold files to a cheaper tier.
+ALTER TABLE file_uploads ADD COLUMN storage_backend varchar(32);
+ALTER TABLE file_uploads ADD COLUMN last_accessed_at timestamptz;
+ALTER TABLE file_uploads ADD COLUMN cold_tiered_at timestamptz;
+
+ALTER TABLE file_blobs ADD COLUMN storage_backend varchar(32);
+ALTER TABLE file_delete_outbox ADD COLUMN storage_backend varchar(32);
+
+-- existing files are held by the primary provider (storage.provider, e.g. aws-s3 -> AWS_S3)
+UPDATE file_uploads SET storage_backend = upper(replace('${storage-provider}', '-', '_'))
+    WHERE storage_backend IS NULL;
+UPDATE file_blobs SET storage_backend = upper(replace('${storage-provider}', '-', '_'))
+    WHERE storage_backend IS NULL;
+UPDATE file_delete_outbox SET storage_backend = upper(replace('${storage-provider}', '-', '_'))
+    WHERE storage_backend IS NULL;
+
+-- hot available files, scanned by the tiering job in ID order
+CREATE INDEX idx_file_uploads_hot
+    ON file_uploads (id)
+    WHERE deleted = false AND status = 'VALIDATED' AND cold_tiered_at IS NULL;
+
+-- files sharing a (deduplicated) object move together
+CREATE INDEX idx_file_uploads_storage_path ON file_uploads (storage_path);
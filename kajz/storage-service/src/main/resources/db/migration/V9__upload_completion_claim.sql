@@ -0,0 +1,2 @@
+-- Claim the completion of an upload instead of locking its row across storage provider calls.
+ALTER TABLE file_uploads ADD COLUMN completion_claimed_at timestamptz;
@@ -1,20 +1,34 @@
 package dev.fnvir.kajz.storageservice;
 
+import java.nio.file.Path;
+
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.context.annotation.Import;
 import org.springframework.test.context.ActiveProfiles;
-import org.springframework.test.context.bean.override.mockito.MockitoBean;
-
-import dev.fnvir.kajz.storageservice.service.AbstractStorageProvider;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
 
+/**
+ * Loads the context with the local filesystem provider, so the storage
+ * provider wiring (routing, metering, resilience) is the real one.
+ */
 @ActiveProfiles("test")
 @Import(TestcontainersConfiguration.class)
-@SpringBootTest
+@SpringBootTest(properties = {
+    "storage.provider=local-fs",
+    "storage.local-fs.signing-secret=test-secret"
+})
 class StorageServiceApplicationTests {
-    
-    @MockitoBean
-    AbstractStorageProvider abstractStorageProvider;
+
+    @TempDir
+    static Path rootDir;
+
+    @DynamicPropertySource
+    static void localFsProperties(DynamicPropertyRegistry registry) {
+        registry.add("storage.local-fs.root-dir", rootDir::toString);
+    }
 
     @Test
     void contextLoads() {
@@ -2,6 +2,7 @@ package dev.fnvir.kajz.storageservice.controller;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.ArgumentMatchers.isNull;
@@ -10,6 +11,7 @@ import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.time.Instant;
 import java.util.Map;
 import java.util.UUID;
@@ -21,15 +23,20 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.context.annotation.Import;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
 import org.springframework.security.authentication.TestingAuthenticationToken;
 import org.springframework.security.core.Authentication;
 import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import dev.fnvir.kajz.storageservice.config.SecurityConfig;
+import dev.fnvir.kajz.storageservice.config.StorageProperties;
 import dev.fnvir.kajz.storageservice.dto.StreamFileDto;
 import dev.fnvir.kajz.storageservice.dto.req.CompleteUploadRequest;
 import dev.fnvir.kajz.storageservice.dto.req.InitiateUploadRequest;
@@ -52,16 +59,23 @@ class StorageControllerTest {
     @Mock
     private StorageService storageService;
 
+    @Spy
+    private StorageProperties storageProperties = new StorageProperties();
+
     @InjectMocks
     private StorageController storageController;
 
     private UUID testUserId;
     private Authentication authentication;
+    private MockHttpServletRequest servletRequest;
+    private MockHttpServletResponse servletResponse;
 
     @BeforeEach
     void setUp() {
         testUserId = UUID.randomUUID();
         authentication = new TestingAuthenticationToken(testUserId.toString(), null, "ROLE_USER");
+        servletRequest = new MockHttpServletRequest();
+        servletResponse = new MockHttpServletResponse();
     }
 
     @Nested
@@ -146,10 +160,10 @@ class StorageControllerTest {
                     .inputStreamProvider(() -> new ByteArrayInputStream("test content".getBytes()))
                     .build();
             
-            when(storageService.downloadFileValidatingAccess(eq(12345L), isNull()))
+            when(storageService.downloadFileValidatingAccess(eq(12345L), isNull(), isNull()))
                     .thenReturn(streamFileDto);
             
-            ResponseEntity<StreamingResponseBody> result = storageController.serveFileValidatingAccess(12345L, null);
+            ResponseEntity<StreamingResponseBody> result = storageController.serveFileValidatingAccess(12345L, null, null, null, null, servletRequest, servletResponse);
             
             assertNotNull(result);
             assertEquals(HttpStatus.OK, result.getStatusCode());
@@ -165,10 +179,10 @@ class StorageControllerTest {
                     .etag("abc123")
                     .build();
             
-            when(storageService.downloadFileValidatingAccess(eq(12345L), eq("abc123")))
+            when(storageService.downloadFileValidatingAccess(eq(12345L), eq("abc123"), isNull()))
                     .thenReturn(streamFileDto);
             
-            ResponseEntity<StreamingResponseBody> result = storageController.serveFileValidatingAccess(12345L, "abc123");
+            ResponseEntity<StreamingResponseBody> result = storageController.serveFileValidatingAccess(12345L, "abc123", null, null, null, servletRequest, servletResponse);
             
             assertNotNull(result);
             assertEquals(HttpStatus.NOT_MODIFIED, result.getStatusCode());
@@ -177,14 +191,141 @@ class StorageControllerTest {
         @Test
         @DisplayName("should return 404 when service returns null")
         void shouldReturn404WhenServiceReturnsNull() {
-            when(storageService.downloadFileValidatingAccess(eq(99999L), isNull()))
+            when(storageService.downloadFileValidatingAccess(eq(99999L), isNull(), isNull()))
                     .thenReturn(null);
             
-            ResponseEntity<StreamingResponseBody> result = storageController.serveFileValidatingAccess(99999L, null);
+            ResponseEntity<StreamingResponseBody> result = storageController.serveFileValidatingAccess(99999L, null, null, null, null, servletRequest, servletResponse);
             
             assertNotNull(result);
             assertEquals(HttpStatus.NOT_FOUND, result.getStatusCode());
         }
+
+        @Test
+        @DisplayName("should return 206 with the requested range")
+        void shouldReturn206ForSingleRange() throws Exception {
+            byte[] content = "0123456789".getBytes();
+            when(storageService.downloadFileValidatingAccess(eq(12345L), isNull(), isNull()))
+                    .thenReturn(rangeableFile(content));
+            
+            ResponseEntity<StreamingResponseBody> result = storageController.serveFileValidatingAccess(12345L, null, "bytes=2-5", null, null, servletRequest, servletResponse);
+            
+            assertEquals(HttpStatus.PARTIAL_CONTENT, result.getStatusCode());
+            assertEquals("bytes 2-5/10", result.getHeaders().getFirst(HttpHeaders.CONTENT_RANGE));
+            assertEquals(4L, result.getHeaders().getContentLength());
+            
+            var out = new ByteArrayOutputStream();
+            result.getBody().writeTo(out);
+            assertEquals("2345", out.toString());
+        }
+
+        @Test
+        @DisplayName("should return multipart/byteranges for multiple ranges")
+        void shouldReturnMultipartForMultipleRanges() throws Exception {
+            byte[] content = "0123456789".getBytes();
+            when(storageService.downloadFileValidatingAccess(eq(12345L), isNull(), isNull()))
+                    .thenReturn(rangeableFile(content));
+            
+            ResponseEntity<StreamingResponseBody> result = storageController.serveFileValidatingAccess(12345L, null, "bytes=0-1,-2", null, null, servletRequest, servletResponse);
+            
+            assertEquals(HttpStatus.PARTIAL_CONTENT, result.getStatusCode());
+            assertEquals("multipart", result.getHeaders().getContentType().getType());
+            assertEquals("byteranges", result.getHeaders().getContentType().getSubtype());
+            
+            var out = new ByteArrayOutputStream();
+            result.getBody().writeTo(out);
+            String body = out.toString();
+            assertTrue(body.contains("Content-Range: bytes 0-1/10\r\n\r\n01"));
+            assertTrue(body.contains("Content-Range: bytes 8-9/10\r\n\r\n89"));
+        }
+
+        @Test
+        @DisplayName("should return 416 when range starts past the end of the file")
+        void shouldReturn416ForUnsatisfiableRange() {
+            when(storageService.downloadFileValidatingAccess(eq(12345L), isNull(), isNull()))
+                    .thenReturn(rangeableFile("0123456789".getBytes()));
+            
+            ResponseEntity<StreamingResponseBody> result = storageController.serveFileValidatingAccess(12345L, null, "bytes=20-30", null, null, servletRequest, servletResponse);
+            
+            assertEquals(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE, result.getStatusCode());
+            assertEquals("bytes */10", result.getHeaders().getFirst(HttpHeaders.CONTENT_RANGE));
+        }
+
+        @Test
+        @DisplayName("should merge overlapping and adjacent ranges")
+        void shouldMergeOverlappingRanges() throws Exception {
+            when(storageService.downloadFileValidatingAccess(eq(12345L), isNull(), isNull()))
+                    .thenReturn(rangeableFile("0123456789".getBytes()));
+            
+            ResponseEntity<StreamingResponseBody> result = storageController.serveFileValidatingAccess(12345L, null, "bytes=4-5,0-2,2-3", null, null, servletRequest, servletResponse);
+            
+            assertEquals(HttpStatus.PARTIAL_CONTENT, result.getStatusCode());
+            assertEquals("bytes 0-5/10", result.getHeaders().getFirst(HttpHeaders.CONTENT_RANGE));
+            
+            var out = new ByteArrayOutputStream();
+            result.getBody().writeTo(out);
+            assertEquals("012345", out.toString());
+        }
+
+        @Test
+        @DisplayName("should return 416 when the ranges add up to more than the file")
+        void shouldReturn416WhenRangesExceedFile() {
+            when(storageService.downloadFileValidatingAccess(eq(12345L), isNull(), isNull()))
+                    .thenReturn(rangeableFile("0123456789".getBytes()));
+            
+            ResponseEntity<StreamingResponseBody> result = storageController.serveFileValidatingAccess(12345L, null, "bytes=0-,0-,0-", null, null, servletRequest, servletResponse);
+            
+            assertEquals(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE, result.getStatusCode());
+            assertEquals("bytes */10", result.getHeaders().getFirst(HttpHeaders.CONTENT_RANGE));
+        }
+
+        @Test
+        @DisplayName("should serve the full file when If-Range doesn't match")
+        void shouldIgnoreRangeWhenIfRangeMismatch() {
+            when(storageService.downloadFileValidatingAccess(eq(12345L), isNull(), isNull()))
+                    .thenReturn(rangeableFile("0123456789".getBytes()));
+            
+            ResponseEntity<StreamingResponseBody> result = storageController.serveFileValidatingAccess(12345L, null, "bytes=2-5", "\"stale\"", null, servletRequest, servletResponse);
+            
+            assertEquals(HttpStatus.OK, result.getStatusCode());
+            assertEquals(10L, result.getHeaders().getContentLength());
+        }
+
+        @Test
+        @DisplayName("should set the encoding headers when serving a compressed file")
+        void shouldSetEncodingHeaders() {
+            StreamFileDto streamFileDto = StreamFileDto.builder()
+                    .filename("data.json")
+                    .contentType("application/json")
+                    .contentLength(-1)
+                    .etag("abc123-gzip")
+                    .contentEncoding("gzip")
+                    .compressWhileStreaming(true)
+                    .varyByEncoding(true)
+                    .inputStreamProvider(() -> new ByteArrayInputStream("{}".getBytes()))
+                    .build();
+            when(storageService.downloadFileValidatingAccess(eq(12345L), isNull(), eq("gzip, br")))
+                    .thenReturn(streamFileDto);
+            
+            ResponseEntity<StreamingResponseBody> result = storageController.serveFileValidatingAccess(12345L, null, null, null, "gzip, br", servletRequest, servletResponse);
+            
+            assertEquals(HttpStatus.OK, result.getStatusCode());
+            assertEquals("gzip", result.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING));
+            assertEquals("Accept-Encoding", result.getHeaders().getFirst(HttpHeaders.VARY));
+            assertEquals("\"abc123-gzip\"", result.getHeaders().getETag());
+            assertEquals(-1, result.getHeaders().getContentLength());
+        }
+
+        private StreamFileDto rangeableFile(byte[] content) {
+            return StreamFileDto.builder()
+                    .filename("test.txt")
+                    .contentType("text/plain")
+                    .contentLength(content.length)
+                    .etag("abc123")
+                    .inputStreamProvider(() -> new ByteArrayInputStream(content))
+                    .rangeStreamProvider((start, end) ->
+                            () -> new ByteArrayInputStream(content, (int) start, (int) (end - start + 1)))
+                    .build();
+        }
     }
 
     @Nested
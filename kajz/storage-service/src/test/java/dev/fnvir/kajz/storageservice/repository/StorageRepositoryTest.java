@@ -3,6 +3,7 @@ package dev.fnvir.kajz.storageservice.repository;
 import java.sql.Timestamp;
 import java.time.Duration;
 import java.time.Instant;
+import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
@@ -89,7 +90,7 @@ public class StorageRepositoryTest {
         
         Assertions.assertThat(result)
             .hasSize(2)
-            .containsExactly(failed, oldUploading); // sorted by createdAt
+            .containsExactly(failed, oldUploading); // sorted by ID (TSIDs are time-ordered)
     }
 
     @Test
@@ -125,6 +126,62 @@ public class StorageRepositoryTest {
         Assertions.assertThat(deletedRows).isEqualTo(softDeletedCount);
     }
 
+    @Test
+    @DisplayName("deleteSoftDeletedChunk removes at most the given number of soft-deleted uploads")
+    void deleteSoftDeletedChunk_removesBoundedChunk() {
+        List<FileUpload> entities = new ArrayList<>();
+        for(int i=0; i<5; i++) {
+            var file = newUpload(
+                UUID.randomUUID(),
+                "file_" + i + ".jpg",
+                FileAccessLevel.PRIVATE,
+                UploadStatus.UPLOADED
+            );
+            file.setDeleted(true);
+            entities.add(file);
+        }
+        entities.add(newUpload(UUID.randomUUID(), "active_file.jpg", FileAccessLevel.PRIVATE, UploadStatus.UPLOADED));
+        storageRepository.saveAllAndFlush(entities);
+
+        Assertions.assertThat(storageRepository.deleteSoftDeletedChunk(3)).isEqualTo(3);
+        Assertions.assertThat(storageRepository.deleteSoftDeletedChunk(3)).isEqualTo(2);
+        Assertions.assertThat(storageRepository.deleteSoftDeletedChunk(3)).isZero();
+        Assertions.assertThat(storageRepository.count()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("an upload is completed once, by the caller holding its completion claim")
+    void claimCompletion_completesOnce() {
+        var file = storageRepository.saveAndFlush(
+                newUpload(UUID.randomUUID(), "claimed.jpg", FileAccessLevel.PRIVATE, UploadStatus.UPLOADING));
+        Instant claimedAt = Instant.now().truncatedTo(ChronoUnit.MICROS);
+        Instant staleBefore = claimedAt.minus(Duration.ofMinutes(5));
+
+        Assertions.assertThat(storageRepository.claimCompletion(file.getId(), claimedAt, staleBefore)).isEqualTo(1);
+        Assertions.assertThat(storageRepository.claimCompletion(file.getId(), claimedAt.plusSeconds(1), staleBefore)).isZero();
+        Assertions.assertThat(storageRepository.finishUploading(file.getId(), "etag", claimedAt.minusSeconds(1), Instant.now())).isZero();
+        Assertions.assertThat(storageRepository.finishUploading(file.getId(), "etag", claimedAt, Instant.now())).isEqualTo(1);
+        Assertions.assertThat(storageRepository.failUploading(file.getId(), "failed", claimedAt, Instant.now())).isZero();
+
+        var completed = storageRepository.findById(file.getId()).orElseThrow();
+        Assertions.assertThat(completed.getStatus()).isEqualTo(UploadStatus.PROCESSING);
+        Assertions.assertThat(completed.getCompletedAt()).isNotNull();
+        Assertions.assertThat(completed.getCompletionClaimedAt()).isNull();
+    }
+
+    @Test
+    @DisplayName("a stale completion claim is taken over")
+    void claimCompletion_takesOverStaleClaim() {
+        var file = storageRepository.saveAndFlush(
+                newUpload(UUID.randomUUID(), "stale.jpg", FileAccessLevel.PRIVATE, UploadStatus.UPLOADING));
+        Instant now = Instant.now().truncatedTo(ChronoUnit.MICROS);
+        Instant stale = now.minus(Duration.ofMinutes(10));
+
+        Assertions.assertThat(storageRepository.claimCompletion(file.getId(), stale, stale.minus(Duration.ofMinutes(5)))).isEqualTo(1);
+        Assertions.assertThat(storageRepository.claimCompletion(file.getId(), now, now.minus(Duration.ofMinutes(5)))).isEqualTo(1);
+        Assertions.assertThat(storageRepository.finishUploading(file.getId(), "etag", stale, Instant.now())).isZero();
+    }
+
     private FileUpload newUpload(
             UUID ownerId,
             String filename,
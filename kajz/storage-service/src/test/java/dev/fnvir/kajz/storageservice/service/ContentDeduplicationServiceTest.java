@@ -0,0 +1,149 @@
+package dev.fnvir.kajz.storageservice.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Optional;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import dev.fnvir.kajz.storageservice.config.StorageProperties;
+import dev.fnvir.kajz.storageservice.enums.UploadStatus;
+import dev.fnvir.kajz.storageservice.model.FileBlob;
+import dev.fnvir.kajz.storageservice.model.FileUpload;
+import dev.fnvir.kajz.storageservice.repository.FileBlobRepository;
+import dev.fnvir.kajz.storageservice.repository.StorageRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Unit tests for {@link ContentDeduplicationService}.
+ */
+@ExtendWith(MockitoExtension.class)
+public class ContentDeduplicationServiceTest {
+
+    /** SHA-256 of "hello". */
+    private static final String HELLO_HASH = "2cf24dba5fb0a30e26e83b2ac5b9e29e1b161e5c1fa7425e73043362938b9824";
+
+    @Mock
+    private StorageRepository storageRepository;
+
+    @Mock
+    private FileBlobRepository blobRepository;
+
+    @Mock
+    private AbstractStorageProvider storageProvider;
+
+    @Mock
+    private DeleteOutboxService deleteOutbox;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private SimpleMeterRegistry meterRegistry;
+    private ContentDeduplicationService dedupService;
+    private FileUpload file;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        dedupService = new ContentDeduplicationService(storageRepository, blobRepository,
+                StorageProviderRouterTest.routerOf(storageProvider), deleteOutbox, new StorageProperties(),
+                transactionManager, meterRegistry);
+
+        file = new FileUpload();
+        file.setId(2L);
+        file.setStoragePath("public/bbb/portfolio-2.png");
+        file.setETag("etag-2");
+        file.setContentSize(5L);
+        file.setStatus(UploadStatus.PROCESSING);
+    }
+
+    @Test
+    @DisplayName("should point a duplicate upload at the shared object and delete its own")
+    void shouldLinkDuplicate() {
+        when(storageProvider.downloadFile("public/bbb/portfolio-2.png"))
+                .thenReturn(() -> new ByteArrayInputStream("hello".getBytes(StandardCharsets.UTF_8)));
+        when(storageRepository.claimContentHash(2L, HELLO_HASH)).thenReturn(1);
+        when(blobRepository.findByContentHashAndScope(HELLO_HASH, "public"))
+                .thenReturn(Optional.of(blob("public/aaa/portfolio-1.png", "etag-1")));
+
+        dedupService.deduplicate(file);
+
+        verify(blobRepository).addReference(anyLong(), eq(HELLO_HASH), eq("public"),
+                eq("public/bbb/portfolio-2.png"), eq("etag-2"), eq(5L), isNull());
+        verify(storageRepository).linkToBlob(2L, "public/aaa/portfolio-1.png", "etag-1", null);
+        verify(deleteOutbox).enqueuePath(null, "public/bbb/portfolio-2.png");
+        assertEquals("public/aaa/portfolio-1.png", file.getStoragePath());
+        assertEquals(HELLO_HASH, file.getContentHash());
+        assertEquals(5, meterRegistry.get("storage.dedup.saved.bytes").counter().count());
+    }
+
+    @Test
+    @DisplayName("should keep the object of the first upload of some content")
+    void shouldKeepFirstUpload() {
+        when(storageProvider.downloadFile("public/bbb/portfolio-2.png"))
+                .thenReturn(() -> new ByteArrayInputStream("hello".getBytes(StandardCharsets.UTF_8)));
+        when(storageRepository.claimContentHash(2L, HELLO_HASH)).thenReturn(1);
+        when(blobRepository.findByContentHashAndScope(HELLO_HASH, "public"))
+                .thenReturn(Optional.of(blob("public/bbb/portfolio-2.png", "etag-2")));
+
+        dedupService.deduplicate(file);
+
+        verify(storageRepository, never()).linkToBlob(anyLong(), anyString(), anyString(), any());
+        verify(deleteOutbox, never()).enqueuePath(any(), anyString());
+        assertEquals("public/bbb/portfolio-2.png", file.getStoragePath());
+    }
+
+    @Test
+    @DisplayName("should not add a reference when another worker already deduplicated the upload")
+    void shouldSkipWhenAlreadyClaimed() {
+        when(storageProvider.downloadFile("public/bbb/portfolio-2.png"))
+                .thenReturn(() -> new ByteArrayInputStream("hello".getBytes(StandardCharsets.UTF_8)));
+        when(storageRepository.claimContentHash(2L, HELLO_HASH)).thenReturn(0);
+
+        dedupService.deduplicate(file);
+
+        verify(blobRepository, never()).addReference(anyLong(), any(), any(), any(), any(), any(), any());
+        assertNull(file.getContentHash());
+    }
+
+    @Test
+    @DisplayName("should only delete a shared object when its last reference is released")
+    void shouldReleaseReferences() {
+        file.setContentHash(HELLO_HASH);
+        when(blobRepository.removeReference(HELLO_HASH, "public")).thenReturn(1);
+        when(blobRepository.deleteIfUnreferenced(HELLO_HASH, "public")).thenReturn(0, 1);
+
+        assertFalse(dedupService.release(file));
+        assertTrue(dedupService.release(file));
+    }
+
+    private FileBlob blob(String storagePath, String eTag) {
+        var blob = new FileBlob();
+        blob.setContentHash(HELLO_HASH);
+        blob.setScope("public");
+        blob.setStoragePath(storagePath);
+        blob.setETag(eTag);
+        blob.setContentSize(5L);
+        return blob;
+    }
+
+}
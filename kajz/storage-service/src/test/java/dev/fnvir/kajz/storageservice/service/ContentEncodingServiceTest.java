@@ -0,0 +1,138 @@
+package dev.fnvir.kajz.storageservice.service;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import dev.fnvir.kajz.storageservice.config.StorageProperties;
+import dev.fnvir.kajz.storageservice.dto.CachedFileMetadata;
+import dev.fnvir.kajz.storageservice.enums.ContentEncoding;
+import dev.fnvir.kajz.storageservice.enums.FileAccessLevel;
+import dev.fnvir.kajz.storageservice.enums.UploadStatus;
+import dev.fnvir.kajz.storageservice.model.FileUpload;
+import dev.fnvir.kajz.storageservice.repository.StorageRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Unit tests for {@link ContentEncodingService}.
+ */
+@ExtendWith(MockitoExtension.class)
+public class ContentEncodingServiceTest {
+
+    @Mock
+    private AbstractStorageProvider storageProvider;
+
+    @Mock
+    private StorageRepository storageRepository;
+
+    private ContentEncodingService encodingService;
+
+    @BeforeEach
+    void setUp() {
+        encodingService = new ContentEncodingService(StorageProviderRouterTest.routerOf(storageProvider),
+                storageRepository, new StorageProperties(), new SimpleMeterRegistry());
+    }
+
+    @Test
+    @DisplayName("should store a gzip variant of a compressible upload")
+    void shouldPrecompress() throws Exception {
+        byte[] content = "{\"title\":\"gig\"}".repeat(100).getBytes(StandardCharsets.UTF_8);
+        when(storageProvider.downloadFile("public/abc/data.json")).thenReturn(() -> new ByteArrayInputStream(content));
+
+        encodingService.precompress(file("application/json", content.length));
+
+        var stored = ArgumentCaptor.forClass(byte[].class);
+        verify(storageProvider).uploadFile(eq("public/abc/data.json.gz"), stored.capture(), eq("application/gzip"));
+        assertArrayEquals(content, new GZIPInputStream(new ByteArrayInputStream(stored.getValue())).readAllBytes());
+        verify(storageRepository).putMetadata("public/abc/data.json", null, "encoding:gzip", String.valueOf(stored.getValue().length));
+    }
+
+    @Test
+    @DisplayName("should record the original when compressing doesn't save enough")
+    void shouldRecordIdentityWhenIncompressible() {
+        byte[] content = new byte[4096];
+        new Random(42).nextBytes(content);
+        when(storageProvider.downloadFile("public/abc/data.json")).thenReturn(() -> new ByteArrayInputStream(content));
+
+        encodingService.precompress(file("application/json", content.length));
+
+        verify(storageProvider, never()).uploadFile(anyString(), any(), anyString());
+        verify(storageRepository).putMetadata("public/abc/data.json", null, "encoding:identity", "4096");
+    }
+
+    @Test
+    @DisplayName("should serve the stored variant, else compress while streaming")
+    void shouldNegotiate() {
+        var precompressed = encodingService.negotiate(metadata("image/svg+xml", Map.of("gzip", 300L)), "br, gzip");
+        assertEquals(ContentEncoding.GZIP, precompressed.encoding());
+        assertEquals("public/abc/data.json.gz", precompressed.storagePath());
+        assertEquals(300L, precompressed.contentSize());
+
+        var streamed = encodingService.negotiate(metadata("image/svg+xml", Map.of()), "gzip");
+        assertTrue(streamed.compressWhileStreaming());
+        assertNull(streamed.contentSize());
+
+        var incompressible = encodingService.negotiate(metadata("image/svg+xml", Map.of("identity", 1024L)), "gzip");
+        assertEquals(ContentEncoding.IDENTITY, incompressible.encoding());
+
+        var image = encodingService.negotiate(metadata("image/png", Map.of()), "gzip");
+        assertEquals(ContentEncoding.IDENTITY, image.encoding());
+        assertEquals(1024L, image.contentSize());
+    }
+
+    @Test
+    @DisplayName("should honour the quality values of Accept-Encoding")
+    void shouldParseAcceptEncoding() {
+        assertTrue(ContentEncodingService.acceptsGzip("gzip, deflate, br"));
+        assertTrue(ContentEncodingService.acceptsGzip("br;q=1.0, *;q=0.5"));
+        assertFalse(ContentEncodingService.acceptsGzip("gzip;q=0, *"));
+        assertFalse(ContentEncodingService.acceptsGzip("identity"));
+        assertFalse(ContentEncodingService.acceptsGzip(null));
+    }
+
+    @Test
+    @DisplayName("should suffix the ETag of encoded representations")
+    void shouldSuffixETag() {
+        assertEquals("abc-gzip", ContentEncodingService.eTagOf("\"abc\"", ContentEncoding.GZIP));
+        assertEquals("abc", ContentEncodingService.eTagOf("abc", ContentEncoding.IDENTITY));
+        assertNull(ContentEncodingService.eTagOf(null, ContentEncoding.GZIP));
+    }
+
+    private static FileUpload file(String mimeType, long contentSize) {
+        var file = new FileUpload();
+        file.setId(1L);
+        file.setStoragePath("public/abc/data.json");
+        file.setMimeType(mimeType);
+        file.setContentSize(contentSize);
+        return file;
+    }
+
+    private static CachedFileMetadata metadata(String mimeType, Map<String, Long> encodings) {
+        return new CachedFileMetadata(1L, UUID.randomUUID(), "data.json", "public/abc/data.json", null, mimeType,
+                1024L, "etag", FileAccessLevel.PUBLIC, UploadStatus.VALIDATED, true, Map.of(), encodings);
+    }
+
+}
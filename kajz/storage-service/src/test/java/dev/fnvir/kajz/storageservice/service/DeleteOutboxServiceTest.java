@@ -0,0 +1,177 @@
+package dev.fnvir.kajz.storageservice.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import dev.fnvir.kajz.storageservice.config.StorageProperties;
+import dev.fnvir.kajz.storageservice.enums.StorageProviderType;
+import dev.fnvir.kajz.storageservice.model.DeleteOutboxEntry;
+import dev.fnvir.kajz.storageservice.model.FileUpload;
+import dev.fnvir.kajz.storageservice.repository.DeleteOutboxRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Unit tests for {@link DeleteOutboxService}.
+ */
+@ExtendWith(MockitoExtension.class)
+public class DeleteOutboxServiceTest {
+
+    @Mock
+    private DeleteOutboxRepository outboxRepository;
+
+    @Mock
+    private AbstractStorageProvider storageProvider;
+
+    @Mock
+    private AbstractStorageProvider azureProvider;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private SimpleMeterRegistry meterRegistry;
+    private DeleteOutboxService outboxService;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        outboxService = new DeleteOutboxService(outboxRepository, StorageProviderRouterTest.routerOf(storageProvider),
+                new StorageProperties(), transactionManager, meterRegistry);
+    }
+
+    @AfterEach
+    void tearDown() {
+        outboxService.shutdown();
+    }
+
+    @Test
+    @DisplayName("should remove deleted entries and reschedule failed ones")
+    void shouldRescheduleFailedDeletes() {
+        var ok = entry(1L, "files/1", null);
+        var failed = entry(2L, "files/2", null);
+        when(storageProvider.deleteFiles(anyCollection())).thenReturn(Set.of("files/2"));
+
+        Instant before = Instant.now();
+        outboxService.process(List.of(ok, failed));
+
+        verify(outboxRepository).deleteByIds(List.of(1L));
+        verify(outboxRepository).saveAll(Set.of(failed));
+        assertEquals(1, failed.getAttempts());
+        assertEquals("Delete failed", failed.getLastError());
+        assertTrue(failed.getNextAttemptAt().isAfter(before.plus(Duration.ofSeconds(29))));
+        assertEquals(1, meterRegistry.get("storage.delete.outbox.deleted").counter().count());
+        assertEquals(1, meterRegistry.get("storage.delete.outbox.failures").counter().count());
+    }
+
+    @Test
+    @DisplayName("should abort incomplete multipart uploads before deleting")
+    void shouldAbortMultipartUploads() {
+        var multipart = entry(1L, "files/1", "upload-1");
+        when(storageProvider.deleteFiles(anyCollection())).thenReturn(Set.of());
+
+        outboxService.process(List.of(multipart));
+
+        verify(storageProvider).abortMultipartUpload("files/1", "upload-1");
+        verify(outboxRepository).deleteByIds(List.of(1L));
+    }
+
+    @Test
+    @DisplayName("should not delete the file when aborting the multipart upload fails")
+    void shouldRetryFailedAborts() {
+        var multipart = entry(1L, "files/1", "upload-1");
+        doThrow(new RuntimeException("timeout")).when(storageProvider).abortMultipartUpload("files/1", "upload-1");
+        when(storageProvider.deleteFiles(anyCollection())).thenReturn(Set.of());
+
+        outboxService.process(List.of(multipart));
+
+        verify(storageProvider).deleteFiles(List.of());
+        verify(outboxRepository, never()).deleteByIds(anyCollection());
+        assertEquals(1, multipart.getAttempts());
+        assertEquals("upload-1", multipart.getMultipartUploadId());
+    }
+
+    @Test
+    @DisplayName("should delete each entry from the backend holding it and retry the ones of disabled backends")
+    void shouldDeleteFromEachBackend() {
+        var primary = entry(1L, "files/1", null);
+        var azure = DeleteOutboxEntry.of(StorageProviderType.AZURE_BLOB, "files/2", null);
+        azure.setId(2L);
+        var localFs = DeleteOutboxEntry.of(StorageProviderType.LOCAL_FS, "files/3", null);
+        localFs.setId(3L);
+        var providerRouter = mock(StorageProviderRouter.class);
+        when(providerRouter.provider(null)).thenReturn(storageProvider);
+        when(providerRouter.provider(StorageProviderType.AZURE_BLOB)).thenReturn(azureProvider);
+        when(providerRouter.provider(StorageProviderType.LOCAL_FS))
+                .thenThrow(new IllegalStateException("Storage provider LOCAL_FS isn't enabled"));
+        when(storageProvider.deleteFiles(anyCollection())).thenReturn(Set.of());
+        when(azureProvider.deleteFiles(anyCollection())).thenReturn(Set.of());
+
+        var routedService = new DeleteOutboxService(outboxRepository, providerRouter, new StorageProperties(),
+                transactionManager, meterRegistry);
+        try {
+            routedService.process(List.of(primary, azure, localFs));
+        } finally {
+            routedService.shutdown();
+        }
+
+        verify(storageProvider).deleteFiles(List.of("files/1"));
+        verify(azureProvider).deleteFiles(List.of("files/2"));
+        verify(outboxRepository).deleteByIds(argThat(ids -> Set.copyOf(ids).equals(Set.of(1L, 2L))));
+        verify(outboxRepository).saveAll(Set.of(localFs));
+        assertEquals("Storage provider LOCAL_FS isn't enabled", localFs.getLastError());
+    }
+
+    @Test
+    @DisplayName("should back off exponentially up to the max delay")
+    void shouldBackOffExponentially() {
+        assertEquals(Duration.ofSeconds(30), DeleteOutboxService.retryDelay(1));
+        assertEquals(Duration.ofSeconds(60), DeleteOutboxService.retryDelay(2));
+        assertEquals(Duration.ofSeconds(120), DeleteOutboxService.retryDelay(3));
+        assertEquals(Duration.ofHours(1), DeleteOutboxService.retryDelay(50));
+    }
+
+    @Test
+    @DisplayName("should enqueue the image derivatives along with the file")
+    void shouldEnqueueDerivatives() {
+        var file = new FileUpload();
+        file.setStoragePath("public/abc/avatar.png");
+        file.setMetadata(Map.of("derivative:w96.jpeg", "512", "purpose", "avatar"));
+
+        outboxService.enqueue(file);
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<DeleteOutboxEntry>> entries = ArgumentCaptor.forClass(List.class);
+        verify(outboxRepository).saveAll(entries.capture());
+        assertEquals(List.of("public/abc/avatar.png", "public/abc/avatar_w96.jpeg"),
+                entries.getValue().stream().map(DeleteOutboxEntry::getStoragePath).toList());
+    }
+
+    private DeleteOutboxEntry entry(long id, String path, String multipartUploadId) {
+        var e = DeleteOutboxEntry.of(null, path, multipartUploadId);
+        e.setId(id);
+        return e;
+    }
+
+}
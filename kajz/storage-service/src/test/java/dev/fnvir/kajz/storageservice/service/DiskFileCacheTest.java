@@ -0,0 +1,134 @@
+package dev.fnvir.kajz.storageservice.service;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import dev.fnvir.kajz.storageservice.config.StorageCacheProperties;
+import dev.fnvir.kajz.storageservice.util.FileChannelInputStream;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Unit tests for {@link DiskFileCache}.
+ */
+public class DiskFileCacheTest {
+
+    private static final byte[] CONTENT = "hot public thumbnail".getBytes(StandardCharsets.UTF_8);
+
+    @TempDir
+    Path cacheDir;
+
+    private SimpleMeterRegistry meterRegistry;
+    private DiskFileCache cache;
+    private AtomicInteger originCalls;
+    private Callable<InputStream> origin;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        var props = new StorageCacheProperties();
+        props.getDisk().setEnabled(true);
+        props.getDisk().setDir(cacheDir.toString());
+        props.getDisk().setAdmissionHits(2);
+
+        meterRegistry = new SimpleMeterRegistry();
+        cache = new DiskFileCache(props, meterRegistry);
+        cache.init();
+
+        originCalls = new AtomicInteger();
+        origin = () -> {
+            originCalls.incrementAndGet();
+            return new ByteArrayInputStream(CONTENT);
+        };
+    }
+
+    @Test
+    @DisplayName("should cache a file only after the admission threshold")
+    void shouldAdmitAfterThreshold() throws Exception {
+        assertArrayEquals(CONTENT, read(cache.cached("public/a.png", "etag", CONTENT.length, origin)));
+        assertEquals(0, countCachedFiles());
+
+        assertArrayEquals(CONTENT, read(cache.cached("public/a.png", "etag", CONTENT.length, origin)));
+        assertEquals(1, countCachedFiles());
+
+        InputStream in = cache.cached("public/a.png", "etag", CONTENT.length, origin).call();
+        assertInstanceOf(FileChannelInputStream.class, in);
+        assertArrayEquals(CONTENT, read(() -> in));
+        assertEquals(2, originCalls.get());
+        assertEquals(CONTENT.length, meterRegistry.get("storage.disk.cache.served").counter().count());
+    }
+
+    @Test
+    @DisplayName("should serve ranges of cached files from disk")
+    void shouldServeRangeFromCache() throws Exception {
+        read(cache.cached("public/a.png", "etag", CONTENT.length, origin));
+        read(cache.cached("public/a.png", "etag", CONTENT.length, origin));
+
+        byte[] range = read(cache.cachedRange("public/a.png", "etag", 4, 9, () -> {
+            throw new AssertionError("origin called");
+        }));
+        assertEquals("public", new String(range, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    @DisplayName("should not cache a partially read file")
+    void shouldAbandonPartialFill() throws Exception {
+        read(cache.cached("public/a.png", "etag", CONTENT.length, origin));
+        try (InputStream in = cache.cached("public/a.png", "etag", CONTENT.length, origin).call()) {
+            in.read(new byte[4]);
+        }
+        assertEquals(0, countCachedFiles());
+    }
+
+    @Test
+    @DisplayName("should count only the bytes read from a cached file")
+    void shouldCountBytesRead() throws Exception {
+        read(cache.cached("public/a.png", "etag", CONTENT.length, origin));
+        read(cache.cached("public/a.png", "etag", CONTENT.length, origin));
+
+        try (InputStream in = cache.cached("public/a.png", "etag", CONTENT.length, origin).call()) {
+            assertEquals(0, meterRegistry.get("storage.disk.cache.served").counter().count());
+            in.skip(2);
+            in.read(new byte[4]);
+        }
+        assertEquals(4, meterRegistry.get("storage.disk.cache.served").counter().count());
+    }
+
+    @Test
+    @DisplayName("a changed ETag should miss the cache")
+    void changedETagShouldMiss() throws Exception {
+        read(cache.cached("public/a.png", "etag", CONTENT.length, origin));
+        read(cache.cached("public/a.png", "etag", CONTENT.length, origin));
+
+        InputStream in = cache.cached("public/a.png", "new-etag", CONTENT.length, origin).call();
+        assertFalse(in instanceof FileChannelInputStream);
+        in.close();
+    }
+
+    private static byte[] read(Callable<InputStream> provider) throws Exception {
+        try (InputStream in = provider.call()) {
+            return in.readAllBytes();
+        }
+    }
+
+    private long countCachedFiles() throws Exception {
+        try (Stream<Path> files = Files.list(cacheDir)) {
+            return files.count();
+        }
+    }
+
+}
@@ -0,0 +1,104 @@
+package dev.fnvir.kajz.storageservice.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import dev.fnvir.kajz.storageservice.config.StorageRoutingProperties;
+import dev.fnvir.kajz.storageservice.repository.StorageRepository;
+
+/**
+ * Unit tests for {@link FileAccessTracker}.
+ */
+@ExtendWith(MockitoExtension.class)
+public class FileAccessTrackerTest {
+
+    @Mock
+    private StorageRepository storageRepository;
+
+    private StorageRoutingProperties routingProperties;
+    private FileAccessTracker accessTracker;
+
+    /** The batches written, copied as the tracker reuses its batch list. */
+    private final List<Set<Long>> flushed = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        routingProperties = new StorageRoutingProperties();
+        routingProperties.getCold().setEnabled(true);
+        accessTracker = new FileAccessTracker(storageRepository, routingProperties);
+    }
+
+    @Test
+    @DisplayName("should not track reads while moving cold files is disabled")
+    void shouldIgnoreReadsWhenDisabled() {
+        routingProperties.getCold().setEnabled(false);
+
+        accessTracker.touch(1L);
+        accessTracker.flush();
+
+        verify(storageRepository, never()).touchLastAccessed(anyCollection(), any());
+    }
+
+    @Test
+    @DisplayName("should write each file read once, in batches")
+    void shouldFlushInBatches() {
+        recordFlushes();
+        for (long id = 1; id <= FileAccessTracker.FLUSH_BATCH_SIZE + 1; id++) {
+            accessTracker.touch(id);
+            accessTracker.touch(id);
+        }
+
+        accessTracker.flush();
+
+        assertEquals(2, flushed.size());
+        assertEquals(FileAccessTracker.FLUSH_BATCH_SIZE + 1, flushed.stream().mapToInt(Set::size).sum());
+
+        accessTracker.flush();
+        verify(storageRepository, times(2)).touchLastAccessed(anyCollection(), any());
+    }
+
+    @Test
+    @DisplayName("should keep the reads of a failed write for the next flush")
+    void shouldRetryFailedFlush() {
+        when(storageRepository.touchLastAccessed(anyCollection(), any()))
+                .thenThrow(new RuntimeException("connection refused"))
+                .thenAnswer(inv -> {
+                    flushed.add(new HashSet<>(inv.<Collection<Long>>getArgument(0)));
+                    return 2;
+                });
+        accessTracker.touch(1L);
+        accessTracker.touch(2L);
+
+        accessTracker.flush();
+        accessTracker.flush();
+
+        assertEquals(List.of(Set.of(1L, 2L)), flushed);
+    }
+
+    private void recordFlushes() {
+        when(storageRepository.touchLastAccessed(anyCollection(), any())).thenAnswer(inv -> {
+            Collection<Long> ids = inv.getArgument(0);
+            flushed.add(new HashSet<>(ids));
+            return ids.size();
+        });
+    }
+
+}
@@ -0,0 +1,218 @@
+package dev.fnvir.kajz.storageservice.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.stubbing.OngoingStubbing;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.data.redis.core.HashOperations;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import dev.fnvir.kajz.storageservice.config.StorageCacheProperties;
+import dev.fnvir.kajz.storageservice.dto.CachedFileMetadata;
+import dev.fnvir.kajz.storageservice.enums.FileAccessLevel;
+import dev.fnvir.kajz.storageservice.enums.StorageProviderType;
+import dev.fnvir.kajz.storageservice.enums.UploadStatus;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Unit tests for {@link FileMetadataCache}.
+ */
+@ExtendWith(MockitoExtension.class)
+public class FileMetadataCacheTest {
+
+    @Mock
+    private StringRedisTemplate redis;
+
+    @Mock
+    private HashOperations<String, Object, Object> hashOps;
+
+    @Mock
+    private ValueOperations<String, String> valueOps;
+
+    private SimpleMeterRegistry meterRegistry;
+    private FileMetadataCache cache;
+    private CachedFileMetadata metadata;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        cache = new FileMetadataCache(redis, new StorageCacheProperties(), meterRegistry);
+        metadata = new CachedFileMetadata(12345L, UUID.randomUUID(), "file.png", "public/abc/file.png",
+                StorageProviderType.AWS_S3, "image/png", 1024L, "etag", FileAccessLevel.PUBLIC, UploadStatus.VALIDATED,
+                true, Map.of("w96.jpeg", 512L), Map.of("gzip", 300L));
+    }
+
+    @Test
+    @DisplayName("should load once and serve later lookups from memory")
+    void shouldLoadOnceThenHitLocalCache() {
+        when(redis.opsForHash()).thenReturn(hashOps);
+        when(hashOps.entries(anyString())).thenReturn(Map.of());
+        when(redis.opsForValue()).thenReturn(valueOps);
+        when(valueOps.get("storage-service:file-meta:version:12345")).thenReturn("3");
+        whenWrittenBack().thenReturn(1L);
+        AtomicInteger loads = new AtomicInteger();
+
+        assertEquals(metadata, cache.get(12345L, () -> { loads.incrementAndGet(); return metadata; }));
+        assertEquals(metadata, cache.get(12345L, () -> { loads.incrementAndGet(); return metadata; }));
+
+        assertEquals(1, loads.get());
+        Object[] args = verifyWrittenBack("storage-service:file-meta:12345", "storage-service:file-meta:version:12345");
+        assertEquals("3", args[0]);
+        assertEquals(String.valueOf(Duration.ofHours(1).toMillis()), args[1]);
+        assertEquals(metadata.toHash().size() * 2, args.length - 2);
+        assertEquals(1.0, meterRegistry.get("storage.file.metadata.cache")
+                .tag("level", "local").tag("result", "hit").counter().count());
+    }
+
+    @Test
+    @DisplayName("should use redis entry without calling the loader")
+    void shouldHitRedis() {
+        when(redis.opsForHash()).thenReturn(hashOps);
+        when(hashOps.entries("storage-service:file-meta:12345")).thenReturn(Map.<Object, Object>copyOf(metadata.toHash()));
+
+        assertEquals(metadata, cache.get(12345L, () -> { throw new AssertionError("loader called"); }));
+    }
+
+    @Test
+    @DisplayName("should fall back to the loader when redis is down")
+    void shouldFallBackWhenRedisFails() {
+        when(redis.opsForHash()).thenThrow(new RedisConnectionFailureException("down"));
+        when(redis.opsForValue()).thenThrow(new RedisConnectionFailureException("down"));
+
+        assertEquals(metadata, cache.get(12345L, () -> metadata));
+    }
+
+    @Test
+    @DisplayName("should not cache missing files")
+    void shouldNotCacheNull() {
+        when(redis.opsForHash()).thenReturn(hashOps);
+        when(hashOps.entries(anyString())).thenReturn(Map.of());
+
+        when(redis.opsForValue()).thenReturn(valueOps);
+
+        assertNull(cache.get(12345L, () -> null));
+        verify(redis, never()).execute(any(RedisScript.class), anyList(), any(Object[].class));
+    }
+
+    @Test
+    @DisplayName("should not cache a load which raced an eviction")
+    void shouldNotCacheLoadRacingEviction() {
+        when(redis.opsForHash()).thenReturn(hashOps);
+        when(hashOps.entries(anyString())).thenReturn(Map.of());
+        when(redis.opsForValue()).thenReturn(valueOps);
+        whenWrittenBack().thenReturn(0L); // the version changed while loading
+        AtomicInteger loads = new AtomicInteger();
+
+        assertEquals(metadata, cache.get(12345L, () -> { loads.incrementAndGet(); return metadata; }));
+        assertEquals(metadata, cache.get(12345L, () -> { loads.incrementAndGet(); return metadata; }));
+
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    @DisplayName("evict should drop both cache levels")
+    void evictShouldDropBothLevels() {
+        when(redis.opsForHash()).thenReturn(hashOps);
+        when(hashOps.entries(anyString())).thenReturn(Map.of());
+        when(redis.opsForValue()).thenReturn(valueOps);
+        whenWrittenBack().thenReturn(1L);
+        cache.get(12345L, () -> metadata);
+
+        cache.evict(12345L);
+
+        verify(redis).executePipelined(any(SessionCallback.class));
+        AtomicInteger loads = new AtomicInteger();
+        cache.get(12345L, () -> { loads.incrementAndGet(); return metadata; });
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    @DisplayName("evict should bump the version before deleting the entry")
+    @SuppressWarnings("unchecked")
+    void evictShouldBumpVersionBeforeDeleting() {
+        cache.evict(List.of(12345L, 12346L));
+
+        ArgumentCaptor<SessionCallback<Object>> callback = ArgumentCaptor.forClass(SessionCallback.class);
+        verify(redis).executePipelined(callback.capture());
+        RedisOperations<String, String> operations = mock();
+        when(operations.opsForValue()).thenReturn(valueOps);
+        callback.getValue().execute(operations);
+
+        var inOrder = inOrder(valueOps, operations);
+        inOrder.verify(valueOps).increment("storage-service:file-meta:version:12345");
+        inOrder.verify(valueOps).increment("storage-service:file-meta:version:12346");
+        inOrder.verify(operations).delete(List.of("storage-service:file-meta:12345", "storage-service:file-meta:12346"));
+    }
+
+    @Test
+    @DisplayName("getAll should read the misses from redis in one pipeline and load the rest at once")
+    void getAllShouldBatchMisses() {
+        when(redis.opsForHash()).thenReturn(hashOps);
+        when(redis.executePipelined(any(SessionCallback.class))).thenReturn(List.<Object>of(metadata.toHash(), Map.of()));
+        when(redis.opsForValue()).thenReturn(valueOps);
+        when(valueOps.multiGet(List.of("storage-service:file-meta:version:12346", "storage-service:file-meta:version:12347")))
+                .thenReturn(Arrays.asList("1", null));
+        whenWrittenBack().thenReturn(1L);
+        var other = new CachedFileMetadata(12346L, UUID.randomUUID(), "other.png", "public/abc/other.png",
+                null, "image/png", 2048L, null, FileAccessLevel.PUBLIC, UploadStatus.VALIDATED, true, Map.of(), Map.of());
+        List<Collection<Long>> loads = new ArrayList<>();
+
+        var result = cache.getAll(List.of(12345L, 12346L, 12347L), ids -> {
+            loads.add(List.copyOf(ids));
+            return Map.of(12346L, other);
+        });
+
+        assertEquals(Map.of(12345L, metadata, 12346L, other), result);
+        assertEquals(List.of(List.of(12346L, 12347L)), loads);
+        assertEquals("1", verifyWrittenBack("storage-service:file-meta:12346", "storage-service:file-meta:version:12346")[0]);
+        assertEquals(Map.of(12345L, metadata, 12346L, other), cache.getAll(List.of(12345L, 12346L), ids -> {
+            throw new AssertionError("loader called");
+        }));
+    }
+
+    @SuppressWarnings("unchecked")
+    private OngoingStubbing<Object> whenWrittenBack() {
+        return when(redis.execute(any(RedisScript.class), anyList(), any(Object[].class)));
+    }
+
+    /**
+     * Verify the entry was written back by the script, returning its arguments.
+     */
+    @SuppressWarnings("unchecked")
+    private Object[] verifyWrittenBack(String key, String versionKey) {
+        ArgumentCaptor<Object[]> args = ArgumentCaptor.forClass(Object[].class);
+        verify(redis).execute(any(RedisScript.class), eq(List.of(key, versionKey)), args.capture());
+        return args.getValue();
+    }
+
+}
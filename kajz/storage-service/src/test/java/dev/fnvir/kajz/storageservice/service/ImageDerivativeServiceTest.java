@@ -0,0 +1,122 @@
+package dev.fnvir.kajz.storageservice.service;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Map;
+import java.util.UUID;
+
+import javax.imageio.ImageIO;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import dev.fnvir.kajz.storageservice.config.StorageProperties;
+import dev.fnvir.kajz.storageservice.dto.CachedFileMetadata;
+import dev.fnvir.kajz.storageservice.dto.DerivativeSpec;
+import dev.fnvir.kajz.storageservice.enums.DerivativeFormat;
+import dev.fnvir.kajz.storageservice.enums.FileAccessLevel;
+import dev.fnvir.kajz.storageservice.enums.UploadStatus;
+import dev.fnvir.kajz.storageservice.repository.StorageRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Unit tests for {@link ImageDerivativeService}.
+ */
+@ExtendWith(MockitoExtension.class)
+public class ImageDerivativeServiceTest {
+
+    @Mock
+    private AbstractStorageProvider storageProvider;
+
+    @Mock
+    private StorageRepository storageRepository;
+
+    @Mock
+    private FileMetadataCache metadataCache;
+
+    private SimpleMeterRegistry meterRegistry;
+    private ImageDerivativeService derivativeService;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        derivativeService = new ImageDerivativeService(StorageProviderRouterTest.routerOf(storageProvider),
+                storageRepository, metadataCache, new StorageProperties(), meterRegistry);
+    }
+
+    @AfterEach
+    void tearDown() {
+        derivativeService.shutdown();
+    }
+
+    @Test
+    @DisplayName("should generate, store and record a missing derivative")
+    void shouldGenerateMissingDerivative() throws Exception {
+        byte[] original = png(400, 200);
+        when(storageProvider.downloadFile("public/abc/avatar.png")).thenReturn(() -> new ByteArrayInputStream(original));
+        var spec = new DerivativeSpec(96, null, DerivativeFormat.PNG);
+
+        var derivative = derivativeService.getOrCreate(metadata(Map.of()), spec);
+
+        var content = ArgumentCaptor.forClass(byte[].class);
+        verify(storageProvider).uploadFile(eq("public/abc/avatar_w96.png"), content.capture(), eq("image/png"));
+        BufferedImage stored = ImageIO.read(new ByteArrayInputStream(content.getValue()));
+        assertEquals(96, stored.getWidth());
+        assertEquals(48, stored.getHeight());
+        assertEquals(content.getValue().length, derivative.contentSize());
+        verify(storageRepository).putMetadata("public/abc/avatar.png", null, "derivative:w96.png", String.valueOf(content.getValue().length));
+        verify(metadataCache).evict(1L);
+    }
+
+    @Test
+    @DisplayName("should serve a recorded derivative without generating it")
+    void shouldServeRecordedDerivative() {
+        var spec = new DerivativeSpec(96, 96, DerivativeFormat.JPEG);
+
+        var derivative = derivativeService.getOrCreate(metadata(Map.of("w96-h96.jpeg", 512L)), spec);
+
+        assertEquals("public/abc/avatar_w96-h96.jpeg", derivative.storagePath());
+        assertEquals(512L, derivative.contentSize());
+        verify(storageProvider, never()).downloadFile(anyString());
+        verify(storageProvider, never()).uploadFile(anyString(), any(), anyString());
+        assertEquals(1, meterRegistry.get("storage.image.derivative.requests").tag("result", "hit").counter().count());
+    }
+
+    @Test
+    @DisplayName("should fit within the box keeping the aspect ratio, without scaling up")
+    void shouldComputeTargetSize() {
+        assertArrayEquals(new int[] { 96, 48 }, ImageDerivativeService.targetSize(400, 200, 96, null));
+        assertArrayEquals(new int[] { 64, 32 }, ImageDerivativeService.targetSize(400, 200, 96, 32));
+        assertArrayEquals(new int[] { 128, 256 }, ImageDerivativeService.targetSize(500, 1000, null, 256));
+        assertArrayEquals(new int[] { 50, 40 }, ImageDerivativeService.targetSize(50, 40, 1024, 1024));
+    }
+
+    private CachedFileMetadata metadata(Map<String, Long> derivatives) {
+        return new CachedFileMetadata(1L, UUID.randomUUID(), "avatar.png", "public/abc/avatar.png", null, "image/png",
+                1024L, "etag", FileAccessLevel.PUBLIC, UploadStatus.VALIDATED, true, derivatives, Map.of());
+    }
+
+    private static byte[] png(int width, int height) throws IOException {
+        var out = new ByteArrayOutputStream();
+        ImageIO.write(new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB), "png", out);
+        return out.toByteArray();
+    }
+
+}
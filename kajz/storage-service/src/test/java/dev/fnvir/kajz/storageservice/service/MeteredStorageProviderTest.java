@@ -0,0 +1,148 @@
+package dev.fnvir.kajz.storageservice.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.reactivestreams.FlowAdapters;
+import org.reactivestreams.Publisher;
+
+import dev.fnvir.kajz.storageservice.dto.UploadValidationResultDTO;
+import dev.fnvir.kajz.storageservice.enums.StorageProviderType;
+import dev.fnvir.kajz.storageservice.exception.NotFoundException;
+import dev.fnvir.kajz.storageservice.model.FileUpload;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Unit tests for {@link MeteredStorageProvider}.
+ */
+@ExtendWith(MockitoExtension.class)
+public class MeteredStorageProviderTest {
+
+    @Mock
+    private AbstractStorageProvider delegate;
+
+    private SimpleMeterRegistry meterRegistry;
+    private MeteredStorageProvider provider;
+
+    @BeforeEach
+    void setUp() {
+        when(delegate.getProviderType()).thenReturn(StorageProviderType.AWS_S3);
+        meterRegistry = new SimpleMeterRegistry();
+        provider = new MeteredStorageProvider(delegate, meterRegistry);
+    }
+
+    @Test
+    @DisplayName("should time operations by outcome")
+    void shouldTimeOperationsByOutcome() {
+        var file = new FileUpload();
+        when(delegate.validateUploadCompletion(file))
+                .thenReturn(UploadValidationResultDTO.success(), UploadValidationResultDTO.invalidContentType());
+        when(delegate.deleteFile("missing")).thenThrow(new NotFoundException());
+
+        provider.validateUploadCompletion(file);
+        provider.validateUploadCompletion(file);
+        assertThrows(NotFoundException.class, () -> provider.deleteFile("missing"));
+
+        assertEquals(1, timer("validate-upload-completion", MeteredStorageProvider.SUCCESS).count());
+        assertEquals(1, timer("validate-upload-completion", MeteredStorageProvider.REJECTED).count());
+        assertEquals(1, timer("delete-file", MeteredStorageProvider.NOT_FOUND).count());
+    }
+
+    @Test
+    @DisplayName("should time opening a download and count the bytes streamed")
+    void shouldCountBytesStreamed() throws Exception {
+        byte[] content = new byte[10_000];
+        when(delegate.downloadFile("key")).thenReturn(() -> new ByteArrayInputStream(content));
+
+        try (InputStream in = provider.downloadFile("key").call()) {
+            in.read();
+            in.transferTo(new ByteArrayOutputStream());
+        }
+
+        assertEquals(1, timer("download-open", MeteredStorageProvider.SUCCESS).count());
+        assertEquals(content.length, bytesStreamed("blocking"));
+    }
+
+    @Test
+    @DisplayName("should time non-blocking downloads until the provider responds")
+    void shouldTimeNonBlockingDownloads() {
+        var buffers = List.of(ByteBuffer.allocate(100), ByteBuffer.allocate(28));
+        Publisher<ByteBuffer> body = FlowAdapters.toPublisher(subscriber -> subscriber.onSubscribe(
+                new Flow.Subscription() {
+                    @Override
+                    public void request(long n) {
+                        buffers.forEach(subscriber::onNext);
+                        subscriber.onComplete();
+                    }
+
+                    @Override
+                    public void cancel() {
+                    }
+                }));
+        var response = new CompletableFuture<Publisher<ByteBuffer>>();
+        when(delegate.downloadFileNonBlocking("key")).thenReturn(response);
+
+        var download = provider.downloadFileNonBlocking("key");
+        assertFalse(download.isDone());
+        response.complete(body);
+
+        List<ByteBuffer> received = new ArrayList<>();
+        FlowAdapters.toFlowPublisher(download.join()).subscribe(new Flow.Subscriber<ByteBuffer>() {
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                subscription.request(Long.MAX_VALUE);
+            }
+
+            @Override
+            public void onNext(ByteBuffer buffer) {
+                received.add(buffer);
+            }
+
+            @Override
+            public void onError(Throwable e) {
+            }
+
+            @Override
+            public void onComplete() {
+            }
+        });
+
+        assertEquals(buffers, received);
+        assertEquals(1, timer("download-open", MeteredStorageProvider.SUCCESS).count());
+        assertEquals(128, bytesStreamed("non-blocking"));
+    }
+
+    private Timer timer(String operation, String outcome) {
+        return meterRegistry.get(MeteredStorageProvider.METRIC_PREFIX + ".operation")
+                .tag("provider", StorageProviderType.AWS_S3.name())
+                .tag("operation", operation)
+                .tag("outcome", outcome)
+                .timer();
+    }
+
+    private double bytesStreamed(String mode) {
+        return meterRegistry.get(MeteredStorageProvider.METRIC_PREFIX + ".bytes.streamed")
+                .tag("mode", mode)
+                .counter()
+                .count();
+    }
+
+}
@@ -0,0 +1,119 @@
+package dev.fnvir.kajz.storageservice.service;
+
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.net.URI;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.kafka.test.context.EmbeddedKafka;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import dev.fnvir.kajz.storageservice.TestConfigurations;
+import dev.fnvir.kajz.storageservice.TestcontainersConfiguration;
+import dev.fnvir.kajz.storageservice.controller.LocalFsStorageController;
+import dev.fnvir.kajz.storageservice.dto.req.InitiateUploadRequest;
+import dev.fnvir.kajz.storageservice.enums.FileAccessLevel;
+import dev.fnvir.kajz.storageservice.enums.UploadStatus;
+import dev.fnvir.kajz.storageservice.model.FileUpload;
+import dev.fnvir.kajz.storageservice.repository.StorageRepository;
+
+/**
+ * Completing uploads from object created notifications, end to end: an object
+ * uploaded to the local filesystem provider is notified through Kafka and its
+ * upload is completed without the client calling {@code complete-upload}.
+ */
+@SpringBootTest(properties = {
+    "storage.provider=local-fs",
+    "storage.local-fs.signing-secret=test-secret",
+    "storage.upload-events.enabled=true",
+    "storage.cache.metadata.enabled=false",
+    "spring.data.redis.timeout=100ms",
+    "spring.kafka.bootstrap-servers=${spring.embedded.kafka.brokers}",
+    "spring.kafka.consumer.auto-offset-reset=earliest"
+})
+@EmbeddedKafka(partitions = 1)
+@Import({TestcontainersConfiguration.class, TestConfigurations.class})
+@Testcontainers(disabledWithoutDocker = true)
+@EnabledIfEnvironmentVariable(named = "ENABLE_TC", matches = "true")
+@ActiveProfiles("test")
+@DisplayName("Object created notifications integration tests")
+class ObjectCreatedEventIntegrationTest {
+
+    /** The PNG signature, so the background content validation accepts the upload. */
+    private static final byte[] PNG = {
+        (byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n', 0, 0, 0, 0x0d, 'I', 'H', 'D', 'R'
+    };
+
+    @TempDir
+    static Path rootDir;
+
+    @DynamicPropertySource
+    static void localFsProperties(DynamicPropertyRegistry registry) {
+        registry.add("storage.local-fs.root-dir", rootDir::toString);
+    }
+
+    @Autowired
+    private StorageService storageService;
+
+    @Autowired
+    private LocalFsStorageController localFsStorageController;
+
+    @Autowired
+    private StorageRepository storageRepository;
+
+    @Test
+    @DisplayName("upload should be completed by the notification of its object")
+    void uploadShouldBeCompletedByNotification() throws Exception {
+        var initiated = storageService.initiateUploadProcess(UUID.randomUUID(), new InitiateUploadRequest(
+                "image.png", "image/png", (long) PNG.length, FileAccessLevel.PUBLIC, "test"));
+        Map<String, String> params = queryParams(initiated.uploadUrl());
+
+        var request = new MockHttpServletRequest("PUT", initiated.uploadUrl());
+        request.setContent(PNG);
+        localFsStorageController.uploadObject(
+                params.get("key"), Long.parseLong(params.get("expires")), params.get("sig"), request);
+
+        FileUpload file = awaitCompleted(initiated.fileId(), Duration.ofSeconds(30));
+        // the content may already have been validated in the background
+        assertTrue(file.getStatus() == UploadStatus.PROCESSING || file.getStatus() == UploadStatus.VALIDATED,
+                "unexpected status " + file.getStatus());
+        assertNotNull(file.getETag());
+    }
+
+    private FileUpload awaitCompleted(Long fileId, Duration timeout) throws InterruptedException {
+        Instant deadline = Instant.now().plus(timeout);
+        while (true) {
+            FileUpload file = storageRepository.findById(fileId).orElseThrow();
+            if (file.getCompletedAt() != null || Instant.now().isAfter(deadline)) {
+                assertNotNull(file.getCompletedAt(), "upload wasn't completed within " + timeout);
+                return file;
+            }
+            Thread.sleep(200);
+        }
+    }
+
+    private static Map<String, String> queryParams(String url) {
+        return Arrays.stream(URI.create(url).getQuery().split("&"))
+                .map(p -> p.split("=", 2))
+                .collect(Collectors.toMap(p -> p[0], p -> p[1]));
+    }
+
+}
@@ -0,0 +1,100 @@
+package dev.fnvir.kajz.storageservice.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import dev.fnvir.kajz.storageservice.config.KafkaTopicConfig;
+import dev.fnvir.kajz.storageservice.dto.event.ObjectCreatedEvent;
+import dev.fnvir.kajz.storageservice.enums.StorageProviderType;
+import dev.fnvir.kajz.storageservice.exception.ConflictException;
+import dev.fnvir.kajz.storageservice.exception.ServiceUnavailableException;
+import dev.fnvir.kajz.storageservice.util.ObjectCreatedNotifications;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import tools.jackson.databind.json.JsonMapper;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("ObjectCreatedEventListener Unit Tests")
+class ObjectCreatedEventListenerTest {
+
+    private static final String KEY = "public/abc/photo.png";
+    private static final ObjectCreatedEvent EVENT = new ObjectCreatedEvent(StorageProviderType.LOCAL_FS, KEY, 10L);
+
+    @Mock
+    private StorageService storageService;
+
+    private final JsonMapper jsonMapper = JsonMapper.builder().build();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private ObjectCreatedEventListener listener;
+    private String payload;
+
+    @BeforeEach
+    void setUp() {
+        listener = new ObjectCreatedEventListener(storageService, jsonMapper, meterRegistry);
+        payload = jsonMapper.writeValueAsString(ObjectCreatedNotifications.localFsNotification(jsonMapper, KEY, 10, "\"1\""));
+    }
+
+    @Test
+    @DisplayName("Should complete the upload of the created object")
+    void shouldCompleteUpload() {
+        when(storageService.completeUploadedObject(EVENT)).thenReturn(true);
+
+        listener.handleObjectCreated(payload, KafkaTopicConfig.OBJECT_CREATED_TOPIC, 0, 1L);
+
+        verify(storageService).completeUploadedObject(EVENT);
+        assertEquals(1, count("completed"));
+    }
+
+    @Test
+    @DisplayName("Should count objects without an upload to complete as skipped")
+    void shouldSkipObjectWithoutUpload() {
+        when(storageService.completeUploadedObject(EVENT)).thenReturn(false);
+
+        listener.handleObjectCreated(payload, KafkaTopicConfig.OBJECT_CREATED_TOPIC, 0, 1L);
+
+        assertEquals(1, count("skipped"));
+    }
+
+    @Test
+    @DisplayName("Should not retry invalid uploads")
+    void shouldNotRetryInvalidUpload() {
+        when(storageService.completeUploadedObject(EVENT)).thenThrow(new ConflictException("Invalid upload"));
+
+        listener.handleObjectCreated(payload, KafkaTopicConfig.OBJECT_CREATED_TOPIC, 0, 1L);
+
+        assertEquals(1, count("rejected"));
+    }
+
+    @Test
+    @DisplayName("Should rethrow server errors so the event is retried")
+    void shouldRethrowServerErrors() {
+        when(storageService.completeUploadedObject(EVENT)).thenThrow(new ServiceUnavailableException("unavailable"));
+
+        assertThrows(ServiceUnavailableException.class,
+                () -> listener.handleObjectCreated(payload, KafkaTopicConfig.OBJECT_CREATED_TOPIC, 0, 1L));
+    }
+
+    @Test
+    @DisplayName("Should skip unreadable notifications")
+    void shouldSkipUnreadableNotification() {
+        listener.handleObjectCreated("{not json", KafkaTopicConfig.OBJECT_CREATED_TOPIC, 0, 1L);
+
+        verify(storageService, never()).completeUploadedObject(any());
+    }
+
+    private double count(String outcome) {
+        return meterRegistry.get("storage.upload.events").tag("outcome", outcome).counter().count();
+    }
+
+}
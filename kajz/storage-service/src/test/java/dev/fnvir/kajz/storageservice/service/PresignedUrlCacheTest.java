@@ -0,0 +1,137 @@
+package dev.fnvir.kajz.storageservice.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+
+import dev.fnvir.kajz.storageservice.config.StorageCacheProperties;
+import dev.fnvir.kajz.storageservice.dto.res.PreSignedDownloadUrlResponse;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Unit tests for {@link PresignedUrlCache}.
+ */
+public class PresignedUrlCacheTest {
+
+    private static final Duration EXPIRY = Duration.ofMinutes(3);
+
+    private final UUID userId = UUID.randomUUID();
+    private StorageCacheProperties properties;
+    private SimpleMeterRegistry meterRegistry;
+    private AtomicInteger signCount;
+    private Supplier<PreSignedDownloadUrlResponse> signer;
+
+    @BeforeEach
+    void setUp() {
+        properties = new StorageCacheProperties();
+        meterRegistry = new SimpleMeterRegistry();
+        signCount = new AtomicInteger();
+        signer = () -> PreSignedDownloadUrlResponse.builder()
+                .url("https://storage.example.com/file?sig=" + signCount.incrementAndGet())
+                .expiresAt(Instant.now().plus(EXPIRY))
+                .build();
+    }
+
+    @Test
+    @DisplayName("should reuse the URL within its reuse window")
+    void shouldReuseUrl() {
+        var cache = new PresignedUrlCache(properties, meterRegistry);
+
+        var first = cache.get(1L, userId, EXPIRY, signer);
+        var second = cache.get(1L, userId, EXPIRY, signer);
+
+        assertEquals(first.url(), second.url());
+        assertEquals(1, signCount.get());
+        assertEquals(1, meterRegistry.get("storage.presigned.url.signed").counter().count());
+    }
+
+    @Test
+    @DisplayName("should not share URLs between users or lifetimes")
+    void shouldKeyByUserAndExpiry() {
+        var cache = new PresignedUrlCache(properties, meterRegistry);
+
+        var url = cache.get(1L, userId, EXPIRY, signer);
+
+        assertNotEquals(url.url(), cache.get(1L, UUID.randomUUID(), EXPIRY, signer).url());
+        assertNotEquals(url.url(), cache.get(1L, userId, Duration.ofMinutes(10), signer).url());
+        assertEquals(3, signCount.get());
+    }
+
+    @Test
+    @DisplayName("should sign a new URL after eviction")
+    void shouldSignAfterEvict() {
+        var cache = new PresignedUrlCache(properties, meterRegistry);
+
+        var first = cache.get(1L, userId, EXPIRY, signer);
+        cache.evict(1L);
+
+        assertNotEquals(first.url(), cache.get(1L, userId, EXPIRY, signer).url());
+    }
+
+    @Test
+    @DisplayName("evict should only drop the URLs of the file")
+    void shouldEvictOnlyTheFile() {
+        var cache = new PresignedUrlCache(properties, meterRegistry);
+
+        var other = cache.get(2L, userId, EXPIRY, signer);
+        cache.get(1L, userId, EXPIRY, signer);
+        cache.get(1L, userId, Duration.ofMinutes(10), signer);
+        cache.evict(1L);
+
+        assertEquals(other.url(), cache.get(2L, userId, EXPIRY, signer).url());
+        cache.get(1L, userId, EXPIRY, signer);
+        assertEquals(4, signCount.get());
+    }
+
+    @Test
+    @DisplayName("a reuse fraction outside (0, 1) should fail binding")
+    void shouldRejectReuseFractionOutOfRange() {
+        for (String reuseFraction : new String[] {"0", "1", "1.5", "-0.5"}) {
+            new ApplicationContextRunner()
+                    .withUserConfiguration(PropertiesConfig.class)
+                    .withPropertyValues("storage.cache.presigned-url.reuse-fraction=" + reuseFraction)
+                    .run(context -> assertNotNull(context.getStartupFailure(), reuseFraction));
+        }
+    }
+
+    @Test
+    @DisplayName("a reuse fraction within (0, 1) should bind")
+    void shouldBindReuseFraction() {
+        new ApplicationContextRunner()
+                .withUserConfiguration(PropertiesConfig.class)
+                .withPropertyValues("storage.cache.presigned-url.reuse-fraction=0.8")
+                .run(context -> {
+                    assertNull(context.getStartupFailure());
+                    assertEquals(0.8, context.getBean(StorageCacheProperties.class).getPresignedUrl().getReuseFraction());
+                });
+    }
+
+    @Test
+    @DisplayName("should sign every time when disabled")
+    void shouldSignEveryTimeWhenDisabled() {
+        properties.getPresignedUrl().setEnabled(false);
+        var cache = new PresignedUrlCache(properties, meterRegistry);
+
+        cache.get(1L, userId, EXPIRY, signer);
+        cache.get(1L, userId, EXPIRY, signer);
+
+        assertEquals(2, signCount.get());
+    }
+
+    @EnableConfigurationProperties(StorageCacheProperties.class)
+    static class PropertiesConfig {}
+
+}
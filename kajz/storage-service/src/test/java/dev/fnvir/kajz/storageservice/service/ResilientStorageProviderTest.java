@@ -0,0 +1,156 @@
+package dev.fnvir.kajz.storageservice.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.time.Duration;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import dev.fnvir.kajz.storageservice.config.StorageResilienceProperties;
+import dev.fnvir.kajz.storageservice.enums.StorageProviderType;
+import dev.fnvir.kajz.storageservice.exception.NotFoundException;
+import dev.fnvir.kajz.storageservice.exception.ServiceUnavailableException;
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Unit tests for {@link ResilientStorageProvider}.
+ */
+@ExtendWith(MockitoExtension.class)
+public class ResilientStorageProviderTest {
+
+    @Mock
+    private AbstractStorageProvider delegate;
+
+    private StorageResilienceProperties properties;
+    private SimpleMeterRegistry meterRegistry;
+
+    @BeforeEach
+    void setUp() {
+        when(delegate.getProviderType()).thenReturn(StorageProviderType.AWS_S3);
+        properties = new StorageResilienceProperties();
+        properties.getDefaults().setMinimumNumberOfCalls(2);
+        properties.getDefaults().setSlidingWindowSize(2);
+        meterRegistry = new SimpleMeterRegistry();
+    }
+
+    @Test
+    @DisplayName("should abandon calls exceeding the timeout")
+    void shouldTimeOut() {
+        properties.getDefaults().setTimeout(Duration.ofMillis(50));
+        when(delegate.deleteFile("key")).thenAnswer(_ -> {
+            Thread.sleep(5_000);
+            return true;
+        });
+        var provider = new ResilientStorageProvider(delegate, properties, meterRegistry);
+
+        var e = assertThrows(ServiceUnavailableException.class, () -> provider.deleteFile("key"));
+        assertEquals("Storage provider timed out", e.getMessage());
+        assertEquals(1, provider.guard("delete-file").circuitBreaker().getMetrics().getNumberOfFailedCalls());
+    }
+
+    @Test
+    @DisplayName("should reject calls once the circuit is open")
+    void shouldOpenCircuit() {
+        when(delegate.deleteFile("key")).thenThrow(new IllegalStateException("503 Slow Down"));
+        var provider = new ResilientStorageProvider(delegate, properties, meterRegistry);
+
+        assertThrows(IllegalStateException.class, () -> provider.deleteFile("key"));
+        assertThrows(IllegalStateException.class, () -> provider.deleteFile("key"));
+        var e = assertThrows(ServiceUnavailableException.class, () -> provider.deleteFile("key"));
+
+        assertInstanceOf(CallNotPermittedException.class, e.getCause());
+        verify(delegate, times(2)).deleteFile("key");
+    }
+
+    @Test
+    @DisplayName("should not count errors of the request as failures")
+    void shouldIgnoreRequestErrors() {
+        when(delegate.deleteFile("missing")).thenThrow(new NotFoundException());
+        var provider = new ResilientStorageProvider(delegate, properties, meterRegistry);
+
+        for (int i = 0; i < 3; i++) {
+            assertThrows(NotFoundException.class, () -> provider.deleteFile("missing"));
+        }
+        verify(delegate, times(3)).deleteFile("missing");
+    }
+
+    @Test
+    @DisplayName("should use the first response of a hedged read and close the other")
+    void shouldHedgeReads() throws Exception {
+        properties.getDefaults().setHedge(true);
+        properties.getDefaults().setHedgeDelay(Duration.ofMillis(20));
+        var slow = new ClosingInputStream();
+        var fast = new ClosingInputStream();
+        var release = new CountDownLatch(1);
+        var calls = new AtomicInteger();
+        Callable<InputStream> open = () -> {
+            if (calls.getAndIncrement() == 0) {
+                awaitUninterruptibly(release); // like a socket read ignoring the cancellation
+                return slow;
+            }
+            return fast;
+        };
+        when(delegate.downloadFile("key")).thenReturn(open);
+        var provider = new ResilientStorageProvider(delegate, properties, meterRegistry);
+
+        InputStream in = provider.downloadFile("key").call();
+        release.countDown();
+
+        assertSame(fast, in);
+        assertEquals(2, calls.get());
+        assertTrue(slow.closed.await(5, TimeUnit.SECONDS));
+        assertEquals(1, meterRegistry.get(ResilientStorageProvider.METRIC_PREFIX + ".hedged")
+                .tag("winner", "hedge").counter().count());
+        // the abandoned request gave its permits back
+        var guard = provider.guard("download-open");
+        assertEquals(guard.bulkhead().getBulkheadConfig().getMaxConcurrentCalls(),
+                guard.bulkhead().getMetrics().getAvailableConcurrentCalls());
+        assertEquals(0, guard.circuitBreaker().getMetrics().getNumberOfFailedCalls());
+        provider.shutdown();
+    }
+
+    private static void awaitUninterruptibly(CountDownLatch latch) {
+        while (true) {
+            try {
+                latch.await();
+                return;
+            } catch (InterruptedException _) {
+            }
+        }
+    }
+
+    private static class ClosingInputStream extends ByteArrayInputStream {
+
+        final CountDownLatch closed = new CountDownLatch(1);
+
+        ClosingInputStream() {
+            super(new byte[0]);
+        }
+
+        @Override
+        public void close() {
+            closed.countDown();
+        }
+
+    }
+
+}
@@ -0,0 +1,111 @@
+package dev.fnvir.kajz.storageservice.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+import java.util.stream.LongStream;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Limit;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import dev.fnvir.kajz.storageservice.config.StorageProperties;
+import dev.fnvir.kajz.storageservice.enums.UploadStatus;
+import dev.fnvir.kajz.storageservice.model.FileUpload;
+import dev.fnvir.kajz.storageservice.repository.StorageRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import net.javacrumbs.shedlock.core.LockAssert;
+
+/**
+ * Unit tests for {@link StorageCleanupService}.
+ */
+@ExtendWith(MockitoExtension.class)
+public class StorageCleanupServiceTest {
+
+    @Mock
+    private StorageRepository storageRepository;
+
+    @Mock
+    private DeleteOutboxService deleteOutbox;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @Mock
+    private FileMetadataCache metadataCache;
+
+    private SimpleMeterRegistry meterRegistry;
+    private StorageCleanupService cleanupService;
+
+    @BeforeEach
+    void setUp() {
+        LockAssert.TestHelper.makeAllAssertsPass(true);
+        meterRegistry = new SimpleMeterRegistry();
+        cleanupService = new StorageCleanupService(storageRepository, deleteOutbox, metadataCache,
+                new StorageProperties(), transactionManager, meterRegistry);
+    }
+
+    @Test
+    @DisplayName("should soft delete the uploads and enqueue the deletion of their files")
+    void shouldSoftDeleteAndEnqueue() {
+        var uploads = List.of(upload(1L), upload(2L), upload(3L));
+        when(storageRepository.countInvalidUploads(any(), any())).thenReturn(3L);
+        when(storageRepository.findInvalidUploads(eq(Long.MIN_VALUE), any(), any(), any(Limit.class))).thenReturn(uploads);
+
+        cleanupService.cleanupInvalidUploads();
+
+        verify(storageRepository).markDeleted(List.of(1L, 2L, 3L));
+        verify(deleteOutbox).enqueue(uploads);
+        verify(metadataCache).evict(List.of(1L, 2L, 3L));
+        assertEquals(0, meterRegistry.get("storage.cleanup.backlog").gauge().value());
+    }
+
+    @Test
+    @DisplayName("should keep paging after the last ID until the backlog is drained")
+    void shouldPageUntilDrained() {
+        int batchSize = StorageCleanupService.CLEANUP_BATCH_SIZE;
+        var firstPage = LongStream.rangeClosed(1, batchSize).mapToObj(this::upload).toList();
+        var lastPage = List.of(upload(batchSize + 1L));
+
+        when(storageRepository.countInvalidUploads(any(), any())).thenReturn(batchSize + 1L);
+        when(storageRepository.findInvalidUploads(eq(Long.MIN_VALUE), any(), any(), any(Limit.class))).thenReturn(firstPage);
+        when(storageRepository.findInvalidUploads(eq((long) batchSize), any(), any(), any(Limit.class))).thenReturn(lastPage);
+
+        cleanupService.cleanupInvalidUploads();
+
+        verify(storageRepository).markDeleted(List.of(batchSize + 1L));
+        assertEquals(batchSize + 1, meterRegistry.get("storage.cleanup.uploads").counter().count());
+        assertEquals(0, meterRegistry.get("storage.cleanup.backlog").gauge().value());
+    }
+
+    @Test
+    @DisplayName("should purge soft deleted uploads in chunks until a partial chunk")
+    void shouldPurgeInChunks() {
+        when(storageRepository.deleteSoftDeletedChunk(StorageCleanupService.PURGE_CHUNK_SIZE))
+                .thenReturn(StorageCleanupService.PURGE_CHUNK_SIZE, 5);
+
+        cleanupService.deleteSoftDeletedEntries();
+
+        verify(storageRepository, times(2)).deleteSoftDeletedChunk(StorageCleanupService.PURGE_CHUNK_SIZE);
+        assertEquals(StorageCleanupService.PURGE_CHUNK_SIZE + 5, meterRegistry.get("storage.cleanup.purged").counter().count());
+    }
+
+    private FileUpload upload(long id) {
+        var f = new FileUpload();
+        f.setId(id);
+        f.setStoragePath("files/" + id);
+        f.setStatus(UploadStatus.FAILED);
+        return f;
+    }
+
+}
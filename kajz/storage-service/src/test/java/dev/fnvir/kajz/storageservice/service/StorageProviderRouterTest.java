@@ -0,0 +1,126 @@
+package dev.fnvir.kajz.storageservice.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+import java.util.Set;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import dev.fnvir.kajz.storageservice.config.StorageProviderConfig;
+import dev.fnvir.kajz.storageservice.config.StorageResilienceProperties;
+import dev.fnvir.kajz.storageservice.config.StorageRoutingProperties;
+import dev.fnvir.kajz.storageservice.enums.FileAccessLevel;
+import dev.fnvir.kajz.storageservice.enums.StorageProviderType;
+import dev.fnvir.kajz.storageservice.model.FileUpload;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Unit tests for {@link StorageProviderRouter}.
+ */
+@ExtendWith(MockitoExtension.class)
+public class StorageProviderRouterTest {
+
+    @Mock
+    private AbstractStorageProvider s3;
+
+    @Mock
+    private AbstractStorageProvider azure;
+
+    private StorageRoutingProperties routing;
+
+    @BeforeEach
+    void setUp() {
+        when(s3.getProviderType()).thenReturn(StorageProviderType.AWS_S3);
+        when(azure.getProviderType()).thenReturn(StorageProviderType.AZURE_BLOB);
+        routing = new StorageRoutingProperties();
+        routing.setProviders(Set.of(StorageProviderType.AZURE_BLOB));
+    }
+
+    @Test
+    @DisplayName("should route a file by the first matching rule")
+    void shouldRouteByFirstMatchingRule() {
+        var large = rule(StorageProviderType.AZURE_BLOB);
+        large.setMinSize(1024L * 1024);
+        var avatars = rule(StorageProviderType.AWS_S3);
+        avatars.setPurpose("avatar");
+        routing.setRules(List.of(avatars, large));
+        var router = new StorageProviderRouter(List.of(s3, azure), config(StorageProviderType.AWS_S3), routing,
+                new StorageResilienceProperties(), new SimpleMeterRegistry());
+
+        assertEquals(StorageProviderType.AZURE_BLOB, router.route(file("gig-video", 50L * 1024 * 1024)));
+        assertEquals(StorageProviderType.AWS_S3, router.route(file("avatar", 50L * 1024 * 1024)));
+        assertEquals(StorageProviderType.AWS_S3, router.route(file("gig-thumbnail", 1024)));
+    }
+
+    @Test
+    @DisplayName("should read a file from the backend recorded on it")
+    void shouldResolveRecordedBackend() {
+        var router = new StorageProviderRouter(List.of(s3, azure), config(StorageProviderType.AWS_S3), routing,
+                new StorageResilienceProperties(), new SimpleMeterRegistry());
+        var file = file("avatar", 1024);
+
+        assertSame(s3, delegate(router.provider(file))); // not recorded, stored before files were routed
+        file.setStorageBackend(StorageProviderType.AZURE_BLOB);
+        assertSame(azure, delegate(router.provider(file)));
+        assertThrows(IllegalStateException.class, () -> router.provider(StorageProviderType.LOCAL_FS));
+    }
+
+    @Test
+    @DisplayName("should fail on rules routing to a provider which isn't enabled")
+    void shouldRejectDisabledProvider() {
+        routing.setRules(List.of(rule(StorageProviderType.LOCAL_FS)));
+
+        assertThrows(IllegalStateException.class,
+                () -> new StorageProviderRouter(List.of(s3, azure), config(StorageProviderType.AWS_S3), routing,
+                        new StorageResilienceProperties(), new SimpleMeterRegistry()));
+    }
+
+    /**
+     * A router with a single (primary) provider, for the tests of the services
+     * using it.
+     */
+    static StorageProviderRouter routerOf(AbstractStorageProvider provider) {
+        lenient().when(provider.getProviderType()).thenReturn(StorageProviderType.AWS_S3);
+        var resilience = new StorageResilienceProperties();
+        resilience.setEnabled(false); // calls stay on the test thread
+        return new StorageProviderRouter(List.of(provider), config(StorageProviderType.AWS_S3),
+                new StorageRoutingProperties(), resilience, new SimpleMeterRegistry());
+    }
+
+    private static AbstractStorageProvider delegate(AbstractStorageProvider provider) {
+        var resilient = assertInstanceOf(ResilientStorageProvider.class, provider);
+        return assertInstanceOf(MeteredStorageProvider.class, resilient.getDelegate()).getDelegate();
+    }
+
+    private static StorageProviderConfig config(StorageProviderType primary) {
+        var config = new StorageProviderConfig();
+        config.setProvider(primary);
+        return config;
+    }
+
+    private static StorageRoutingProperties.Rule rule(StorageProviderType provider) {
+        var rule = new StorageRoutingProperties.Rule();
+        rule.setProvider(provider);
+        return rule;
+    }
+
+    private static FileUpload file(String purpose, long size) {
+        var file = new FileUpload();
+        file.setPurpose(purpose);
+        file.setContentSize(size);
+        file.setAccess(FileAccessLevel.PUBLIC);
+        return file;
+    }
+
+}
@@ -1,18 +1,29 @@
 package dev.fnvir.kajz.storageservice.service;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.nullable;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.time.Duration;
 import java.time.Instant;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
 
 import org.junit.jupiter.api.AfterEach;
@@ -27,24 +38,49 @@ import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.Limit;
+import org.springframework.http.HttpStatus;
+import org.springframework.security.authentication.TestingAuthenticationToken;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.transaction.PlatformTransactionManager;
 
+import dev.fnvir.kajz.storageservice.config.StorageCacheProperties;
+import dev.fnvir.kajz.storageservice.config.StorageProperties;
+import dev.fnvir.kajz.storageservice.dto.CachedFileMetadata;
+import dev.fnvir.kajz.storageservice.dto.DerivativeSpec;
 import dev.fnvir.kajz.storageservice.dto.UploadValidationResultDTO;
+import dev.fnvir.kajz.storageservice.dto.event.FileStatusChangedEvent;
+import dev.fnvir.kajz.storageservice.dto.event.ObjectCreatedEvent;
 import dev.fnvir.kajz.storageservice.dto.UploadValidationResultDTO.UploadValidationFailureReason;
+import dev.fnvir.kajz.storageservice.dto.req.BatchFileInfoRequest;
+import dev.fnvir.kajz.storageservice.dto.req.BatchInitiateUploadRequest;
 import dev.fnvir.kajz.storageservice.dto.req.CompleteUploadRequest;
+import dev.fnvir.kajz.storageservice.dto.req.InitiateMultipartUploadRequest;
 import dev.fnvir.kajz.storageservice.dto.req.InitiateUploadRequest;
+import dev.fnvir.kajz.storageservice.dto.res.BatchInitiateUploadResponse;
 import dev.fnvir.kajz.storageservice.dto.res.CompleteUploadResponse;
+import dev.fnvir.kajz.storageservice.dto.res.FileUploadResponse;
+import dev.fnvir.kajz.storageservice.dto.res.InitiateMultipartUploadResponse;
 import dev.fnvir.kajz.storageservice.dto.res.InitiateUploadResponse;
+import dev.fnvir.kajz.storageservice.dto.res.PartUploadUrl;
 import dev.fnvir.kajz.storageservice.dto.res.PreSignedDownloadUrlResponse;
+import dev.fnvir.kajz.storageservice.enums.DerivativeFormat;
 import dev.fnvir.kajz.storageservice.enums.FileAccessLevel;
+import dev.fnvir.kajz.storageservice.enums.StorageProviderType;
 import dev.fnvir.kajz.storageservice.enums.UploadStatus;
+import dev.fnvir.kajz.storageservice.exception.ApiException;
 import dev.fnvir.kajz.storageservice.exception.ConflictException;
 import dev.fnvir.kajz.storageservice.exception.ForbiddenException;
 import dev.fnvir.kajz.storageservice.exception.NotFoundException;
 import dev.fnvir.kajz.storageservice.mapper.FileUploadMapper;
 import dev.fnvir.kajz.storageservice.model.FileUpload;
 import dev.fnvir.kajz.storageservice.repository.StorageRepository;
+import io.hypersistence.tsid.TSID;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Path;
+import jakarta.validation.Validator;
 
 /**
  * Unit tests for {@link StorageService}.
@@ -58,12 +94,48 @@ public class StorageServiceTest {
     @Mock
     private AbstractStorageProvider storageProvider;
 
+    @Mock
+    private StorageProviderRouter providerRouter;
+
+    @Mock
+    private FileAccessTracker accessTracker;
+
     @Spy
     private FileUploadMapper fileUploadMapper = FileUploadMapper.INSTANCE;
 
     @Mock
     private PlatformTransactionManager transactionManager;
 
+    @Mock
+    private FileMetadataCache metadataCache;
+
+    @Mock
+    private DiskFileCache diskFileCache;
+
+    @Mock
+    private Validator validator;
+
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
+    @Mock
+    private DeleteOutboxService deleteOutbox;
+
+    @Mock
+    private ImageDerivativeService imageDerivativeService;
+
+    @Mock
+    private ContentDeduplicationService deduplicationService;
+
+    @Mock
+    private ContentEncodingService contentEncodingService;
+
+    @Spy
+    private PresignedUrlCache presignedUrlCache = new PresignedUrlCache(new StorageCacheProperties(), new SimpleMeterRegistry());
+
+    @Spy
+    private StorageProperties storageProperties = new StorageProperties();
+
     @InjectMocks
     private StorageService storageService;
 
@@ -72,6 +144,8 @@ public class StorageServiceTest {
 
     @BeforeEach
     void setUp() {
+        lenient().when(providerRouter.provider(any(FileUpload.class))).thenReturn(storageProvider);
+        lenient().when(providerRouter.provider(nullable(StorageProviderType.class))).thenReturn(storageProvider);
         testUserId = UUID.randomUUID();
         
         testFileUpload = new FileUpload();
@@ -83,6 +157,23 @@ public class StorageServiceTest {
         testFileUpload.setContentSize(1024L);
         testFileUpload.setAccess(FileAccessLevel.PUBLIC);
         testFileUpload.setStatus(UploadStatus.UPLOADING);
+        storageService.setTransaction(transactionManager);
+    }
+
+    /** Let the test upload be claimed, and apply its completion or failure to it. */
+    private void stubClaimedCompletion() {
+        when(storageRepository.claimCompletion(eq(testFileUpload.getId()), any(), any())).thenReturn(1);
+        lenient().when(storageRepository.finishUploading(eq(testFileUpload.getId()), any(), any(), any())).thenAnswer(inv -> {
+            testFileUpload.setStatus(UploadStatus.PROCESSING);
+            testFileUpload.setETag(inv.getArgument(1));
+            testFileUpload.setCompletedAt(inv.getArgument(3));
+            return 1;
+        });
+        lenient().when(storageRepository.failUploading(eq(testFileUpload.getId()), any(), any(), any())).thenAnswer(inv -> {
+            testFileUpload.setStatus(UploadStatus.FAILED);
+            testFileUpload.setStatusMessage(inv.getArgument(1));
+            return 1;
+        });
     }
 
     @AfterEach
@@ -227,6 +318,126 @@ public class StorageServiceTest {
         }
     }
 
+    @Nested
+    @DisplayName("initiateUploadBatch tests")
+    class InitiateUploadBatchTests {
+
+        @Test
+        @DisplayName("should initiate valid items and report invalid ones in order")
+        @SuppressWarnings("unchecked")
+        void shouldKeepPerItemErrors() {
+            InitiateUploadRequest valid1 = new InitiateUploadRequest("a.png", "image/png", 1024L, FileAccessLevel.PUBLIC, "gig");
+            InitiateUploadRequest invalid = new InitiateUploadRequest("b.exe", "application/x-msdownload", 1024L, FileAccessLevel.PUBLIC, "gig");
+            InitiateUploadRequest valid2 = new InitiateUploadRequest("c.png", "image/png", 2048L, FileAccessLevel.PUBLIC, "gig");
+            
+            ConstraintViolation<InitiateUploadRequest> violation = mock(ConstraintViolation.class);
+            Path path = mock(Path.class);
+            when(path.toString()).thenReturn("mimeType");
+            when(violation.getPropertyPath()).thenReturn(path);
+            when(violation.getMessage()).thenReturn("Unsupported file type: application/x-msdownload");
+            when(validator.validate(invalid)).thenReturn(Set.of(violation));
+            
+            when(storageRepository.saveAllAndFlush(anyList())).thenAnswer(invocation -> {
+                List<FileUpload> files = invocation.getArgument(0);
+                long id = 1;
+                for (FileUpload f : files)
+                    f.setId(id++);
+                return files;
+            });
+            when(storageProvider.initiateUpload(any())).thenAnswer(invocation -> {
+                FileUpload f = invocation.getArgument(0);
+                return InitiateUploadResponse.builder().fileId(f.getId()).uploadUrl("url-" + f.getId()).build();
+            });
+            
+            BatchInitiateUploadResponse result = storageService.initiateUploadBatch(
+                    testUserId, new BatchInitiateUploadRequest(List.of(valid1, invalid, valid2)));
+            
+            assertEquals(3, result.results().size());
+            assertEquals(1L, result.results().get(0).upload().fileId());
+            assertNull(result.results().get(1).upload());
+            assertEquals("mimeType", result.results().get(1).errors().getFirst().field());
+            assertEquals(2L, result.results().get(2).upload().fileId());
+            assertEquals(2, result.results().get(2).index());
+            
+            ArgumentCaptor<List<FileUpload>> filesCaptor = ArgumentCaptor.forClass(List.class);
+            verify(storageRepository).saveAllAndFlush(filesCaptor.capture());
+            assertEquals(2, filesCaptor.getValue().size());
+        }
+    }
+
+    @Nested
+    @DisplayName("multipart upload tests")
+    class MultipartUploadTests {
+
+        @Test
+        @DisplayName("should split the file into parts and presign each part")
+        void shouldInitiateMultipartUpload() {
+            long fileSize = 20L * 1024 * 1024; // 20MB -> 3 parts of 8MB
+            var request = new InitiateMultipartUploadRequest("video.mp4", "video/mp4", fileSize, FileAccessLevel.PUBLIC, "gig-video");
+            
+            when(storageProvider.createMultipartUpload(any())).thenReturn("upload-id");
+            when(storageRepository.saveAndFlush(any(FileUpload.class))).thenAnswer(invocation -> {
+                FileUpload file = invocation.getArgument(0);
+                file.setId(1L);
+                return file;
+            });
+            when(storageProvider.generatePartUploadUrls(any(), anyList())).thenAnswer(invocation -> {
+                List<Integer> partNumbers = invocation.getArgument(1);
+                return partNumbers.stream()
+                        .map(n -> PartUploadUrl.builder().partNumber(n).uploadUrl("url-" + n).build())
+                        .toList();
+            });
+            
+            InitiateMultipartUploadResponse result = storageService.initiateMultipartUpload(testUserId, request);
+            
+            assertEquals(3, result.partCount());
+            assertEquals(8L * 1024 * 1024, result.partSize());
+            assertEquals(3, result.parts().size());
+            
+            ArgumentCaptor<FileUpload> fileCaptor = ArgumentCaptor.forClass(FileUpload.class);
+            verify(storageRepository).saveAndFlush(fileCaptor.capture());
+            assertEquals("upload-id", fileCaptor.getValue().getMultipartUploadId());
+            assertEquals(UploadStatus.UPLOADING, fileCaptor.getValue().getStatus());
+        }
+
+        @Test
+        @DisplayName("should assemble the parts before validating on completion")
+        void shouldCompleteMultipartBeforeValidation() {
+            testFileUpload.setMultipartUploadId("upload-id");
+            testFileUpload.setPartCount(2);
+            testFileUpload.setPartSize(8L * 1024 * 1024);
+            
+            when(storageRepository.findById(12345L)).thenReturn(Optional.of(testFileUpload));
+            stubClaimedCompletion();
+            doThrow(new ConflictException("Missing parts: [2]"))
+                    .when(storageProvider).completeMultipartUpload(testFileUpload);
+            
+            assertThrows(ConflictException.class,
+                    () -> storageService.verifyAndCompleteUpload(testUserId, new CompleteUploadRequest(12345L)));
+            verify(storageProvider, never()).checkUploadCompletion(any());
+            verify(storageRepository).releaseCompletion(eq(12345L), any()); // retried once the part is uploaded
+        }
+
+        @Test
+        @DisplayName("should fail an upload assembled to another size than it was initiated with")
+        void shouldFailAssembledUploadOfOtherSize() {
+            testFileUpload.setMultipartUploadId("upload-id");
+            testFileUpload.setPartCount(2);
+            testFileUpload.setPartSize(8L * 1024 * 1024);
+            
+            when(storageRepository.findById(12345L)).thenReturn(Optional.of(testFileUpload));
+            stubClaimedCompletion();
+            when(storageProvider.checkUploadCompletion(testFileUpload))
+                    .thenReturn(UploadValidationResultDTO.success().eTag("etag").contentLength(5L * 1024 * 1024 * 1024));
+            
+            assertThrows(ConflictException.class,
+                    () -> storageService.verifyAndCompleteUpload(testUserId, new CompleteUploadRequest(12345L)));
+            assertEquals(UploadStatus.FAILED, testFileUpload.getStatus());
+            assertNull(testFileUpload.getCompletedAt());
+            verify(deleteOutbox).enqueue(testFileUpload);
+        }
+    }
+
     @Nested
     @DisplayName("verifyAndCompleteUpload tests")
     class VerifyAndCompleteUploadTests {
@@ -235,7 +446,7 @@ public class StorageServiceTest {
         private ArgumentCaptor<FileUpload> fileUploadCaptor;
 
         @Test
-        @DisplayName("should complete upload when validation succeeds")
+        @DisplayName("should mark upload as processing when the cheap checks pass")
         void shouldCompleteUploadWhenValidationSucceeds() {
             testFileUpload.setStatus(UploadStatus.UPLOADING);
             testFileUpload.setCompletedAt(null);
@@ -247,21 +458,28 @@ public class StorageServiceTest {
             validationResult.setETag("abc123etag");
             
             when(storageRepository.findById(eq(testFileUpload.getId()))).thenReturn(Optional.of(testFileUpload));
-            when(storageProvider.validateUploadCompletion(testFileUpload)).thenReturn(validationResult);
-            when(storageRepository.save(any(FileUpload.class))).thenAnswer(inv -> inv.getArgument(0));
+            stubClaimedCompletion();
+            when(storageProvider.checkUploadCompletion(testFileUpload)).thenReturn(validationResult);
             
             CompleteUploadResponse result = storageService.verifyAndCompleteUpload(testUserId, request);
             
             verify(fileUploadMapper).toUploadCompleteResponse(fileUploadCaptor.capture());
             
             var capturedValue = fileUploadCaptor.getValue();
-            assertEquals(capturedValue.getStatus(), UploadStatus.VALIDATED);
+            assertEquals(capturedValue.getStatus(), UploadStatus.PROCESSING);
             assertNotNull(capturedValue.getCompletedAt());
             
             assertNotNull(result);
-            assertEquals(UploadStatus.VALIDATED, result.status());
+            assertEquals(UploadStatus.PROCESSING, result.status());
             assertNotNull(result.completedAt());
             assertEquals("abc123etag", testFileUpload.getETag());
+            verify(metadataCache).evict(testFileUpload.getId());
+            verify(storageProvider, never()).validateUploadContent(any());
+            verify(storageRepository, never()).save(any()); // applied with a conditional update
+            
+            ArgumentCaptor<FileStatusChangedEvent> eventCaptor = ArgumentCaptor.forClass(FileStatusChangedEvent.class);
+            verify(eventPublisher).publishEvent(eventCaptor.capture());
+            assertEquals(UploadStatus.PROCESSING, eventCaptor.getValue().status());
         }
 
         @Test
@@ -289,10 +507,10 @@ public class StorageServiceTest {
         }
 
         @Test
-        @DisplayName("should throw ConflictException when already completed")
-        void shouldThrowConflictWhenAlreadyCompleted() {
+        @DisplayName("should throw ConflictException when the upload has failed")
+        void shouldThrowConflictWhenFailed() {
             CompleteUploadRequest request = new CompleteUploadRequest(12345L);
-            testFileUpload.setStatus(UploadStatus.VALIDATED);
+            testFileUpload.setStatus(UploadStatus.FAILED);
             testFileUpload.setCompletedAt(Instant.now());
             
             when(storageRepository.findById(12345L)).thenReturn(Optional.of(testFileUpload));
@@ -314,10 +532,131 @@ public class StorageServiceTest {
             validationResult.setMessage("File not found on storage");
             
             when(storageRepository.findById(12345L)).thenReturn(Optional.of(testFileUpload));
-            when(storageProvider.validateUploadCompletion(testFileUpload)).thenReturn(validationResult);
+            stubClaimedCompletion();
+            when(storageProvider.checkUploadCompletion(testFileUpload)).thenReturn(validationResult);
             
             assertThrows(NotFoundException.class,
                     () -> storageService.verifyAndCompleteUpload(testUserId, request));
+            verify(storageRepository).releaseCompletion(eq(12345L), any());
+            assertEquals(UploadStatus.UPLOADING, testFileUpload.getStatus());
+        }
+
+        @Test
+        @DisplayName("should not ask the provider for an upload being completed by another caller")
+        void shouldNotCompleteUploadClaimedByAnotherCaller() {
+            when(storageRepository.findById(12345L)).thenReturn(Optional.of(testFileUpload));
+            when(storageRepository.claimCompletion(eq(12345L), any(), any())).thenReturn(0);
+            
+            assertThrows(ConflictException.class,
+                    () -> storageService.verifyAndCompleteUpload(testUserId, new CompleteUploadRequest(12345L)));
+            verify(storageProvider, never()).checkUploadCompletion(any());
+            verify(storageRepository, never()).finishUploading(any(), any(), any(), any());
+        }
+
+        @Test
+        @DisplayName("should return the upload completed by another caller which took over the claim")
+        void shouldReturnUploadCompletedAfterClaimTakenOver() {
+            var completed = new FileUpload();
+            completed.setId(testFileUpload.getId());
+            completed.setOwnerId(testUserId);
+            completed.setStatus(UploadStatus.PROCESSING);
+            completed.setCompletedAt(Instant.now());
+            
+            when(storageRepository.findById(12345L)).thenReturn(Optional.of(testFileUpload), Optional.of(completed));
+            when(storageRepository.claimCompletion(eq(12345L), any(), any())).thenReturn(1);
+            when(storageRepository.finishUploading(eq(12345L), any(), any(), any())).thenReturn(0);
+            when(storageProvider.checkUploadCompletion(testFileUpload)).thenReturn(UploadValidationResultDTO.success());
+            
+            CompleteUploadResponse result = storageService.verifyAndCompleteUpload(testUserId, new CompleteUploadRequest(12345L));
+            
+            assertEquals(UploadStatus.PROCESSING, result.status());
+            assertEquals(completed.getCompletedAt(), result.completedAt());
+            verify(eventPublisher, never()).publishEvent(any());
+        }
+
+        @Test
+        @DisplayName("should complete an upload notified by the storage provider")
+        void shouldCompleteUploadedObject() {
+            var event = new ObjectCreatedEvent(StorageProviderType.AWS_S3, testFileUpload.getStoragePath(), 1024L);
+            
+            when(storageRepository.findUploadingByStoragePath(testFileUpload.getStoragePath()))
+                    .thenReturn(Optional.of(testFileUpload));
+            when(storageRepository.findById(testFileUpload.getId())).thenReturn(Optional.of(testFileUpload));
+            stubClaimedCompletion();
+            when(storageProvider.getProviderType()).thenReturn(StorageProviderType.AWS_S3);
+            when(storageProvider.checkUploadCompletion(testFileUpload)).thenReturn(UploadValidationResultDTO.success());
+            
+            assertTrue(storageService.completeUploadedObject(event));
+            
+            assertEquals(UploadStatus.PROCESSING, testFileUpload.getStatus());
+            assertNotNull(testFileUpload.getCompletedAt());
+            verify(eventPublisher).publishEvent(any(FileStatusChangedEvent.class));
+        }
+
+        @Test
+        @DisplayName("should return the completed upload when the notification completed it first")
+        void shouldReturnUploadCompletedByNotification() {
+            var event = new ObjectCreatedEvent(StorageProviderType.AWS_S3, testFileUpload.getStoragePath(), 1024L);
+            
+            when(storageRepository.findUploadingByStoragePath(testFileUpload.getStoragePath()))
+                    .thenReturn(Optional.of(testFileUpload));
+            when(storageRepository.findById(testFileUpload.getId())).thenReturn(Optional.of(testFileUpload));
+            stubClaimedCompletion();
+            when(storageProvider.getProviderType()).thenReturn(StorageProviderType.AWS_S3);
+            when(storageProvider.checkUploadCompletion(testFileUpload)).thenReturn(UploadValidationResultDTO.success());
+            
+            assertTrue(storageService.completeUploadedObject(event));
+            CompleteUploadResponse result = storageService.verifyAndCompleteUpload(
+                    testUserId, new CompleteUploadRequest(testFileUpload.getId()));
+            
+            assertEquals(UploadStatus.PROCESSING, result.status());
+            assertEquals(testFileUpload.getCompletedAt(), result.completedAt());
+            verify(storageProvider).checkUploadCompletion(testFileUpload);
+            verify(eventPublisher).publishEvent(any(FileStatusChangedEvent.class));
+        }
+
+        @Test
+        @DisplayName("should reject notified objects whose size doesn't match the upload")
+        void shouldRejectNotifiedObjectWithOtherSize() {
+            var event = new ObjectCreatedEvent(StorageProviderType.AWS_S3, testFileUpload.getStoragePath(), 4096L);
+            
+            when(storageRepository.findUploadingByStoragePath(testFileUpload.getStoragePath()))
+                    .thenReturn(Optional.of(testFileUpload));
+            stubClaimedCompletion();
+            when(storageProvider.getProviderType()).thenReturn(StorageProviderType.AWS_S3);
+            
+            assertThrows(ConflictException.class, () -> storageService.completeUploadedObject(event));
+            
+            assertEquals(UploadStatus.FAILED, testFileUpload.getStatus());
+            verify(storageProvider, never()).checkUploadCompletion(any());
+            verify(deleteOutbox).enqueue(testFileUpload);
+        }
+
+        @Test
+        @DisplayName("should ignore notifications of uploads already completed")
+        void shouldIgnoreCompletedUploadNotification() {
+            var event = new ObjectCreatedEvent(StorageProviderType.AWS_S3, testFileUpload.getStoragePath(), 1024L);
+            
+            when(storageRepository.findUploadingByStoragePath(testFileUpload.getStoragePath()))
+                    .thenReturn(Optional.empty());
+            
+            assertFalse(storageService.completeUploadedObject(event));
+            verify(storageProvider, never()).checkUploadCompletion(any());
+            verify(storageRepository, never()).claimCompletion(any(), any(), any());
+        }
+
+        @Test
+        @DisplayName("should ignore notifications of uploads being completed by their client")
+        void shouldIgnoreNotificationOfClaimedUpload() {
+            var event = new ObjectCreatedEvent(StorageProviderType.AWS_S3, testFileUpload.getStoragePath(), 1024L);
+            
+            when(storageRepository.findUploadingByStoragePath(testFileUpload.getStoragePath()))
+                    .thenReturn(Optional.of(testFileUpload));
+            when(storageProvider.getProviderType()).thenReturn(StorageProviderType.AWS_S3);
+            when(storageRepository.claimCompletion(eq(testFileUpload.getId()), any(), any())).thenReturn(0);
+            
+            assertFalse(storageService.completeUploadedObject(event));
+            verify(storageProvider, never()).checkUploadCompletion(any());
         }
     }
 
@@ -373,4 +712,161 @@ public class StorageServiceTest {
                     () -> storageService.generateTempDownloadUrl(12345L, testUserId));
         }
     }
+
+    @Nested
+    @DisplayName("downloadDerivativeValidatingAccess tests")
+    class DownloadDerivativeTests {
+
+        private CachedFileMetadata metadata(String mimeType) {
+            testFileUpload.setMimeType(mimeType);
+            testFileUpload.setStatus(UploadStatus.VALIDATED);
+            testFileUpload.setCompletedAt(Instant.now());
+            testFileUpload.setETag("etag");
+            return CachedFileMetadata.from(testFileUpload);
+        }
+
+        @Test
+        @DisplayName("should serve the derivative of a public image")
+        void shouldServeDerivative() {
+            var spec = new DerivativeSpec(96, null, DerivativeFormat.JPEG);
+            var metadata = metadata("image/png");
+            when(metadataCache.get(eq(12345L), any())).thenReturn(metadata);
+            when(imageDerivativeService.getOrCreate(metadata, spec)).thenReturn(
+                    new ImageDerivativeService.Derivative("public/encoded-uuid/test-upload-abc123_w96.jpeg", 2048L));
+
+            var result = storageService.downloadDerivativeValidatingAccess(12345L, spec, null);
+
+            assertEquals(2048L, result.getContentLength());
+            assertEquals("image/jpeg", result.getContentType());
+            assertEquals("test-upload-abc123_w96.jpeg", result.getFilename());
+            assertNotNull(result.getEtag());
+            verify(storageProvider).downloadFile("public/encoded-uuid/test-upload-abc123_w96.jpeg");
+        }
+
+        @Test
+        @DisplayName("should not generate the derivative when the ETag matches")
+        void shouldNotGenerateWhenETagMatches() {
+            var spec = new DerivativeSpec(96, null, DerivativeFormat.JPEG);
+            var metadata = metadata("image/png");
+            when(metadataCache.get(eq(12345L), any())).thenReturn(metadata);
+            when(imageDerivativeService.getOrCreate(metadata, spec)).thenReturn(
+                    new ImageDerivativeService.Derivative("public/encoded-uuid/test-upload-abc123_w96.jpeg", 2048L));
+            String eTag = storageService.downloadDerivativeValidatingAccess(12345L, spec, null).getEtag();
+
+            var result = storageService.downloadDerivativeValidatingAccess(12345L, spec, eTag);
+
+            assertEquals(eTag, result.getEtag());
+            verify(imageDerivativeService).getOrCreate(metadata, spec); // only the first request
+        }
+
+        @Test
+        @DisplayName("should reject sizes which aren't allowed")
+        void shouldRejectUnsupportedSize() {
+            var spec = new DerivativeSpec(97, null, DerivativeFormat.JPEG);
+
+            var ex = assertThrows(ApiException.class,
+                    () -> storageService.downloadDerivativeValidatingAccess(12345L, spec, null));
+
+            assertEquals(HttpStatus.BAD_REQUEST, ex.getResponseStatus());
+            verify(imageDerivativeService, never()).getOrCreate(any(), any());
+        }
+
+        @Test
+        @DisplayName("should reject files which aren't images")
+        void shouldRejectNonImages() {
+            var spec = new DerivativeSpec(96, 96, DerivativeFormat.PNG);
+            when(metadataCache.get(eq(12345L), any())).thenReturn(metadata("application/pdf"));
+
+            var ex = assertThrows(ApiException.class,
+                    () -> storageService.downloadDerivativeValidatingAccess(12345L, spec, null));
+
+            assertEquals(HttpStatus.BAD_REQUEST, ex.getResponseStatus());
+            verify(imageDerivativeService, never()).getOrCreate(any(), any());
+        }
+    }
+
+    @Nested
+    @DisplayName("getFileInfoBatch tests")
+    class GetFileInfoBatchTests {
+
+        @Test
+        @DisplayName("should report the result of each file without failing the batch")
+        void shouldReportResultPerFile() {
+            testFileUpload.setStatus(UploadStatus.VALIDATED);
+            var publicFile = CachedFileMetadata.from(testFileUpload);
+            testFileUpload.setId(12346L);
+            testFileUpload.setAccess(FileAccessLevel.PRIVATE);
+            var privateFile = CachedFileMetadata.from(testFileUpload);
+            when(metadataCache.getAll(any(), any())).thenReturn(Map.of(12345L, publicFile, 12346L, privateFile));
+
+            var response = storageService.getFileInfoBatch(new BatchFileInfoRequest(List.of(12347L, 12345L, 12346L, 12345L)));
+
+            assertEquals(List.of(12347L, 12345L, 12346L), List.copyOf(response.results().keySet()));
+            assertEquals(404, response.results().get(12347L).status());
+            assertEquals("12345", response.results().get(12345L).file().fileId());
+            assertNull(response.results().get(12345L).status());
+            assertEquals(401, response.results().get(12346L).status());
+            assertNull(response.results().get(12346L).file());
+            verify(metadataCache).getAll(eq(Set.of(12347L, 12345L, 12346L)), any());
+        }
+    }
+
+    @Nested
+    @DisplayName("listFilesOfOwner tests")
+    class ListFilesOfOwnerTests {
+
+        private FileUpload file(long id) {
+            var file = new FileUpload();
+            file.setId(id);
+            file.setOwnerId(testUserId);
+            file.setFilename("gig-thumbnail-" + id + ".png");
+            file.setStatus(UploadStatus.VALIDATED);
+            file.setAccess(FileAccessLevel.PUBLIC);
+            return file;
+        }
+
+        @Test
+        @DisplayName("should return a cursor of the last file when there are more files")
+        void shouldReturnNextCursor() {
+            SecurityContextHolder.getContext().setAuthentication(
+                    new TestingAuthenticationToken(testUserId.toString(), null, "USER"));
+            when(storageRepository.findByOwnerBeforeId(eq(testUserId), eq(Long.MAX_VALUE), eq(null), eq(null),
+                    eq("gig-thumbnail"), eq(true), eq(Limit.of(3)))).thenReturn(List.of(file(30L), file(20L), file(10L)));
+
+            var page = storageService.listFilesOfOwner(testUserId, null, null, null, "Gig Thumbnail", 2);
+
+            assertEquals(List.of("30", "20"), page.content().stream().map(FileUploadResponse::fileId).toList());
+            assertEquals(TSID.from(20L).toLowerCase(), page.nextCursor());
+
+            when(storageRepository.findByOwnerBeforeId(eq(testUserId), eq(20L), eq(null), eq(null),
+                    eq(null), eq(true), eq(Limit.of(3)))).thenReturn(List.of(file(10L)));
+
+            var next = storageService.listFilesOfOwner(testUserId, page.nextCursor(), null, null, null, 2);
+
+            assertEquals(List.of("10"), next.content().stream().map(FileUploadResponse::fileId).toList());
+            assertNull(next.nextCursor());
+        }
+
+        @Test
+        @DisplayName("should only list available non-private files to other users")
+        void shouldRestrictOtherUsers() {
+            when(storageRepository.findByOwnerBeforeId(eq(testUserId), eq(Long.MAX_VALUE), eq(UploadStatus.VALIDATED),
+                    eq(null), eq(null), eq(false), eq(Limit.of(21)))).thenReturn(List.of());
+
+            var page = storageService.listFilesOfOwner(testUserId, null, null, null, null, 20);
+
+            assertTrue(page.content().isEmpty());
+            assertThrows(ForbiddenException.class,
+                    () -> storageService.listFilesOfOwner(testUserId, null, null, FileAccessLevel.PRIVATE, null, 20));
+        }
+
+        @Test
+        @DisplayName("should reject invalid cursors")
+        void shouldRejectInvalidCursor() {
+            var ex = assertThrows(ApiException.class,
+                    () -> storageService.listFilesOfOwner(testUserId, "not-a-cursor", null, null, null, 20));
+
+            assertEquals(HttpStatus.BAD_REQUEST, ex.getResponseStatus());
+        }
+    }
 }
@@ -0,0 +1,208 @@
+package dev.fnvir.kajz.storageservice.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import dev.fnvir.kajz.storageservice.config.StorageRoutingProperties;
+import dev.fnvir.kajz.storageservice.enums.StorageProviderType;
+import dev.fnvir.kajz.storageservice.model.FileUpload;
+import dev.fnvir.kajz.storageservice.repository.FileBlobRepository;
+import dev.fnvir.kajz.storageservice.repository.StorageRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Unit tests for {@link StorageTieringService}.
+ */
+@ExtendWith(MockitoExtension.class)
+public class StorageTieringServiceTest {
+
+    private static final String PATH = "public/abc/video.mp4";
+
+    @Mock
+    private StorageRepository storageRepository;
+
+    @Mock
+    private FileBlobRepository blobRepository;
+
+    @Mock
+    private StorageProviderRouter providerRouter;
+
+    @Mock
+    private DeleteOutboxService deleteOutbox;
+
+    @Mock
+    private FileMetadataCache metadataCache;
+
+    @Mock
+    private PresignedUrlCache presignedUrlCache;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @Mock
+    private AbstractStorageProvider source;
+
+    @Mock
+    private AbstractStorageProvider target;
+
+    private StorageRoutingProperties routingProperties;
+    private SimpleMeterRegistry meterRegistry;
+    private StorageTieringService tieringService;
+
+    @BeforeEach
+    void setUp() {
+        routingProperties = new StorageRoutingProperties();
+        routingProperties.getCold().setEnabled(true);
+        meterRegistry = new SimpleMeterRegistry();
+        tieringService = new StorageTieringService(storageRepository, blobRepository, providerRouter, deleteOutbox,
+                metadataCache, presignedUrlCache, routingProperties, transactionManager, meterRegistry);
+
+        lenient().when(source.getProviderType()).thenReturn(StorageProviderType.AWS_S3);
+        lenient().when(target.getProviderType()).thenReturn(StorageProviderType.AZURE_BLOB);
+        lenient().when(providerRouter.primaryType()).thenReturn(StorageProviderType.AWS_S3);
+    }
+
+    @Test
+    @DisplayName("should copy the object, switch the files over and only then delete the old copy")
+    void shouldMoveToProviderInOrder() throws Exception {
+        var file = coldFile(1L, PATH);
+        InputStream content = new ByteArrayInputStream(new byte[3]);
+        withColdProvider(file);
+        when(source.downloadFile(PATH)).thenReturn(() -> content);
+        when(storageRepository.moveToBackend(eq(PATH), eq("AWS_S3"), eq("AWS_S3"), eq("AZURE_BLOB"), any()))
+                .thenReturn(1);
+        when(storageRepository.findIdsByStoragePath(PATH, StorageProviderType.AZURE_BLOB)).thenReturn(List.of(1L));
+
+        assertEquals(1, moveColdFiles());
+
+        var inOrder = inOrder(target, blobRepository, storageRepository, deleteOutbox, metadataCache);
+        inOrder.verify(target).uploadFile(PATH, content, 3L, "video/mp4");
+        inOrder.verify(blobRepository).updateStorageBackend(PATH, StorageProviderType.AZURE_BLOB);
+        inOrder.verify(storageRepository).moveToBackend(eq(PATH), eq("AWS_S3"), eq("AWS_S3"), eq("AZURE_BLOB"), any());
+        inOrder.verify(deleteOutbox).enqueueDelayed(StorageProviderType.AWS_S3, PATH, file.getMetadata(),
+                routingProperties.getCold().getDeleteDelay());
+        inOrder.verify(metadataCache).evict(List.of(1L));
+        verify(presignedUrlCache).evict(1L);
+        assertEquals(1, meterRegistry.get("storage.tiering.moved").tag("mode", "provider").counter().count());
+    }
+
+    @Test
+    @DisplayName("should evict every file switched over, not only the cold files of the page")
+    void shouldEvictFilesSharingTheObject() throws Exception {
+        withColdProvider(coldFile(1L, PATH));
+        when(source.downloadFile(PATH)).thenReturn(() -> new ByteArrayInputStream(new byte[3]));
+        when(storageRepository.moveToBackend(eq(PATH), eq("AWS_S3"), eq("AWS_S3"), eq("AZURE_BLOB"), any()))
+                .thenReturn(2);
+        // a deduplicated upload of the same object, read recently so it isn't in the page
+        when(storageRepository.findIdsByStoragePath(PATH, StorageProviderType.AZURE_BLOB)).thenReturn(List.of(1L, 7L));
+
+        assertEquals(1, moveColdFiles());
+
+        verify(metadataCache).evict(List.of(1L, 7L));
+        verify(presignedUrlCache).evict(1L);
+        verify(presignedUrlCache).evict(7L);
+    }
+
+    @Test
+    @DisplayName("should delete the new copy and keep the blob in the source when the file was deleted while copying")
+    void shouldDeleteCopyOfFileDeletedWhileCopying() throws Exception {
+        withColdProvider(coldFile(1L, PATH));
+        when(source.downloadFile(PATH)).thenReturn(() -> new ByteArrayInputStream(new byte[3]));
+        when(storageRepository.moveToBackend(anyString(), anyString(), anyString(), anyString(), any())).thenReturn(0);
+        when(storageRepository.existsByStoragePathAndDeletedFalse(PATH)).thenReturn(false);
+
+        assertEquals(0, moveColdFiles());
+
+        var inOrder = inOrder(blobRepository);
+        inOrder.verify(blobRepository).updateStorageBackend(PATH, StorageProviderType.AZURE_BLOB);
+        inOrder.verify(blobRepository).updateStorageBackend(PATH, StorageProviderType.AWS_S3);
+        verify(deleteOutbox).enqueuePath(StorageProviderType.AZURE_BLOB, PATH);
+        verify(deleteOutbox, never()).enqueueDelayed(any(), anyString(), any(), any());
+        verify(metadataCache, never()).evict(anyCollection());
+    }
+
+    @Test
+    @DisplayName("should leave the files as they are when copying fails")
+    void shouldNotSwitchOverWhenCopyFails() throws Exception {
+        withColdProvider(coldFile(1L, PATH));
+        when(source.downloadFile(PATH)).thenReturn(() -> {
+            throw new IOException("connection reset");
+        });
+
+        assertEquals(0, moveColdFiles());
+
+        verify(blobRepository, never()).updateStorageBackend(anyString(), any());
+        verify(storageRepository, never()).moveToBackend(anyString(), anyString(), anyString(), anyString(), any());
+        verify(deleteOutbox, never()).enqueuePath(any(), anyString());
+        assertEquals(1, meterRegistry.get("storage.tiering.failures").counter().count());
+    }
+
+    @Test
+    @DisplayName("should move shared objects to the cold storage class once and mark only the moved ones")
+    @SuppressWarnings("unchecked")
+    void shouldMoveToColdStorageClass() {
+        when(source.supportsColdStorageClass()).thenReturn(true);
+        when(source.maxColdStorageClassSize()).thenReturn(Long.MAX_VALUE);
+        when(storageRepository.findColdFiles(any(), anyString(), anyString(), any(), anyLong(), anyLong(), anyInt()))
+                .thenReturn(List.of(coldFile(1L, "public/a.mp4"), coldFile(2L, "public/a.mp4"), coldFile(3L, "public/b.mp4")));
+        when(source.moveToColdStorageClass(anyCollection())).thenReturn(Set.of("public/b.mp4"));
+
+        assertEquals(1, moveColdFiles());
+
+        ArgumentCaptor<Collection<String>> keys = ArgumentCaptor.forClass(Collection.class);
+        verify(source).moveToColdStorageClass(keys.capture());
+        assertEquals(List.of("public/a.mp4", "public/b.mp4"), List.copyOf(keys.getValue()));
+        verify(storageRepository).markColdTiered(eq(List.of("public/a.mp4")), any());
+        assertEquals(1, meterRegistry.get("storage.tiering.failures").counter().count());
+    }
+
+    private void withColdProvider(FileUpload... files) {
+        routingProperties.getCold().setProvider(StorageProviderType.AZURE_BLOB);
+        when(providerRouter.provider(StorageProviderType.AZURE_BLOB)).thenReturn(target);
+        when(storageRepository.findColdFiles(any(), eq("AWS_S3"), eq("AWS_S3"), any(), anyLong(), anyLong(), anyInt()))
+                .thenReturn(List.of(files));
+    }
+
+    private int moveColdFiles() {
+        return tieringService.moveColdFiles(source, Instant.now(), Instant.now().plusSeconds(60));
+    }
+
+    private static FileUpload coldFile(Long id, String storagePath) {
+        var file = new FileUpload();
+        file.setId(id);
+        file.setStoragePath(storagePath);
+        file.setContentSize(3L);
+        file.setMimeType("video/mp4");
+        file.setMetadata(Map.of());
+        return file;
+    }
+
+}
@@ -0,0 +1,149 @@
+package dev.fnvir.kajz.storageservice.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Optional;
+import java.util.UUID;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
+
+import dev.fnvir.kajz.storageservice.config.StorageProperties;
+import dev.fnvir.kajz.storageservice.dto.UploadValidationResultDTO;
+import dev.fnvir.kajz.storageservice.dto.event.FileStatusChangedEvent;
+import dev.fnvir.kajz.storageservice.enums.UploadStatus;
+import dev.fnvir.kajz.storageservice.model.FileUpload;
+import dev.fnvir.kajz.storageservice.repository.StorageRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Unit tests for {@link UploadValidationWorker}.
+ */
+@ExtendWith(MockitoExtension.class)
+public class UploadValidationWorkerTest {
+
+    @Mock
+    private StorageRepository storageRepository;
+
+    @Mock
+    private AbstractStorageProvider storageProvider;
+
+    @Mock
+    private FileMetadataCache metadataCache;
+
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
+    @Mock
+    private ContentDeduplicationService deduplicationService;
+
+    @Mock
+    private ContentEncodingService contentEncodingService;
+
+    private UploadValidationWorker worker;
+    private FileUpload file;
+
+    @BeforeEach
+    void setUp() {
+        worker = new UploadValidationWorker(storageRepository, StorageProviderRouterTest.routerOf(storageProvider),
+                metadataCache, eventPublisher, new StorageProperties(), deduplicationService, contentEncodingService,
+                new SimpleMeterRegistry());
+
+        file = new FileUpload();
+        file.setId(12345L);
+        file.setOwnerId(UUID.randomUUID());
+        file.setStoragePath("public/encoded-uuid/test-upload-abc123.png");
+        file.setFilename("test-upload-abc123.png");
+        file.setStatus(UploadStatus.PROCESSING);
+    }
+
+    @AfterEach
+    void tearDown() {
+        worker.shutdown();
+    }
+
+    @Test
+    @DisplayName("should mark upload as validated when the content is valid")
+    void shouldMarkValidated() {
+        when(storageRepository.findById(12345L)).thenReturn(Optional.of(file));
+        when(storageProvider.validateUploadContent(file)).thenReturn(UploadValidationResultDTO.success());
+        when(storageRepository.finishProcessing(eq(12345L), eq(UploadStatus.VALIDATED), isNull(), any())).thenReturn(1);
+
+        worker.validate(12345L);
+
+        ArgumentCaptor<FileStatusChangedEvent> eventCaptor = ArgumentCaptor.forClass(FileStatusChangedEvent.class);
+        verify(eventPublisher).publishEvent(eventCaptor.capture());
+        assertEquals(UploadStatus.VALIDATED, eventCaptor.getValue().status());
+        verify(metadataCache).evict(12345L);
+        verify(deduplicationService).deduplicate(file);
+        verify(contentEncodingService).precompress(file);
+    }
+
+    @Test
+    @DisplayName("should mark upload as failed with the reason when the content is invalid")
+    void shouldMarkFailed() {
+        var result = UploadValidationResultDTO.invalidContentType();
+        when(storageRepository.findById(12345L)).thenReturn(Optional.of(file));
+        when(storageProvider.validateUploadContent(file)).thenReturn(result);
+        when(storageRepository.finishProcessing(eq(12345L), eq(UploadStatus.FAILED), eq(result.getMessage()), any())).thenReturn(1);
+
+        worker.validate(12345L);
+
+        ArgumentCaptor<FileStatusChangedEvent> eventCaptor = ArgumentCaptor.forClass(FileStatusChangedEvent.class);
+        verify(eventPublisher).publishEvent(eventCaptor.capture());
+        assertEquals(UploadStatus.FAILED, eventCaptor.getValue().status());
+        assertEquals(result.getMessage(), eventCaptor.getValue().message());
+        verify(deduplicationService, never()).deduplicate(any());
+        verify(contentEncodingService, never()).precompress(any());
+    }
+
+    @Test
+    @DisplayName("should not publish an event when another worker already finished")
+    void shouldSkipWhenAlreadyFinished() {
+        when(storageRepository.findById(12345L)).thenReturn(Optional.of(file));
+        when(storageProvider.validateUploadContent(file)).thenReturn(UploadValidationResultDTO.success());
+        when(storageRepository.finishProcessing(anyLong(), any(), any(), any())).thenReturn(0);
+
+        worker.validate(12345L);
+
+        verify(eventPublisher, never()).publishEvent(any());
+    }
+
+    @Test
+    @DisplayName("should leave upload as processing when the provider fails")
+    void shouldRetryLaterOnProviderError() {
+        when(storageRepository.findById(12345L)).thenReturn(Optional.of(file));
+        when(storageProvider.validateUploadContent(file)).thenThrow(new RuntimeException("timeout"));
+
+        worker.validate(12345L);
+
+        verify(storageRepository, never()).finishProcessing(anyLong(), any(), any(), any());
+        verify(eventPublisher, never()).publishEvent(any());
+    }
+
+    @Test
+    @DisplayName("should skip uploads which aren't processing")
+    void shouldSkipNotProcessing() {
+        file.setStatus(UploadStatus.VALIDATED);
+        when(storageRepository.findById(12345L)).thenReturn(Optional.of(file));
+
+        worker.validate(12345L);
+
+        verify(storageProvider, never()).validateUploadContent(any());
+    }
+
+}
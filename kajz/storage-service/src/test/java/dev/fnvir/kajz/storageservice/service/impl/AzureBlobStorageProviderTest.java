@@ -0,0 +1,164 @@
+package dev.fnvir.kajz.storageservice.service.impl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.azure.core.http.rest.Response;
+import com.azure.core.util.Context;
+import com.azure.storage.blob.BlobClient;
+import com.azure.storage.blob.BlobContainerClient;
+import com.azure.storage.blob.batch.BlobBatch;
+import com.azure.storage.blob.batch.BlobBatchClient;
+import com.azure.storage.blob.models.AccessTier;
+import com.azure.storage.blob.models.BlobStorageException;
+import com.azure.storage.blob.models.Block;
+import com.azure.storage.blob.models.BlockList;
+import com.azure.storage.blob.models.BlockListType;
+import com.azure.storage.blob.specialized.BlockBlobClient;
+
+import dev.fnvir.kajz.storageservice.config.AzureBlobStorageProperties;
+import dev.fnvir.kajz.storageservice.exception.ConflictException;
+import dev.fnvir.kajz.storageservice.model.FileUpload;
+import dev.fnvir.kajz.storageservice.util.StorageFileValidatorUtils;
+
+/**
+ * Unit tests for {@link AzureBlobStorageProvider}, against a mocked {@link BlobBatchClient}.
+ */
+public class AzureBlobStorageProviderTest {
+
+    private BlobBatchClient blobBatchClient;
+    private BlobBatch blobBatch;
+    private AzureBlobStorageProvider storageProvider;
+
+    @BeforeEach
+    void setUp() {
+        var props = new AzureBlobStorageProperties();
+        props.setConnectionString("UseDevelopmentStorage=true");
+        props.setContainerName("container");
+
+        storageProvider = new AzureBlobStorageProvider(props, mock(StorageFileValidatorUtils.class));
+        blobBatchClient = mock(BlobBatchClient.class);
+        blobBatch = mock(BlobBatch.class);
+        when(blobBatchClient.getBlobBatch()).thenReturn(blobBatch);
+        ReflectionTestUtils.setField(storageProvider, "blobBatchClient", blobBatchClient);
+    }
+
+    @AfterEach
+    void tearDown() {
+        storageProvider.cleanup();
+    }
+
+    @Test
+    @DisplayName("moveToColdStorageClass should set the cool tier once per blob and report failed and missing blobs")
+    void moveToColdStorageClass_shouldSetCoolTier() {
+        Response<Void> moved = response(200);
+        Response<Void> missing = response(404);
+        BlobStorageException forbidden = storageException(403);
+        Response<Void> denied = mock();
+        when(denied.getStatusCode()).thenThrow(forbidden);
+        when(blobBatch.setBlobAccessTier("container", "public/a.mp4", AccessTier.COOL)).thenReturn(moved);
+        when(blobBatch.setBlobAccessTier("container", "public/b.mp4", AccessTier.COOL)).thenReturn(missing);
+        when(blobBatch.setBlobAccessTier("container", "public/c.mp4", AccessTier.COOL)).thenReturn(denied);
+
+        Set<String> failed = storageProvider.moveToColdStorageClass(
+                List.of("public/a.mp4", "public/b.mp4", "public/a.mp4", "", "public/c.mp4"));
+
+        assertEquals(Set.of("public/b.mp4", "public/c.mp4"), failed); // a missing blob isn't cold
+        verify(blobBatch, times(3)).setBlobAccessTier(eq("container"), anyString(), eq(AccessTier.COOL));
+        verify(blobBatchClient).submitBatchWithResponse(blobBatch, false, null, Context.NONE);
+    }
+
+    @Test
+    @DisplayName("moveToColdStorageClass should report the whole batch when submitting it fails")
+    void moveToColdStorageClass_shouldFailBatchWhenSubmitFails() {
+        BlobStorageException unavailable = storageException(503);
+        when(blobBatchClient.submitBatchWithResponse(any(), eq(false), any(), any())).thenThrow(unavailable);
+
+        Set<String> failed = storageProvider.moveToColdStorageClass(List.of("public/a.mp4", "public/b.mp4"));
+
+        assertEquals(Set.of("public/a.mp4", "public/b.mp4"), failed);
+    }
+
+    @Test
+    @DisplayName("deleteFiles should treat missing blobs as deleted")
+    void deleteFiles_shouldIgnoreMissingBlobs() {
+        Response<Void> deleted = response(202);
+        Response<Void> missing = response(404);
+        BlobStorageException forbidden = storageException(403);
+        Response<Void> denied = mock();
+        when(denied.getStatusCode()).thenThrow(forbidden);
+        when(blobBatch.deleteBlob("container", "public/a.mp4")).thenReturn(deleted);
+        when(blobBatch.deleteBlob("container", "public/b.mp4")).thenReturn(missing);
+        when(blobBatch.deleteBlob("container", "public/c.mp4")).thenReturn(denied);
+
+        Set<String> failed = storageProvider.deleteFiles(List.of("public/a.mp4", "public/b.mp4", "public/c.mp4"));
+
+        assertEquals(Set.of("public/c.mp4"), failed);
+        verify(blobBatchClient).submitBatchWithResponse(blobBatch, false, null, Context.NONE);
+    }
+
+    @Test
+    @DisplayName("completeMultipartUpload should refuse staged blocks of the wrong size")
+    void completeMultipartUpload_shouldRefuseBlocksOfWrongSize() {
+        var file = new FileUpload();
+        file.setStoragePath("public/abc/video.mp4");
+        file.setContentSize(20L * 1024 * 1024);
+        file.setPartSize(8L * 1024 * 1024);
+        file.setPartCount(3);
+
+        BlobContainerClient containerClient = mock();
+        BlobClient blobClient = mock();
+        BlockBlobClient blockBlobClient = mock();
+        when(containerClient.getBlobClient(file.getStoragePath())).thenReturn(blobClient);
+        when(blobClient.getBlockBlobClient()).thenReturn(blockBlobClient);
+        when(blockBlobClient.listBlocks(BlockListType.UNCOMMITTED)).thenReturn(new BlockList().setUncommittedBlocks(List.of(
+                block(1, 8L * 1024 * 1024),
+                block(2, 8L * 1024 * 1024),
+                block(3, 8L * 1024 * 1024))));
+        ReflectionTestUtils.setField(storageProvider, "blobContainerClient", containerClient);
+
+        var ex = assertThrows(ConflictException.class, () -> storageProvider.completeMultipartUpload(file));
+
+        assertTrue(ex.getMessage().contains("[3]"), ex.getMessage());
+        verify(blockBlobClient, never()).commitBlockListWithResponse(any(), any(), any());
+    }
+
+    private static Block block(int partNumber, long size) {
+        String name = Base64.getEncoder().encodeToString(
+                String.format("%06d", partNumber).getBytes(StandardCharsets.US_ASCII));
+        return new Block().setName(name).setSizeLong(size);
+    }
+
+    private static Response<Void> response(int status) {
+        Response<Void> response = mock();
+        when(response.getStatusCode()).thenReturn(status);
+        return response;
+    }
+
+    private static BlobStorageException storageException(int status) {
+        BlobStorageException e = mock();
+        when(e.getStatusCode()).thenReturn(status);
+        return e;
+    }
+
+}
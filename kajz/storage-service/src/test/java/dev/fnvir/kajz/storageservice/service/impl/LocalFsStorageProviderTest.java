@@ -0,0 +1,196 @@
+package dev.fnvir.kajz.storageservice.service.impl;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import dev.fnvir.kajz.storageservice.config.LocalFsStorageProperties;
+import dev.fnvir.kajz.storageservice.dto.UploadValidationResultDTO.UploadValidationFailureReason;
+import dev.fnvir.kajz.storageservice.exception.ForbiddenException;
+import dev.fnvir.kajz.storageservice.exception.NotFoundException;
+import dev.fnvir.kajz.storageservice.model.FileUpload;
+import dev.fnvir.kajz.storageservice.util.StorageFileValidatorUtils;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Unit tests for {@link LocalFsStorageProvider}.
+ */
+public class LocalFsStorageProviderTest {
+
+    @TempDir
+    Path rootDir;
+
+    private LocalFsStorageProvider storageProvider;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        var props = new LocalFsStorageProperties();
+        props.setRootDir(rootDir.toString());
+        props.setPublicBaseUrl("http://localhost:8083");
+        props.setSigningSecret("test-secret");
+
+        var fileValidatorUtils = mock(StorageFileValidatorUtils.class);
+        when(fileValidatorUtils.isValidFileSize(anyLong())).thenAnswer(inv -> inv.<Long>getArgument(0) <= 1024);
+        when(fileValidatorUtils.isValidFileSize(anyLong(), eq(true))).thenAnswer(inv -> inv.<Long>getArgument(0) <= 4096);
+
+        storageProvider = new LocalFsStorageProvider(props, fileValidatorUtils);
+        storageProvider.init();
+    }
+
+    @Test
+    @DisplayName("signed download URL should pass verification")
+    void signedUrl_shouldVerify() {
+        var res = storageProvider.generatePreSignedDownloadUrl("public/abc/file.png", Duration.ofMinutes(1));
+        Map<String, String> params = queryParams(res.url());
+
+        assertTrue(res.url().startsWith("http://localhost:8083" + LocalFsStorageProvider.OBJECTS_PATH));
+        assertDoesNotThrow(() -> storageProvider.verifySignature(
+                LocalFsStorageProvider.OP_DOWNLOAD, params.get("key"),
+                Long.parseLong(params.get("expires")), params.get("sig")));
+    }
+
+    @Test
+    @DisplayName("signature should be rejected for a different operation or key")
+    void signedUrl_shouldRejectTampering() {
+        var res = storageProvider.generatePreSignedDownloadUrl("public/abc/file.png", Duration.ofMinutes(1));
+        Map<String, String> params = queryParams(res.url());
+        long expires = Long.parseLong(params.get("expires"));
+
+        assertThrows(ForbiddenException.class, () -> storageProvider.verifySignature(
+                LocalFsStorageProvider.OP_UPLOAD, params.get("key"), expires, params.get("sig")));
+        assertThrows(ForbiddenException.class, () -> storageProvider.verifySignature(
+                LocalFsStorageProvider.OP_DOWNLOAD, "public/abc/other.png", expires, params.get("sig")));
+        assertThrows(ForbiddenException.class, () -> storageProvider.verifySignature(
+                LocalFsStorageProvider.OP_DOWNLOAD, params.get("key"), expires, "not-a-signature"));
+    }
+
+    @Test
+    @DisplayName("expired signature should be rejected")
+    void signedUrl_shouldRejectExpired() {
+        var res = storageProvider.generatePreSignedDownloadUrl("public/abc/file.png", Duration.ofMinutes(-1));
+        Map<String, String> params = queryParams(res.url());
+
+        assertThrows(ForbiddenException.class, () -> storageProvider.verifySignature(
+                LocalFsStorageProvider.OP_DOWNLOAD, params.get("key"),
+                Long.parseLong(params.get("expires")), params.get("sig")));
+        assertTrue(res.expiresAt().isBefore(Instant.now()));
+    }
+
+    @Test
+    @DisplayName("provider calls should be counted on one counter per operation")
+    void providerCalls_shouldBeCounted() {
+        var meterRegistry = new SimpleMeterRegistry();
+        ReflectionTestUtils.invokeMethod(storageProvider, "setMeterRegistry", meterRegistry);
+
+        storageProvider.uploadFile("public/abc/a.txt", new byte[1], "text/plain");
+        storageProvider.uploadFile("public/abc/b.txt", new byte[1], "text/plain");
+
+        var calls = meterRegistry.get("storage.provider.calls").tag("provider", "LOCAL_FS").counters();
+        assertEquals(1, calls.size());
+        assertEquals("write-file", calls.iterator().next().getId().getTag("operation"));
+        assertEquals(2, calls.iterator().next().count());
+    }
+
+    @Test
+    @DisplayName("written object should be downloadable and deletable")
+    void writeDownloadDelete_roundTrip() throws Exception {
+        byte[] content = "hello local storage".getBytes(StandardCharsets.UTF_8);
+
+        var stored = storageProvider.writeObject("public/abc/file.txt", new ByteArrayInputStream(content));
+        assertNotNull(stored.eTag());
+        assertEquals(content.length, stored.size());
+
+        var out = new ByteArrayOutputStream();
+        try (InputStream in = storageProvider.downloadFile("public/abc/file.txt").call()) {
+            in.transferTo(out);
+        }
+        assertArrayEquals(content, out.toByteArray());
+
+        assertTrue(storageProvider.deleteFile("public/abc/file.txt"));
+        assertFalse(Files.exists(rootDir.resolve("public/abc/file.txt")));
+        assertThrows(NotFoundException.class, () -> storageProvider.downloadFile("public/abc/file.txt").call());
+    }
+
+    @Test
+    @DisplayName("multipart upload should assemble its parts in order, and completing again should be a no-op")
+    void multipartUpload_roundTrip() throws Exception {
+        FileUpload file = new FileUpload();
+        file.setStoragePath("public/abc/video.mp4");
+        file.setPartCount(2);
+        file.setMultipartUploadId(storageProvider.createMultipartUpload(file));
+
+        var urls = storageProvider.generatePartUploadUrls(file, List.of(1, 2));
+        Map<String, String> params = queryParams(urls.get(1).uploadUrl());
+        assertDoesNotThrow(() -> storageProvider.verifyPartSignature(file.getMultipartUploadId(), 2,
+                Long.parseLong(params.get("expires")), params.get("sig")));
+        assertThrows(ForbiddenException.class, () -> storageProvider.verifyPartSignature(file.getMultipartUploadId(), 1,
+                Long.parseLong(params.get("expires")), params.get("sig")));
+
+        storageProvider.writeObjectPart(file.getMultipartUploadId(), 2, new ByteArrayInputStream("world".getBytes()));
+        assertEquals(List.of(2), List.copyOf(storageProvider.listUploadedParts(file).keySet()));
+        storageProvider.writeObjectPart(file.getMultipartUploadId(), 1, new ByteArrayInputStream("hello ".getBytes()));
+
+        storageProvider.completeMultipartUpload(file);
+        assertEquals("hello world", Files.readString(rootDir.resolve("public/abc/video.mp4")));
+        assertEquals(2, file.getUploadedParts().size());
+
+        // e.g. retried after the transaction completing the upload rolled back
+        assertDoesNotThrow(() -> storageProvider.completeMultipartUpload(file));
+        assertThrows(NotFoundException.class, () -> storageProvider.listUploadedParts(file));
+    }
+
+    @Test
+    @DisplayName("keys escaping the root directory should be rejected")
+    void resolve_shouldRejectPathTraversal() {
+        assertThrows(ForbiddenException.class, () -> storageProvider.resolve("../outside.txt"));
+        assertThrows(ForbiddenException.class, () -> storageProvider.resolve("public/../../outside.txt"));
+    }
+
+    @Test
+    @DisplayName("validateUploadCompletion should report missing files")
+    void validateUploadCompletion_shouldReportMissingFile() {
+        FileUpload file = new FileUpload();
+        file.setFilename("missing.png");
+        file.setStoragePath("public/abc/missing.png");
+
+        var result = storageProvider.validateUploadCompletion(file);
+
+        assertFalse(result.isSuccess());
+        assertEquals(UploadValidationFailureReason.FILE_DOESNT_EXIST, result.getFailureReason());
+    }
+
+    private static Map<String, String> queryParams(String url) {
+        return Arrays.stream(URI.create(url).getQuery().split("&"))
+                .map(p -> p.split("=", 2))
+                .collect(Collectors.toMap(p -> p[0], p -> p[1]));
+    }
+
+}
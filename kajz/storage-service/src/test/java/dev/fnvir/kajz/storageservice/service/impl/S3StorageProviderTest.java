@@ -0,0 +1,110 @@
+package dev.fnvir.kajz.storageservice.service.impl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+import java.util.Set;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import dev.fnvir.kajz.storageservice.config.AwsS3Properties;
+import dev.fnvir.kajz.storageservice.model.FileUpload;
+import dev.fnvir.kajz.storageservice.service.AbstractStorageProvider;
+import dev.fnvir.kajz.storageservice.util.StorageFileValidatorUtils;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.CopyObjectRequest;
+import software.amazon.awssdk.services.s3.model.CopyObjectResponse;
+import software.amazon.awssdk.services.s3.model.MetadataDirective;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+import software.amazon.awssdk.services.s3.model.StorageClass;
+
+/**
+ * Unit tests for {@link S3StorageProvider}, against a mocked {@link S3Client}.
+ */
+public class S3StorageProviderTest {
+
+    private SimpleMeterRegistry meterRegistry;
+    private S3Client s3Client;
+    private S3StorageProvider storageProvider;
+
+    @BeforeEach
+    void setUp() {
+        var props = new AwsS3Properties();
+        props.setAccessKey("access-key");
+        props.setSecretKey("secret-key");
+        props.setRegion("us-east-1");
+        props.setBucketName("bucket");
+
+        meterRegistry = new SimpleMeterRegistry();
+        storageProvider = new S3StorageProvider(props, mock(StorageFileValidatorUtils.class), meterRegistry);
+        ((S3Client) ReflectionTestUtils.getField(storageProvider, "s3Client")).close();
+        s3Client = mock(S3Client.class);
+        ReflectionTestUtils.setField(storageProvider, "s3Client", s3Client);
+    }
+
+    @AfterEach
+    void tearDown() {
+        storageProvider.cleanup();
+    }
+
+    @Test
+    @DisplayName("moveToColdStorageClass should copy each object onto itself as Standard-IA and report failures")
+    void moveToColdStorageClass_shouldCopyInPlace() {
+        when(s3Client.copyObject(any(CopyObjectRequest.class)))
+                .thenReturn(CopyObjectResponse.builder().build())
+                .thenThrow(S3Exception.builder().message("Access Denied").statusCode(403).build());
+
+        Set<String> failed = storageProvider.moveToColdStorageClass(List.of("public/a.mp4", "public/b.mp4"));
+
+        assertEquals(Set.of("public/b.mp4"), failed);
+        ArgumentCaptor<CopyObjectRequest> requests = ArgumentCaptor.forClass(CopyObjectRequest.class);
+        verify(s3Client, times(2)).copyObject(requests.capture());
+        CopyObjectRequest first = requests.getAllValues().getFirst();
+        assertEquals("bucket", first.sourceBucket());
+        assertEquals("bucket", first.destinationBucket());
+        assertEquals("public/a.mp4", first.sourceKey());
+        assertEquals("public/a.mp4", first.destinationKey());
+        assertEquals(StorageClass.STANDARD_IA, first.storageClass());
+        assertEquals(MetadataDirective.COPY, first.metadataDirective());
+    }
+
+    @Test
+    @DisplayName("part upload URLs should sign the size of each part")
+    void generatePartUploadUrls_shouldSignPartSize() {
+        var file = new FileUpload();
+        file.setStoragePath("public/abc/video.mp4");
+        file.setMultipartUploadId("upload-id");
+        file.setContentSize(20L * 1024 * 1024);
+        file.setPartSize(8L * 1024 * 1024);
+        file.setPartCount(3);
+
+        var urls = storageProvider.generatePartUploadUrls(file, List.of(1, 3));
+
+        assertEquals(8L * 1024 * 1024, AbstractStorageProvider.partLength(file, 1));
+        assertEquals(4L * 1024 * 1024, AbstractStorageProvider.partLength(file, 3));
+        urls.forEach(url -> assertTrue(url.uploadUrl().contains("X-Amz-SignedHeaders=content-length"), url.uploadUrl()));
+    }
+
+    @Test
+    @DisplayName("connection pool meters should be tagged with the provider type")
+    void poolMeters_shouldBeTaggedWithProviderType() {
+        assertFalse(meterRegistry.find(S3HttpPoolMetricPublisher.METRIC_PREFIX + ".connections")
+                .tag("provider", "AWS_S3").gauges().isEmpty());
+        assertFalse(meterRegistry.find(S3HttpPoolMetricPublisher.METRIC_PREFIX + ".connections.acquire")
+                .tag("provider", "AWS_S3").timers().isEmpty());
+    }
+
+}
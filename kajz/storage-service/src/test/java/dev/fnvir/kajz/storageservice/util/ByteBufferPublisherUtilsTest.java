@@ -0,0 +1,202 @@
+package dev.fnvir.kajz.storageservice.util;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.context.request.async.AsyncRequestTimeoutException;
+import org.springframework.web.context.request.async.StandardServletAsyncWebRequest;
+import org.springframework.web.context.request.async.WebAsyncManager;
+import org.springframework.web.context.request.async.WebAsyncUtils;
+
+import dev.fnvir.kajz.storageservice.util.ByteBufferPublisherUtils.AsyncWriter;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import reactor.core.publisher.Flux;
+
+/**
+ * Unit tests for {@link ByteBufferPublisherUtils}.
+ */
+public class ByteBufferPublisherUtilsTest {
+
+    private MockHttpServletRequest request;
+    private MockHttpServletResponse response;
+
+    @Test
+    @DisplayName("AsyncWriter should write all buffers in order, only when the stream is ready")
+    void asyncWriter_shouldWriteAllBuffers() {
+        var emitted = new AtomicInteger();
+        var publisher = Flux.range(0, 100)
+                .map(i -> ByteBuffer.wrap((i + ",").getBytes(StandardCharsets.US_ASCII)))
+                .doOnNext(_ -> emitted.incrementAndGet());
+        var out = new NonBlockingOutputStream();
+        var done = new CompletableFuture<Throwable>();
+
+        new AsyncWriter(publisher, out, done::complete).start();
+        for (int i = 0; i < 1000 && !done.isDone(); i++) {
+            out.ready = true;
+            out.listener.onWritePossible();
+            assertTrue(emitted.get() - out.writes <= 8, "prefetch should be bounded");
+        }
+
+        assertNull(done.join());
+        assertEquals(100, out.writes);
+        String content = out.content.toString(StandardCharsets.US_ASCII);
+        assertTrue(content.startsWith("0,1,2,"));
+        assertTrue(content.endsWith("98,99,"));
+    }
+
+    @Test
+    @DisplayName("AsyncWriter should cancel the publisher when writing fails")
+    void asyncWriter_shouldCancelOnWriteFailure() {
+        var cancelled = new AtomicBoolean();
+        var publisher = Flux.<ByteBuffer>generate(sink -> sink.next(ByteBuffer.wrap(new byte[16])))
+                .doOnCancel(() -> cancelled.set(true));
+        var out = new NonBlockingOutputStream() {
+            @Override
+            public void write(ByteBuffer buffer) throws IOException {
+                throw new IOException("client disconnected");
+            }
+        };
+        var done = new CompletableFuture<Throwable>();
+
+        new AsyncWriter(publisher, out, done::complete).start();
+        out.ready = true;
+        out.listener.onWritePossible();
+
+        assertInstanceOf(IOException.class, done.join());
+        assertTrue(cancelled.get());
+    }
+
+    @Test
+    @DisplayName("AsyncWriter cancelled before the first write should cancel the publisher")
+    void asyncWriter_shouldCancelWhenAbandoned() {
+        var cancelled = new AtomicBoolean();
+        var publisher = Flux.<ByteBuffer>never().doOnCancel(() -> cancelled.set(true));
+        var out = new NonBlockingOutputStream();
+        var done = new CompletableFuture<Throwable>();
+
+        var writer = new AsyncWriter(publisher, out, done::complete);
+        writer.start();
+        writer.cancel();
+        out.listener.onWritePossible();
+
+        assertInstanceOf(CancellationException.class, done.join());
+        assertTrue(cancelled.get());
+        assertEquals(0, out.writes);
+    }
+
+    @Test
+    @DisplayName("respondAsync should not cut off a download running longer than the idle timeout")
+    void respondAsync_shouldOutliveIdleTimeout() throws Exception {
+        var out = new NonBlockingOutputStream() {
+            @Override
+            public boolean isReady() {
+                return true;
+            }
+        };
+        var asyncManager = startAsync(out);
+        // 8 buffers, 50ms apart: runs for ~400ms, twice the idle timeout
+        var publisher = Flux.interval(Duration.ofMillis(50)).take(8)
+                .map(i -> ByteBuffer.wrap((i + ",").getBytes(StandardCharsets.US_ASCII)));
+
+        ByteBufferPublisherUtils.respondAsync(ResponseEntity.ok().build(),
+                () -> CompletableFuture.completedFuture(publisher), request, response, Duration.ofMillis(200));
+        out.listener.onWritePossible();
+
+        awaitResult(asyncManager);
+        assertNull(asyncManager.getConcurrentResult());
+        assertEquals("0,1,2,3,4,5,6,7,", out.content.toString(StandardCharsets.US_ASCII));
+    }
+
+    @Test
+    @DisplayName("respondAsync should abandon a download which stops writing for the idle timeout")
+    void respondAsync_shouldAbandonIdleDownload() throws Exception {
+        var cancelled = new AtomicBoolean();
+        var out = new NonBlockingOutputStream();
+        var asyncManager = startAsync(out);
+        var publisher = Flux.<ByteBuffer>never().doOnCancel(() -> cancelled.set(true));
+
+        ByteBufferPublisherUtils.respondAsync(ResponseEntity.ok().build(),
+                () -> CompletableFuture.completedFuture(publisher), request, response, Duration.ofMillis(100));
+        out.ready = true;
+        out.listener.onWritePossible();
+
+        awaitResult(asyncManager);
+        assertInstanceOf(AsyncRequestTimeoutException.class, asyncManager.getConcurrentResult());
+        Instant deadline = Instant.now().plusSeconds(5);
+        while (!cancelled.get()) { // cancelled right after the result is set
+            assertTrue(Instant.now().isBefore(deadline), "publisher wasn't cancelled");
+            Thread.sleep(20);
+        }
+    }
+
+    private WebAsyncManager startAsync(ServletOutputStream out) {
+        request = new MockHttpServletRequest();
+        request.setAsyncSupported(true);
+        response = new MockHttpServletResponse() {
+            @Override
+            public ServletOutputStream getOutputStream() {
+                return out;
+            }
+        };
+        var asyncManager = WebAsyncUtils.getAsyncManager(request);
+        asyncManager.setAsyncWebRequest(new StandardServletAsyncWebRequest(request, response));
+        return asyncManager;
+    }
+
+    private static void awaitResult(WebAsyncManager asyncManager) throws InterruptedException {
+        Instant deadline = Instant.now().plusSeconds(5);
+        while (!asyncManager.hasConcurrentResult()) {
+            assertTrue(Instant.now().isBefore(deadline), "download didn't end");
+            Thread.sleep(20);
+        }
+    }
+
+    /** Output stream which is no longer ready after each write, until the test says so. */
+    private static class NonBlockingOutputStream extends ServletOutputStream {
+
+        final ByteArrayOutputStream content = new ByteArrayOutputStream();
+        WriteListener listener;
+        boolean ready;
+        int writes;
+
+        @Override
+        public boolean isReady() {
+            return ready;
+        }
+
+        @Override
+        public void setWriteListener(WriteListener writeListener) {
+            this.listener = writeListener;
+        }
+
+        @Override
+        public void write(int b) {
+            content.write(b);
+        }
+
+        @Override
+        public void write(ByteBuffer buffer) throws IOException {
+            super.write(buffer);
+            writes++;
+            ready = false;
+        }
+
+    }
+
+}
@@ -0,0 +1,81 @@
+package dev.fnvir.kajz.storageservice.util;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import dev.fnvir.kajz.storageservice.config.StorageProperties;
+
+/**
+ * Unit tests for {@link MagicByteDetector}.
+ */
+public class MagicByteDetectorTest {
+
+    private static final byte[] PNG = { (byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n', 0, 0, 0, 13, 'I', 'H', 'D', 'R' };
+
+    private final MagicByteDetector detector = MagicByteDetector.compile(new StorageProperties().getAllowedTypes());
+
+    @Test
+    @DisplayName("should detect the default allowed types by their signatures")
+    void shouldDetectAllowedTypes() {
+        assertEquals("image/png", detect(detector, PNG));
+        assertEquals("image/jpeg", detect(detector, new byte[] { (byte) 0xFF, (byte) 0xD8, (byte) 0xFF, (byte) 0xE0 }));
+        assertEquals("image/webp", detect(detector, ascii("RIFF\u0000\u0010\u0000\u0000WEBPVP8 ")));
+        assertEquals("application/pdf", detect(detector, ascii("%PDF-1.7\n")));
+    }
+
+    @Test
+    @DisplayName("should prefer an APNG over the PNG signature it extends")
+    void shouldDetectApng() {
+        byte[] apng = Arrays.copyOf(PNG, 64);
+        System.arraycopy(ascii("acTL"), 0, apng, 37, 4);
+
+        assertEquals("image/apng", detect(detector, apng));
+        assertEquals("image/png", detect(detector, Arrays.copyOf(PNG, 64)));
+    }
+
+    @Test
+    @DisplayName("should reject unknown content without a fallback")
+    void shouldRejectUnknownContent() {
+        assertEquals(MagicByteDetector.UNKNOWN, detect(detector, ascii("GIF89a")));
+        assertEquals(MagicByteDetector.UNKNOWN, detect(detector, ascii("RIFF\u0000\u0010\u0000\u0000WAVE")));
+        assertEquals(MagicByteDetector.UNKNOWN, detect(detector, new byte[0]));
+    }
+
+    @Test
+    @DisplayName("should only need the longest signature of the allowed types")
+    void shouldReportRequiredPrefixLength() {
+        assertFalse(detector.needsFallback());
+        assertEquals(41, detector.requiredPrefixLength(8192)); // acTL of APNG
+        assertEquals(8, MagicByteDetector.compile(List.of("image/png", "image/jpeg")).requiredPrefixLength(8192));
+    }
+
+    @Test
+    @DisplayName("should leave zip containers and unsigned types to the fallback")
+    void shouldFallBackWhenAmbiguous() {
+        var ooxml = MagicByteDetector.compile(List.of("image/png",
+                "application/vnd.openxmlformats-officedocument.wordprocessingml.document"));
+        assertTrue(ooxml.needsFallback());
+        assertEquals(8192, ooxml.requiredPrefixLength(8192));
+        assertNull(detect(ooxml, new byte[] { 'P', 'K', 3, 4, 20, 0 }));
+        assertEquals(MagicByteDetector.UNKNOWN, detect(ooxml, ascii("%PDF-1.7")));
+
+        var text = MagicByteDetector.compile(List.of("image/png", "text/plain"));
+        assertEquals("image/png", detect(text, PNG));
+        assertNull(detect(text, ascii("hello")));
+    }
+
+    private static String detect(MagicByteDetector detector, byte[] head) {
+        return detector.detect(head, head.length);
+    }
+
+    private static byte[] ascii(String s) {
+        return s.getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+}
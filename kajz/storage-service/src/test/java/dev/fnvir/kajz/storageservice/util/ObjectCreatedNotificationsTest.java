@@ -0,0 +1,83 @@
+package dev.fnvir.kajz.storageservice.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import dev.fnvir.kajz.storageservice.dto.event.ObjectCreatedEvent;
+import dev.fnvir.kajz.storageservice.enums.StorageProviderType;
+import tools.jackson.databind.json.JsonMapper;
+
+/**
+ * Unit tests for {@link ObjectCreatedNotifications}.
+ */
+public class ObjectCreatedNotificationsTest {
+
+    private final JsonMapper jsonMapper = JsonMapper.builder().build();
+
+    @Test
+    @DisplayName("should read created objects from S3 event notifications")
+    void shouldParseS3Notification() {
+        String notification = """
+                {"Records": [
+                  {"eventSource": "aws:s3", "eventName": "ObjectCreated:Put",
+                   "s3": {"bucket": {"name": "kajz"},
+                          "object": {"key": "public/abc/my+photo%281%29.png", "size": 1024, "eTag": "d41d8cd9"}}},
+                  {"eventSource": "aws:s3", "eventName": "ObjectRemoved:Delete",
+                   "s3": {"bucket": {"name": "kajz"}, "object": {"key": "public/abc/old.png"}}}
+                ]}
+                """;
+
+        assertEquals(List.of(new ObjectCreatedEvent(StorageProviderType.AWS_S3, "public/abc/my photo(1).png", 1024L)),
+                parse(notification));
+    }
+
+    @Test
+    @DisplayName("should read created blobs from Event Grid events in both schemas")
+    void shouldParseEventGridEvents() {
+        String eventGrid = """
+                [{"eventType": "Microsoft.Storage.BlobCreated",
+                  "subject": "/blobServices/default/containers/kajz/blobs/private/abc/doc.pdf",
+                  "data": {"api": "PutBlob", "contentLength": 2048}}]
+                """;
+        String cloudEvent = """
+                {"type": "Microsoft.Storage.BlobCreated",
+                 "subject": "/blobServices/default/containers/kajz/blobs/public/abc/a.png",
+                 "data": {"api": "PutBlob"}}
+                """;
+
+        assertEquals(List.of(new ObjectCreatedEvent(StorageProviderType.AZURE_BLOB, "private/abc/doc.pdf", 2048L)),
+                parse(eventGrid));
+        assertEquals(List.of(new ObjectCreatedEvent(StorageProviderType.AZURE_BLOB, "public/abc/a.png", null)),
+                parse(cloudEvent));
+    }
+
+    @Test
+    @DisplayName("should ignore other events")
+    void shouldIgnoreOtherEvents() {
+        assertTrue(parse("""
+                {"Service": "Amazon S3", "Event": "s3:TestEvent", "Bucket": "kajz"}
+                """).isEmpty());
+        assertTrue(parse("""
+                {"eventType": "Microsoft.Storage.BlobDeleted", "subject": "/blobServices/default/containers/kajz/blobs/a.png"}
+                """).isEmpty());
+    }
+
+    @Test
+    @DisplayName("should read the notifications of the local stand-in")
+    void shouldParseLocalNotification() {
+        var notification = ObjectCreatedNotifications.localFsNotification(jsonMapper, "public/abc/a b.png", 10, "\"1\"");
+
+        assertEquals(List.of(new ObjectCreatedEvent(StorageProviderType.LOCAL_FS, "public/abc/a b.png", 10L)),
+                ObjectCreatedNotifications.parse(notification));
+    }
+
+    private List<ObjectCreatedEvent> parse(String notification) {
+        return ObjectCreatedNotifications.parse(jsonMapper.readTree(notification));
+    }
+
+}